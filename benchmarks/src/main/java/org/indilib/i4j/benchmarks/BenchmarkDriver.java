@@ -0,0 +1,94 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.driver.INDIDriver;
+import org.indilib.i4j.driver.INDINumberElement;
+import org.indilib.i4j.driver.INDINumberProperty;
+import org.indilib.i4j.protocol.api.INDIConnection;
+
+/**
+ * Minimal driver with one number property, used to measure the cost of
+ * property updates in the driver and in the server.
+ *
+ * @author agent
+ */
+public class BenchmarkDriver extends INDIDriver {
+
+    /**
+     * the last created driver, the server creates its drivers itself.
+     */
+    private static volatile BenchmarkDriver lastCreated;
+
+    /**
+     * the coordinates property.
+     */
+    private final INDINumberProperty coordinates;
+
+    /**
+     * the right ascension element.
+     */
+    private final INDINumberElement rightAscension;
+
+    /**
+     * the declination element.
+     */
+    private final INDINumberElement declination;
+
+    /**
+     * create the driver.
+     *
+     * @param connection the connection to the client or server.
+     */
+    public BenchmarkDriver(INDIConnection connection) {
+        super(connection);
+        coordinates = newNumberProperty().name("EQUATORIAL_EOD_COORD").label("Eq. Coordinates").group(GROUP_MAIN_CONTROL).create();
+        rightAscension = coordinates.newElement().name("RA").label("RA (hh:mm:ss)").numberFormat("%010.6m").minimum(0).maximum(24).step(0).create();
+        declination = coordinates.newElement().name("DEC").label("DEC (dd:mm:ss)").numberFormat("%010.6m").minimum(-90).maximum(90).step(0).create();
+        addProperty(coordinates);
+        lastCreated = this;
+    }
+
+    /**
+     * @return the last created driver or null if none was created yet.
+     */
+    static BenchmarkDriver lastCreated() {
+        return lastCreated;
+    }
+
+    @Override
+    public String getName() {
+        return "Benchmark Driver";
+    }
+
+    /**
+     * change the coordinates and send the update of the property.
+     *
+     * @param step the step of the movement.
+     */
+    void move(long step) {
+        rightAscension.setValueAsDouble((step % 86400) / 3600d);
+        declination.setValueAsDouble((step % 180) - 90d);
+        updateProperty(coordinates);
+    }
+}
@@ -0,0 +1,126 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.SetBlobVector;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read and write time of blob vectors per blob size, for the xml (base64) and
+ * the binary encoding.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobBenchmark {
+
+    /**
+     * the number of content bytes of the blob.
+     */
+    @Param({
+        "1024",
+        "65536",
+        "1048576",
+        "8388608"
+    })
+    public int blobSize;
+
+    /**
+     * the encoding of the streams.
+     */
+    @Param({
+        "xml",
+        "binary"
+    })
+    public String encoding;
+
+    /**
+     * the blob vector to write.
+     */
+    private SetBlobVector message;
+
+    /**
+     * the stream to write to.
+     */
+    private INDIOutputStream out;
+
+    /**
+     * the stream to read the encoded blob vector from, again and again.
+     */
+    private INDIInputStream in;
+
+    /**
+     * create the blob and the streams.
+     *
+     * @throws IOException if the streams could not be created.
+     */
+    @Setup
+    public void setup() throws IOException {
+        message = ProtocolMessages.createBlob(blobSize);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        INDIOutputStream encoder = ProtocolBenchmark.createOutputStream(encoded, encoding);
+        encoder.writeObject(message);
+        encoder.close();
+        in = ProtocolBenchmark.createInputStream(new RepeatingInputStream(encoded.toByteArray()), encoding);
+        out = ProtocolBenchmark.createOutputStream(new CountingOutputStream(), encoding);
+    }
+
+    /**
+     * @return the parsed blob vector.
+     * @throws IOException if the blob vector could not be parsed.
+     */
+    @Benchmark
+    public INDIProtocol<?> read() throws IOException {
+        return in.readObject();
+    }
+
+    /**
+     * @throws IOException if the blob vector could not be written.
+     */
+    @Benchmark
+    public void write() throws IOException {
+        out.writeObject(message);
+    }
+}
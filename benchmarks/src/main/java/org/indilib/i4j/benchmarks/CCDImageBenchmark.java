@@ -0,0 +1,121 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import nom.tam.fits.FitsException;
+import org.indilib.i4j.driver.ccd.INDICCDImage;
+import org.indilib.i4j.driver.ccd.INDICCDImage.ImageType;
+import org.indilib.i4j.driver.ccd.INDICCDImage.PixelIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to write a {@link INDICCDImage} as fits, per image size and bits per
+ * pixel.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CCDImageBenchmark {
+
+    /**
+     * the width and height of the image.
+     */
+    @Param({
+        "512",
+        "2048"
+    })
+    public int size;
+
+    /**
+     * the bits per pixel of the image.
+     */
+    @Param({
+        "8",
+        "16",
+        "32"
+    })
+    public int bitsPerPixel;
+
+    /**
+     * the image type.
+     */
+    @Param({
+        "GRAY_SCALE",
+        "COLOR"
+    })
+    public ImageType imageType;
+
+    /**
+     * the image to write.
+     */
+    private INDICCDImage image;
+
+    /**
+     * create an image with random pixels.
+     */
+    @Setup
+    public void setup() {
+        image = INDICCDImage.createImage(size, size, bitsPerPixel, imageType);
+        Random random = new Random(size);
+        int maximum = (int) Math.min(Integer.MAX_VALUE, (1L << bitsPerPixel) - 1);
+        PixelIterator iterator = image.iteratePixel();
+        for (int index = 0; index < size * size; index++) {
+            if (imageType == ImageType.COLOR) {
+                iterator.setPixel(random.nextInt(maximum), random.nextInt(maximum), random.nextInt(maximum));
+            } else {
+                iterator.setPixel(random.nextInt(maximum));
+            }
+        }
+        image.iteratorComplete(iterator);
+    }
+
+    /**
+     * @return the number of bytes written.
+     * @throws FitsException if the image could not be written.
+     */
+    @Benchmark
+    public long writeFits() throws FitsException {
+        CountingOutputStream counter = new CountingOutputStream();
+        image.write(new DataOutputStream(counter), 0, 0, size, size, "fits");
+        return counter.getCount();
+    }
+}
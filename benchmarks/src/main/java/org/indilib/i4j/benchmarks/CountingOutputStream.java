@@ -0,0 +1,55 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.OutputStream;
+
+/**
+ * Output stream that only counts the bytes written to it.
+ *
+ * @author agent
+ */
+final class CountingOutputStream extends OutputStream {
+
+    /**
+     * number of bytes written.
+     */
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    /**
+     * @return the number of bytes written.
+     */
+    long getCount() {
+        return count;
+    }
+}
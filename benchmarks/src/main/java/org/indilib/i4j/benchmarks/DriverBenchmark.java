@@ -0,0 +1,133 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.SetVector;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.io.INDIPipedConnections;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of {@link org.indilib.i4j.driver.INDIDriver#updateProperty} of a
+ * driver connected over piped connections, the other side is consumed by a
+ * separate thread.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DriverBenchmark {
+
+    /**
+     * the connections between the driver and the consumer.
+     */
+    private INDIPipedConnections connections;
+
+    /**
+     * the driver under test.
+     */
+    private BenchmarkDriver driver;
+
+    /**
+     * number of property updates received by the consumer.
+     */
+    private final AtomicLong received = new AtomicLong();
+
+    /**
+     * the step of the next update.
+     */
+    private long step;
+
+    /**
+     * create the driver and start the consumer.
+     *
+     * @throws IOException if the connections could not be opened.
+     */
+    @Setup
+    public void setup() throws IOException {
+        connections = new INDIPipedConnections();
+        driver = new BenchmarkDriver(connections.first());
+        consume(connections.second().getINDIInputStream(), received);
+    }
+
+    /**
+     * consume the input stream in a daemon thread and count the set vectors.
+     *
+     * @param in      the stream to consume.
+     * @param counter the counter of the set vectors.
+     */
+    static void consume(final INDIInputStream in, final AtomicLong counter) {
+        Thread thread = new Thread(() -> {
+            try {
+                Object message;
+                while ((message = in.readObject()) != null) {
+                    if (message instanceof SetVector<?>) {
+                        counter.incrementAndGet();
+                    }
+                }
+            } catch (IOException e) {
+                // the connection was closed, the benchmark is over.
+                return;
+            }
+        }, "benchmark consumer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * update the property once.
+     */
+    @Benchmark
+    public void updateProperty() {
+        driver.move(step++);
+    }
+
+    /**
+     * close the connections.
+     *
+     * @throws IOException if the connections could not be closed.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        connections.first().close();
+        connections.second().close();
+    }
+}
@@ -0,0 +1,161 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.indilib.i4j.protocol.io.INDIFlushPolicy;
+import org.indilib.i4j.protocol.io.INDIProtocolFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read and write throughput of the {@link INDIProtocolFactory} streams per
+ * message type, for the xml and the binary encoding.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    /**
+     * the message type to read and write.
+     */
+    @Param({
+        "defNumberVector",
+        "defSwitchVector",
+        "setNumberVector",
+        "setSwitchVector",
+        "setTextVector",
+        "newNumberVector",
+        "message",
+        "getProperties"
+    })
+    public String messageType;
+
+    /**
+     * the encoding of the streams.
+     */
+    @Param({
+        "xml",
+        "binary"
+    })
+    public String encoding;
+
+    /**
+     * the message to write.
+     */
+    private INDIProtocol<?> message;
+
+    /**
+     * the stream to write to.
+     */
+    private INDIOutputStream out;
+
+    /**
+     * the stream to read the encoded message from, again and again.
+     */
+    private INDIInputStream in;
+
+    /**
+     * create the message and the streams.
+     *
+     * @throws IOException if the streams could not be created.
+     */
+    @Setup
+    public void setup() throws IOException {
+        message = ProtocolMessages.create(messageType);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        INDIOutputStream encoder = createOutputStream(encoded, encoding);
+        for (int index = 0; index < 16; index++) {
+            encoder.writeObject(message);
+        }
+        encoder.close();
+        in = createInputStream(new RepeatingInputStream(encoded.toByteArray()), encoding);
+        out = createOutputStream(new CountingOutputStream(), encoding);
+    }
+
+    /**
+     * @param output   the underlying stream.
+     * @param encoding the encoding "xml" or "binary".
+     * @return the indi output stream.
+     * @throws IOException if the stream could not be created.
+     */
+    static INDIOutputStream createOutputStream(OutputStream output, String encoding) throws IOException {
+        if ("binary".equals(encoding)) {
+            return INDIProtocolFactory.createINDIBinaryOutputStream(output, INDIFlushPolicy.DEFAULT);
+        }
+        return INDIProtocolFactory.createINDIOutputStream(output, INDIFlushPolicy.DEFAULT);
+    }
+
+    /**
+     * @param input    the underlying stream.
+     * @param encoding the encoding "xml" or "binary".
+     * @return the indi input stream.
+     * @throws IOException if the stream could not be created.
+     */
+    static INDIInputStream createInputStream(InputStream input, String encoding) throws IOException {
+        if ("binary".equals(encoding)) {
+            return INDIProtocolFactory.createINDIBinaryInputStream(input);
+        }
+        return INDIProtocolFactory.createINDIInputStream(input);
+    }
+
+    /**
+     * @return the parsed message.
+     * @throws IOException if the message could not be parsed.
+     */
+    @Benchmark
+    public INDIProtocol<?> read() throws IOException {
+        return in.readObject();
+    }
+
+    /**
+     * @throws IOException if the message could not be written.
+     */
+    @Benchmark
+    public void write() throws IOException {
+        out.writeObject(message);
+    }
+}
@@ -0,0 +1,122 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.DefNumber;
+import org.indilib.i4j.protocol.DefNumberVector;
+import org.indilib.i4j.protocol.DefSwitch;
+import org.indilib.i4j.protocol.DefSwitchVector;
+import org.indilib.i4j.protocol.GetProperties;
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.Message;
+import org.indilib.i4j.protocol.NewNumberVector;
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.OneNumber;
+import org.indilib.i4j.protocol.OneSwitch;
+import org.indilib.i4j.protocol.OneText;
+import org.indilib.i4j.protocol.SetBlobVector;
+import org.indilib.i4j.protocol.SetNumberVector;
+import org.indilib.i4j.protocol.SetSwitchVector;
+import org.indilib.i4j.protocol.SetTextVector;
+
+import java.util.Random;
+
+/**
+ * Typical protocol messages as a telescope or ccd driver sends them.
+ *
+ * @author agent
+ */
+final class ProtocolMessages {
+
+    /**
+     * the device name of all messages.
+     */
+    static final String DEVICE = "Telescope Simulator";
+
+    /**
+     * the timestamp of all messages.
+     */
+    private static final String TIMESTAMP = "2020-01-01T00:00:00.000";
+
+    /**
+     * untility class never instanciated.
+     */
+    private ProtocolMessages() {
+    }
+
+    /**
+     * @param type the xml element name of the message.
+     * @return a typical message of the type.
+     */
+    static INDIProtocol<?> create(String type) {
+        switch (type) {
+            case "defNumberVector":
+                DefNumberVector defNumbers = new DefNumberVector().setDevice(DEVICE).setName("EQUATORIAL_EOD_COORD").setLabel("Eq. Coordinates")
+                        .setGroup("Main Control").setPerm("rw").setState("Idle").setTimeout("60").setTimestamp(TIMESTAMP);
+                defNumbers.getElements().add(new DefNumber().setFormat("%010.6m").setMin("0").setMax("24").setStep("0").setName("RA").setLabel("RA (hh:mm:ss)")
+                        .setTextContent("5.5"));
+                defNumbers.getElements().add(new DefNumber().setFormat("%010.6m").setMin("-90").setMax("90").setStep("0").setName("DEC").setLabel("DEC (dd:mm:ss)")
+                        .setTextContent("-12.25"));
+                return defNumbers;
+            case "defSwitchVector":
+                DefSwitchVector defSwitches = new DefSwitchVector().setRule("OneOfMany").setDevice(DEVICE).setName("CONNECTION").setLabel("Connection")
+                        .setGroup("Main Control").setPerm("rw").setState("Idle").setTimeout("60").setTimestamp(TIMESTAMP);
+                defSwitches.getElements().add(new DefSwitch().setName("CONNECT").setLabel("Connect").setTextContent("On"));
+                defSwitches.getElements().add(new DefSwitch().setName("DISCONNECT").setLabel("Disconnect").setTextContent("Off"));
+                return defSwitches;
+            case "setNumberVector":
+                return new SetNumberVector().setDevice(DEVICE).setName("EQUATORIAL_EOD_COORD").setState("Busy").setTimeout("60").setTimestamp(TIMESTAMP)
+                        .addElement(new OneNumber().setName("RA").setTextContent("5.51234")) //
+                        .addElement(new OneNumber().setName("DEC").setTextContent("-12.2567"));
+            case "setSwitchVector":
+                return new SetSwitchVector().setDevice(DEVICE).setName("CONNECTION").setState("Ok").setTimestamp(TIMESTAMP)
+                        .addElement(new OneSwitch().setName("CONNECT").setTextContent("On")) //
+                        .addElement(new OneSwitch().setName("DISCONNECT").setTextContent("Off"));
+            case "setTextVector":
+                return new SetTextVector().setDevice(DEVICE).setName("DRIVER_INFO").setState("Idle").setTimestamp(TIMESTAMP)
+                        .addElement(new OneText().setName("DRIVER_NAME").setTextContent("Telescope Simulator")) //
+                        .addElement(new OneText().setName("DRIVER_EXEC").setTextContent("indi_simulator_telescope"));
+            case "newNumberVector":
+                return new NewNumberVector().setDevice(DEVICE).setName("EQUATORIAL_EOD_COORD").setTimestamp(TIMESTAMP)
+                        .addElement(new OneNumber().setName("RA").setTextContent("5.5")) //
+                        .addElement(new OneNumber().setName("DEC").setTextContent("-12.25"));
+            case "message":
+                return new Message().setDevice(DEVICE).setMessage("Slewing to RA: 05:30:00 DEC: -12:15:00").setTimestamp(TIMESTAMP);
+            case "getProperties":
+                return new GetProperties().setVersion("1.7");
+            default:
+                throw new IllegalArgumentException("unknown message type " + type);
+        }
+    }
+
+    /**
+     * @param size the number of content bytes.
+     * @return a blob vector with one blob of random content.
+     */
+    static SetBlobVector createBlob(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return new SetBlobVector().setDevice("CCD Simulator").setName("CCD1").setState("Ok").setTimestamp(TIMESTAMP)
+                .addElement(new OneBlob().setFormat(".fits").setSize(Integer.toString(size)).setByteContent(content).setName("CCD1"));
+    }
+}
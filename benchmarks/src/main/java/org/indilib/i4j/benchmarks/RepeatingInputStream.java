@@ -0,0 +1,78 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.InputStream;
+
+/**
+ * Endless input stream that repeats the same bytes, so a benchmark can read
+ * messages without ever reaching the end of the stream.
+ *
+ * @author agent
+ */
+final class RepeatingInputStream extends InputStream {
+
+    /**
+     * the bytes to repeat.
+     */
+    private final byte[] bytes;
+
+    /**
+     * the position of the next byte.
+     */
+    private int position;
+
+    /**
+     * create the stream.
+     *
+     * @param bytes the bytes to repeat.
+     */
+    RepeatingInputStream(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int read() {
+        int result = bytes[position++] & 0xFF;
+        if (position == bytes.length) {
+            position = 0;
+        }
+        return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        int count = Math.min(length, bytes.length - position);
+        System.arraycopy(bytes, position, buffer, offset, count);
+        position += count;
+        if (position == bytes.length) {
+            position = 0;
+        }
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return bytes.length - position;
+    }
+}
@@ -0,0 +1,192 @@
+package org.indilib.i4j.benchmarks;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.INDIException;
+import org.indilib.i4j.protocol.GetProperties;
+import org.indilib.i4j.protocol.api.INDIConnection;
+import org.indilib.i4j.server.INDIServerAccessImpl;
+import org.indilib.i4j.server.api.INDIServerInterface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan out of property updates through the {@code INDIServer}: a driver
+ * loaded in the server updates a property and the benchmark waits until all
+ * N clients received the update, so the score is the end to end fan out rate.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerFanOutBenchmark {
+
+    /**
+     * maximum time to wait for the server to deliver, in nanos.
+     */
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * time to wait for one update while the clients are registered, in
+     * nanos.
+     */
+    private static final long RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * the number of connected clients.
+     */
+    @Param({
+        "1",
+        "8",
+        "64"
+    })
+    public int clients;
+
+    /**
+     * the server under test.
+     */
+    private INDIServerInterface server;
+
+    /**
+     * the driver loaded in the server.
+     */
+    private BenchmarkDriver driver;
+
+    /**
+     * the client connections.
+     */
+    private final List<INDIConnection> connections = new ArrayList<>();
+
+    /**
+     * number of property updates received by all clients.
+     */
+    private final AtomicLong received = new AtomicLong();
+
+    /**
+     * number of property updates the clients should have received.
+     */
+    private long expected;
+
+    /**
+     * the step of the next update.
+     */
+    private long step;
+
+    /**
+     * start the server with the driver and connect the clients.
+     *
+     * @throws IOException   if a client could not be connected.
+     * @throws INDIException if the driver could not be loaded.
+     */
+    @Setup
+    public void setup() throws IOException, INDIException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new INDIServerAccessImpl().createOrGet(null, port);
+        server.loadJavaDriver(BenchmarkDriver.class);
+        driver = BenchmarkDriver.lastCreated();
+        for (int index = 0; index < clients; index++) {
+            INDIConnection connection = server.createConnection();
+            DriverBenchmark.consume(connection.getINDIInputStream(), received);
+            connection.getINDIOutputStream().writeObject(new GetProperties().setVersion("1.7"));
+            connections.add(connection);
+        }
+        // the clients are registered asynchronously, update till all of
+        // them receive the updates.
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        do {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("server did not register the clients in time");
+            }
+            received.set(0);
+            expected = clients;
+            driver.move(step++);
+        } while (!awaitDelivery(System.nanoTime() + RETRY_NANOS) || received.get() != clients);
+        received.set(0);
+        expected = 0;
+    }
+
+    /**
+     * wait till the clients received the expected number of updates.
+     *
+     * @param deadline the time to give up, in nanos.
+     * @return true if the updates were received before the deadline.
+     */
+    private boolean awaitDelivery(long deadline) {
+        while (received.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * update the property once and wait till all clients received it.
+     */
+    @Benchmark
+    public void fanOut() {
+        expected += clients;
+        driver.move(step++);
+        if (!awaitDelivery(System.nanoTime() + TIMEOUT_NANOS)) {
+            throw new IllegalStateException("server did not deliver the updates in time");
+        }
+    }
+
+    /**
+     * disconnect the clients and stop the server.
+     *
+     * @throws IOException if a connection could not be closed.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        for (INDIConnection connection : connections) {
+            connection.close();
+        }
+        server.stopServer();
+    }
+}
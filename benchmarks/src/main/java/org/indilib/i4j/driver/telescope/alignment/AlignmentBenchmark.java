@@ -0,0 +1,158 @@
+package org.indilib.i4j.driver.telescope.alignment;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import net.sourceforge.novaforjava.JulianDay;
+import net.sourceforge.novaforjava.Transform;
+import net.sourceforge.novaforjava.api.LnEquPosn;
+import net.sourceforge.novaforjava.api.LnHrzPosn;
+import net.sourceforge.novaforjava.api.LnLnlatPosn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link BuiltInMathPlugin} transformations per number of
+ * sync points, from none (no alignment) over the small databases to a
+ * database that uses the convex hull. The benchmark lives in the package of
+ * the plugin because the database is only accessible from there.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlignmentBenchmark {
+
+    /**
+     * latitude of the observer.
+     */
+    private static final double LATITUDE = 48.2;
+
+    /**
+     * longitude of the observer.
+     */
+    private static final double LONGITUDE = 16.4;
+
+    /**
+     * the mount error of the sync points in degrees of azimuth.
+     */
+    private static final double MOUNT_ERROR = 0.5;
+
+    /**
+     * the number of sync points in the database.
+     */
+    @Param({
+        "0",
+        "1",
+        "3",
+        "6"
+    })
+    public int syncPoints;
+
+    /**
+     * the plugin under test.
+     */
+    private BuiltInMathPlugin plugin;
+
+    /**
+     * the vector for the results.
+     */
+    private final TelescopeDirectionVector telescopeVector = new TelescopeDirectionVector();
+
+    /**
+     * the apparent direction to transform to celestial coordinates.
+     */
+    private TelescopeDirectionVector apparentVector;
+
+    /**
+     * the right ascension result.
+     */
+    private final DoubleRef rightAscension = new DoubleRef();
+
+    /**
+     * the declination result.
+     */
+    private final DoubleRef declination = new DoubleRef();
+
+    /**
+     * create the database with the sync points and initialise the plugin.
+     */
+    @Setup
+    public void setup() {
+        InMemoryDatabase database = new InMemoryDatabase();
+        database.setDatabaseReferencePosition(LATITUDE, LONGITUDE);
+        LnLnlatPosn position = new LnLnlatPosn();
+        database.getDatabaseReferencePosition(position);
+        double julianDate = JulianDay.ln_get_julian_from_sys();
+        for (int index = 0; index < syncPoints; index++) {
+            double ra = index * 24d / syncPoints;
+            double dec = index % 2 == 0 ? 30d : 60d;
+            LnEquPosn raDec = new LnEquPosn();
+            raDec.ra = ra * 15d;
+            raDec.dec = dec;
+            LnHrzPosn altAz = new LnHrzPosn();
+            Transform.ln_get_hrz_from_equ(raDec, position, julianDate, altAz);
+            altAz.az += MOUNT_ERROR;
+            database.getAlignmentDatabase().add(new AlignmentDatabaseEntry(ra, dec, julianDate, //
+                    TelescopeDirectionVector.telescopeDirectionVectorFromAltitudeAzimuth(altAz)));
+        }
+        plugin = new BuiltInMathPlugin();
+        plugin.create();
+        plugin.setApproximateAlignment(MountAlignment.NORTH_CELESTIAL_POLE);
+        plugin.initialise(database);
+        apparentVector = new TelescopeDirectionVector();
+        plugin.transformCelestialToTelescope(6d, 45d, 0d, apparentVector);
+    }
+
+    /**
+     * @return the telescope direction.
+     */
+    @Benchmark
+    public TelescopeDirectionVector celestialToTelescope() {
+        plugin.transformCelestialToTelescope(6d, 45d, 0d, telescopeVector);
+        return telescopeVector;
+    }
+
+    /**
+     * @return the right ascension.
+     */
+    @Benchmark
+    public double telescopeToCelestial() {
+        plugin.transformTelescopeToCelestial(apparentVector, 0d, rightAscension, declination);
+        return rightAscension.getValue() + declination.getValue();
+    }
+}
@@ -0,0 +1,121 @@
+package org.indilib.i4j.fits.debayer;
+
+/*
+ * #%L
+ * INDI for Java Benchmarks
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the debayer algorithms per image size. The benchmark lives in the
+ * package of the algorithms because most of them are package private.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DebayerBenchmark {
+
+    /**
+     * the debayer algorithm.
+     */
+    @Param({
+        "replicate",
+        "average",
+        "smooth",
+        "adaptive"
+    })
+    public String algorithm;
+
+    /**
+     * the width and height of the image.
+     */
+    @Param({
+        "512",
+        "2048"
+    })
+    public int size;
+
+    /**
+     * the algorithm under test.
+     */
+    private DebayerAlgorithmImpl debayer;
+
+    /**
+     * the raw image.
+     */
+    private ImagePixels image;
+
+    /**
+     * create the algorithm and a raw image with random pixels.
+     */
+    @Setup
+    public void setup() {
+        switch (algorithm) {
+            case "replicate":
+                debayer = new ReplicateDebayerAlgorithm();
+                break;
+            case "average":
+                debayer = new AverageDebayerAlgorithm();
+                break;
+            case "smooth":
+                debayer = new SmoothDebayerAlgorithm();
+                break;
+            case "adaptive":
+                debayer = new AdaptiveDebayerAlgorithm();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown debayer algorithm " + algorithm);
+        }
+        image = new ImagePixels(size, size);
+        Random random = new Random(size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setPixel(x, y, random.nextInt(65536));
+            }
+        }
+    }
+
+    /**
+     * @return the debayered image.
+     */
+    @Benchmark
+    public RGBImagePixels decode() {
+        return debayer.decode(DebayerPattern.RGGB, image);
+    }
+}
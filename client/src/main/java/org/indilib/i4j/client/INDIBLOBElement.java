@@ -158,7 +158,7 @@ public class INDIBLOBElement extends INDIElement {
     protected OneElement<?> getXMLOneElementNewValue() {
         INDIBLOBValue ibv = desiredValue;
 
-        OneBlob result = new OneBlob().setName(getName()).setByteContent(value.getBlobData()).setFormat(ibv.getFormat());
+        OneBlob result = new OneBlob().setName(getName()).setByteBuffer(value.getBlobBuffer()).setFormat(ibv.getFormat());
 
         desiredValue = null;
 
@@ -23,16 +23,13 @@ package org.indilib.i4j.client;
  */
 
 import org.indilib.i4j.INDIException;
-import org.indilib.i4j.INDISexagesimalFormatter;
+import org.indilib.i4j.INDINumberFormat;
 import org.indilib.i4j.protocol.DefNumber;
 import org.indilib.i4j.protocol.OneElement;
 import org.indilib.i4j.protocol.OneNumber;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Formatter;
-import java.util.Locale;
-
 /**
  * A class representing a INDI Number Element.
  *
@@ -76,9 +73,9 @@ public class INDINumberElement extends INDIElement {
     private double step;
 
     /**
-     * A formatter used to parse and format the values.
+     * The compiled number format used to parse and format the values.
      */
-    private INDISexagesimalFormatter sFormatter;
+    private INDINumberFormat compiledFormat;
 
     /**
      * A UI component that can be used in graphical interfaces for this Number
@@ -188,14 +185,11 @@ public class INDINumberElement extends INDIElement {
             throw new IllegalArgumentException("Number format not recognized%\n");
         }
 
-        if (newNumberFormat.endsWith("m")) {
-            sFormatter = new INDISexagesimalFormatter(newNumberFormat);
-        }
-
         if (newNumberFormat.equals("%0.f") || newNumberFormat.equals("%.f")) {
             newNumberFormat = "%.0f";
         }
 
+        compiledFormat = INDINumberFormat.compile(newNumberFormat);
         numberFormat = newNumberFormat;
     }
 
@@ -247,15 +241,7 @@ public class INDINumberElement extends INDIElement {
      * Number Element.
      */
     private String getNumberAsString(double number) {
-        String aux;
-        if (numberFormat.endsWith("m")) {
-            aux = sFormatter.format(number);
-        } else {
-            Formatter formatter = new Formatter(Locale.US);
-            aux = formatter.format(getNumberFormat(), number).toString();
-            formatter.close();
-        }
-        return aux;
+        return compiledFormat.format(number);
     }
 
     @Override
@@ -310,19 +296,7 @@ public class INDINumberElement extends INDIElement {
      * @return the parsed number
      */
     private double parseNumber(String number) {
-        double res;
-
-        if (numberFormat.endsWith("m")) {
-            res = sFormatter.parseSexagesimal(number);
-        } else {
-            try {
-                res = Double.parseDouble(number);
-            } catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Number value not correct");
-            }
-        }
-
-        return res;
+        return compiledFormat.parse(number);
     }
 
     @Override
@@ -23,11 +23,16 @@ package org.indilib.i4j;
  */
 
 import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.api.INDIBLOBSource;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -44,9 +49,21 @@ public class INDIBLOBValue implements Serializable {
     private static final long serialVersionUID = 2475720079344574791L;
 
     /**
-     * The BLOB data.
+     * The BLOB data (created from the buffer when it is requested).
      */
-    private final byte[] blobData;
+    private byte[] blobData;
+
+    /**
+     * The BLOB data as buffer, when the value was created from a buffer (for
+     * example one filled by a blob sink).
+     */
+    private transient ByteBuffer blobBuffer;
+
+    /**
+     * The source of the BLOB data, when the value was created from a source
+     * that is read while the BLOB is sent.
+     */
+    private transient INDIBLOBSource blobSource;
 
     /**
      * The format of the data.
@@ -64,6 +81,31 @@ public class INDIBLOBValue implements Serializable {
         this.blobData = blobData;
     }
 
+    /**
+     * Constructs a new BLOB Value from a buffer and format, the content from
+     * the position to the limit of the buffer is used without copying it.
+     *
+     * @param blobBuffer the data for the BLOB
+     * @param format     the format of the data
+     */
+    public INDIBLOBValue(final ByteBuffer blobBuffer, final String format) {
+        this.format = format;
+        this.blobBuffer = blobBuffer.slice();
+    }
+
+    /**
+     * Constructs a new BLOB Value from a source and format. The source is
+     * only read when the BLOB is sent (or when the data is requested), so big
+     * content like files does not have to be in memory.
+     *
+     * @param blobSource the source of the data for the BLOB
+     * @param format     the format of the data
+     */
+    public INDIBLOBValue(final INDIBLOBSource blobSource, final String format) {
+        this.format = format;
+        this.blobSource = blobSource;
+    }
+
     /**
      * Constructs a new BLOB Value from a XML &lt;oneBLOB&gt; element.
      *
@@ -86,9 +128,8 @@ public class INDIBLOBValue implements Serializable {
 
         f = xml.getFormat().trim();
 
-        byte[] val = xml.getByteContent();
-
         if (f.endsWith(".z")) { // gzipped. Decompress
+            byte[] val = xml.getByteContent();
             Inflater decompresser = new Inflater();
             decompresser.setInput(val);
 
@@ -105,25 +146,66 @@ public class INDIBLOBValue implements Serializable {
             decompresser.end();
 
             f = f.substring(0, f.length() - 2);
-        }
-
-        if (val.length != size) {
-            throw new IllegalArgumentException("Size of BLOB not correct");
+            blobData = val;
+        } else {
+            ByteBuffer content = xml.getByteBuffer();
+            if (content == null) {
+                // the content was consumed by a blob sink.
+                content = ByteBuffer.allocate(0);
+            } else if (content.remaining() != size) {
+                throw new IllegalArgumentException("Size of BLOB not correct");
+            }
+            blobBuffer = content.slice();
         }
 
         format = f;
-        blobData = val;
     }
 
     /**
-     * Gets the BLOB data.
+     * Gets the BLOB data. If the value was created from a buffer that is not
+     * backed by an array of the same size, the data is copied once, a source
+     * is read completely once.
      *
      * @return the BLOB data
      */
     public final byte[] getBlobData() {
+        if (blobData == null && blobSource != null) {
+            blobData = new OneBlob().setBlobSource(blobSource).getByteContent();
+        } else if (blobData == null) {
+            if (blobBuffer.hasArray() && blobBuffer.arrayOffset() == 0 && blobBuffer.array().length == blobBuffer.remaining()) {
+                blobData = blobBuffer.array();
+            } else {
+                blobData = new byte[blobBuffer.remaining()];
+                blobBuffer.duplicate().get(blobData);
+            }
+        }
         return blobData;
     }
 
+    /**
+     * Gets the BLOB data as buffer without copying it. The buffer shares the
+     * content with this value, its position and limit are independent.
+     *
+     * @return the BLOB data
+     */
+    public final ByteBuffer getBlobBuffer() {
+        if (blobBuffer == null) {
+            getBlobData();
+            return ByteBuffer.wrap(blobData);
+        }
+        return blobBuffer.duplicate();
+    }
+
+    /**
+     * Gets the source of the BLOB data.
+     *
+     * @return the source of the BLOB data, null if the value was not created
+     * from a source.
+     */
+    public final INDIBLOBSource getBlobSource() {
+        return blobSource;
+    }
+
     /**
      * Gets the BLOB data format.
      *
@@ -134,12 +216,17 @@ public class INDIBLOBValue implements Serializable {
     }
 
     /**
-     * Gets the size of the BLOB data.
+     * Gets the size of the BLOB data (for a source the size it reports).
      *
      * @return the size of the BLOB data
      */
     public final int getSize() {
-        return blobData.length;
+        if (blobSource != null) {
+            return (int) blobSource.getSize();
+        } else if (blobBuffer == null) {
+            return blobData.length;
+        }
+        return blobBuffer.remaining();
     }
 
     /**
@@ -149,8 +236,32 @@ public class INDIBLOBValue implements Serializable {
      * @throws IOException if there is some problem writting the file.
      */
     public final void saveBLOBData(final File file) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(blobData);
+        try (FileOutputStream fos = new FileOutputStream(file); FileChannel channel = fos.getChannel()) {
+            if (blobSource != null && blobData == null) {
+                try (ReadableByteChannel source = blobSource.open()) {
+                    long position = 0;
+                    long count;
+                    while ((count = channel.transferFrom(source, position, Long.MAX_VALUE)) > 0) {
+                        position += count;
+                    }
+                }
+                return;
+            }
+            ByteBuffer buffer = getBlobBuffer();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
         }
     }
+
+    /**
+     * Serialize the value, the buffer is serialized as byte array.
+     *
+     * @param out the object output stream.
+     * @throws IOException if the value could not be written.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getBlobData();
+        out.defaultWriteObject();
+    }
 }
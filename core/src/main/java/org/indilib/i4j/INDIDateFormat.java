@@ -22,33 +22,101 @@ package org.indilib.i4j;
  * #L%
  */
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 
 /**
- * A simple class to format and parse INDI timestamps. Attention:
- * SimpleDateFormat is not thread save, that's why this is a per thread singleton.
+ * A simple class to format and parse INDI timestamps
+ * ("yyyy-MM-dd'T'HH:mm:ss.SSS", the milliseconds are optional while parsing)
+ * in the time zone of the thread creation. The parser and formatter work
+ * directly on the characters of a reusable buffer without any intermediate
+ * objects, the formatted string of the last millisecond is cached. The
+ * instances are per thread singletons.
  *
  * @author S. Alonso (Zerjillo) [zerjioi at ugr.es]
  */
 public final class INDIDateFormat {
 
     /**
-     * Thread local current, to protect the simple date formatters against multi
+     * Thread local current, to protect the reusable buffers against multi
      * treading problems.
      */
     private static final ThreadLocal<INDIDateFormat> format = new ThreadLocal<>();
 
     /**
-     * The first possible format for INDI timestamps.
+     * the length of a formatted timestamp with a four digit year.
      */
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+    private static final int TIMESTAMP_LENGTH = 23;
 
     /**
-     * The second possible format for INDI timestamps.
+     * the length of the date part of a formatted timestamp including the 'T'.
      */
-    private final SimpleDateFormat dateFormat2 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    private static final int DATE_LENGTH = 11;
+
+    /**
+     * milliseconds of a second.
+     */
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    /**
+     * milliseconds of a minute.
+     */
+    private static final int MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+
+    /**
+     * milliseconds of an hour.
+     */
+    private static final int MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+
+    /**
+     * milliseconds of a day.
+     */
+    private static final long MILLIS_PER_DAY = 24L * MILLIS_PER_HOUR;
+
+    /**
+     * days of a 400 year cycle of the gregorian calendar.
+     */
+    private static final int DAYS_PER_ERA = 146097;
+
+    /**
+     * days from 0000-03-01 to 1970-01-01.
+     */
+    private static final int EPOCH_SHIFT = 719468;
+
+    /**
+     * the time zone the timestamps are in.
+     */
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    /**
+     * the reusable buffer the timestamps are formatted in.
+     */
+    private final char[] buffer = new char[TIMESTAMP_LENGTH + 8];
+
+    /**
+     * the local day of the date part in the buffer.
+     */
+    private long bufferedDay = Long.MIN_VALUE;
+
+    /**
+     * the length of the date part in the buffer.
+     */
+    private int bufferedDateLength;
+
+    /**
+     * the position of the timestamp parser.
+     */
+    private int parsePosition;
+
+    /**
+     * the milliseconds of the cached formatted timestamp.
+     */
+    private long cachedMillis = Long.MIN_VALUE;
+
+    /**
+     * the cached formatted timestamp.
+     */
+    private String cachedTimestamp;
 
     /**
      * A private constructor to avoid instantiating this utility class.
@@ -78,22 +146,25 @@ public final class INDIDateFormat {
      * the <code>time</code> is not correct.
      */
     public Date parseTimestamp(final String time) {
-        Date timestamp;
-        if (time != null && !time.isEmpty()) {
-            try {
-                timestamp = dateFormat.parse(time);
-            } catch (ParseException e) {
-                try {
-                    timestamp = dateFormat2.parse(time);
-                } catch (ParseException ee) {
-                    timestamp = new Date(); // Not correct format, returning
-                    // current timestamp.
-                }
-            }
-        } else {
-            timestamp = new Date();
+        return new Date(parseTimestampMillis(time));
+    }
+
+    /**
+     * Parses a timestamp expressed in the INDI format
+     * ("yyyy-MM-dd'T'HH:mm:ss" with optional fraction of seconds and an
+     * optional 'Z' for utc). If the timestamp does not have the correct
+     * format it returns the current time.
+     *
+     * @param time the timestamp to be parsed
+     * @return the parsed timestamp in milliseconds since the epoch or the
+     * current time if the format of the <code>time</code> is not correct.
+     */
+    public long parseTimestampMillis(final String time) {
+        long result = time == null ? Long.MIN_VALUE : parse(time);
+        if (result == Long.MIN_VALUE) {
+            return System.currentTimeMillis();
         }
-        return timestamp;
+        return result;
     }
 
     /**
@@ -103,7 +174,34 @@ public final class INDIDateFormat {
      * @return the formatted timestamp
      */
     public String formatTimestamp(final Date timestamp) {
-        return dateFormat.format(timestamp);
+        return formatTimestamp(timestamp.getTime());
+    }
+
+    /**
+     * Formats a timestamp according to the INDI format, the result for the
+     * same millisecond as the last call is reused.
+     *
+     * @param millis the timestamp in milliseconds since the epoch.
+     * @return the formatted timestamp
+     */
+    public String formatTimestamp(final long millis) {
+        if (millis != cachedMillis || cachedTimestamp == null) {
+            cachedTimestamp = new String(buffer, 0, format(millis));
+            cachedMillis = millis;
+        }
+        return cachedTimestamp;
+    }
+
+    /**
+     * Append a timestamp formatted according to the INDI format, without any
+     * intermediate objects.
+     *
+     * @param millis the timestamp in milliseconds since the epoch.
+     * @param out    the builder to append to.
+     * @return the builder.
+     */
+    public StringBuilder appendTimestamp(final long millis, final StringBuilder out) {
+        return out.append(buffer, 0, format(millis));
     }
 
     /**
@@ -113,6 +211,162 @@ public final class INDIDateFormat {
      * @return the current timestamp according to the INDI specification.
      */
     public String getCurrentTimestamp() {
-        return formatTimestamp(new Date());
+        return formatTimestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * format the timestamp into the buffer, the date part is only formatted
+     * if the day changed.
+     *
+     * @param millis the timestamp in milliseconds since the epoch.
+     * @return the length of the formatted timestamp.
+     */
+    private int format(long millis) {
+        long local = millis + timeZone.getOffset(millis);
+        long day = Math.floorDiv(local, MILLIS_PER_DAY);
+        int timeOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+        if (day != bufferedDay) {
+            bufferedDateLength = formatDate(day);
+            bufferedDay = day;
+        }
+        int index = bufferedDateLength;
+        index = digits(timeOfDay / MILLIS_PER_HOUR, 2, index);
+        buffer[index++] = ':';
+        index = digits(timeOfDay / MILLIS_PER_MINUTE % 60, 2, index);
+        buffer[index++] = ':';
+        index = digits(timeOfDay / MILLIS_PER_SECOND % 60, 2, index);
+        buffer[index++] = '.';
+        return digits(timeOfDay % MILLIS_PER_SECOND, 3, index);
+    }
+
+    /**
+     * format the date part of the timestamp (with the 'T') into the buffer.
+     *
+     * @param day the local day since the epoch.
+     * @return the length of the date part.
+     */
+    private int formatDate(long day) {
+        // civil from days, with eras of 400 years starting at 0000-03-01.
+        long shifted = day + EPOCH_SHIFT;
+        long era = Math.floorDiv(shifted, DAYS_PER_ERA);
+        int dayOfEra = (int) (shifted - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        int index = 0;
+        if (year > 9999 || year < 0) {
+            String longYear = Long.toString(year);
+            longYear.getChars(0, longYear.length(), buffer, 0);
+            index = longYear.length();
+        } else {
+            index = digits((int) year, 4, index);
+        }
+        buffer[index++] = '-';
+        index = digits(month, 2, index);
+        buffer[index++] = '-';
+        index = digits(dayOfMonth, 2, index);
+        buffer[index++] = 'T';
+        return index;
+    }
+
+    /**
+     * write a zero padded number into the buffer.
+     *
+     * @param value  the positive number.
+     * @param length the number of digits.
+     * @param offset the index to start.
+     * @return the index after the digits.
+     */
+    private int digits(int value, int length, int offset) {
+        int rest = value;
+        for (int index = offset + length - 1; index >= offset; index--) {
+            buffer[index] = (char) ('0' + rest % 10);
+            rest /= 10;
+        }
+        return offset + length;
+    }
+
+    /**
+     * parse a timestamp.
+     *
+     * @param time the timestamp.
+     * @return the milliseconds since the epoch or Long.MIN_VALUE if the
+     * format is not correct.
+     */
+    private long parse(String time) {
+        int length = time.length();
+        parsePosition = 0;
+        long year = number(time, '-', 9);
+        long month = number(time, '-', 2);
+        long dayOfMonth = number(time, 'T', 2);
+        long hour = number(time, ':', 2);
+        long minute = number(time, ':', 2);
+        long second = number(time, '.', 2);
+        if (second < 0 || month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > 31 || hour > 23 || minute > 59 || second > 60) {
+            return Long.MIN_VALUE;
+        }
+        int index = parsePosition;
+        long millis = 0;
+        if (index > 0 && index <= length && time.charAt(index - 1) == '.') {
+            int scale = 100;
+            int start = index;
+            while (index < length && time.charAt(index) >= '0' && time.charAt(index) <= '9') {
+                millis += (time.charAt(index++) - '0') * scale;
+                scale /= 10;
+            }
+            if (index == start) {
+                return Long.MIN_VALUE;
+            }
+        }
+        boolean utc = index < length && time.charAt(index) == 'Z';
+        // days from civil, with eras of 400 years starting at 0000-03-01.
+        long shiftedYear = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(shiftedYear, 400);
+        long yearOfEra = shiftedYear - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + dayOfMonth - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long day = era * DAYS_PER_ERA + dayOfEra - EPOCH_SHIFT;
+        long local = day * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis;
+        if (utc) {
+            return local;
+        }
+        return local - timeZone.getOffset(local - timeZone.getRawOffset());
+    }
+
+    /**
+     * parse the next number of a timestamp followed by the separator.
+     *
+     * @param time      the timestamp, the parse position is updated to the
+     *                  index after the separator.
+     * @param separator the separator after the number.
+     * @param maxDigits the maximum number of digits.
+     * @return the number or -1 if there is no number or a previous number was
+     * not followed by its separator.
+     */
+    private long number(String time, char separator, int maxDigits) {
+        int index = parsePosition;
+        if (index < 0) {
+            return -1;
+        }
+        int start = index;
+        long value = 0;
+        while (index < time.length() && index - start < maxDigits && time.charAt(index) >= '0' && time.charAt(index) <= '9') {
+            value = value * 10 + time.charAt(index++) - '0';
+        }
+        if (index == start) {
+            parsePosition = -1;
+            return -1;
+        }
+        if (index < time.length() && time.charAt(index) == separator) {
+            parsePosition = index + 1;
+        } else if (separator == '.') {
+            parsePosition = index;
+        } else {
+            parsePosition = -1;
+        }
+        return value;
     }
 }
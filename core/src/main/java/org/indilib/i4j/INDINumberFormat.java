@@ -0,0 +1,596 @@
+package org.indilib.i4j;
+
+/*
+ * #%L
+ * INDI for Java Base Library
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * A printf style INDI number format (%f, %e, %E, %g, %G or the sexagesimal
+ * %m) compiled once into the flags, width and precision. Numbers are
+ * formatted by appending the digits directly, the result is the same as
+ * {@link Formatter} produces (half up rounding of the shortest decimal
+ * representation). Formats with flags or text this class does not handle
+ * itself are passed to {@link Formatter}.
+ *
+ * @author agent
+ */
+public final class INDINumberFormat implements Serializable {
+
+    /**
+     * the serial version id.
+     */
+    private static final long serialVersionUID = 6462370817473458632L;
+
+    /**
+     * the default precision of the conversions.
+     */
+    private static final int DEFAULT_PRECISION = 6;
+
+    /**
+     * the maximum number of significant digits handled with long arithmetic.
+     */
+    private static final int MAX_SIGNIFICANT_DIGITS = 15;
+
+    /**
+     * the maximum exact power of ten as double.
+     */
+    private static final int MAX_EXACT_POWER = 22;
+
+    /**
+     * scaled values below this limit are rounded with double arithmetic.
+     */
+    private static final double MAX_SCALED = 4.0e15;
+
+    /**
+     * the maximum width and precision of a compiled format.
+     */
+    private static final int MAX_WIDTH = 1000;
+
+    /**
+     * the bits of the packed decimal exponent.
+     */
+    private static final int EXPONENT_BITS = 10;
+
+    /**
+     * the offset of the packed decimal exponent.
+     */
+    private static final int EXPONENT_OFFSET = 512;
+
+    /**
+     * the exponent from which on %g switches to scientific for small numbers.
+     */
+    private static final int GENERAL_MIN_EXPONENT = -4;
+
+    /**
+     * the powers of ten as long.
+     */
+    private static final long[] LONG_POWERS = new long[19];
+
+    /**
+     * the exact powers of ten as double.
+     */
+    private static final double[] DOUBLE_POWERS = new double[MAX_EXACT_POWER + 1];
+
+    static {
+        long power = 1;
+        for (int index = 0; index < LONG_POWERS.length; index++) {
+            LONG_POWERS[index] = power;
+            power *= 10;
+        }
+        double doublePower = 1;
+        for (int index = 0; index < DOUBLE_POWERS.length; index++) {
+            DOUBLE_POWERS[index] = doublePower;
+            doublePower *= 10;
+        }
+    }
+
+    /**
+     * the format string.
+     */
+    private final String format;
+
+    /**
+     * the conversion character.
+     */
+    private final char conversion;
+
+    /**
+     * the minimum width, 0 for none.
+     */
+    private int width;
+
+    /**
+     * the precision, -1 for the default.
+     */
+    private int precision = -1;
+
+    /**
+     * the '-' flag, pad on the right side.
+     */
+    private boolean leftJustify;
+
+    /**
+     * the '0' flag, pad with zeros after the sign.
+     */
+    private boolean zeroPad;
+
+    /**
+     * the '+' flag, always write a sign.
+     */
+    private boolean plus;
+
+    /**
+     * the ' ' flag, write a space for positive numbers.
+     */
+    private boolean space;
+
+    /**
+     * true if the format is passed to {@link Formatter}.
+     */
+    private boolean useFormatter;
+
+    /**
+     * the sexagesimal formatter for %m.
+     */
+    private INDISexagesimalFormatter sexagesimal;
+
+    /**
+     * compile the format.
+     *
+     * @param format the printf style format.
+     */
+    private INDINumberFormat(String format) {
+        this.format = format;
+        this.conversion = format.isEmpty() ? 0 : format.charAt(format.length() - 1);
+    }
+
+    /**
+     * compile a number format. Throws IllegalArgumentException if the format
+     * does not start with % or has an unknown conversion.
+     *
+     * @param format the printf style format.
+     * @return the compiled number format.
+     */
+    public static INDINumberFormat compile(String format) {
+        INDINumberFormat result = new INDINumberFormat(format);
+        if (!format.startsWith("%")) {
+            throw new IllegalArgumentException("Number format not starting with %");
+        }
+        switch (result.conversion) {
+            case 'm':
+                result.sexagesimal = new INDISexagesimalFormatter(format);
+                return result;
+            case 'f':
+            case 'e':
+            case 'E':
+            case 'g':
+            case 'G':
+                result.useFormatter = !result.compileSpecification();
+                return result;
+            default:
+                throw new IllegalArgumentException("Number format not recognized");
+        }
+    }
+
+    /**
+     * read the flags, width and precision of the format.
+     *
+     * @return false if the format has parts that are only handled by
+     * {@link Formatter}.
+     */
+    private boolean compileSpecification() {
+        int end = format.length() - 1;
+        int index = 1;
+        for (; index < end; index++) {
+            char c = format.charAt(index);
+            if (c == '-') {
+                leftJustify = true;
+            } else if (c == '0') {
+                zeroPad = true;
+            } else if (c == '+') {
+                plus = true;
+            } else if (c == ' ') {
+                space = true;
+            } else {
+                break;
+            }
+        }
+        while (index < end && Character.isDigit(format.charAt(index)) && width < MAX_WIDTH) {
+            width = width * 10 + format.charAt(index++) - '0';
+        }
+        if (index < end && format.charAt(index) == '.') {
+            index++;
+            precision = 0;
+            int start = index;
+            while (index < end && Character.isDigit(format.charAt(index)) && precision < MAX_WIDTH) {
+                precision = precision * 10 + format.charAt(index++) - '0';
+            }
+            if (index == start) {
+                return false;
+            }
+        }
+        return index == end && !(leftJustify && zeroPad) && !(plus && space) && !(leftJustify && width == 0) && !(zeroPad && width == 0);
+    }
+
+    /**
+     * @return the format string.
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Formats a number according to this format.
+     *
+     * @param number the number to be formatted.
+     * @return the formatted number.
+     */
+    public String format(double number) {
+        return format(number, new StringBuilder(Math.max(width, DEFAULT_PRECISION * 4))).toString();
+    }
+
+    /**
+     * Append a number formatted according to this format.
+     *
+     * @param number the number to be formatted.
+     * @param out    the builder to append to.
+     * @return the builder.
+     */
+    public StringBuilder format(double number, StringBuilder out) {
+        if (sexagesimal != null) {
+            return sexagesimal.format(number, out);
+        }
+        if (useFormatter || Double.isNaN(number) || Double.isInfinite(number)) {
+            try (Formatter formatter = new Formatter(out, Locale.US)) {
+                formatter.format(format, number);
+            }
+            return out;
+        }
+        int start = out.length();
+        boolean negative = Double.compare(number, 0.0) < 0;
+        if (negative) {
+            out.append('-');
+        } else if (plus) {
+            out.append('+');
+        } else if (space) {
+            out.append(' ');
+        }
+        int signLength = out.length() - start;
+        double abs = Math.abs(number);
+        boolean done;
+        if (conversion == 'f') {
+            done = appendFixed(out, abs, precision < 0 ? DEFAULT_PRECISION : precision);
+        } else if (conversion == 'e' || conversion == 'E') {
+            done = appendScientific(out, abs, (precision < 0 ? DEFAULT_PRECISION : precision) + 1, conversion == 'E');
+        } else {
+            done = appendGeneral(out, abs, conversion == 'G');
+        }
+        if (!done) {
+            out.setLength(start);
+            try (Formatter formatter = new Formatter(out, Locale.US)) {
+                formatter.format(format, number);
+            }
+            return out;
+        }
+        int padding = width - (out.length() - start);
+        if (padding > 0) {
+            if (leftJustify) {
+                appendRepeated(out, ' ', padding);
+            } else if (zeroPad) {
+                insertRepeated(out, start + signLength, '0', padding);
+            } else {
+                insertRepeated(out, start, ' ', padding);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Parses a number according to this format. Throws
+     * IllegalArgumentException if the <code>number</code> is not correctly
+     * formatted.
+     *
+     * @param number the number to be parsed.
+     * @return the parsed number.
+     */
+    public double parse(String number) {
+        if (sexagesimal != null) {
+            return sexagesimal.parseSexagesimal(number);
+        }
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Number value not correct");
+        }
+    }
+
+    /**
+     * append the number with a fixed number of fraction digits.
+     *
+     * @param out       the builder to append to.
+     * @param abs       the positive number.
+     * @param precision the number of fraction digits.
+     * @return false if the number could not be appended.
+     */
+    private static boolean appendFixed(StringBuilder out, double abs, int precision) {
+        long scaled = roundFixed(abs, precision);
+        if (scaled < 0) {
+            if (precision >= LONG_POWERS.length) {
+                return false;
+            }
+            out.append(new BigDecimal(Double.toString(abs)).setScale(precision, RoundingMode.HALF_UP).toPlainString());
+            return true;
+        }
+        appendFixed(out, scaled, precision);
+        return true;
+    }
+
+    /**
+     * append a scaled number with a fixed number of fraction digits.
+     *
+     * @param out       the builder to append to.
+     * @param scaled    the number multiplied with 10^precision.
+     * @param precision the number of fraction digits.
+     */
+    static void appendFixed(StringBuilder out, long scaled, int precision) {
+        out.append(scaled / LONG_POWERS[precision]);
+        if (precision > 0) {
+            out.append('.');
+            appendDigits(out, scaled % LONG_POWERS[precision], precision);
+        }
+    }
+
+    /**
+     * append the number in scientific notation.
+     *
+     * @param out    the builder to append to.
+     * @param abs    the positive number.
+     * @param digits the number of significant digits.
+     * @param upper  true for an upper case exponent character.
+     * @return false if the number could not be appended.
+     */
+    private static boolean appendScientific(StringBuilder out, double abs, int digits, boolean upper) {
+        long packed = roundSignificant(abs, digits);
+        if (packed < 0) {
+            return false;
+        }
+        appendScientific(out, packed >>> EXPONENT_BITS, digits, exponent(packed), upper);
+        return true;
+    }
+
+    /**
+     * append the significant digits in scientific notation.
+     *
+     * @param out         the builder to append to.
+     * @param significant the significant digits.
+     * @param digits      the number of significant digits.
+     * @param exponent    the decimal exponent of the first digit.
+     * @param upper       true for an upper case exponent character.
+     */
+    private static void appendScientific(StringBuilder out, long significant, int digits, int exponent, boolean upper) {
+        long power = LONG_POWERS[digits - 1];
+        out.append(significant / power);
+        if (digits > 1) {
+            out.append('.');
+            appendDigits(out, significant % power, digits - 1);
+        }
+        out.append(upper ? 'E' : 'e');
+        out.append(exponent < 0 ? '-' : '+');
+        int absExponent = Math.abs(exponent);
+        if (absExponent < 10) {
+            out.append('0');
+        }
+        out.append(absExponent);
+    }
+
+    /**
+     * append the number with the java %g rules: the precision is the number
+     * of significant digits, trailing zeros stay and numbers from 10^-4 up to
+     * 10^precision are written without exponent.
+     *
+     * @param out   the builder to append to.
+     * @param abs   the positive number.
+     * @param upper true for an upper case exponent character.
+     * @return false if the number could not be appended.
+     */
+    private boolean appendGeneral(StringBuilder out, double abs, boolean upper) {
+        int digits = precision < 0 ? DEFAULT_PRECISION : Math.max(1, precision);
+        if (digits > MAX_SIGNIFICANT_DIGITS) {
+            return false;
+        }
+        if (abs == 0) {
+            appendFixed(out, 0L, digits - 1);
+            return true;
+        }
+        long packed = roundSignificant(abs, digits);
+        if (packed < 0) {
+            return false;
+        }
+        long significant = packed >>> EXPONENT_BITS;
+        int exponent = exponent(packed);
+        if (exponent < GENERAL_MIN_EXPONENT || exponent >= digits) {
+            appendScientific(out, significant, digits, exponent, upper);
+        } else if (exponent >= 0) {
+            appendFixed(out, significant, digits - exponent - 1);
+        } else {
+            out.append('0').append('.');
+            appendRepeated(out, '0', -exponent - 1);
+            appendDigits(out, significant, digits);
+        }
+        return true;
+    }
+
+    /**
+     * round the positive number half up to a number of fraction digits, the
+     * same way {@link Formatter} does (based on the shortest decimal
+     * representation of the double).
+     *
+     * @param abs       the positive number.
+     * @param precision the number of fraction digits.
+     * @return the rounded number multiplied with 10^precision or -1 if the
+     * number is too large.
+     */
+    static long roundFixed(double abs, int precision) {
+        if (precision >= LONG_POWERS.length) {
+            // the scaled number would not fit in a long.
+            return -1;
+        }
+        if (precision <= MAX_EXACT_POWER && abs * DOUBLE_POWERS[precision] < MAX_SCALED) {
+            long rounded = roundScaled(abs * DOUBLE_POWERS[precision]);
+            if (rounded >= 0) {
+                return rounded;
+            }
+        }
+        if (abs >= Long.MAX_VALUE / LONG_POWERS[precision]) {
+            return -1;
+        }
+        return new BigDecimal(Double.toString(abs)).setScale(precision, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    /**
+     * round the positive number half up to a number of significant digits.
+     *
+     * @param abs    the positive number (not 0).
+     * @param digits the number of significant digits.
+     * @return the significant digits shifted left by the exponent bits with
+     * the exponent of the first digit, or -1 if there are too many digits.
+     */
+    private static long roundSignificant(double abs, int digits) {
+        if (digits > MAX_SIGNIFICANT_DIGITS) {
+            return -1;
+        }
+        if (abs == 0) {
+            return pack(0, 0);
+        }
+        int exponent = (int) Math.floor(Math.log10(abs));
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int shift = digits - 1 - exponent;
+            if (Math.abs(shift) > MAX_EXACT_POWER) {
+                break;
+            }
+            double scaled = shift >= 0 ? abs * DOUBLE_POWERS[shift] : abs / DOUBLE_POWERS[-shift];
+            long rounded = roundScaled(scaled);
+            if (rounded < 0) {
+                break;
+            }
+            if (rounded >= LONG_POWERS[digits]) {
+                return pack(rounded / 10, exponent + 1);
+            } else if (rounded >= LONG_POWERS[digits - 1]) {
+                return pack(rounded, exponent);
+            }
+            exponent--;
+        }
+        BigDecimal rounded = new BigDecimal(Double.toString(abs)).round(new MathContext(digits, RoundingMode.HALF_UP));
+        long significant = rounded.unscaledValue().longValue();
+        for (int index = rounded.precision(); index < digits; index++) {
+            significant *= 10;
+        }
+        return pack(significant, rounded.precision() - rounded.scale() - 1);
+    }
+
+    /**
+     * round a scaled positive number half up to a long, if the result does not
+     * depend on the representation of the double.
+     *
+     * @param scaled the scaled number.
+     * @return the rounded number or -1 if the number is too close to a tie
+     * (or too large) to decide with double arithmetic.
+     */
+    private static long roundScaled(double scaled) {
+        if (!(scaled < MAX_SCALED)) {
+            return -1;
+        }
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+            return -1;
+        }
+        return (long) floor + (fraction > 0.5 ? 1 : 0);
+    }
+
+    /**
+     * @param significant the significant digits.
+     * @param exponent    the decimal exponent of the first digit.
+     * @return the packed significant digits and exponent.
+     */
+    private static long pack(long significant, int exponent) {
+        return significant << EXPONENT_BITS | exponent + EXPONENT_OFFSET;
+    }
+
+    /**
+     * @param packed the packed significant digits and exponent.
+     * @return the decimal exponent.
+     */
+    private static int exponent(long packed) {
+        return (int) (packed & (1 << EXPONENT_BITS) - 1) - EXPONENT_OFFSET;
+    }
+
+    /**
+     * append a positive number with leading zeros.
+     *
+     * @param out    the builder to append to.
+     * @param value  the number.
+     * @param digits the number of digits.
+     */
+    static void appendDigits(StringBuilder out, long value, int digits) {
+        long power = LONG_POWERS[digits - 1];
+        long rest = value;
+        for (int index = 0; index < digits; index++) {
+            out.append((char) ('0' + rest / power));
+            rest %= power;
+            power /= 10;
+        }
+    }
+
+    /**
+     * append a character repeatedly.
+     *
+     * @param out   the builder to append to.
+     * @param c     the character.
+     * @param count the number of times.
+     */
+    private static void appendRepeated(StringBuilder out, char c, int count) {
+        for (int index = 0; index < count; index++) {
+            out.append(c);
+        }
+    }
+
+    /**
+     * insert a character repeatedly.
+     *
+     * @param out    the builder to insert into.
+     * @param offset the index to insert at.
+     * @param c      the character.
+     * @param count  the number of times.
+     */
+    private static void insertRepeated(StringBuilder out, int offset, char c, int count) {
+        for (int index = 0; index < count; index++) {
+            out.insert(offset, c);
+        }
+    }
+}
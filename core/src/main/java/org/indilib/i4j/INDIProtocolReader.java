@@ -23,7 +23,11 @@ package org.indilib.i4j;
  */
 
 import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.api.INDIConnection;
 import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.io.INDIBLOBSources;
+import org.indilib.i4j.protocol.io.INDISelectorLoop;
+import org.indilib.i4j.protocol.io.INDISocketConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +65,47 @@ public class INDIProtocolReader extends Thread {
         this.parser = parser;
     }
 
+    /**
+     * start reading the connection for the parser, with the selector loop of
+     * the connection if it has one (see
+     * {@link INDISocketConnection#setSelectorLoop(INDISelectorLoop)}) or else
+     * with a new reader thread.
+     *
+     * @param parser     The parser to which the readed messages will be sent.
+     * @param connection the connection the parser reads from.
+     * @param name       the thread name to use.
+     * @return the started reader thread or null if the selector loop reads
+     * the connection.
+     */
+    public static INDIProtocolReader start(final INDIProtocolParser parser, INDIConnection connection, String name) {
+        if (connection instanceof INDISocketConnection) {
+            try {
+                boolean selected = ((INDISocketConnection) connection).readBySelector(new INDISelectorLoop.Listener() {
+
+                    @Override
+                    public void received(INDIProtocol<?> message) {
+                        parser.processProtocolMessage(message);
+                    }
+
+                    @Override
+                    public void finished() {
+                        parser.finishReader();
+                    }
+                });
+                if (selected) {
+                    return null;
+                }
+            } catch (Exception e) {
+                LOG.error("could not register connection with the selector loop", e);
+                parser.finishReader();
+                return null;
+            }
+        }
+        INDIProtocolReader reader = new INDIProtocolReader(parser, name);
+        reader.start();
+        return reader;
+    }
+
     /**
      * The main body of the reader.
      */
@@ -75,7 +120,12 @@ public class INDIProtocolReader extends Thread {
             }
             for (INDIProtocol<?> readObject = inputStream.readObject();
                  !this.stop && readObject != null; readObject = inputStream.readObject()) {
-                parser.processProtocolMessage(readObject);
+                try {
+                    parser.processProtocolMessage(readObject);
+                } finally {
+                    // objects of in process pipes hold their blob sources until processed.
+                    INDIBLOBSources.release(readObject);
+                }
             }
         } catch (Exception e) {
             LOG.error("could not parse indi stream", e);
@@ -23,8 +23,6 @@ package org.indilib.i4j;
  */
 
 import java.io.Serializable;
-import java.util.Formatter;
-import java.util.Locale;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
@@ -75,6 +73,10 @@ public class INDISexagesimalFormatter implements Serializable {
      * Zero Negative.
      */
     private static final double ZERO_NEG = -0.;
+    /**
+     * The powers of ten for the fraction digits.
+     */
+    private static final long[] POWERS = {1, 10, 100};
     /**
      * The format to be used. It must begin with %, end with m and specifies a
      * length and fractionLength in the form length.fractionLength. Valid
@@ -235,12 +237,13 @@ public class INDISexagesimalFormatter implements Serializable {
             throw new IllegalArgumentException("Empty number");
         }
 
-        newNumber = newNumber.replace(' ', ':');
-        newNumber = newNumber.replace(';', ':');
-
-        int charCount = newNumber.length() - newNumber.replaceAll(":", "").length();
-
-        if (charCount > 2) {
+        int separators = 0;
+        for (int index = 0; index < newNumber.length(); index++) {
+            if (isSeparator(newNumber.charAt(index))) {
+                separators++;
+            }
+        }
+        if (separators > 2) {
             throw new IllegalArgumentException("Too many components for the sexagesimal formatter");
         }
 
@@ -248,21 +251,21 @@ public class INDISexagesimalFormatter implements Serializable {
         double minutes = 0;
         double seconds = 0;
 
-        StringTokenizer st = new StringTokenizer(newNumber, ":", false);
-
-        String d = st.nextToken().trim();
+        int start = skipSeparators(newNumber, 0);
+        int end = nextSeparator(newNumber, start);
 
         try {
-            degrees = Double.parseDouble(d);
+            degrees = Double.parseDouble(newNumber.substring(start, end));
         } catch (NumberFormatException e) {
             throw new IllegalArgumentException("Number format incorrect");
         }
 
-        if (st.hasMoreTokens()) {
-            String m = st.nextToken().trim();
+        start = skipSeparators(newNumber, end);
+        if (start < newNumber.length()) {
+            end = nextSeparator(newNumber, start);
 
             try {
-                minutes = Double.parseDouble(m);
+                minutes = Double.parseDouble(newNumber.substring(start, end));
             } catch (NumberFormatException e) {
                 throw new IllegalArgumentException("Minutes format incorrect");
             }
@@ -271,11 +274,12 @@ public class INDISexagesimalFormatter implements Serializable {
                 throw new IllegalArgumentException("Minutes cannot be negative");
             }
 
-            if (st.hasMoreTokens()) {
-                String s = st.nextToken().trim();
+            start = skipSeparators(newNumber, end);
+            if (start < newNumber.length()) {
+                end = nextSeparator(newNumber, start);
 
                 try {
-                    seconds = Double.parseDouble(s);
+                    seconds = Double.parseDouble(newNumber.substring(start, end));
                 } catch (NumberFormatException e) {
                     throw new IllegalArgumentException("Seconds format incorrect");
                 }
@@ -296,6 +300,41 @@ public class INDISexagesimalFormatter implements Serializable {
         return res;
     }
 
+    /**
+     * @param c the character.
+     * @return true if the character separates the components of a
+     * sexagesimal number.
+     */
+    private static boolean isSeparator(char c) {
+        return c == ':' || c == ';' || c == ' ';
+    }
+
+    /**
+     * @param number the number.
+     * @param start  the index to start.
+     * @return the index of the first character that is no separator.
+     */
+    private static int skipSeparators(String number, int start) {
+        int index = start;
+        while (index < number.length() && isSeparator(number.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @param number the number.
+     * @param start  the index to start.
+     * @return the index of the next separator or the length of the number.
+     */
+    private static int nextSeparator(String number, int start) {
+        int index = start;
+        while (index < number.length() && !isSeparator(number.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
     /**
      * Fomats a newNumber according to the newNumber format os this formatter.
      *
@@ -303,108 +342,85 @@ public class INDISexagesimalFormatter implements Serializable {
      * @return The formatted newNumber as a <code>String</code>.
      */
     public final String format(final Double number) {
-        int sign = 1;
-        if (number < 0) {
-            sign = -1;
-        }
-
-        double newNumber = Math.abs(number);
+        return format(number.doubleValue(), new StringBuilder(Math.max(length, FL9 + FL6))).toString();
+    }
 
-        String fractionalPart = ":";
+    /**
+     * Append a newNumber formatted according to the newNumber format of this
+     * formatter, the digits are appended directly without intermediate
+     * strings.
+     *
+     * @param number the newNumber to be formatted.
+     * @param out    the builder to append to.
+     * @return the builder.
+     */
+    public final StringBuilder format(final double number, final StringBuilder out) {
+        int start = out.length();
 
-        int integerPart;
+        double newNumber = Math.abs(number);
 
-        integerPart = (int) Math.floor(newNumber);
+        int integerPart = (int) Math.floor(newNumber);
 
         double fractional = Math.abs(newNumber - integerPart);
 
+        long minutes;
+        long seconds = 0;
+        int secondsPrecision = 0;
         if (fractionLength < FL6) {
-            double minutes = fractional * SECONDS_PER_MINUTE;
-
-            String form = "%02.0f";
-            if (fractionLength == FL5) {
-                form = "%04.1f";
-            }
-
-            Formatter formatter = new Formatter(Locale.US);
-            String newMinutes = formatter.format(form, minutes).toString();
-
-            if (Double.parseDouble(newMinutes) >= MINUTES_PER_HOUR) {
-                minutes = 0.0;
+            int minutesPrecision = fractionLength == FL5 ? 1 : 0;
+            minutes = INDINumberFormat.roundFixed(fractional * SECONDS_PER_MINUTE, minutesPrecision);
+            if (minutes >= MINUTES_PER_HOUR * POWERS[minutesPrecision]) {
+                minutes = 0;
                 integerPart++;
             }
-
-            formatter = new Formatter(Locale.US);
-            fractionalPart += formatter.format(form, minutes);
+            appendPadded(out.append(number < 0 ? "-" : "").append(integerPart).append(':'), minutes, minutesPrecision);
         } else {
-            double minutes = Math.floor(fractional * MINUTES_PER_HOUR);
-
-            double rest = fractional - minutes / SECONDS_PER_MINUTE;
+            double wholeMinutes = Math.floor(fractional * MINUTES_PER_HOUR);
 
-            double seconds = rest * SECONDS_PER_HOUR;
+            double rest = fractional - wholeMinutes / SECONDS_PER_MINUTE;
 
-            String form = "%02.0f";
             if (fractionLength == FL8) {
-                form = "%04.1f";
+                secondsPrecision = 1;
             } else if (fractionLength == FL9) {
-                form = "%05.2f";
+                secondsPrecision = 2;
             }
 
-            Formatter formatter = new Formatter(Locale.US);
-            String newSeconds = formatter.format(form, seconds).toString();
+            seconds = INDINumberFormat.roundFixed(Math.max(0, rest * SECONDS_PER_HOUR), secondsPrecision);
 
-            if (Double.parseDouble(newSeconds) >= SECONDS_PER_MINUTE) {
-                seconds = 0.0;
-                minutes++;
+            if (seconds >= SECONDS_PER_MINUTE * POWERS[secondsPrecision]) {
+                seconds = 0;
+                wholeMinutes++;
             }
 
-            formatter = new Formatter(Locale.US);
-            String newMinutes = formatter.format("%02.0f", minutes).toString();
+            minutes = INDINumberFormat.roundFixed(wholeMinutes, 0);
 
-            if (Double.parseDouble(newMinutes) >= MINUTES_PER_HOUR) {
-                minutes = 0.0;
+            if (minutes >= MINUTES_PER_HOUR) {
+                minutes = 0;
                 integerPart++;
             }
 
-            formatter = new Formatter(Locale.US);
-            fractionalPart += formatter.format("%02.0f:" + form, minutes, seconds);
+            appendPadded(out.append(number < 0 ? "-" : "").append(integerPart).append(':'), minutes, 0);
+            appendPadded(out.append(':'), seconds, secondsPrecision);
         }
 
-        String res = integerPart + fractionalPart;
-
-        if (sign < 0) {
-            res = "-" + res;
+        for (int padding = length - (out.length() - start); padding > 0; padding--) {
+            out.insert(start, ' ');
         }
 
-        res = padLeft(res, length);
-
-        return res;
+        return out;
     }
 
     /**
-     * Pads a String to the left with spaces.
+     * append a rounded minutes or seconds value with two integer digits.
      *
-     * @param s The <code>String</code> to be padded.
-     * @param n The maximum size of the padded <code>String</code>.
-     * @return The padded <code>String</code>
+     * @param out       the builder to append to.
+     * @param scaled    the value multiplied with 10^precision.
+     * @param precision the number of fraction digits.
      */
-    private String padLeft(final String s, final int n) {
-        if (s.length() >= n) {
-            return s;
+    private static void appendPadded(StringBuilder out, long scaled, int precision) {
+        if (scaled < 10 * POWERS[precision]) {
+            out.append('0');
         }
-
-        int nSpaces = n - s.length();
-
-        if (nSpaces <= 0) {
-            return s;
-        }
-
-        StringBuilder spacesBuffer = new StringBuilder(nSpaces);
-        for (int i = 0; i < nSpaces; i++) {
-            spacesBuffer.append(" ");
-        }
-        String spaces = spacesBuffer.toString();
-
-        return spaces + s;
+        INDINumberFormat.appendFixed(out, scaled, precision);
     }
 }
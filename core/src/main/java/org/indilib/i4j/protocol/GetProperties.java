@@ -24,6 +24,7 @@ package org.indilib.i4j.protocol;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import org.indilib.i4j.protocol.io.INDISymbolTable;
 
 /**
  * This class represents an INDI XML protocol element.
@@ -45,6 +46,14 @@ public class GetProperties extends INDIProtocol<GetProperties> {
     @XStreamAsAttribute
     private String version;
 
+    /**
+     * the maxRate attribute of the element (an extension of the protocol):
+     * the maximum number of updates per second the client wants of the
+     * properties, 0 for no limit.
+     */
+    @XStreamAsAttribute
+    private String maxRate;
+
     /**
      * @return the property attribute of the element.
      */
@@ -87,10 +96,32 @@ public class GetProperties extends INDIProtocol<GetProperties> {
         return this;
     }
 
+    /**
+     * @return the maxRate attribute of the element.
+     */
+    public String getMaxRate() {
+        if (maxRate == null) {
+            return "";
+        }
+        return maxRate;
+    }
+
+    /**
+     * set the maxRate attribute of the element.
+     *
+     * @param newMaxRate the new attibute maxRate value
+     * @return this for builder pattern.
+     */
+    public GetProperties setMaxRate(String newMaxRate) {
+        maxRate = newMaxRate;
+        return this;
+    }
+
     @Override
     public GetProperties trim() {
-        property = trim(property);
+        property = INDISymbolTable.intern(trim(property));
         version = trim(version);
+        maxRate = trim(maxRate);
         return super.trim();
     }
 }
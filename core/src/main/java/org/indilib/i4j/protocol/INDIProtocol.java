@@ -15,6 +15,7 @@ package org.indilib.i4j.protocol;
 
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import org.indilib.i4j.protocol.io.INDIProtocolFactory;
+import org.indilib.i4j.protocol.io.INDISymbolTable;
 import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
 
 /**
@@ -452,8 +453,8 @@ public abstract class INDIProtocol<T> {
      */
     @SuppressWarnings("unchecked")
     public T trim() {
-        this.name = trim(this.name);
-        this.device = trim(this.device);
+        this.name = INDISymbolTable.intern(trim(this.name));
+        this.device = INDISymbolTable.intern(trim(this.device));
         this.message = trim(this.message);
         this.timestamp = trim(this.timestamp);
         return (T) this;
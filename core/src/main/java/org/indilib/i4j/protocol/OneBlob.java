@@ -24,7 +24,14 @@ package org.indilib.i4j.protocol;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamConverter;
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
 import com.thoughtworks.xstream.converters.extended.ToAttributedValueConverter;
+import org.indilib.i4j.protocol.api.INDIBLOBSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * This class represents an INDI XML protocol element.
@@ -45,6 +52,22 @@ public class OneBlob extends OneElement<OneBlob> {
      */
     private byte[] byteContent;
 
+    /**
+     * The content of the blob as buffer, when it was streamed into a blob
+     * sink or set as buffer. The byte content is only created from it when
+     * it is requested.
+     */
+    @XStreamOmitField
+    private ByteBuffer byteBuffer;
+
+    /**
+     * The source of the blob content, when the content should be read while
+     * the blob is written. The byte content is only created from it when it
+     * is requested.
+     */
+    @XStreamOmitField
+    private INDIBLOBSource blobSource;
+
     /**
      * the format attribute of the element.
      */
@@ -56,12 +79,101 @@ public class OneBlob extends OneElement<OneBlob> {
     private String size;
 
     /**
-     * @return the byte content of the element.
+     * @return the byte content of the element (copied once from the byte
+     * buffer or read once from the blob source if the content was set that
+     * way).
      */
     public byte[] getByteContent() {
+        if (byteContent == null && byteBuffer != null) {
+            byteContent = new byte[byteBuffer.remaining()];
+            byteBuffer.duplicate().get(byteContent);
+        } else if (byteContent == null && blobSource != null) {
+            byteContent = readBlobSource();
+        }
         return byteContent;
     }
 
+    /**
+     * read the complete content of the blob source.
+     *
+     * @return the content.
+     */
+    private byte[] readBlobSource() {
+        ByteBuffer content = ByteBuffer.allocate(1024);
+        try (ReadableByteChannel channel = blobSource.open()) {
+            while (channel.read(content) >= 0) {
+                if (!content.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(content.capacity() * 2);
+                    content.flip();
+                    content = bigger.put(content);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not read the blob source", e);
+        }
+        byte[] result = new byte[content.position()];
+        content.flip();
+        content.get(result);
+        return result;
+    }
+
+    /**
+     * @return the source of the blob content, if the content was set as
+     * source.
+     */
+    public INDIBLOBSource getBlobSource() {
+        return blobSource;
+    }
+
+    /**
+     * set the content of the element as source that is read while the
+     * element is written, the size is set from the source.
+     *
+     * @param newBlobSource the new content source.
+     * @return this for builder pattern.
+     */
+    public OneBlob setBlobSource(INDIBLOBSource newBlobSource) {
+        blobSource = newBlobSource;
+        byteContent = null;
+        byteBuffer = null;
+        if (blobSource != null) {
+            size = Long.toString(blobSource.getSize());
+        } else {
+            size = Integer.toString(0);
+        }
+        return this;
+    }
+
+    /**
+     * @return the content of the element as buffer without copying it (a blob
+     * source is read once), null if there is no content.
+     */
+    public ByteBuffer getByteBuffer() {
+        if (byteBuffer == null && getByteContent() != null) {
+            return ByteBuffer.wrap(byteContent);
+        }
+        return byteBuffer;
+    }
+
+    /**
+     * set the content of the element as buffer (from the position to the
+     * limit) and use the length to set the size. The buffer is not copied.
+     *
+     * @param newByteBuffer the new content buffer.
+     * @return this for builder pattern.
+     */
+    public OneBlob setByteBuffer(ByteBuffer newByteBuffer) {
+        byteBuffer = newByteBuffer;
+        byteContent = null;
+        blobSource = null;
+        if (byteBuffer != null) {
+            size = Integer.toString(byteBuffer.remaining());
+        } else {
+            size = Integer.toString(0);
+        }
+        return this;
+    }
+
     /**
      * set the byte content of the element. (and use the length to set the
      * size).
@@ -71,6 +183,8 @@ public class OneBlob extends OneElement<OneBlob> {
      */
     public OneBlob setByteContent(byte[] newByteContent) {
         byteContent = newByteContent;
+        byteBuffer = null;
+        blobSource = null;
         if (byteContent != null) {
             size = Integer.toString(byteContent.length);
         } else {
@@ -104,6 +218,19 @@ public class OneBlob extends OneElement<OneBlob> {
         return size;
     }
 
+    /**
+     * set the size attribute of the element. Attention the size is normally
+     * set by {@link #setByteContent(byte[])}, use this only to keep the size
+     * as received (e.g. the uncompressed size of a compressed blob).
+     *
+     * @param newSize the new size value of the element.
+     * @return this for builder pattern.
+     */
+    public OneBlob setSize(String newSize) {
+        size = newSize;
+        return this;
+    }
+
     @Override
     public boolean isBlob() {
         return true;
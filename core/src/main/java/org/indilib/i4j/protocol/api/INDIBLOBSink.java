@@ -0,0 +1,81 @@
+package org.indilib.i4j.protocol.api;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.OneBlob;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A sink that receives the decoded content of a blob in chunks while it is
+ * read from the stream, instead of having the complete base64 text and the
+ * decoded byte array in memory. Implement it directly to process the content
+ * as a callback or use one of the buffer sinks of the io package. A sink is
+ * only used by the one thread reading the input stream and receives one blob
+ * at the time.
+ *
+ * @author agent
+ */
+public interface INDIBLOBSink {
+
+    /**
+     * the content of a new blob starts.
+     *
+     * @param blob     the blob element with its attributes (without content).
+     * @param sizeHint the expected number of bytes (from the size attribute),
+     *                 it is only a hint and may be wrong or 0.
+     * @throws IOException if the sink could not be prepared.
+     */
+    void start(OneBlob blob, int sizeHint) throws IOException;
+
+    /**
+     * the next chunk of the decoded content. The array is reused after the
+     * call, so the sink must copy what it needs.
+     *
+     * @param bytes  the array with the content chunk.
+     * @param offset the start of the chunk in the array.
+     * @param length the length of the chunk.
+     * @throws IOException if the sink could not process the chunk.
+     */
+    void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * the content of the blob is complete.
+     *
+     * @return the content as buffer (position 0 and limit the size) that will
+     * be attached to the blob element or null if the sink consumed the
+     * content itself.
+     * @throws IOException if the sink could not complete the content.
+     */
+    ByteBuffer end() throws IOException;
+
+    /**
+     * @return true if compressed blobs (format ending in ".z") should be
+     * inflated while they are read, the blob then gets the format without
+     * ".z" and the inflated content.
+     */
+    default boolean isInflating() {
+        return false;
+    }
+}
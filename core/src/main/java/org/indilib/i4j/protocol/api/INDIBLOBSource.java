@@ -0,0 +1,67 @@
+package org.indilib.i4j.protocol.api;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A source for the content of a blob that is read while the blob is written
+ * to the stream, so the content never has to be completely in memory. The
+ * source can be opened multiple times (once for every stream the blob is
+ * written to). Sources for buffers, file regions and input streams are
+ * available in {@link org.indilib.i4j.protocol.io.INDIBLOBSources}.
+ *
+ * @author agent
+ */
+public interface INDIBLOBSource {
+
+    /**
+     * @return the value of the size attribute of the blob, that is the number
+     * of content bytes or for compressed content the uncompressed size.
+     */
+    long getSize();
+
+    /**
+     * open the content for reading from the start.
+     *
+     * @return a channel with the content, it will be closed by the caller.
+     * @throws IOException if the content could not be opened.
+     */
+    ReadableByteChannel open() throws IOException;
+
+    /**
+     * take a reference to the source, for holders that open the content later
+     * (queues and pipes). Sources that own a resource, like a temporary file,
+     * keep it until the last reference is released.
+     */
+    default void retain() {
+    }
+
+    /**
+     * give back a reference taken with {@link #retain()} or the one of the
+     * creator.
+     */
+    default void release() {
+    }
+}
@@ -57,4 +57,20 @@ public interface INDIConnection {
      * @return the url representing this connection.
      */
     URL getURL();
+
+    /**
+     * @return the number of bytes read from the transport or -1 if the
+     * connection does not count them.
+     */
+    default long getBytesRead() {
+        return -1L;
+    }
+
+    /**
+     * @return the number of bytes written to the transport or -1 if the
+     * connection does not count them.
+     */
+    default long getBytesWritten() {
+        return -1L;
+    }
 }
@@ -47,4 +47,16 @@ public interface INDIInputStream {
      *                     underlying stream.
      */
     INDIProtocol<?> readObject() throws IOException;
+
+    /**
+     * Stream the content of received blobs into the sink instead of decoding
+     * them into byte arrays. Not all input streams support this.
+     *
+     * @param sink the sink for the blob content or null to go back to byte
+     *             arrays.
+     * @return true if the input stream supports blob sinks.
+     */
+    default boolean setBLOBSink(INDIBLOBSink sink) {
+        return false;
+    }
 }
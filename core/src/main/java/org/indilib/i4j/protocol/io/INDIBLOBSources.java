@@ -0,0 +1,454 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.NewBlobVector;
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.OneElement;
+import org.indilib.i4j.protocol.SetBlobVector;
+import org.indilib.i4j.protocol.api.INDIBLOBSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the standard blob sources.
+ *
+ * @author agent
+ */
+public final class INDIBLOBSources {
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIBLOBSources.class);
+
+    /**
+     * utility class never instanciated.
+     */
+    private INDIBLOBSources() {
+    }
+
+    /**
+     * Supplier of an input stream with the blob content.
+     */
+    public interface InputStreamSupplier {
+
+        /**
+         * @return a new input stream with the content from the start.
+         * @throws IOException if the stream could not be opened.
+         */
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * create a source for the content of a buffer (from the position to the
+     * limit), the buffer is not copied and not changed.
+     *
+     * @param buffer the buffer with the content.
+     * @return the blob source.
+     */
+    public static INDIBLOBSource of(final ByteBuffer buffer) {
+        final ByteBuffer content = buffer.slice();
+        return new INDIBLOBSource() {
+
+            @Override
+            public long getSize() {
+                return content.remaining();
+            }
+
+            @Override
+            public ReadableByteChannel open() {
+                return new BufferChannel(content.duplicate());
+            }
+        };
+    }
+
+    /**
+     * create a source for a region of a file. The content is read with
+     * positional reads, so the position of the channel is not changed and the
+     * source can be read by multiple threads. The channel is not closed by the
+     * source.
+     *
+     * @param channel  the file channel.
+     * @param position the start of the region in the file.
+     * @param length   the length of the region.
+     * @return the blob source.
+     */
+    public static INDIBLOBSource of(final FileChannel channel, final long position, final long length) {
+        return new INDIBLOBSource() {
+
+            @Override
+            public long getSize() {
+                return length;
+            }
+
+            @Override
+            public ReadableByteChannel open() {
+                return new FileRegionChannel(channel, position, length);
+            }
+        };
+    }
+
+    /**
+     * create a source for the content of a file, the file is opened for every
+     * read of the content. The size is the length of the file at the time the
+     * source is created.
+     *
+     * @param file the file with the content.
+     * @return the blob source.
+     */
+    public static INDIBLOBSource of(final File file) {
+        final long size = file.length();
+        return new INDIBLOBSource() {
+
+            @Override
+            public long getSize() {
+                return size;
+            }
+
+            @Override
+            public ReadableByteChannel open() throws IOException {
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                return new FileRegionChannel(channel, 0, size) {
+
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        channel.close();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * create a source for the content of a temporary file that is deleted
+     * when the source is no longer used. The creator holds the first
+     * reference and gives it back with {@link INDIBLOBSource#release()}, the
+     * file is deleted when that and all references taken by queues, pipes and
+     * open channels are released.
+     *
+     * @param file the temporary file with the content.
+     * @return the blob source.
+     */
+    public static INDIBLOBSource ofTemporaryFile(final File file) {
+        final long size = file.length();
+        return new INDIBLOBSource() {
+
+            /**
+             * the number of references, the file is deleted at 0.
+             */
+            private final AtomicInteger references = new AtomicInteger(1);
+
+            @Override
+            public long getSize() {
+                return size;
+            }
+
+            @Override
+            public ReadableByteChannel open() throws IOException {
+                if (references.getAndIncrement() <= 0) {
+                    references.decrementAndGet();
+                    throw new IOException("temporary blob file " + file + " was already released");
+                }
+                final FileChannel channel;
+                try {
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                } catch (IOException e) {
+                    release();
+                    throw e;
+                }
+                return new FileRegionChannel(channel, 0, size) {
+
+                    @Override
+                    public void close() throws IOException {
+                        if (isOpen()) {
+                            super.close();
+                            try {
+                                channel.close();
+                            } finally {
+                                release();
+                            }
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public void retain() {
+                if (references.getAndIncrement() <= 0) {
+                    references.decrementAndGet();
+                    throw new IllegalStateException("temporary blob file " + file + " was already released");
+                }
+            }
+
+            @Override
+            public void release() {
+                if (references.decrementAndGet() == 0 && !file.delete()) {
+                    LOG.warn("could not delete the temporary blob file " + file);
+                }
+            }
+        };
+    }
+
+    /**
+     * take a reference to the blob sources of a message, for holders that
+     * write the message later.
+     *
+     * @param message the message.
+     */
+    public static void retain(INDIProtocol<?> message) {
+        for (OneElement<?> element : blobElements(message)) {
+            if (element instanceof OneBlob && ((OneBlob) element).getBlobSource() != null) {
+                ((OneBlob) element).getBlobSource().retain();
+            }
+        }
+    }
+
+    /**
+     * give back the references taken with {@link #retain(INDIProtocol)}.
+     *
+     * @param message the message.
+     */
+    public static void release(INDIProtocol<?> message) {
+        for (OneElement<?> element : blobElements(message)) {
+            if (element instanceof OneBlob && ((OneBlob) element).getBlobSource() != null) {
+                ((OneBlob) element).getBlobSource().release();
+            }
+        }
+    }
+
+    /**
+     * @param message the message.
+     * @return true if the message has blob content that is streamed from a
+     * source.
+     */
+    public static boolean isStreamed(INDIProtocol<?> message) {
+        for (OneElement<?> element : blobElements(message)) {
+            if (element instanceof OneBlob && ((OneBlob) element).getBlobSource() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param message the message.
+     * @return the elements of the message if it can carry blob content.
+     */
+    private static List<OneElement<?>> blobElements(INDIProtocol<?> message) {
+        if (message instanceof SetBlobVector) {
+            return ((SetBlobVector) message).getElements();
+        } else if (message instanceof NewBlobVector) {
+            return ((NewBlobVector) message).getElements();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * create a source for the content of input streams.
+     *
+     * @param supplier the supplier that opens a new input stream for every
+     *                 read of the content.
+     * @param size     the size of the content.
+     * @return the blob source.
+     */
+    public static INDIBLOBSource of(final InputStreamSupplier supplier, final long size) {
+        return new INDIBLOBSource() {
+
+            @Override
+            public long getSize() {
+                return size;
+            }
+
+            @Override
+            public ReadableByteChannel open() throws IOException {
+                return Channels.newChannel(supplier.open());
+            }
+        };
+    }
+
+    /**
+     * wrap a source with another size attribute, for compressed content where
+     * the size attribute is the uncompressed size.
+     *
+     * @param source the source of the content.
+     * @param size   the value for the size attribute.
+     * @return the blob source.
+     */
+    public static INDIBLOBSource withSize(final INDIBLOBSource source, final long size) {
+        return new INDIBLOBSource() {
+
+            @Override
+            public long getSize() {
+                return size;
+            }
+
+            @Override
+            public ReadableByteChannel open() throws IOException {
+                return source.open();
+            }
+
+            @Override
+            public void retain() {
+                source.retain();
+            }
+
+            @Override
+            public void release() {
+                source.release();
+            }
+        };
+    }
+
+    /**
+     * Channel that reads from a buffer.
+     */
+    private static final class BufferChannel implements ReadableByteChannel {
+
+        /**
+         * the remaining content.
+         */
+        private final ByteBuffer content;
+
+        /**
+         * is the channel open.
+         */
+        private boolean open = true;
+
+        /**
+         * create the channel.
+         *
+         * @param content the content to read.
+         */
+        private BufferChannel(ByteBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!content.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(dst.remaining(), content.remaining());
+            ByteBuffer part = content.duplicate();
+            part.limit(part.position() + count);
+            dst.put(part);
+            content.position(content.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    /**
+     * Channel that reads a region of a file channel with positional reads.
+     */
+    private static class FileRegionChannel implements ReadableByteChannel {
+
+        /**
+         * the file channel.
+         */
+        private final FileChannel channel;
+
+        /**
+         * the next position to read.
+         */
+        private long position;
+
+        /**
+         * the end of the region.
+         */
+        private final long end;
+
+        /**
+         * is the channel open.
+         */
+        private boolean open = true;
+
+        /**
+         * create the channel.
+         *
+         * @param channel  the file channel.
+         * @param position the start of the region.
+         * @param length   the length of the region.
+         */
+        private FileRegionChannel(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int limit = dst.limit();
+            if (dst.remaining() > end - position) {
+                dst.limit(dst.position() + (int) (end - position));
+            }
+            try {
+                int count = channel.read(dst, position);
+                if (count < 0) {
+                    throw new IOException("file ended before the end of the blob region");
+                }
+                position += count;
+                return count;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Definitions of the compact binary encoding of the indi protocol objects.
+ * The stream is a sequence of frames, every frame is the varint encoded
+ * length of the frame body followed by the body. The body starts with the
+ * frame type, for protocol objects followed by the attributes in the same
+ * order as the xml writer uses and the child elements inline. Names and
+ * other repeating values are interned (both sides build the same table in the
+ * order the values are sent), numbers that survive a round trip are sent as
+ * raw doubles or varint longs and blob contents are sent raw in data frames
+ * after the object frame. Every object maps one to one to its xml
+ * representation, so both encodings can be mixed freely behind a server.
+ *
+ * @author agent
+ */
+final class INDIBinaryFormat {
+
+    /**
+     * frame type of a blob content chunk.
+     */
+    static final int BLOB_DATA = 64;
+
+    /**
+     * frame type of the end of a blob content.
+     */
+    static final int BLOB_END = 65;
+
+    /**
+     * string tag of a null value.
+     */
+    static final int STRING_NULL = 0;
+
+    /**
+     * string tag of a new value that is added to the intern table.
+     */
+    static final int STRING_INTERN = 1;
+
+    /**
+     * string tag of a value that is not interned.
+     */
+    static final int STRING_LITERAL = 2;
+
+    /**
+     * string tags starting here are references to an interned value.
+     */
+    static final int STRING_REFERENCE = 3;
+
+    /**
+     * the maximum number of interned values per stream direction, later
+     * values are sent as literals.
+     */
+    static final int MAX_INTERNED = 4096;
+
+    /**
+     * the maximum length of an interned value.
+     */
+    static final int MAX_INTERNED_LENGTH = 256;
+
+    /**
+     * the maximum length of an object frame body, longer frames are corrupt.
+     * The blob content is sent in data frames that are not limited.
+     */
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * number tag of a null value.
+     */
+    static final int NUMBER_NULL = 0;
+
+    /**
+     * number tag of a value that is sent as string.
+     */
+    static final int NUMBER_STRING = 1;
+
+    /**
+     * number tag of a value that is sent as raw double.
+     */
+    static final int NUMBER_DOUBLE = 2;
+
+    /**
+     * number tag of a value that is sent as zigzag varint long.
+     */
+    static final int NUMBER_LONG = 3;
+
+    /**
+     * the protocol classes, the index is the frame type.
+     */
+    private static final Class<?>[] TYPES = {
+            null,
+            DefBlob.class,
+            DefBlobVector.class,
+            DefLight.class,
+            DefLightVector.class,
+            DefNumber.class,
+            DefNumberVector.class,
+            DefSwitch.class,
+            DefSwitchVector.class,
+            DefText.class,
+            DefTextVector.class,
+            DelProperty.class,
+            EnableBLOB.class,
+            GetProperties.class,
+            Message.class,
+            NewBlobVector.class,
+            NewLightVector.class,
+            NewNumberVector.class,
+            NewSwitchVector.class,
+            NewTextVector.class,
+            OneBlob.class,
+            OneLight.class,
+            OneNumber.class,
+            OneSwitch.class,
+            OneText.class,
+            SetBlobVector.class,
+            SetLightVector.class,
+            SetNumberVector.class,
+            SetSwitchVector.class,
+            SetTextVector.class
+    };
+
+    /**
+     * the frame types of the protocol classes.
+     */
+    private static final Map<Class<?>, Integer> TYPE_CODES = new HashMap<>();
+
+    static {
+        for (int index = 1; index < TYPES.length; index++) {
+            TYPE_CODES.put(TYPES[index], index);
+        }
+    }
+
+    /**
+     * untility class never instanciated.
+     */
+    private INDIBinaryFormat() {
+    }
+
+    /**
+     * @param element the protocol object.
+     * @return the frame type of the object or -1 if the class is not
+     * supported.
+     */
+    static int typeOf(INDIProtocol<?> element) {
+        Integer type = TYPE_CODES.get(element.getClass());
+        return type == null ? -1 : type;
+    }
+
+    /**
+     * create an empty protocol object.
+     *
+     * @param type the frame type.
+     * @return the new protocol object or null if the type is unknown.
+     */
+    static INDIProtocol<?> create(int type) {
+        if (type <= 0 || type >= TYPES.length) {
+            return null;
+        }
+        switch (type) {
+            case 1:
+                return new DefBlob();
+            case 2:
+                return new DefBlobVector();
+            case 3:
+                return new DefLight();
+            case 4:
+                return new DefLightVector();
+            case 5:
+                return new DefNumber();
+            case 6:
+                return new DefNumberVector();
+            case 7:
+                return new DefSwitch();
+            case 8:
+                return new DefSwitchVector();
+            case 9:
+                return new DefText();
+            case 10:
+                return new DefTextVector();
+            case 11:
+                return new DelProperty();
+            case 12:
+                return new EnableBLOB();
+            case 13:
+                return new GetProperties();
+            case 14:
+                return new Message();
+            case 15:
+                return new NewBlobVector();
+            case 16:
+                return new NewLightVector();
+            case 17:
+                return new NewNumberVector();
+            case 18:
+                return new NewSwitchVector();
+            case 19:
+                return new NewTextVector();
+            case 20:
+                return new OneBlob();
+            case 21:
+                return new OneLight();
+            case 22:
+                return new OneNumber();
+            case 23:
+                return new OneSwitch();
+            case 24:
+                return new OneText();
+            case 25:
+                return new SetBlobVector();
+            case 26:
+                return new SetLightVector();
+            case 27:
+                return new SetNumberVector();
+            case 28:
+                return new SetSwitchVector();
+            default:
+                return new SetTextVector();
+        }
+    }
+
+    /**
+     * @param element the element with text content.
+     * @return true if the text content of the element is a state value that
+     * repeats and should be interned.
+     */
+    static boolean isStateContent(INDIProtocol<?> element) {
+        return element instanceof DefSwitch || element instanceof DefLight || element instanceof OneSwitch || element instanceof OneLight
+                || element instanceof EnableBLOB;
+    }
+}
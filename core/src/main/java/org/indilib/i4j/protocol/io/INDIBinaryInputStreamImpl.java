@@ -0,0 +1,605 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.*;
+import org.indilib.i4j.protocol.api.INDIBLOBSink;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream of INDIProtocol objects in the compact binary encoding (see
+ * {@link INDIBinaryFormat}). The resulting objects are the same as the xml
+ * input streams produce for the same messages, interned values are the same
+ * string instances for the whole stream. The blob content is read raw into
+ * the byte content or streamed into the blob sink.
+ *
+ * @author agent
+ */
+public class INDIBinaryInputStreamImpl extends InputStream implements INDIInputStream {
+
+    /**
+     * logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIBinaryInputStreamImpl.class);
+
+    /**
+     * the size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * the size of the chunks blobs are passed to the sink in.
+     */
+    private static final int BLOB_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * the maximum number of bits of a varint.
+     */
+    private static final int MAX_VARINT_SHIFT = 63;
+
+    /**
+     * the format extension of compressed blobs.
+     */
+    private static final String COMPRESSED_EXTENSION = ".z";
+
+    static {
+        INDIURLStreamHandlerFactory.init();
+    }
+
+    /**
+     * the underlying input stream.
+     */
+    private final InputStream in;
+
+    /**
+     * the read buffer.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * the interned values in the order they were received.
+     */
+    private final List<String> interned = new ArrayList<>();
+
+    /**
+     * the blobs of the current frame, there content follows the frame.
+     */
+    private final List<OneBlob> blobs = new ArrayList<>();
+
+    /**
+     * the position of the next byte in the read buffer.
+     */
+    private int position;
+
+    /**
+     * the end of the valid bytes in the read buffer.
+     */
+    private int limit;
+
+    /**
+     * the body of the current frame.
+     */
+    private byte[] frame = new byte[BUFFER_SIZE];
+
+    /**
+     * the position of the next byte in the frame body.
+     */
+    private int framePosition;
+
+    /**
+     * the sink to stream blob content to, null to read blobs to byte arrays.
+     */
+    private INDIBLOBSink blobSink;
+
+    /**
+     * chunk for the blob content when streaming to a sink.
+     */
+    private byte[] blobChunk;
+
+    /**
+     * chunk for the inflated blob content when streaming to a sink.
+     */
+    private byte[] inflatedChunk;
+
+    /**
+     * the reusable inflater for compressed blobs streamed to a sink.
+     */
+    private Inflater inflater;
+
+    /**
+     * create an INDI inputstream over an input stream with binary data.
+     *
+     * @param in the input stream to read the frames from.
+     */
+    protected INDIBinaryInputStreamImpl(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    @Override
+    public boolean setBLOBSink(INDIBLOBSink sink) {
+        this.blobSink = sink;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        throw new IOException("not supported method");
+    }
+
+    @Override
+    public INDIProtocol<?> readObject() throws IOException {
+        try {
+            int length = readFrameLength();
+            if (length < 0) {
+                return null;
+            }
+            if (length == 0) {
+                throw new IOException("empty binary indi frame");
+            }
+            if (length > INDIBinaryFormat.MAX_FRAME_LENGTH) {
+                throw new IOException("binary indi frame of " + length + " bytes exceeds the limit");
+            }
+            if (frame.length < length) {
+                frame = new byte[Math.max(length, frame.length * 2)];
+            }
+            readFully(frame, 0, length);
+            framePosition = 1;
+            INDIProtocol<?> readObject = readElement(frame[0] & 0xFF);
+            if (framePosition != length) {
+                throw new IOException("binary indi frame length mismatch");
+            }
+            for (OneBlob blob : blobs) {
+                readBlobContent(blob);
+            }
+            readObject.trim();
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("received indi object " + readObject);
+            }
+            return readObject;
+        } catch (RuntimeException e) {
+            throw new IOException("corrupt binary indi frame", e);
+        } finally {
+            blobs.clear();
+        }
+    }
+
+    /**
+     * read one protocol object with its attributes and children from the
+     * frame body.
+     *
+     * @param type the frame type of the object.
+     * @return the protocol object.
+     * @throws IOException if the type is unknown.
+     */
+    private INDIProtocol<?> readElement(int type) throws IOException {
+        INDIProtocol<?> element = INDIBinaryFormat.create(type);
+        if (element == null) {
+            throw new IOException("unexpected binary indi frame type " + type);
+        }
+        element.setDevice(getString());
+        element.setName(getString());
+        element.setMessage(getString());
+        element.setTimestamp(getString());
+        if (element instanceof DefVector<?>) {
+            DefVector<?> vector = (DefVector<?>) element;
+            vector.setGroup(getString());
+            vector.setLabel(getString());
+            vector.setPerm(getString());
+            vector.setState(getString());
+            vector.setTimeout(getString());
+            if (vector instanceof DefSwitchVector) {
+                ((DefSwitchVector) vector).setRule(getString());
+            }
+            for (int count = getVarint(); count > 0; count--) {
+                INDIProtocol<?> child = readElement(frame[framePosition++] & 0xFF);
+                if (!(child instanceof DefElement<?>)) {
+                    throw new IOException("unexpected element " + child.getClass().getSimpleName() + " in a def vector");
+                }
+                vector.getElements().add((DefElement<?>) child);
+            }
+        } else if (element instanceof SetVector<?>) {
+            SetVector<?> vector = (SetVector<?>) element;
+            vector.setState(getString());
+            vector.setTimeout(getString());
+            if (vector instanceof SetSwitchVector) {
+                ((SetSwitchVector) vector).setRule(getString());
+            }
+            for (int count = getVarint(); count > 0; count--) {
+                vector.addElement(readOneChild());
+            }
+        } else if (element instanceof NewVector<?>) {
+            NewVector<?> vector = (NewVector<?>) element;
+            vector.setState(getString());
+            vector.setTimeout(getString());
+            if (vector instanceof NewSwitchVector) {
+                ((NewSwitchVector) vector).setRule(getString());
+            }
+            for (int count = getVarint(); count > 0; count--) {
+                vector.addElement(readOneChild());
+            }
+        } else if (element instanceof DefElement<?>) {
+            DefElement<?> defElement = (DefElement<?>) element;
+            defElement.setLabel(getString());
+            if (element instanceof DefNumber) {
+                DefNumber number = (DefNumber) element;
+                number.setFormat(getString());
+                number.setMax(getNumber());
+                number.setMin(getNumber());
+                number.setStep(getNumber());
+                number.setTextContent(getNumber());
+            } else {
+                defElement.setTextContent(getString());
+            }
+        } else if (element instanceof OneNumber) {
+            OneNumber number = (OneNumber) element;
+            number.setMax(getNumber());
+            number.setMin(getNumber());
+            number.setTextContent(getNumber());
+        } else if (element instanceof OneBlob) {
+            OneBlob blob = (OneBlob) element;
+            blob.setFormat(getString());
+            blob.setSize(getString());
+            blobs.add(blob);
+        } else if (element instanceof OneElement<?>) {
+            ((OneElement<?>) element).setTextContent(getString());
+        } else if (element instanceof GetProperties) {
+            ((GetProperties) element).setProperty(getString());
+            ((GetProperties) element).setVersion(getString());
+            ((GetProperties) element).setMaxRate(getString());
+        } else if (element instanceof DelProperty) {
+            ((DelProperty) element).setVersion(getString());
+        } else if (element instanceof EnableBLOB) {
+            ((EnableBLOB) element).setTextContent(getString());
+        }
+        return element;
+    }
+
+    /**
+     * read the next child that must be a one element.
+     *
+     * @return the one element.
+     * @throws IOException if the child is no one element.
+     */
+    private OneElement<?> readOneChild() throws IOException {
+        INDIProtocol<?> child = readElement(frame[framePosition++] & 0xFF);
+        if (child instanceof OneElement<?>) {
+            return (OneElement<?>) child;
+        }
+        throw new IOException("unexpected element " + child.getClass().getSimpleName() + " in a vector");
+    }
+
+    /**
+     * read the data frames with the content of a blob, the size attribute
+     * stays as it was received.
+     *
+     * @param blob the blob to fill.
+     * @throws IOException if the frames could not be read.
+     */
+    private void readBlobContent(OneBlob blob) throws IOException {
+        String size = blob.getSize();
+        int sizeHint = 0;
+        if (size != null) {
+            try {
+                // only a hint, a bogus size must not allocate the memory.
+                sizeHint = Math.min(Math.max(0, Integer.parseInt(size.trim())), INDIBinaryFormat.MAX_FRAME_LENGTH);
+            } catch (NumberFormatException e) {
+                sizeHint = 0;
+            }
+        }
+        if (blobSink != null) {
+            streamBlobContent(blob, sizeHint);
+            return;
+        }
+        byte[] content = new byte[sizeHint];
+        int length = 0;
+        int dataLength;
+        while ((dataLength = readDataFrameLength()) >= 0) {
+            if (content.length - length < dataLength) {
+                content = Arrays.copyOf(content, Math.max(length + dataLength, content.length * 2));
+            }
+            readFully(content, length, dataLength);
+            length += dataLength;
+        }
+        if (length != content.length) {
+            content = Arrays.copyOf(content, length);
+        }
+        blob.setByteContent(content);
+        blob.setSize(size);
+    }
+
+    /**
+     * read the data frames with the content of a blob into the blob sink,
+     * inflating it if the sink wants it.
+     *
+     * @param blob     the blob to fill.
+     * @param sizeHint the expected size of the content.
+     * @throws IOException if the frames could not be read.
+     */
+    private void streamBlobContent(OneBlob blob, int sizeHint) throws IOException {
+        String size = blob.getSize();
+        boolean inflate = blob.getFormat() != null && blob.getFormat().trim().endsWith(COMPRESSED_EXTENSION) && blobSink.isInflating();
+        if (blobChunk == null) {
+            blobChunk = new byte[BLOB_CHUNK_SIZE];
+        }
+        if (inflate) {
+            if (inflater == null) {
+                inflater = new Inflater();
+                inflatedChunk = new byte[BLOB_CHUNK_SIZE];
+            }
+            inflater.reset();
+        }
+        blobSink.start(blob, sizeHint);
+        int dataLength;
+        while ((dataLength = readDataFrameLength()) >= 0) {
+            while (dataLength > 0) {
+                int count = Math.min(dataLength, blobChunk.length);
+                readFully(blobChunk, 0, count);
+                dataLength -= count;
+                if (inflate) {
+                    inflate(count);
+                } else {
+                    blobSink.write(blobChunk, 0, count);
+                }
+            }
+        }
+        ByteBuffer content = blobSink.end();
+        if (inflate) {
+            String format = blob.getFormat().trim();
+            blob.setFormat(format.substring(0, format.length() - COMPRESSED_EXTENSION.length()));
+            size = Long.toString(inflater.getBytesWritten());
+        }
+        if (content != null) {
+            blob.setByteBuffer(content);
+        }
+        blob.setSize(size);
+    }
+
+    /**
+     * inflate a chunk into the blob sink.
+     *
+     * @param count the number of bytes in the chunk.
+     * @throws IOException if the content is not correctly compressed.
+     */
+    private void inflate(int count) throws IOException {
+        inflater.setInput(blobChunk, 0, count);
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(inflatedChunk);
+                if (inflated > 0) {
+                    blobSink.write(inflatedChunk, 0, inflated);
+                } else if (inflater.needsInput()) {
+                    return;
+                } else if (inflater.needsDictionary()) {
+                    throw new IOException("compressed blob needs a preset dictionary");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("blob not correctly compressed", e);
+        }
+    }
+
+    /**
+     * read the header of the next blob frame.
+     *
+     * @return the number of content bytes that follow or -1 at the end of
+     * the blob.
+     * @throws IOException if the frame is no blob frame.
+     */
+    private int readDataFrameLength() throws IOException {
+        int length = readFrameLength();
+        if (length < 0) {
+            throw new EOFException("end of stream in blob content");
+        }
+        int type = length == 0 ? -1 : readByte();
+        if (type == INDIBinaryFormat.BLOB_END && length == 1) {
+            return -1;
+        } else if (type != INDIBinaryFormat.BLOB_DATA) {
+            throw new IOException("unexpected binary indi frame type " + type + " in blob content");
+        }
+        return length - 1;
+    }
+
+    /**
+     * @return the next string value of the frame body.
+     * @throws IOException if the value refers to an unknown interned value.
+     */
+    private String getString() throws IOException {
+        int tag = getVarint();
+        switch (tag) {
+            case INDIBinaryFormat.STRING_NULL:
+                return null;
+            case INDIBinaryFormat.STRING_LITERAL:
+                return getUtf8();
+            case INDIBinaryFormat.STRING_INTERN:
+                String value = getUtf8();
+                if (interned.size() < INDIBinaryFormat.MAX_INTERNED) {
+                    interned.add(value);
+                }
+                return value;
+            default:
+                int index = tag - INDIBinaryFormat.STRING_REFERENCE;
+                if (index >= interned.size()) {
+                    throw new IOException("unknown interned value " + index);
+                }
+                return interned.get(index);
+        }
+    }
+
+    /**
+     * @return the next number value of the frame body, in its textual form.
+     * @throws IOException if the number tag is unknown.
+     */
+    private String getNumber() throws IOException {
+        int tag = getVarint();
+        switch (tag) {
+            case INDIBinaryFormat.NUMBER_NULL:
+                return null;
+            case INDIBinaryFormat.NUMBER_STRING:
+                return getUtf8();
+            case INDIBinaryFormat.NUMBER_DOUBLE:
+                long bits = 0;
+                for (int index = 0; index < Long.BYTES; index++) {
+                    bits = bits << 8 | frame[framePosition++] & 0xFF;
+                }
+                return Double.toString(Double.longBitsToDouble(bits));
+            case INDIBinaryFormat.NUMBER_LONG:
+                long zigzag = getVarLong();
+                return Long.toString(zigzag >>> 1 ^ -(zigzag & 1));
+            default:
+                throw new IOException("unknown number tag " + tag);
+        }
+    }
+
+    /**
+     * @return the next utf-8 string with its length of the frame body.
+     */
+    private String getUtf8() {
+        int length = getVarint();
+        String value = new String(frame, framePosition, length, StandardCharsets.UTF_8);
+        framePosition += length;
+        return value;
+    }
+
+    /**
+     * @return the next unsigned varint of the frame body.
+     */
+    private int getVarint() {
+        return (int) getVarLong();
+    }
+
+    /**
+     * @return the next unsigned variable length long of the frame body.
+     */
+    private long getVarLong() {
+        long value = 0;
+        for (int shift = 0; shift <= MAX_VARINT_SHIFT; shift += 7) {
+            byte b = frame[framePosition++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("varint too long");
+    }
+
+    /**
+     * read the length of the next frame.
+     *
+     * @return the length or -1 if the stream ended before the frame.
+     * @throws IOException if the underlying stream could not be read.
+     */
+    private int readFrameLength() throws IOException {
+        if (position == limit && fill() < 0) {
+            return -1;
+        }
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b < 0x80) {
+                if (value < 0) {
+                    throw new IOException("illegal binary indi frame length");
+                }
+                return value;
+            }
+        }
+        throw new IOException("illegal binary indi frame length");
+    }
+
+    /**
+     * @return the next byte of the stream.
+     * @throws IOException if the stream ended or could not be read.
+     */
+    private int readByte() throws IOException {
+        if (position == limit && fill() < 0) {
+            throw new EOFException("end of stream in binary indi frame");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * read bytes from the stream, large reads bypass the read buffer.
+     *
+     * @param bytes  the array to read into.
+     * @param offset the start in the array.
+     * @param length the number of bytes to read.
+     * @throws IOException if the stream ended or could not be read.
+     */
+    private void readFully(byte[] bytes, int offset, int length) throws IOException {
+        int done = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, bytes, offset, done);
+        position += done;
+        while (done < length) {
+            int count;
+            if (length - done >= buffer.length) {
+                count = in.read(bytes, offset + done, length - done);
+            } else {
+                count = fill();
+                if (count > 0) {
+                    count = Math.min(count, length - done);
+                    System.arraycopy(buffer, 0, bytes, offset + done, count);
+                    position = count;
+                }
+            }
+            if (count < 0) {
+                throw new EOFException("end of stream in binary indi frame");
+            }
+            done += count;
+        }
+    }
+
+    /**
+     * fill the empty read buffer.
+     *
+     * @return the number of bytes read or -1 at the end of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    private int fill() throws IOException {
+        position = 0;
+        limit = 0;
+        int count = in.read(buffer, 0, buffer.length);
+        if (count > 0) {
+            limit = count;
+        }
+        return count;
+    }
+}
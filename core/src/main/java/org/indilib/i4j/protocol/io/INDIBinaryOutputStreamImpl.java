@@ -0,0 +1,585 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.*;
+import org.indilib.i4j.protocol.api.INDIBLOBSource;
+import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OutPut stream of INDIProtocol objects in the compact binary encoding (see
+ * {@link INDIBinaryFormat}). Every object is assembled in a reusable frame
+ * buffer and passed to the underlying stream with one write, the content of
+ * the blobs follows raw in data frames without any base64 encoding.
+ *
+ * @author agent
+ */
+public class INDIBinaryOutputStreamImpl extends OutputStream implements INDIOutputStream {
+
+    /**
+     * logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIBinaryOutputStreamImpl.class);
+
+    /**
+     * the initial size of the frame buffer.
+     */
+    private static final int FRAME_SIZE = 16 * 1024;
+
+    /**
+     * the bytes reserved in front of the frame body for the length.
+     */
+    private static final int HEADER = 5;
+
+    /**
+     * the size of the chunks blob sources are read in.
+     */
+    private static final int SOURCE_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * the maximum length of a number that is tried as long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * the maximum length of a number that is tried as double.
+     */
+    private static final int MAX_DOUBLE_LENGTH = 32;
+
+    static {
+        INDIURLStreamHandlerFactory.init();
+    }
+
+    /**
+     * the underlying output stream.
+     */
+    private final OutputStream out;
+
+    /**
+     * applies the flush policy.
+     */
+    private final INDIOutputFlusher flusher;
+
+    /**
+     * the interned values with there index.
+     */
+    private final Map<String, Integer> interned = new HashMap<>();
+
+    /**
+     * the blobs of the current frame, there content is sent after the frame.
+     */
+    private final List<OneBlob> blobs = new ArrayList<>();
+
+    /**
+     * the reusable frame buffer, the body starts after the header.
+     */
+    private byte[] frame = new byte[FRAME_SIZE];
+
+    /**
+     * the end of the frame in the frame buffer.
+     */
+    private int count;
+
+    /**
+     * the reusable chunk for reading blob sources, created when needed.
+     */
+    private ByteBuffer sourceChunk;
+
+    /**
+     * the total number of bytes written.
+     */
+    private long bytesWritten;
+
+    /**
+     * the number of bytes written at the last flush.
+     */
+    private long flushedBytes;
+
+    /**
+     * Constructor of the indi output stream.
+     *
+     * @param out         the underlaying stream
+     * @param flushPolicy when to flush the written messages.
+     */
+    protected INDIBinaryOutputStreamImpl(OutputStream out, INDIFlushPolicy flushPolicy) {
+        this.out = out;
+        this.flusher = new INDIOutputFlusher(flushPolicy, () -> {
+            this.out.flush();
+            flushedBytes = bytesWritten;
+        }, this);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        flusher.flushNow();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flusher.flushNow();
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        throw new IOException("not supported method");
+    }
+
+    @Override
+    public void writeObject(INDIProtocol<?> element) throws IOException {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("sending indi object " + element);
+        }
+        flusher.beforeWrite();
+        synchronized (this) {
+            try {
+                writeFrame(element);
+            } catch (IOException | RuntimeException e) {
+                flusher.writeFailed();
+                throw e;
+            } finally {
+                blobs.clear();
+            }
+            flusher.afterWrite(bytesWritten - flushedBytes);
+        }
+    }
+
+    /**
+     * write the frame of the protocol object followed by the content of its
+     * blobs.
+     *
+     * @param element the protocol object.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeFrame(INDIProtocol<?> element) throws IOException {
+        count = HEADER;
+        writeElement(element);
+        int length = count - HEADER;
+        int start = HEADER - varintSize(length);
+        int end = count;
+        count = start;
+        putVarint(length);
+        out.write(frame, start, end - start);
+        bytesWritten += end - start;
+        for (OneBlob blob : blobs) {
+            if (blob.getBlobSource() != null) {
+                writeBlobContent(blob.getBlobSource());
+            } else {
+                writeBlobContent(blob.getByteBuffer());
+            }
+            writeHeader(0, INDIBinaryFormat.BLOB_END);
+        }
+    }
+
+    /**
+     * write one protocol object with its attributes and children into the
+     * frame buffer.
+     *
+     * @param element the protocol object.
+     * @throws IOException if the class of the object is not supported.
+     */
+    private void writeElement(INDIProtocol<?> element) throws IOException {
+        int type = INDIBinaryFormat.typeOf(element);
+        if (type < 0) {
+            throw new IOException("unsupported indi protocol class " + element.getClass().getName());
+        }
+        ensure(1);
+        frame[count++] = (byte) type;
+        putString(element.getDevice(), true);
+        putString(element.getName(), true);
+        putString(element.getMessage(), false);
+        putString(element.getTimestamp(), false);
+        if (element instanceof DefVector<?>) {
+            DefVector<?> vector = (DefVector<?>) element;
+            putString(vector.getGroup(), true);
+            putString(vector.getLabel(), true);
+            putString(vector.getPerm(), true);
+            putString(vector.getState(), true);
+            putString(vector.getTimeout(), true);
+            if (vector instanceof DefSwitchVector) {
+                putString(((DefSwitchVector) vector).getRule(), true);
+            }
+            writeChildren(vector.getElements());
+        } else if (element instanceof SetVector<?>) {
+            SetVector<?> vector = (SetVector<?>) element;
+            putString(vector.getState(), true);
+            putString(vector.getTimeout(), true);
+            if (vector instanceof SetSwitchVector) {
+                putString(((SetSwitchVector) vector).getRule(), true);
+            }
+            writeChildren(vector.getElements());
+        } else if (element instanceof NewVector<?>) {
+            NewVector<?> vector = (NewVector<?>) element;
+            putString(vector.getState(), true);
+            putString(vector.getTimeout(), true);
+            if (vector instanceof NewSwitchVector) {
+                putString(((NewSwitchVector) vector).getRule(), true);
+            }
+            writeChildren(vector.getElements());
+        } else if (element instanceof DefElement<?>) {
+            DefElement<?> defElement = (DefElement<?>) element;
+            putString(defElement.getLabel(), true);
+            if (element instanceof DefNumber) {
+                DefNumber number = (DefNumber) element;
+                putString(number.getFormat(), true);
+                putNumber(number.getMax());
+                putNumber(number.getMin());
+                putNumber(number.getStep());
+                putNumber(number.getTextContent());
+            } else {
+                putString(defElement.getTextContent(), INDIBinaryFormat.isStateContent(element));
+            }
+        } else if (element instanceof OneNumber) {
+            OneNumber number = (OneNumber) element;
+            putNumber(number.getMax());
+            putNumber(number.getMin());
+            putNumber(number.getTextContent());
+        } else if (element instanceof OneBlob) {
+            OneBlob blob = (OneBlob) element;
+            putString(blob.getFormat(), true);
+            putString(blob.getSize(), false);
+            blobs.add(blob);
+        } else if (element instanceof OneElement<?>) {
+            putString(((OneElement<?>) element).getTextContent(), INDIBinaryFormat.isStateContent(element));
+        } else if (element instanceof GetProperties) {
+            putString(((GetProperties) element).getProperty(), true);
+            putString(((GetProperties) element).getVersion(), true);
+            putString(((GetProperties) element).getMaxRate(), true);
+        } else if (element instanceof DelProperty) {
+            putString(((DelProperty) element).getVersion(), true);
+        } else if (element instanceof EnableBLOB) {
+            putString(((EnableBLOB) element).getTextContent(), true);
+        }
+    }
+
+    /**
+     * write the number of children and the children of a vector.
+     *
+     * @param children the children to write.
+     * @throws IOException if the class of a child is not supported.
+     */
+    private void writeChildren(List<? extends INDIProtocol<?>> children) throws IOException {
+        putVarint(children.size());
+        for (INDIProtocol<?> child : children) {
+            writeElement(child);
+        }
+    }
+
+    /**
+     * write the content of the buffer as data frame (from the position to the
+     * limit), the buffer itself is not changed.
+     *
+     * @param content the content (may be null).
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeBlobContent(ByteBuffer content) throws IOException {
+        if (content == null || !content.hasRemaining()) {
+            return;
+        }
+        if (content.hasArray()) {
+            writeHeader(content.remaining(), INDIBinaryFormat.BLOB_DATA);
+            out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            bytesWritten += content.remaining();
+            return;
+        }
+        ByteBuffer source = content.duplicate();
+        ByteBuffer chunk = sourceChunk();
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.capacity(), source.remaining());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + length);
+            chunk.clear();
+            chunk.put(slice);
+            source.position(source.position() + length);
+            writeChunk(chunk);
+        }
+    }
+
+    /**
+     * write the content of the blob source in data frames of one chunk.
+     *
+     * @param source the source of the content.
+     * @throws IOException if the source could not be read or the underlying
+     *                     stream could not be written.
+     */
+    private void writeBlobContent(INDIBLOBSource source) throws IOException {
+        ByteBuffer chunk = sourceChunk();
+        chunk.clear();
+        try (ReadableByteChannel channel = source.open()) {
+            while (channel.read(chunk) >= 0) {
+                if (!chunk.hasRemaining()) {
+                    writeChunk(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        if (chunk.position() > 0) {
+            writeChunk(chunk);
+        }
+    }
+
+    /**
+     * @return the reusable chunk for blob content.
+     */
+    private ByteBuffer sourceChunk() {
+        if (sourceChunk == null) {
+            sourceChunk = ByteBuffer.allocate(SOURCE_CHUNK_SIZE);
+        }
+        return sourceChunk;
+    }
+
+    /**
+     * write the chunk (from 0 to the position) as data frame.
+     *
+     * @param chunk the chunk.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeChunk(ByteBuffer chunk) throws IOException {
+        writeHeader(chunk.position(), INDIBinaryFormat.BLOB_DATA);
+        out.write(chunk.array(), 0, chunk.position());
+        bytesWritten += chunk.position();
+    }
+
+    /**
+     * write the length and the type of a frame with the body following
+     * separately.
+     *
+     * @param bodyLength the length of the body after the type.
+     * @param type       the frame type.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeHeader(int bodyLength, int type) throws IOException {
+        count = 0;
+        putVarint(bodyLength + 1);
+        frame[count++] = (byte) type;
+        out.write(frame, 0, count);
+        bytesWritten += count;
+    }
+
+    /**
+     * put a string value into the frame.
+     *
+     * @param value  the value (may be null).
+     * @param intern true if the value repeats and should be interned.
+     */
+    private void putString(String value, boolean intern) {
+        if (value == null) {
+            putVarint(INDIBinaryFormat.STRING_NULL);
+        } else if (!intern) {
+            putVarint(INDIBinaryFormat.STRING_LITERAL);
+            putUtf8(value);
+        } else {
+            Integer index = interned.get(value);
+            if (index != null) {
+                putVarint(INDIBinaryFormat.STRING_REFERENCE + index);
+            } else if (interned.size() < INDIBinaryFormat.MAX_INTERNED && value.length() <= INDIBinaryFormat.MAX_INTERNED_LENGTH) {
+                interned.put(value, interned.size());
+                putVarint(INDIBinaryFormat.STRING_INTERN);
+                putUtf8(value);
+            } else {
+                putVarint(INDIBinaryFormat.STRING_LITERAL);
+                putUtf8(value);
+            }
+        }
+    }
+
+    /**
+     * put a number value into the frame, as long or raw double if the
+     * textual value can be reproduced exactly, otherwise as string.
+     *
+     * @param value the value (may be null).
+     */
+    private void putNumber(String value) {
+        if (value == null) {
+            putVarint(INDIBinaryFormat.NUMBER_NULL);
+            return;
+        }
+        int length = value.length();
+        boolean negative = length > 1 && value.charAt(0) == '-';
+        int digits = negative ? length - 1 : length;
+        if (digits > 0 && digits <= MAX_LONG_DIGITS && (digits == 1 || value.charAt(length - digits) != '0') && !(negative && digits == 1 && value.charAt(1) == '0')) {
+            long number = 0;
+            int index = length - digits;
+            while (index < length && value.charAt(index) >= '0' && value.charAt(index) <= '9') {
+                number = number * 10 + value.charAt(index++) - '0';
+            }
+            if (index == length) {
+                number = negative ? -number : number;
+                putVarint(INDIBinaryFormat.NUMBER_LONG);
+                putVarLong(number << 1 ^ number >> 63);
+                return;
+            }
+        }
+        if (length <= MAX_DOUBLE_LENGTH && isDoubleCandidate(value)) {
+            try {
+                double number = Double.parseDouble(value);
+                if (Double.toString(number).equals(value)) {
+                    putVarint(INDIBinaryFormat.NUMBER_DOUBLE);
+                    ensure(Long.BYTES);
+                    long bits = Double.doubleToRawLongBits(number);
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        frame[count++] = (byte) (bits >>> shift);
+                    }
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                LOG.trace("not a number", e);
+            }
+        }
+        putVarint(INDIBinaryFormat.NUMBER_STRING);
+        putUtf8(value);
+    }
+
+    /**
+     * @param value the textual value.
+     * @return true if the value only contains characters of a decimal
+     * floating point number.
+     */
+    private static boolean isDoubleCandidate(String value) {
+        boolean digit = false;
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (c != '.' && c != '-' && c != 'E') {
+                return false;
+            }
+        }
+        return digit;
+    }
+
+    /**
+     * put the length and the utf-8 bytes of a string into the frame,
+     * unpaired surrogates are replaced by '?'.
+     *
+     * @param value the string.
+     */
+    private void putUtf8(String value) {
+        int length = value.length();
+        int bytes = 0;
+        for (int index = 0; index < length; index++) {
+            char c = value.charAt(index);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(value.charAt(index + 1))) {
+                bytes += 4;
+                index++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        putVarint(bytes);
+        ensure(bytes);
+        for (int index = 0; index < length; index++) {
+            char c = value.charAt(index);
+            if (c < 0x80) {
+                frame[count++] = (byte) c;
+            } else if (c < 0x800) {
+                frame[count++] = (byte) (0xC0 | c >> 6);
+                frame[count++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(value.charAt(index + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++index));
+                frame[count++] = (byte) (0xF0 | codePoint >> 18);
+                frame[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                frame[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                frame[count++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                frame[count++] = '?';
+            } else {
+                frame[count++] = (byte) (0xE0 | c >> 12);
+                frame[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                frame[count++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    /**
+     * put an unsigned varint into the frame.
+     *
+     * @param value the value.
+     */
+    private void putVarint(int value) {
+        putVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * put an unsigned variable length long into the frame, 7 bits per byte
+     * with the high bit set on all but the last byte.
+     *
+     * @param value the value.
+     */
+    private void putVarLong(long value) {
+        ensure(10);
+        long rest = value;
+        while ((rest & ~0x7FL) != 0) {
+            frame[count++] = (byte) (rest & 0x7F | 0x80);
+            rest >>>= 7;
+        }
+        frame[count++] = (byte) rest;
+    }
+
+    /**
+     * @param value the unsigned value.
+     * @return the number of bytes of the varint.
+     */
+    private static int varintSize(int value) {
+        int size = 1;
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            size++;
+            rest >>>= 7;
+        }
+        return size;
+    }
+
+    /**
+     * make sure the frame buffer has room for more bytes.
+     *
+     * @param bytes the number of bytes needed.
+     */
+    private void ensure(int bytes) {
+        if (count + bytes > frame.length) {
+            frame = Arrays.copyOf(frame, Math.max(frame.length * 2, count + bytes));
+        }
+    }
+}
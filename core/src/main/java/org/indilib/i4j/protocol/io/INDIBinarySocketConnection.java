@@ -0,0 +1,104 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.indilib.i4j.protocol.url.INDIURLBinaryStreamHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Create a socket connection that communicates with the compact binary
+ * encoding of the indi protocol (see {@link INDIBinaryOutputStreamImpl})
+ * instead of xml. The protocol objects are the same, so a server can mix
+ * binary and xml clients.
+ *
+ * @author agent
+ */
+public class INDIBinarySocketConnection extends INDISocketConnection {
+
+    /**
+     * constructor for the binary socket stream.
+     *
+     * @param socket the socket to connect the in and output streams.
+     */
+    public INDIBinarySocketConnection(Socket socket) {
+        super(socket);
+    }
+
+    /**
+     * constructor for the binary socket stream.
+     *
+     * @param channel the blocking socket channel to connect the in and output
+     *                streams.
+     */
+    public INDIBinarySocketConnection(SocketChannel channel) {
+        super(channel);
+    }
+
+    /**
+     * constructor for the binary socket stream.
+     *
+     * @param host the host name to connect to.
+     * @param port the port to connect to.
+     * @throws IOException if the connection fails.
+     */
+    public INDIBinarySocketConnection(String host, int port) throws IOException {
+        super(host, port);
+    }
+
+    @Override
+    protected INDIInputStream createINDIInputStream(InputStream in) throws IOException {
+        return INDIProtocolFactory.createINDIBinaryInputStream(in);
+    }
+
+    @Override
+    protected INDIOutputStream createINDIOutputStream(OutputStream out) throws IOException {
+        return INDIProtocolFactory.createINDIBinaryOutputStream(out, INDIFlushPolicy.DEFAULT);
+    }
+
+    /**
+     * the binary encoding has no xml frames to forward.
+     *
+     * @return always null.
+     */
+    @Override
+    public INDIRawFrameInputStream getINDIRawFrameInputStream() {
+        return null;
+    }
+
+    @Override
+    protected boolean isPlainXml() {
+        return false;
+    }
+
+    @Override
+    protected String getProtocol() {
+        return INDIURLBinaryStreamHandler.PROTOCOL;
+    }
+}
@@ -0,0 +1,91 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct byte buffers for the channel based connections, so that
+ * connections do not allocate (and the jdk does not need temporary direct
+ * buffers) for every read and write.
+ *
+ * @author agent
+ */
+public final class INDIByteBufferPool {
+
+    /**
+     * the size of the pooled buffers.
+     */
+    public static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * the maximum number of buffers kept in the pool.
+     */
+    private static final int MAX_POOLED = Integer.getInteger(INDIByteBufferPool.class.getSimpleName() + ".max", 256);
+
+    /**
+     * the buffers available for reuse.
+     */
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+    /**
+     * the number of buffers in the pool.
+     */
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    /**
+     * utility class never instanciated.
+     */
+    private INDIByteBufferPool() {
+    }
+
+    /**
+     * @return a cleared direct buffer of {@link #BUFFER_SIZE} bytes.
+     */
+    public static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        POOLED.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * give a buffer back to the pool, it may not be used anymore by the
+     * caller.
+     *
+     * @param buffer the buffer to release (null is ignored).
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == BUFFER_SIZE && POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(buffer);
+        } else if (buffer != null && buffer.isDirect() && buffer.capacity() == BUFFER_SIZE) {
+            POOLED.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Input stream that reads a socket channel through a pooled direct buffer.
+ * If the channel carries plain xml the stream can be framed, then it only
+ * hands out complete indi messages as long as they fit in the buffer, so a
+ * reader never blocks in the middle of a message. Messages that are bigger
+ * than the buffer (blobs) are handed out as they arrive. Unframed streams
+ * (e.g. compressed ones) hand out what was read. This replaces the
+ * {@link MinimalBlockinInputStream} for channel based connections.
+ *
+ * @author agent
+ */
+public class INDIChannelInputStream extends InputStream {
+
+    /**
+     * the channel to read from.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * the framer that finds the message boundaries.
+     */
+    private final INDIXmlFramer framer = new INDIXmlFramer();
+
+    /**
+     * should the stream be framed at the message boundaries.
+     */
+    private final boolean framed;
+
+    /**
+     * the pooled buffer in read mode, null after the stream was closed.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * the index in the buffer up to which the bytes may be handed out.
+     */
+    private int frameLimit;
+
+    /**
+     * the index in the buffer up to which the bytes where scanned by the
+     * framer.
+     */
+    private int scanned;
+
+    /**
+     * true if the end of the channel was reached.
+     */
+    private boolean endOfStream;
+
+    /**
+     * constructor around a connected blocking socket channel.
+     *
+     * @param channel the channel to read from.
+     * @param framed  true if the channel carries plain xml and the stream
+     *                should be framed at the message boundaries.
+     */
+    public INDIChannelInputStream(SocketChannel channel, boolean framed) {
+        this.channel = channel;
+        this.framed = framed;
+        buffer = INDIByteBufferPool.acquire();
+        buffer.flip();
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        if (!fillFrame()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fillFrame()) {
+            return -1;
+        }
+        int count = Math.min(len, frameLimit - buffer.position());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    /**
+     * make sure there are bytes to hand out, read from the channel until at
+     * least one message is complete, the buffer is full or the channel
+     * reached its end.
+     *
+     * @return false if there are no more bytes.
+     * @throws IOException if the channel could not be read.
+     */
+    private boolean fillFrame() throws IOException {
+        if (buffer == null) {
+            return false;
+        }
+        if (buffer.position() < frameLimit) {
+            return true;
+        }
+        scanned -= buffer.position();
+        frameLimit = 0;
+        buffer.compact();
+        try {
+            while (!endOfStream && buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    endOfStream = true;
+                } else if (!framed || scanFrames(buffer.position())) {
+                    break;
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+        if (frameLimit <= 0) {
+            // no complete message in the buffer, hand out what there is.
+            frameLimit = buffer.limit();
+        }
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * scan the new bytes in the buffer for message ends.
+     *
+     * @param limit the end of the bytes in the buffer.
+     * @return true if a message end was found.
+     */
+    private boolean scanFrames(int limit) {
+        int frameEnd = framer.findFrameEnd(buffer, scanned, limit);
+        while (frameEnd >= 0) {
+            frameLimit = frameEnd;
+            frameEnd = framer.findFrameEnd(buffer, frameEnd, limit);
+        }
+        scanned = limit;
+        return frameLimit > 0;
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+        if (buffer == null) {
+            return 0;
+        }
+        return frameLimit - buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.shutdownInput();
+        } catch (ClosedChannelException e) {
+            // already closed, so nothing to shut down.
+        }
+        synchronized (this) {
+            INDIByteBufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+}
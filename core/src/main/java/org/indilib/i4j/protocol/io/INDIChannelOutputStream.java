@@ -0,0 +1,167 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Output stream that writes to a socket channel through a pooled direct
+ * buffer, the bytes are only written to the channel when the buffer is full
+ * or the stream is flushed. If the channel was switched to non blocking mode
+ * (because a {@link INDISelectorLoop} reads it) the writer waits with a
+ * private selector till the channel is writable again.
+ *
+ * @author agent
+ */
+public class INDIChannelOutputStream extends OutputStream {
+
+    /**
+     * the maximum milliseconds to wait for a non blocking channel to become
+     * writable before checking it again.
+     */
+    private static final long WRITE_WAIT = 1000L;
+
+    /**
+     * the channel to write to.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * the pooled buffer in write mode, null after the stream was closed.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * the selector to wait for a non blocking channel to become writable,
+     * opened when it is needed the first time.
+     */
+    private Selector writeSelector;
+
+    /**
+     * constructor around a connected blocking socket channel.
+     *
+     * @param channel the channel to write to.
+     */
+    public INDIChannelOutputStream(SocketChannel channel) {
+        this.channel = channel;
+        buffer = INDIByteBufferPool.acquire();
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(remaining, buffer.remaining());
+            buffer.put(b, offset, count);
+            offset += count;
+            remaining -= count;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    /**
+     * write the buffered bytes to the channel.
+     *
+     * @throws IOException if the channel could not be written.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0 && !channel.isBlocking()) {
+                    awaitWritable();
+                }
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * wait till the non blocking channel can accept more bytes.
+     *
+     * @throws IOException if the channel was closed.
+     */
+    private void awaitWritable() throws IOException {
+        if (writeSelector == null) {
+            writeSelector = Selector.open();
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        }
+        if (!channel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+        writeSelector.select(WRITE_WAIT);
+        writeSelector.selectedKeys().clear();
+    }
+
+    /**
+     * @throws IOException if the stream was already closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("stream closed");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            try {
+                if (channel.isOpen()) {
+                    drain();
+                }
+            } finally {
+                INDIByteBufferPool.release(buffer);
+                buffer = null;
+                if (writeSelector != null) {
+                    writeSelector.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Deflater;
+
+/**
+ * Sync flushing deflater output stream with a selectable level and strategy
+ * and an optional {@link INDIZipDictionary}. When the dictionary is used,
+ * new names where seen and the compression window slid far beyond the start,
+ * the compressed stream is finished at a flush and a new zlib stream is
+ * started with the extended dictionary. A restart drops the compression
+ * history, so it is rare. The receiver ({@link INDIInflaterInputStream})
+ * follows automatically.
+ *
+ * @author agent
+ */
+public class INDIDeflaterOutputStream extends FilterOutputStream {
+
+    /**
+     * the number of new names that trigger a new dictionary.
+     */
+    private static final int NEW_NAMES_FOR_RESTART = 8;
+
+    /**
+     * the minimal number of uncompressed bytes in a zlib stream before it is
+     * restarted with a new dictionary.
+     */
+    private static final long RESTART_INTERVAL = 1024L * 1024L;
+
+    /**
+     * the size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * the deflater.
+     */
+    private final Deflater deflater;
+
+    /**
+     * the dictionary of the uncompressed bytes.
+     */
+    private final INDIZipDictionary dictionary = new INDIZipDictionary();
+
+    /**
+     * should the dictionary be used.
+     */
+    private final BooleanSupplier useDictionary;
+
+    /**
+     * the output buffer.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * is a zlib stream started.
+     */
+    private boolean started;
+
+    /**
+     * does the current zlib stream use the dictionary.
+     */
+    private boolean dictionaryStream;
+
+    /**
+     * the number of uncompressed bytes in the current zlib stream.
+     */
+    private long streamBytes;
+
+    /**
+     * constructor.
+     *
+     * @param out           the stream to write the compressed bytes to.
+     * @param level         the compression level (see {@link Deflater}).
+     * @param strategy      the compression strategy (see {@link Deflater}).
+     * @param useDictionary should the dictionary be used, this is checked
+     *                      when a new zlib stream can start.
+     */
+    public INDIDeflaterOutputStream(OutputStream out, int level, int strategy, BooleanSupplier useDictionary) {
+        super(out);
+        this.deflater = new Deflater(level);
+        this.deflater.setStrategy(strategy);
+        this.useDictionary = useDictionary;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{
+                (byte) b
+        }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (!started) {
+            start();
+        }
+        dictionary.update(b, off, len);
+        streamBytes += len;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate(Deflater.NO_FLUSH);
+        }
+    }
+
+    /**
+     * start a new zlib stream, with the dictionary if it should be used.
+     */
+    private void start() {
+        started = true;
+        streamBytes = 0;
+        dictionaryStream = useDictionary.getAsBoolean();
+        if (dictionaryStream) {
+            deflater.setDictionary(dictionary.build());
+        }
+    }
+
+    /**
+     * run the deflater and write the compressed bytes.
+     *
+     * @param flush the flush mode.
+     * @return the number of compressed bytes.
+     * @throws IOException if the stream could not be written.
+     */
+    private int deflate(int flush) throws IOException {
+        int count = deflater.deflate(buffer, 0, buffer.length, flush);
+        if (count > 0) {
+            out.write(buffer, 0, count);
+        }
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (started) {
+            while (deflate(Deflater.SYNC_FLUSH) == buffer.length) {
+                // the buffer was full, so there is more.
+            }
+            if (useDictionary.getAsBoolean() && (!dictionaryStream || dictionary.getNewNames() >= NEW_NAMES_FOR_RESTART && streamBytes >= RESTART_INTERVAL)) {
+                restart();
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * finish the current zlib stream, the next write starts a new one with
+     * the extended dictionary.
+     *
+     * @throws IOException if the stream could not be written.
+     */
+    private void restart() throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(Deflater.NO_FLUSH);
+        }
+        deflater.reset();
+        started = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (started) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+            }
+            out.close();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.api.INDIBLOBSink;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Blob sink that collects the blob content in direct byte buffers from a
+ * small pool. The buffer of a blob stays in use till it is given back with
+ * {@link #release(ByteBuffer)}, buffers that are not released are simply
+ * garbage collected.
+ *
+ * @author agent
+ */
+public class INDIDirectBufferBLOBSink implements INDIBLOBSink {
+
+    /**
+     * the minimum capacity of a new buffer.
+     */
+    private static final int MINIMUM_CAPACITY = 64 * 1024;
+
+    /**
+     * the buffers available for reuse.
+     */
+    private final Deque<ByteBuffer> pool = new ArrayDeque<>();
+
+    /**
+     * the maximum number of buffers kept in the pool.
+     */
+    private final int maxPooled;
+
+    /**
+     * inflate compressed blobs while reading.
+     */
+    private final boolean inflating;
+
+    /**
+     * the buffer of the blob that is currently received.
+     */
+    private ByteBuffer current;
+
+    /**
+     * create a pooled direct buffer sink.
+     *
+     * @param maxPooled the maximum number of released buffers to keep for
+     *                  reuse.
+     * @param inflating inflate compressed blobs while reading.
+     */
+    public INDIDirectBufferBLOBSink(int maxPooled, boolean inflating) {
+        this.maxPooled = maxPooled;
+        this.inflating = inflating;
+    }
+
+    @Override
+    public void start(OneBlob blob, int sizeHint) {
+        if (current != null) {
+            release(current);
+        }
+        current = acquire(Math.max(sizeHint, MINIMUM_CAPACITY));
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        if (current.remaining() < length) {
+            ByteBuffer bigger = acquire(Math.max(current.capacity() * 2, current.position() + length));
+            current.flip();
+            bigger.put(current);
+            release(current);
+            current = bigger;
+        }
+        current.put(bytes, offset, length);
+    }
+
+    @Override
+    public ByteBuffer end() {
+        ByteBuffer result = current;
+        current = null;
+        result.flip();
+        return result;
+    }
+
+    @Override
+    public boolean isInflating() {
+        return inflating;
+    }
+
+    /**
+     * give a buffer back to the pool when the content is not needed anymore.
+     * Views (duplicates) of the buffer can be released the same way.
+     *
+     * @param buffer the buffer to release.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.isReadOnly()) {
+            return;
+        }
+        buffer.clear();
+        synchronized (pool) {
+            if (pool.size() < maxPooled) {
+                pool.push(buffer);
+            }
+        }
+    }
+
+    /**
+     * get a buffer with at least the capacity from the pool or allocate a new
+     * one.
+     *
+     * @param capacity the minimum capacity.
+     * @return the empty buffer.
+     */
+    private ByteBuffer acquire(int capacity) {
+        synchronized (pool) {
+            Iterator<ByteBuffer> buffers = pool.iterator();
+            while (buffers.hasNext()) {
+                ByteBuffer buffer = buffers.next();
+                if (buffer.capacity() >= capacity) {
+                    buffers.remove();
+                    buffer.clear();
+                    return buffer;
+                }
+            }
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+}
@@ -0,0 +1,335 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.OneElement;
+import org.indilib.i4j.protocol.SetBlobVector;
+import org.indilib.i4j.protocol.SetVector;
+import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A protocol object that is sent to many connections, its xml is encoded
+ * only once and the immutable bytes are shared by all connections that write
+ * plain xml (see {@link INDIEncodedOutputStream}). The message is reference
+ * counted: the creator holds the first reference, every queue that keeps the
+ * message takes one with {@link #retain()} and gives it back with
+ * {@link #release()}, the encoded bytes are dropped with the last reference.
+ * A message that is only referenced once is never encoded to bytes, it is
+ * written directly. A message can also be created from the raw bytes of a
+ * received message (see {@link INDIRawFrame}), then the bytes are forwarded
+ * unchanged and the protocol object is only decoded when a connection can
+ * not write the bytes. Blob content that is streamed from a source (a file
+ * for example) is never encoded to a shared buffer, it is streamed to each
+ * connection so it does not have to fit into the heap.
+ *
+ * @author agent
+ */
+public final class INDIEncodedMessage {
+
+    /**
+     * the size reserved for the xml around the blob content.
+     */
+    private static final int XML_OVERHEAD = 1024;
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIEncodedMessage.class);
+
+    /**
+     * the raw frame the message was received as, null if the message was
+     * created from a protocol object.
+     */
+    private final INDIRawFrame frame;
+
+    /**
+     * true if the element has blob content streamed from a source, then it
+     * is never encoded to bytes.
+     */
+    private final boolean streamed;
+
+    /**
+     * the protocol object, null if the raw frame was not (yet) decoded.
+     */
+    private INDIProtocol<?> element;
+
+    /**
+     * the number of references.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * the time ({@link System#nanoTime()}) the message was created.
+     */
+    private final long creationTime = System.nanoTime();
+
+    /**
+     * the encoded xml, null if not (yet) encoded or released.
+     */
+    private byte[] xml;
+
+    /**
+     * the number of valid bytes in {@link #xml}.
+     */
+    private int length;
+
+    /**
+     * create a message with one reference held by the caller, the blob
+     * sources of the element are retained until the message is released.
+     *
+     * @param element the protocol object.
+     */
+    public INDIEncodedMessage(INDIProtocol<?> element) {
+        this.frame = null;
+        this.element = element;
+        this.streamed = INDIBLOBSources.isStreamed(element);
+        INDIBLOBSources.retain(element);
+    }
+
+    /**
+     * create a message around the raw bytes of a received message with one
+     * reference held by the caller.
+     *
+     * @param frame the raw frame.
+     */
+    public INDIEncodedMessage(INDIRawFrame frame) {
+        this.frame = frame;
+        this.streamed = false;
+        this.xml = frame.bytes();
+        this.length = frame.getLength();
+    }
+
+    /**
+     * @return the protocol object, a raw frame is decoded the first time
+     * (null if it could not be decoded).
+     */
+    public synchronized INDIProtocol<?> getElement() {
+        if (element == null && frame != null) {
+            try {
+                element = frame.decode();
+            } catch (IOException e) {
+                LOG.warn("could not decode " + frame, e);
+            }
+        }
+        return element;
+    }
+
+    /**
+     * @return the time ({@link System#nanoTime()}) the message was created,
+     * for a router that is when the message entered the routing.
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return the raw frame the message was received as or null.
+     */
+    public INDIRawFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return the device of the message, without decoding a raw frame.
+     */
+    public String getDevice() {
+        return frame != null ? frame.getDevice() : element.getDevice();
+    }
+
+    /**
+     * @return the name of the message, without decoding a raw frame.
+     */
+    public String getName() {
+        return frame != null ? frame.getName() : element.getName();
+    }
+
+    /**
+     * @return true if the message is a set vector of any type, without
+     * decoding a raw frame.
+     */
+    public boolean isSetVector() {
+        return frame != null ? frame.isSetVector() : element instanceof SetVector<?>;
+    }
+
+    /**
+     * @return true if the message is a blob set vector, without decoding a raw
+     * frame.
+     */
+    public boolean isBlob() {
+        return frame != null ? frame.isBlob() : element instanceof SetBlobVector;
+    }
+
+    /**
+     * take an additional reference.
+     *
+     * @return myself
+     */
+    public INDIEncodedMessage retain() {
+        if (references.getAndIncrement() <= 0) {
+            references.decrementAndGet();
+            throw new IllegalStateException("message was already released");
+        }
+        return this;
+    }
+
+    /**
+     * give a reference back, with the last one the encoded bytes are
+     * dropped and the blob sources of the element released.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            synchronized (this) {
+                xml = null;
+                length = 0;
+                if (frame == null) {
+                    INDIBLOBSources.release(element);
+                }
+            }
+        }
+    }
+
+    /**
+     * write the message to an indi output stream, with the shared bytes if
+     * the stream supports it.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if the stream could not be written.
+     */
+    public void writeTo(INDIOutputStream out) throws IOException {
+        if (out instanceof INDIEncodedOutputStream) {
+            ((INDIEncodedOutputStream) out).writeEncoded(this);
+        } else {
+            out.writeObject(decoded());
+        }
+    }
+
+    /**
+     * write the message to an xml writer, with the shared bytes if the
+     * message is shared or was already encoded and the blob content is not
+     * streamed.
+     *
+     * @param writer the writer to write to.
+     * @throws IOException if the writer could not be written.
+     */
+    public void writeTo(INDIXmlWriter writer) throws IOException {
+        byte[] bytes;
+        int count;
+        synchronized (this) {
+            if (xml == null && !streamed && references.get() > 1) {
+                encode();
+            }
+            bytes = xml;
+            count = length;
+        }
+        if (bytes == null) {
+            writer.write(decoded());
+        } else {
+            writer.writeEncoded(bytes, 0, count);
+        }
+    }
+
+    /**
+     * @return the number of encoded bytes, 0 if the message is not encoded.
+     */
+    public synchronized int getEncodedLength() {
+        return length;
+    }
+
+    /**
+     * @return the protocol object.
+     * @throws IOException if the raw frame could not be decoded.
+     */
+    private INDIProtocol<?> decoded() throws IOException {
+        INDIProtocol<?> decoded = getElement();
+        if (decoded == null) {
+            throw new IOException("could not decode " + frame);
+        }
+        return decoded;
+    }
+
+    /**
+     * encode the protocol object.
+     *
+     * @throws IOException if the object could not be encoded.
+     */
+    private void encode() throws IOException {
+        EncodeBuffer buffer = new EncodeBuffer(estimateSize());
+        INDIXmlWriter writer = new INDIXmlWriter(buffer);
+        writer.write(element);
+        writer.flush();
+        xml = buffer.bytes();
+        length = buffer.size();
+    }
+
+    /**
+     * @return the expected size of the xml, dominated by the base64 blob
+     * content.
+     */
+    private int estimateSize() {
+        long size = XML_OVERHEAD;
+        if (element instanceof SetVector<?>) {
+            for (OneElement<?> one : ((SetVector<?>) element).getElements()) {
+                if (one instanceof OneBlob && ((OneBlob) one).getBlobSource() == null && ((OneBlob) one).getByteBuffer() != null) {
+                    size += (((OneBlob) one).getByteBuffer().remaining() + 2L) / 3L * 4L + XML_OVERHEAD;
+                }
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    @Override
+    public String toString() {
+        return frame != null ? frame.toString() : String.valueOf(element);
+    }
+
+    /**
+     * output stream that exposes its buffer, so the encoded bytes are not
+     * copied again.
+     */
+    private static final class EncodeBuffer extends ByteArrayOutputStream {
+
+        /**
+         * constructor.
+         *
+         * @param size the initial size.
+         */
+        private EncodeBuffer(int size) {
+            super(size);
+        }
+
+        /**
+         * @return the internal buffer, valid up to {@link #size()}.
+         */
+        private byte[] bytes() {
+            return buf;
+        }
+    }
+}
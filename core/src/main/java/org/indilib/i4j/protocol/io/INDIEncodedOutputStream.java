@@ -0,0 +1,45 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.api.INDIOutputStream;
+
+import java.io.IOException;
+
+/**
+ * An indi output stream that can write the shared encoded xml of a message,
+ * instead of encoding the protocol object again for every connection.
+ *
+ * @author agent
+ */
+public interface INDIEncodedOutputStream extends INDIOutputStream {
+
+    /**
+     * Write an encoded message to the output stream. (and flush it according
+     * to the flush policy)
+     *
+     * @param message the message to write
+     * @throws IOException when something went wrong with the underlaying output stream.
+     */
+    void writeEncoded(INDIEncodedMessage message) throws IOException;
+}
@@ -0,0 +1,179 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Locale;
+
+/**
+ * The policy when an indi output stream flushes the written messages to the
+ * underlying stream. Flushing after every message produces one tcp segment
+ * per message and (with a sync flushed deflater) destroys the compression
+ * ratio, so messages written in a burst should leave as one write.
+ * <ul>
+ * <li>immediate: flush after every message (the classic behavior).</li>
+ * <li>threshold: flush when the writers waiting on the stream drained or
+ * when the unflushed bytes reach the threshold.</li>
+ * <li>deadline: when the writers drained, flush after the deadline (in
+ * microseconds) unless more messages fill the threshold before.</li>
+ * </ul>
+ * The default policy is read from the system property
+ * "INDIFlushPolicy.policy" as "immediate", "threshold[:bytes]" or
+ * "deadline[:micros[:bytes]]".
+ *
+ * @author agent
+ */
+public final class INDIFlushPolicy {
+
+    /**
+     * the flush modes.
+     */
+    public enum Mode {
+        /**
+         * flush after every message.
+         */
+        IMMEDIATE,
+        /**
+         * flush when the writers drained or the threshold is reached.
+         */
+        THRESHOLD,
+        /**
+         * flush the deadline after the writers drained or when the threshold
+         * is reached.
+         */
+        DEADLINE
+    }
+
+    /**
+     * the default number of unflushed bytes that force a flush.
+     */
+    public static final int DEFAULT_THRESHOLD = 8 * 1024;
+
+    /**
+     * the default deadline in microseconds.
+     */
+    public static final long DEFAULT_DEADLINE_MICROS = 500L;
+
+    /**
+     * flush after every message.
+     */
+    public static final INDIFlushPolicy IMMEDIATE = new INDIFlushPolicy(Mode.IMMEDIATE, 0L, 0);
+
+    /**
+     * the default policy for new output streams.
+     */
+    public static final INDIFlushPolicy DEFAULT = parse(System.getProperty(INDIFlushPolicy.class.getSimpleName() + ".policy", "threshold"));
+
+    /**
+     * the flush mode.
+     */
+    private final Mode mode;
+
+    /**
+     * the deadline in microseconds.
+     */
+    private final long deadlineMicros;
+
+    /**
+     * the number of unflushed bytes that force a flush.
+     */
+    private final int threshold;
+
+    /**
+     * constructor of the policy.
+     *
+     * @param mode           the flush mode.
+     * @param deadlineMicros the deadline in microseconds.
+     * @param threshold      the number of unflushed bytes that force a flush.
+     */
+    private INDIFlushPolicy(Mode mode, long deadlineMicros, int threshold) {
+        this.mode = mode;
+        this.deadlineMicros = deadlineMicros;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param threshold the number of unflushed bytes that force a flush.
+     * @return a policy that flushes when the writers drained or the threshold
+     * is reached.
+     */
+    public static INDIFlushPolicy threshold(int threshold) {
+        return new INDIFlushPolicy(Mode.THRESHOLD, 0L, threshold);
+    }
+
+    /**
+     * @param deadlineMicros the deadline in microseconds.
+     * @param threshold      the number of unflushed bytes that force a flush.
+     * @return a policy that flushes the deadline after the writers drained
+     * or when the threshold is reached.
+     */
+    public static INDIFlushPolicy deadline(long deadlineMicros, int threshold) {
+        return new INDIFlushPolicy(Mode.DEADLINE, deadlineMicros, threshold);
+    }
+
+    /**
+     * parse a policy description "immediate", "threshold[:bytes]" or
+     * "deadline[:micros[:bytes]]".
+     *
+     * @param description the policy description.
+     * @return the policy (immediate if the description is not valid).
+     */
+    public static INDIFlushPolicy parse(String description) {
+        String[] parts = description.trim().toLowerCase(Locale.US).split(":");
+        try {
+            if ("threshold".equals(parts[0])) {
+                return threshold(parts.length > 1 ? Integer.parseInt(parts[1]) : DEFAULT_THRESHOLD);
+            } else if ("deadline".equals(parts[0])) {
+                return deadline(parts.length > 1 ? Long.parseLong(parts[1]) : DEFAULT_DEADLINE_MICROS, parts.length > 2 ? Integer.parseInt(parts[2]) : DEFAULT_THRESHOLD);
+            }
+        } catch (NumberFormatException e) {
+            return IMMEDIATE;
+        }
+        return IMMEDIATE;
+    }
+
+    /**
+     * @return the flush mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the deadline in microseconds.
+     */
+    public long getDeadlineMicros() {
+        return deadlineMicros;
+    }
+
+    /**
+     * @return the number of unflushed bytes that force a flush.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public String toString() {
+        return mode.name().toLowerCase(Locale.US) + ":" + deadlineMicros + ":" + threshold;
+    }
+}
@@ -0,0 +1,164 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Input stream over the bytes a selector read from a non blocking channel.
+ * The bytes are appended as they arrive, but only the complete indi messages
+ * are handed out, at the end of the complete messages the stream reports the
+ * end of the stream. So a pull parser over this stream never blocks and
+ * returns null instead of waiting for the rest of a message. It is only used
+ * by the single thread of the selector loop.
+ *
+ * @author agent
+ */
+class INDIFrameInputStream extends InputStream {
+
+    /**
+     * the initial (and normal) size of the byte array.
+     */
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    /**
+     * the framer that finds the message boundaries.
+     */
+    private final INDIXmlFramer framer = new INDIXmlFramer();
+
+    /**
+     * the counter of the received bytes.
+     */
+    private final LongAdder received;
+
+    /**
+     * the received bytes.
+     */
+    private byte[] bytes = new byte[INITIAL_SIZE];
+
+    /**
+     * the index of the next byte to hand out.
+     */
+    private int position;
+
+    /**
+     * the index up to which the bytes may be handed out (the end of the last
+     * complete message).
+     */
+    private int frameLimit;
+
+    /**
+     * the number of received bytes in the array, all of them are scanned by
+     * the framer.
+     */
+    private int count;
+
+    /**
+     * constructor.
+     *
+     * @param received the counter of the received bytes.
+     */
+    INDIFrameInputStream(LongAdder received) {
+        this.received = received;
+    }
+
+    /**
+     * append the received bytes to the stream and find the message ends in
+     * them.
+     *
+     * @param buffer the buffer in read mode with the received bytes.
+     * @return true if there is at least one complete message to read.
+     */
+    boolean append(ByteBuffer buffer) {
+        compact(buffer.remaining());
+        int scanned = count;
+        int length = buffer.remaining();
+        buffer.get(bytes, count, length);
+        count += length;
+        received.add(length);
+        int frameEnd = framer.findFrameEnd(bytes, scanned, count);
+        while (frameEnd >= 0) {
+            frameLimit = frameEnd;
+            frameEnd = framer.findFrameEnd(bytes, frameEnd, count);
+        }
+        return available() > 0;
+    }
+
+    /**
+     * drop the bytes that where handed out and make room for the new bytes,
+     * an array that grew for a big message is given up as soon as it is not
+     * needed anymore.
+     *
+     * @param length the number of bytes to make room for.
+     */
+    private void compact(int length) {
+        int remaining = count - position;
+        int size = bytes.length;
+        if (remaining + length > size) {
+            while (remaining + length > size) {
+                size *= 2;
+            }
+        } else if (size > INITIAL_SIZE && remaining + length <= INITIAL_SIZE) {
+            size = INITIAL_SIZE;
+        }
+        if (size != bytes.length) {
+            byte[] newBytes = new byte[size];
+            System.arraycopy(bytes, position, newBytes, 0, remaining);
+            bytes = newBytes;
+        } else if (position > 0) {
+            System.arraycopy(bytes, position, bytes, 0, remaining);
+        }
+        frameLimit -= position;
+        count = remaining;
+        position = 0;
+    }
+
+    @Override
+    public int read() {
+        if (position >= frameLimit) {
+            return -1;
+        }
+        return bytes[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= frameLimit) {
+            return -1;
+        }
+        int length = Math.min(len, frameLimit - position);
+        System.arraycopy(bytes, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public int available() {
+        return frameLimit - position;
+    }
+}
@@ -0,0 +1,197 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflater input stream for indi xml streams that accepts a sequence of zlib
+ * streams, where each may use the {@link INDIZipDictionary} of the stream so
+ * far. Plain zlib streams without dictionary are read as well. Like the
+ * socket streams it never blocks when some bytes can be returned.
+ *
+ * @author agent
+ */
+public class INDIInflaterInputStream extends FilterInputStream {
+
+    /**
+     * the size of the input buffer.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * the inflater.
+     */
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * the dictionary of the uncompressed bytes.
+     */
+    private final INDIZipDictionary dictionary = new INDIZipDictionary();
+
+    /**
+     * the input buffer.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * buffer for single byte reads.
+     */
+    private final byte[] single = new byte[1];
+
+    /**
+     * the number of bytes in the input buffer.
+     */
+    private int count;
+
+    /**
+     * did the other side use a dictionary.
+     */
+    private volatile boolean dictionaryUsed;
+
+    /**
+     * was the end of the compressed stream reached.
+     */
+    private boolean endOfStream;
+
+    /**
+     * constructor.
+     *
+     * @param in the stream to read the compressed bytes from.
+     */
+    public INDIInflaterInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * @return true if the other side used a dictionary.
+     */
+    public boolean isDictionaryUsed() {
+        return dictionaryUsed;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+        return single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        try {
+            while (true) {
+                int inflated = inflater.inflate(b, off, len);
+                if (inflated > 0) {
+                    dictionary.update(b, off, inflated);
+                    return inflated;
+                }
+                if (inflater.needsDictionary()) {
+                    setDictionary();
+                } else if (inflater.finished()) {
+                    int remaining = inflater.getRemaining();
+                    inflater.reset();
+                    inflater.setInput(buffer, count - remaining, remaining);
+                    if (remaining == 0 && !fill()) {
+                        return -1;
+                    }
+                } else if (inflater.needsInput() && !fill()) {
+                    if (endOfStream) {
+                        return -1;
+                    }
+                    throw new ZipException("unexpected end of the compressed stream");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    /**
+     * set the dictionary the next zlib stream needs.
+     *
+     * @throws ZipException if the dictionary is not the indi dictionary.
+     */
+    private void setDictionary() throws ZipException {
+        byte[] bytes = dictionary.build();
+        if (INDIZipDictionary.id(bytes) != inflater.getAdler()) {
+            throw new ZipException("compressed stream uses an unknown dictionary");
+        }
+        inflater.setDictionary(bytes);
+        dictionaryUsed = true;
+    }
+
+    /**
+     * read the next compressed bytes into the input buffer.
+     *
+     * @return false if the end of the stream was reached.
+     * @throws IOException if the stream could not be read.
+     */
+    private boolean fill() throws IOException {
+        count = in.read(buffer, 0, buffer.length);
+        if (count < 0) {
+            count = 0;
+            endOfStream = inflater.getTotalIn() == 0 || inflater.finished();
+            return false;
+        }
+        inflater.setInput(buffer, 0, count);
+        return true;
+    }
+
+    /**
+     * available() should return the number of bytes that can be read without
+     * running into blocking wait. Accomplishing this feast would eventually
+     * require to pre-inflate a huge chunk of data, so we rather opt for a
+     * more relaxed contract.
+     */
+    @Override
+    public int available() throws IOException {
+        if (!inflater.finished() && !inflater.needsInput()) {
+            return 1;
+        }
+        return in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            inflater.end();
+        }
+    }
+}
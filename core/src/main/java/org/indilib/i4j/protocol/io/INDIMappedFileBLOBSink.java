@@ -0,0 +1,151 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.api.INDIBLOBSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Blob sink that writes the blob content into a memory mapped temporary file,
+ * so big blobs do not use heap memory. The file is deleted as soon as the
+ * blob is complete, the mapping stays valid till the buffer is garbage
+ * collected.
+ *
+ * @author agent
+ */
+public class INDIMappedFileBLOBSink implements INDIBLOBSink {
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIMappedFileBLOBSink.class);
+
+    /**
+     * the minimum size of a mapping.
+     */
+    private static final int MINIMUM_CAPACITY = 64 * 1024;
+
+    /**
+     * the directory for the temporary files (null for the default temporary
+     * directory).
+     */
+    private final File directory;
+
+    /**
+     * inflate compressed blobs while reading.
+     */
+    private final boolean inflating;
+
+    /**
+     * the temporary file of the current blob.
+     */
+    private File file;
+
+    /**
+     * the open temporary file of the current blob.
+     */
+    private RandomAccessFile randomAccessFile;
+
+    /**
+     * the mapping of the current blob.
+     */
+    private MappedByteBuffer mapped;
+
+    /**
+     * create a memory mapped file sink.
+     *
+     * @param directory the directory for the temporary files (null for the
+     *                  default temporary directory).
+     * @param inflating inflate compressed blobs while reading.
+     */
+    public INDIMappedFileBLOBSink(File directory, boolean inflating) {
+        this.directory = directory;
+        this.inflating = inflating;
+    }
+
+    @Override
+    public void start(OneBlob blob, int sizeHint) throws IOException {
+        closeFile();
+        file = File.createTempFile("indi-blob", ".tmp", directory);
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(sizeHint, MINIMUM_CAPACITY));
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (mapped.remaining() < length) {
+            int position = mapped.position();
+            long capacity = Math.max(mapped.capacity() * 2L, position + (long) length);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IOException("blob too big for a mapped buffer");
+            }
+            mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            mapped.position(position);
+        }
+        mapped.put(bytes, offset, length);
+    }
+
+    @Override
+    public ByteBuffer end() throws IOException {
+        MappedByteBuffer result = mapped;
+        mapped = null;
+        closeFile();
+        result.flip();
+        return result;
+    }
+
+    @Override
+    public boolean isInflating() {
+        return inflating;
+    }
+
+    /**
+     * close and delete the temporary file of the current blob, the mapping
+     * stays valid.
+     */
+    private void closeFile() {
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                LOG.warn("could not close temporary blob file " + file, e);
+            }
+            randomAccessFile = null;
+        }
+        if (file != null) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a {@link INDIFlushPolicy} to one indi output stream. The writers
+ * announce themselves before they take the lock of the stream, so the last
+ * writer of a burst knows that the queue of writers drained.
+ *
+ * @author agent
+ */
+public final class INDIOutputFlusher {
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIOutputFlusher.class);
+
+    /**
+     * the timer for the deadline flushes, shared by all streams.
+     */
+    private static ScheduledExecutorService timer;
+
+    /**
+     * the policy to apply.
+     */
+    private final INDIFlushPolicy policy;
+
+    /**
+     * the flush operation of the stream, it is called while holding the lock.
+     */
+    private final Flushable target;
+
+    /**
+     * the lock of the stream.
+     */
+    private final Object lock;
+
+    /**
+     * the number of writers waiting for or holding the lock.
+     */
+    private final AtomicInteger writers = new AtomicInteger();
+
+    /**
+     * the scheduled deadline flush, null if none is pending.
+     */
+    private ScheduledFuture<?> pendingFlush;
+
+    /**
+     * true if there are written messages that are not yet flushed.
+     */
+    private boolean dirty;
+
+    /**
+     * the error of a deadline flush, reported to the next writer.
+     */
+    private IOException flushError;
+
+    /**
+     * the deadline flush task.
+     */
+    private final Runnable deadlineFlush = new Runnable() {
+
+        @Override
+        public void run() {
+            synchronized (lock) {
+                pendingFlush = null;
+                try {
+                    flushNow();
+                } catch (IOException e) {
+                    LOG.error("deadline flush failed", e);
+                    flushError = e;
+                }
+            }
+        }
+    };
+
+    /**
+     * constructor.
+     *
+     * @param policy the policy to apply.
+     * @param target the flush operation of the stream.
+     * @param lock   the lock of the stream.
+     */
+    public INDIOutputFlusher(INDIFlushPolicy policy, Flushable target, Object lock) {
+        this.policy = policy;
+        this.target = target;
+        this.lock = lock;
+    }
+
+    /**
+     * announce a writer, call this before taking the lock of the stream.
+     */
+    public void beforeWrite() {
+        writers.incrementAndGet();
+    }
+
+    /**
+     * a writer wrote its message, call this while holding the lock of the
+     * stream (also if the write failed).
+     *
+     * @param unflushedBytes the number of bytes written since the last flush
+     *                       or 0 if unknown.
+     * @throws IOException if the flush failed.
+     */
+    public void afterWrite(long unflushedBytes) throws IOException {
+        boolean drained = writers.decrementAndGet() == 0;
+        dirty = true;
+        if (flushError != null) {
+            IOException error = flushError;
+            flushError = null;
+            throw error;
+        }
+        switch (policy.getMode()) {
+            case THRESHOLD:
+                if (drained || unflushedBytes >= policy.getThreshold()) {
+                    flushNow();
+                }
+                break;
+            case DEADLINE:
+                if (unflushedBytes >= policy.getThreshold()) {
+                    flushNow();
+                } else if (drained && pendingFlush == null) {
+                    pendingFlush = timer().schedule(deadlineFlush, policy.getDeadlineMicros(), TimeUnit.MICROSECONDS);
+                }
+                break;
+            default:
+                flushNow();
+                break;
+        }
+    }
+
+    /**
+     * a writer failed before it wrote its message, call this while holding
+     * the lock of the stream.
+     */
+    public void writeFailed() {
+        writers.decrementAndGet();
+    }
+
+    /**
+     * flush the stream if there are unflushed messages, call this while
+     * holding the lock of the stream.
+     *
+     * @throws IOException if the flush failed.
+     */
+    public void flushNow() throws IOException {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (dirty) {
+            dirty = false;
+            target.flush();
+        }
+    }
+
+    /**
+     * @return the timer for the deadline flushes, created when needed.
+     */
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "indi-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            timer = executor;
+        }
+        return timer;
+    }
+}
@@ -24,6 +24,10 @@ package org.indilib.i4j.protocol.io;
 
 import com.thoughtworks.xstream.core.util.CustomObjectOutputStream;
 import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.NewVector;
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.OneElement;
+import org.indilib.i4j.protocol.SetVector;
 import org.indilib.i4j.protocol.api.INDIOutputStream;
 import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
 import org.slf4j.Logger;
@@ -31,6 +35,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 
 /**
  * OutPut stream of INDIProtocol objects. Serialized to a xml stream.
@@ -53,18 +58,44 @@ public class INDIOutputStreamImpl extends OutputStream implements INDIOutputStre
      */
     private final CustomObjectOutputStream out;
 
+    /**
+     * applies the flush policy.
+     */
+    private final INDIOutputFlusher flusher;
+
     /**
      * Constructor of the indi output stream.
      *
      * @param out the underlaying stream
      */
     protected INDIOutputStreamImpl(CustomObjectOutputStream out) {
+        this(out, INDIFlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Constructor of the indi output stream. The serializer does not report
+     * the written bytes, so the threshold of the flush policy is not used.
+     *
+     * @param out         the underlaying stream
+     * @param flushPolicy when to flush the written messages.
+     */
+    protected INDIOutputStreamImpl(CustomObjectOutputStream out, INDIFlushPolicy flushPolicy) {
         this.out = out;
+        this.flusher = new INDIOutputFlusher(flushPolicy, out, this);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        flusher.flushNow();
     }
 
     @Override
-    public void close() throws IOException {
-        out.close();
+    public synchronized void close() throws IOException {
+        try {
+            flusher.flushNow();
+        } finally {
+            out.close();
+        }
     }
 
     @Override
@@ -73,11 +104,38 @@ public class INDIOutputStreamImpl extends OutputStream implements INDIOutputStre
     }
 
     @Override
-    public synchronized void writeObject(INDIProtocol<?> element) throws IOException {
+    public void writeObject(INDIProtocol<?> element) throws IOException {
         if (LOG.isTraceEnabled()) {
             LOG.trace("sending indi object " + element);
         }
-        out.writeObject(element);
-        out.flush();
+        if (element instanceof SetVector<?>) {
+            prepareBlobs(((SetVector<?>) element).getElements());
+        } else if (element instanceof NewVector<?>) {
+            prepareBlobs(((NewVector<?>) element).getElements());
+        }
+        flusher.beforeWrite();
+        synchronized (this) {
+            try {
+                out.writeObject(element);
+            } catch (IOException | RuntimeException e) {
+                flusher.writeFailed();
+                throw e;
+            }
+            flusher.afterWrite(0L);
+        }
+    }
+
+    /**
+     * xstream only serializes the byte array of a blob, so create it for
+     * blobs that only have a content buffer.
+     *
+     * @param elements the elements of the vector.
+     */
+    private static void prepareBlobs(List<OneElement<?>> elements) {
+        for (OneElement<?> element : elements) {
+            if (element instanceof OneBlob) {
+                ((OneBlob) element).getByteContent();
+            }
+        }
     }
 }
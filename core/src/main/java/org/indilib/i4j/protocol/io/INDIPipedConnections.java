@@ -33,11 +33,17 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Locale;
 
 /**
  * Create two connected INDI protocol streams that have a blocking connection,
- * reading a protokol object will block until one becomes available.
+ * reading a protokol object will block until one becomes available. Each
+ * direction is a {@link INDIRingBuffer}, the capacity, wait strategy and
+ * overflow policy default to the system properties
+ * "INDIPipedConnections.capacity" (1024), "INDIPipedConnections.wait" (park)
+ * and "INDIPipedConnections.overflow" (spill). The default never blocks a
+ * writer, in process drivers that snoop each other would otherwise deadlock
+ * when both pipes are full.
  *
  * @author Richard van Nieuwenhoven
  */
@@ -48,6 +54,23 @@ public final class INDIPipedConnections {
      */
     private static final Logger LOG = LoggerFactory.getLogger(INDIPipedConnections.class);
 
+    /**
+     * the default capacity of the ring buffers.
+     */
+    private static final int DEFAULT_CAPACITY = Integer.getInteger(INDIPipedConnections.class.getSimpleName() + ".capacity", 1024);
+
+    /**
+     * the default wait strategy of the ring buffers.
+     */
+    private static final INDIRingBuffer.WaitStrategy DEFAULT_WAIT_STRATEGY = INDIRingBuffer.WaitStrategy.valueOf(//
+            System.getProperty(INDIPipedConnections.class.getSimpleName() + ".wait", "park").toUpperCase(Locale.US));
+
+    /**
+     * the default overflow policy of the ring buffers.
+     */
+    private static final INDIRingBuffer.OverflowPolicy DEFAULT_OVERFLOW_POLICY = INDIRingBuffer.OverflowPolicy.valueOf(//
+            System.getProperty(INDIPipedConnections.class.getSimpleName() + ".overflow", "spill").toUpperCase(Locale.US));
+
     static {
         INDIURLStreamHandlerFactory.init();
     }
@@ -62,11 +85,23 @@ public final class INDIPipedConnections {
     private final INDIPipedConnection second;
 
     /**
-     * create the piped connection pair.
+     * create the piped connection pair with the default settings.
      */
     public INDIPipedConnections() {
-        LinkedBlockingQueue<INDIProtocol<?>> firstToSecondQueue = new LinkedBlockingQueue<>();
-        LinkedBlockingQueue<INDIProtocol<?>> secondToFirstQueue = new LinkedBlockingQueue<>();
+        this(DEFAULT_CAPACITY, DEFAULT_WAIT_STRATEGY, DEFAULT_OVERFLOW_POLICY);
+    }
+
+    /**
+     * create the piped connection pair.
+     *
+     * @param capacity       the maximum number of protocol objects in each
+     *                       direction.
+     * @param waitStrategy   how the reader and writers wait.
+     * @param overflowPolicy block, drop or spill when a direction is full.
+     */
+    public INDIPipedConnections(int capacity, INDIRingBuffer.WaitStrategy waitStrategy, INDIRingBuffer.OverflowPolicy overflowPolicy) {
+        INDIRingBuffer<INDIProtocol<?>> firstToSecondQueue = new INDIRingBuffer<>(capacity, waitStrategy, overflowPolicy);
+        INDIRingBuffer<INDIProtocol<?>> secondToFirstQueue = new INDIRingBuffer<>(capacity, waitStrategy, overflowPolicy);
         first = new INDIPipedConnection(firstToSecondQueue, secondToFirstQueue);
         second = new INDIPipedConnection(secondToFirstQueue, firstToSecondQueue);
     }
@@ -90,6 +125,14 @@ public final class INDIPipedConnections {
      */
     private static final class INDIPipedConnection implements INDIConnection {
 
+        /**
+         * the ring buffer to read from.
+         */
+        private final INDIRingBuffer<INDIProtocol<?>> inputQueue;
+        /**
+         * the ring buffer to write to.
+         */
+        private final INDIRingBuffer<INDIProtocol<?>> outputQueue;
         /**
          * the input stream of the connection.
          */
@@ -101,27 +144,32 @@ public final class INDIPipedConnections {
         /**
          * a closed indicator to indicate the connection was closed.
          */
-        private boolean closed = false;
+        private volatile boolean closed = false;
 
         /**
-         * constructor of the piped connection with the in and out blocking
-         * queue s as a parameter.
+         * constructor of the piped connection with the in and out ring
+         * buffers as a parameter.
          *
-         * @param inputQueue  the blocking input queue
-         * @param outputQueue the blocking output queue
+         * @param inputQueue  the input ring buffer
+         * @param outputQueue the output ring buffer
          */
-        public INDIPipedConnection(final LinkedBlockingQueue<INDIProtocol<?>> inputQueue,
-                                   final LinkedBlockingQueue<INDIProtocol<?>> outputQueue) {
+        public INDIPipedConnection(final INDIRingBuffer<INDIProtocol<?>> inputQueue,
+                                   final INDIRingBuffer<INDIProtocol<?>> outputQueue) {
+            this.inputQueue = inputQueue;
+            this.outputQueue = outputQueue;
             inputStream = new INDIPipedInputStream(inputQueue, this);
             outputStream = new INDIPipedOutputStream(outputQueue, this);
         }
 
         /**
-         * close the connection.
+         * close the connection, the other end still reads the objects that
+         * where written before and blocked writers of the other end return.
          */
         @Override
         public void close() {
             closed = true;
+            outputQueue.close();
+            inputQueue.close();
         }
 
         @Override
@@ -163,17 +211,17 @@ public final class INDIPipedConnections {
         private final INDIPipedConnection connection;
 
         /**
-         * the wrapped blocking queue.
+         * the wrapped ring buffer.
          */
-        private final LinkedBlockingQueue<INDIProtocol<?>> inputQueue;
+        private final INDIRingBuffer<INDIProtocol<?>> inputQueue;
 
         /**
          * constructor of the wrapper.
          *
-         * @param inputQueue the wrapped blocking queue.
+         * @param inputQueue the wrapped ring buffer.
          * @param connection the parent connection this end is part of.
          */
-        private INDIPipedInputStream(LinkedBlockingQueue<INDIProtocol<?>> inputQueue, INDIPipedConnection connection) {
+        private INDIPipedInputStream(INDIRingBuffer<INDIProtocol<?>> inputQueue, INDIPipedConnection connection) {
             this.inputQueue = inputQueue;
             this.connection = connection;
         }
@@ -184,13 +232,13 @@ public final class INDIPipedConnections {
         }
 
         @Override
-        public INDIProtocol<?> readObject() {
+        public synchronized INDIProtocol<?> readObject() {
             if (connection.isClosed()) {
                 return null;
             }
             try {
                 INDIProtocol<?> readObject = inputQueue.take();
-                if (readObject instanceof INDIProtokolEndMarker) {
+                if (readObject == null) {
                     return null;
                 }
                 readObject.trim();
@@ -213,17 +261,17 @@ public final class INDIPipedConnections {
         private final INDIPipedConnection connection;
 
         /**
-         * the wrapped blocking queue.
+         * the wrapped ring buffer.
          */
-        private final LinkedBlockingQueue<INDIProtocol<?>> outputQueue;
+        private final INDIRingBuffer<INDIProtocol<?>> outputQueue;
 
         /**
          * constructor of the wrapper.
          *
-         * @param outputQueue the wrapped blocking queue.
+         * @param outputQueue the wrapped ring buffer.
          * @param connection  the parent connection this end is part of.
          */
-        private INDIPipedOutputStream(LinkedBlockingQueue<INDIProtocol<?>> outputQueue, INDIPipedConnection connection) {
+        private INDIPipedOutputStream(INDIRingBuffer<INDIProtocol<?>> outputQueue, INDIPipedConnection connection) {
             this.outputQueue = outputQueue;
             this.connection = connection;
         }
@@ -231,11 +279,6 @@ public final class INDIPipedConnections {
         @Override
         public void close() throws IOException {
             connection.close();
-            try {
-                outputQueue.put(new INDIProtokolEndMarker());
-            } catch (InterruptedException e) {
-                LOG.error("closing on a closed stream, ignoring it", e);
-            }
         }
 
         @Override
@@ -243,19 +286,25 @@ public final class INDIPipedConnections {
             if (connection.isClosed()) {
                 throw new IOException("stream closed");
             }
+            // the reader gives the blob sources back after processing the object.
+            INDIBLOBSources.retain(element);
+            boolean queued = false;
             try {
-                outputQueue.put(element);
+                queued = outputQueue.put(element);
+                if (!queued) {
+                    if (outputQueue.isClosed()) {
+                        throw new IOException("stream closed");
+                    }
+                    LOG.warn("pipe full, dropped indi object " + element.getClass().getSimpleName());
+                }
             } catch (InterruptedException e) {
                 connection.close();
                 throw new IOException("queue closed", e);
+            } finally {
+                if (!queued) {
+                    INDIBLOBSources.release(element);
+                }
             }
         }
     }
-
-    /**
-     * Indicator class to indicate the end of stream.
-     */
-    private static final class INDIProtokolEndMarker extends INDIProtocol<Object> {
-
-    }
 }
\ No newline at end of file
@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class implements an indi protocol connector to an other process. the in
@@ -63,6 +64,14 @@ public class INDIProcessConnection implements INDIConnection {
      * the ouput stream from the process serialized from indi protocol objects.
      */
     private INDIOutputStream outputStream;
+    /**
+     * the number of bytes read from the process.
+     */
+    private final LongAdder bytesRead = new LongAdder();
+    /**
+     * the number of bytes written to the process.
+     */
+    private final LongAdder bytesWritten = new LongAdder();
 
     /**
      * construct the indi connection around the process.
@@ -76,15 +85,29 @@ public class INDIProcessConnection implements INDIConnection {
     @Override
     public INDIInputStream getINDIInputStream() throws IOException {
         if (inputStream == null) {
-            inputStream = INDIProtocolFactory.createINDIInputStream(process.getInputStream());
+            inputStream = INDIProtocolFactory.createINDIInputStream(new INDICountingInputStream(process.getInputStream(), bytesRead));
         }
         return inputStream;
     }
 
+    /**
+     * get the input stream of the process as raw message frames, so the
+     * messages can be forwarded without decoding them.
+     *
+     * @return the raw frame input stream or null if the input stream was
+     * already used otherwise.
+     */
+    public INDIRawFrameInputStream getINDIRawFrameInputStream() {
+        if (inputStream == null) {
+            inputStream = new INDIRawFrameInputStream(new INDICountingInputStream(process.getInputStream(), bytesRead));
+        }
+        return inputStream instanceof INDIRawFrameInputStream ? (INDIRawFrameInputStream) inputStream : null;
+    }
+
     @Override
     public INDIOutputStream getINDIOutputStream() throws IOException {
         if (inputStream == null) {
-            outputStream = INDIProtocolFactory.createINDIOutputStream(process.getOutputStream());
+            outputStream = INDIProtocolFactory.createINDIOutputStream(new INDICountingOutputStream(process.getOutputStream(), bytesWritten));
         }
         return outputStream;
     }
@@ -94,6 +117,16 @@ public class INDIProcessConnection implements INDIConnection {
 
     }
 
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
     @Override
     public URL getURL() {
         try {
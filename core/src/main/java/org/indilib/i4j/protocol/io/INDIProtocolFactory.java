@@ -48,6 +48,18 @@ public final class INDIProtocolFactory {
      */
     private static final int BUFFER_SIZE = 16 * 1024;
 
+    /**
+     * the xml parser engine to use for the input streams, "pull" for the
+     * streaming pull parser (default) or "xstream" for the xstream parser.
+     */
+    private static final String PARSER = System.getProperty(INDIProtocolFactory.class.getSimpleName() + ".parser", "pull");
+
+    /**
+     * the xml writer engine to use for the output streams, "direct" for the
+     * direct xml writer (default) or "xstream" for the xstream serializer.
+     */
+    private static final String WRITER = System.getProperty(INDIProtocolFactory.class.getSimpleName() + ".writer", "direct");
+
     /**
      * bytes for a dummy root close tag.
      */
@@ -129,17 +141,38 @@ public final class INDIProtocolFactory {
      * @throws IOException when something went wrong with the underlaying intput stream.
      */
     public static INDIInputStream createINDIInputStream(InputStream in) throws IOException {
+        if (!"xstream".equalsIgnoreCase(PARSER)) {
+            // the pull parser only blocks for the bytes it really needs, the
+            // channel streams hand out complete messages anyway.
+            return new INDIPullInputStreamImpl(in);
+        }
         return new INDIInputStreamImpl(XSTREAM.createObjectInputStream(inputStreamWithRootTag(new BufferedInputStream(new MinimalBlockinInputStream(in), BUFFER_SIZE))));
     }
 
     /**
-     * create an indi protocol output stream around an output stream.
+     * create an indi protocol output stream around an output stream, that
+     * flushes with the default flush policy.
      *
      * @param out the underlaying output stream where the xml will be written.
      * @return the resultung indi output stream
      * @throws IOException when something went wrong with the underlaying output stream.
      */
     public static INDIOutputStream createINDIOutputStream(OutputStream out) throws IOException {
+        return createINDIOutputStream(out, INDIFlushPolicy.DEFAULT);
+    }
+
+    /**
+     * create an indi protocol output stream around an output stream.
+     *
+     * @param out         the underlaying output stream where the xml will be written.
+     * @param flushPolicy when to flush the written messages.
+     * @return the resultung indi output stream
+     * @throws IOException when something went wrong with the underlaying output stream.
+     */
+    public static INDIOutputStream createINDIOutputStream(OutputStream out, INDIFlushPolicy flushPolicy) throws IOException {
+        if (!"xstream".equalsIgnoreCase(WRITER)) {
+            return new INDIXmlOutputStreamImpl(out, flushPolicy);
+        }
         final StatefulWriter statefulWriter = new StatefulWriter(STREAM_DRIVER.createWriter(new BufferedOutputStream(out, BUFFER_SIZE)));
         return new INDIOutputStreamImpl(new CustomObjectOutputStream(new CustomObjectOutputStream.StreamCallback() {
             @Override
@@ -168,7 +201,31 @@ public final class INDIProtocolFactory {
             public void writeToStream(Object object) {
                 XSTREAM.marshal(object, statefulWriter);
             }
-        }));
+        }), flushPolicy);
+    }
+
+    /**
+     * create an indi protocol input stream around an input stream with the
+     * compact binary encoding.
+     *
+     * @param in the underlaying input stream where the frames will be read.
+     * @return the resultung indi input stream
+     */
+    public static INDIInputStream createINDIBinaryInputStream(InputStream in) {
+        return new INDIBinaryInputStreamImpl(in);
+    }
+
+    /**
+     * create an indi protocol output stream around an output stream with the
+     * compact binary encoding.
+     *
+     * @param out         the underlaying output stream where the frames will be
+     *                    written.
+     * @param flushPolicy when to flush the written messages.
+     * @return the resultung indi output stream
+     */
+    public static INDIOutputStream createINDIBinaryOutputStream(OutputStream out, INDIFlushPolicy flushPolicy) {
+        return new INDIBinaryOutputStreamImpl(out, flushPolicy);
     }
 
     /**
@@ -0,0 +1,707 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.*;
+import org.indilib.i4j.protocol.api.INDIBLOBSink;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream of INDIProtocol objects. deserialized from a xml stream with
+ * the streaming {@link INDIPullParser}, without the reflection and the
+ * intermediate object model of xstream. The resulting objects are the same as
+ * the xstream based {@link INDIInputStreamImpl} produces.
+ *
+ * @author agent
+ */
+public class INDIPullInputStreamImpl extends InputStream implements INDIInputStream {
+
+    /**
+     * logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIPullInputStreamImpl.class);
+
+    /**
+     * the size of the chunks blobs are decoded in when streamed to a sink.
+     */
+    private static final int BLOB_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * the initial buffer size for blobs with unknown decoded size.
+     */
+    private static final int BLOB_INITIAL_SIZE = 64 * 1024;
+
+    /**
+     * the format extension of compressed blobs.
+     */
+    private static final String COMPRESSED_EXTENSION = ".z";
+
+    static {
+        INDIURLStreamHandlerFactory.init();
+    }
+
+    /**
+     * the underlying input stream.
+     */
+    private final InputStream in;
+
+    /**
+     * the pull parser reading the xml.
+     */
+    private final INDIPullParser parser;
+
+    /**
+     * the sink to stream blob content to, null to decode blobs to byte
+     * arrays.
+     */
+    private INDIBLOBSink blobSink;
+
+    /**
+     * the blobs read with raw content, null if raw blobs are not accepted.
+     */
+    private List<OneBlob> rawBlobs;
+
+    /**
+     * one byte probe for the end of the blob content.
+     */
+    private final byte[] blobProbe = new byte[1];
+
+    /**
+     * chunk for the decoded blob content when streaming to a sink.
+     */
+    private byte[] blobChunk;
+
+    /**
+     * chunk for the inflated blob content when streaming to a sink.
+     */
+    private byte[] inflatedChunk;
+
+    /**
+     * the reusable inflater for compressed blobs streamed to a sink.
+     */
+    private Inflater inflater;
+
+    /**
+     * create an INDI inputstream over an input stream with xml data.
+     *
+     * @param in the input stream to read the xml from.
+     */
+    protected INDIPullInputStreamImpl(InputStream in) {
+        this.in = in;
+        this.parser = new INDIPullParser(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    @Override
+    public boolean setBLOBSink(INDIBLOBSink sink) {
+        this.blobSink = sink;
+        return true;
+    }
+
+    /**
+     * accept one blob elements with raw content (see
+     * {@link INDIXmlWriter#RAW_BLOB_ATTRIBUTE}), their content is transferred
+     * separately and must be set by the caller.
+     *
+     * @param newRawBlobs the list to add the raw blobs to or null to not
+     *                    accept raw blobs.
+     */
+    protected void setRawBlobs(List<OneBlob> newRawBlobs) {
+        rawBlobs = newRawBlobs;
+    }
+
+    @Override
+    public int read() throws IOException {
+        throw new IOException("not supported method");
+    }
+
+    @Override
+    public INDIProtocol<?> readObject() throws IOException {
+        try {
+            INDIProtocol<?> readObject = null;
+            while (readObject == null) {
+                int event = parser.next();
+                if (event == INDIPullParser.END_DOCUMENT) {
+                    return null;
+                } else if (event == INDIPullParser.END_TAG) {
+                    throw new IOException("unexpected end tag " + parser.getName());
+                }
+                readObject = readElement();
+            }
+            readObject.trim();
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("received indi object " + readObject);
+            }
+            return readObject;
+        } catch (EOFException e) {
+            // the stream ended within an element, the connection was cut.
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("could not deserialize xml", e);
+        }
+    }
+
+    /**
+     * read the current top level element completely.
+     *
+     * @return the protocol object or null if the element was unknown and
+     * skipped.
+     * @throws IOException if the xml could not be read.
+     */
+    private INDIProtocol<?> readElement() throws IOException {
+        String name = parser.getName();
+        switch (name) {
+            case "defTextVector":
+                return readDefVector(new DefTextVector());
+            case "defNumberVector":
+                return readDefVector(new DefNumberVector());
+            case "defSwitchVector":
+                return readDefVector(new DefSwitchVector());
+            case "defLightVector":
+                return readDefVector(new DefLightVector());
+            case "defBLOBVector":
+                return readDefVector(new DefBlobVector());
+            case "setTextVector":
+                return readSetVector(new SetTextVector());
+            case "setNumberVector":
+                return readSetVector(new SetNumberVector());
+            case "setSwitchVector":
+                return readSetVector(new SetSwitchVector());
+            case "setLightVector":
+                return readSetVector(new SetLightVector());
+            case "setBLOBVector":
+                return readSetVector(new SetBlobVector());
+            case "newTextVector":
+                return readNewVector(new NewTextVector());
+            case "newNumberVector":
+                return readNewVector(new NewNumberVector());
+            case "newSwitchVector":
+                return readNewVector(new NewSwitchVector());
+            case "newLightVector":
+                return readNewVector(new NewLightVector());
+            case "newBLOBVector":
+                return readNewVector(new NewBlobVector());
+            case "getProperties":
+                return readEmpty(new GetProperties());
+            case "message":
+                return readEmpty(new Message());
+            case "delProperty":
+                return readEmpty(new DelProperty());
+            case "enableBLOB":
+                EnableBLOB enableBLOB = new EnableBLOB();
+                readAttributes(enableBLOB);
+                return enableBLOB.setTextContent(parser.readText());
+            default:
+                INDIProtocol<?> element = readChildElement();
+                if (element == null) {
+                    LOG.warn("skipping unknown indi element " + name);
+                    parser.skipElement();
+                }
+                return element;
+        }
+    }
+
+    /**
+     * read the current element as a def or one element.
+     *
+     * @return the element or null if the element name is unknown.
+     * @throws IOException if the xml could not be read.
+     */
+    private INDIProtocol<?> readChildElement() throws IOException {
+        switch (parser.getName()) {
+            case "defText":
+                return readDefElement(new DefText());
+            case "defNumber":
+                return readDefElement(new DefNumber());
+            case "defSwitch":
+                return readDefElement(new DefSwitch());
+            case "defLight":
+                return readDefElement(new DefLight());
+            case "defBLOB":
+                return readDefElement(new DefBlob());
+            case "oneText":
+                return readOneElement(new OneText());
+            case "oneNumber":
+                return readOneElement(new OneNumber());
+            case "oneSwitch":
+                return readOneElement(new OneSwitch());
+            case "oneLight":
+                return readOneElement(new OneLight());
+            case "oneBLOB":
+                return readOneBlob(new OneBlob());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * read a def vector with its def elements.
+     *
+     * @param vector the vector to fill.
+     * @return the vector.
+     * @throws IOException if the xml could not be read.
+     */
+    private DefVector<?> readDefVector(DefVector<?> vector) throws IOException {
+        readAttributes(vector);
+        while (parser.next() == INDIPullParser.START_TAG) {
+            INDIProtocol<?> element = readChildElement();
+            if (element instanceof DefElement<?>) {
+                vector.getElements().add((DefElement<?>) element);
+            } else {
+                throw new IOException("unexpected element " + parser.getName() + " in a def vector");
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * read a set vector with its one elements.
+     *
+     * @param vector the vector to fill.
+     * @return the vector.
+     * @throws IOException if the xml could not be read.
+     */
+    private SetVector<?> readSetVector(SetVector<?> vector) throws IOException {
+        readAttributes(vector);
+        while (parser.next() == INDIPullParser.START_TAG) {
+            vector.addElement(readOneChild());
+        }
+        return vector;
+    }
+
+    /**
+     * read a new vector with its one elements.
+     *
+     * @param vector the vector to fill.
+     * @return the vector.
+     * @throws IOException if the xml could not be read.
+     */
+    private NewVector<?> readNewVector(NewVector<?> vector) throws IOException {
+        readAttributes(vector);
+        while (parser.next() == INDIPullParser.START_TAG) {
+            vector.addElement(readOneChild());
+        }
+        return vector;
+    }
+
+    /**
+     * read the current element that must be a one element.
+     *
+     * @return the one element.
+     * @throws IOException if the xml could not be read.
+     */
+    private OneElement<?> readOneChild() throws IOException {
+        INDIProtocol<?> element = readChildElement();
+        if (element instanceof OneElement<?>) {
+            return (OneElement<?>) element;
+        }
+        throw new IOException("unexpected element " + parser.getName() + " in a vector");
+    }
+
+    /**
+     * read a def element with its text content.
+     *
+     * @param element the element to fill.
+     * @return the element.
+     * @throws IOException if the xml could not be read.
+     */
+    private DefElement<?> readDefElement(DefElement<?> element) throws IOException {
+        readAttributes(element);
+        element.setTextContent(parser.readText());
+        return element;
+    }
+
+    /**
+     * read a one element with its text content.
+     *
+     * @param element the element to fill.
+     * @return the element.
+     * @throws IOException if the xml could not be read.
+     */
+    private OneElement<?> readOneElement(OneElement<?> element) throws IOException {
+        readAttributes(element);
+        element.setTextContent(parser.readText());
+        return element;
+    }
+
+    /**
+     * read a one blob element with its base64 content, the size attribute
+     * stays as it was received.
+     *
+     * @param element the element to fill.
+     * @return the element.
+     * @throws IOException if the xml could not be read.
+     */
+    private OneBlob readOneBlob(OneBlob element) throws IOException {
+        readAttributes(element);
+        String size = element.getSize();
+        int sizeHint = 0;
+        if (size != null) {
+            try {
+                sizeHint = Math.max(0, Integer.parseInt(size.trim()));
+            } catch (NumberFormatException e) {
+                sizeHint = 0;
+            }
+        }
+        boolean compressed = element.getFormat() != null && element.getFormat().trim().endsWith(COMPRESSED_EXTENSION);
+        if (rawBlobs != null && isRawBlob()) {
+            parser.skipElement();
+            rawBlobs.add(element);
+            return element;
+        }
+        if (blobSink != null) {
+            return streamOneBlob(element, sizeHint, compressed);
+        }
+        byte[] content = new byte[compressed ? BLOB_INITIAL_SIZE : sizeHint];
+        int length = 0;
+        while (true) {
+            if (length == content.length) {
+                // probe for the end, so a correct size hint needs no copy.
+                if (parser.readBase64(blobProbe, 0, 1) < 0) {
+                    break;
+                }
+                content = Arrays.copyOf(content, Math.max(content.length * 2, BLOB_INITIAL_SIZE));
+                content[length++] = blobProbe[0];
+            }
+            int count = parser.readBase64(content, length, content.length - length);
+            if (count < 0) {
+                break;
+            }
+            length += count;
+        }
+        if (length != content.length) {
+            content = Arrays.copyOf(content, length);
+        }
+        element.setByteContent(content);
+        return element.setSize(size);
+    }
+
+    /**
+     * @return true if the current start tag is marked as blob with raw
+     * content.
+     */
+    private boolean isRawBlob() {
+        for (int index = 0; index < parser.getAttributeCount(); index++) {
+            if (INDIXmlWriter.RAW_BLOB_ATTRIBUTE.equals(parser.getAttributeName(index))) {
+                return INDIXmlWriter.RAW_BLOB_VALUE.equals(parser.getAttributeValue(index));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * read the base64 content of a one blob element into the blob sink,
+     * inflating it if the sink wants it.
+     *
+     * @param element    the element to fill.
+     * @param sizeHint   the expected (uncompressed) size of the content.
+     * @param compressed true if the content is compressed.
+     * @return the element.
+     * @throws IOException if the xml could not be read.
+     */
+    private OneBlob streamOneBlob(OneBlob element, int sizeHint, boolean compressed) throws IOException {
+        String size = element.getSize();
+        boolean inflate = compressed && blobSink.isInflating();
+        if (blobChunk == null) {
+            blobChunk = new byte[BLOB_CHUNK_SIZE];
+        }
+        if (inflate) {
+            if (inflater == null) {
+                inflater = new Inflater();
+                inflatedChunk = new byte[BLOB_CHUNK_SIZE];
+            }
+            inflater.reset();
+        }
+        blobSink.start(element, sizeHint);
+        int count;
+        while ((count = parser.readBase64(blobChunk, 0, blobChunk.length)) >= 0) {
+            if (inflate) {
+                inflate(count);
+            } else {
+                blobSink.write(blobChunk, 0, count);
+            }
+        }
+        ByteBuffer content = blobSink.end();
+        if (inflate) {
+            String format = element.getFormat().trim();
+            element.setFormat(format.substring(0, format.length() - COMPRESSED_EXTENSION.length()));
+            size = Long.toString(inflater.getBytesWritten());
+        }
+        if (content != null) {
+            element.setByteBuffer(content);
+        }
+        return element.setSize(size);
+    }
+
+    /**
+     * inflate a decoded chunk into the blob sink.
+     *
+     * @param count the number of bytes in the decoded chunk.
+     * @throws IOException if the content is not correctly compressed.
+     */
+    private void inflate(int count) throws IOException {
+        inflater.setInput(blobChunk, 0, count);
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(inflatedChunk);
+                if (inflated > 0) {
+                    blobSink.write(inflatedChunk, 0, inflated);
+                } else if (inflater.needsInput()) {
+                    return;
+                } else if (inflater.needsDictionary()) {
+                    throw new IOException("compressed blob needs a preset dictionary");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("blob not correctly compressed", e);
+        }
+    }
+
+    /**
+     * read an element without content.
+     *
+     * @param element the element to fill.
+     * @return the element.
+     * @throws IOException if the xml could not be read.
+     */
+    private INDIProtocol<?> readEmpty(INDIProtocol<?> element) throws IOException {
+        readAttributes(element);
+        parser.skipElement();
+        return element;
+    }
+
+    /**
+     * set the attributes of the current start tag on the protocol object,
+     * unknown attributes are ignored.
+     *
+     * @param element the protocol object.
+     */
+    private void readAttributes(INDIProtocol<?> element) {
+        for (int index = 0; index < parser.getAttributeCount(); index++) {
+            setAttribute(element, parser.getAttributeName(index), parser.getAttributeValue(index));
+        }
+    }
+
+    /**
+     * set one attribute on the protocol object, if the object has such an
+     * attribute.
+     *
+     * @param element the protocol object.
+     * @param name    the attribute name.
+     * @param value   the attribute value.
+     */
+    private static void setAttribute(INDIProtocol<?> element, String name, String value) {
+        switch (name) {
+            case "device":
+                element.setDevice(value);
+                break;
+            case "name":
+                element.setName(value);
+                break;
+            case "message":
+                element.setMessage(value);
+                break;
+            case "timestamp":
+                element.setTimestamp(value);
+                break;
+            default:
+                if (element instanceof DefVector<?>) {
+                    setDefVectorAttribute((DefVector<?>) element, name, value);
+                } else if (element instanceof SetVector<?>) {
+                    setSetVectorAttribute((SetVector<?>) element, name, value);
+                } else if (element instanceof NewVector<?>) {
+                    setNewVectorAttribute((NewVector<?>) element, name, value);
+                } else if (element instanceof DefElement<?>) {
+                    setDefElementAttribute((DefElement<?>) element, name, value);
+                } else if (element instanceof OneNumber) {
+                    setOneNumberAttribute((OneNumber) element, name, value);
+                } else if (element instanceof OneBlob) {
+                    setOneBlobAttribute((OneBlob) element, name, value);
+                } else if (element instanceof GetProperties) {
+                    setGetPropertiesAttribute((GetProperties) element, name, value);
+                } else if (element instanceof DelProperty && "version".equals(name)) {
+                    ((DelProperty) element).setVersion(value);
+                }
+        }
+    }
+
+    /**
+     * set an attribute of a def vector.
+     *
+     * @param vector the vector.
+     * @param name   the attribute name.
+     * @param value  the attribute value.
+     */
+    private static void setDefVectorAttribute(DefVector<?> vector, String name, String value) {
+        switch (name) {
+            case "group":
+                vector.setGroup(value);
+                break;
+            case "label":
+                vector.setLabel(value);
+                break;
+            case "perm":
+                vector.setPerm(value);
+                break;
+            case "state":
+                vector.setState(value);
+                break;
+            case "timeout":
+                vector.setTimeout(value);
+                break;
+            case "rule":
+                if (vector instanceof DefSwitchVector) {
+                    ((DefSwitchVector) vector).setRule(value);
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * set an attribute of a set vector.
+     *
+     * @param vector the vector.
+     * @param name   the attribute name.
+     * @param value  the attribute value.
+     */
+    private static void setSetVectorAttribute(SetVector<?> vector, String name, String value) {
+        if ("state".equals(name)) {
+            vector.setState(value);
+        } else if ("timeout".equals(name)) {
+            vector.setTimeout(value);
+        } else if ("rule".equals(name) && vector instanceof SetSwitchVector) {
+            ((SetSwitchVector) vector).setRule(value);
+        }
+    }
+
+    /**
+     * set an attribute of a new vector.
+     *
+     * @param vector the vector.
+     * @param name   the attribute name.
+     * @param value  the attribute value.
+     */
+    private static void setNewVectorAttribute(NewVector<?> vector, String name, String value) {
+        if ("state".equals(name)) {
+            vector.setState(value);
+        } else if ("timeout".equals(name)) {
+            vector.setTimeout(value);
+        } else if ("rule".equals(name) && vector instanceof NewSwitchVector) {
+            ((NewSwitchVector) vector).setRule(value);
+        }
+    }
+
+    /**
+     * set an attribute of a def element.
+     *
+     * @param element the element.
+     * @param name    the attribute name.
+     * @param value   the attribute value.
+     */
+    private static void setDefElementAttribute(DefElement<?> element, String name, String value) {
+        if ("label".equals(name)) {
+            element.setLabel(value);
+        } else if (element instanceof DefNumber) {
+            DefNumber number = (DefNumber) element;
+            switch (name) {
+                case "format":
+                    number.setFormat(value);
+                    break;
+                case "max":
+                    number.setMax(value);
+                    break;
+                case "min":
+                    number.setMin(value);
+                    break;
+                case "step":
+                    number.setStep(value);
+                    break;
+                default:
+            }
+        }
+    }
+
+    /**
+     * set an attribute of a one number.
+     *
+     * @param element the element.
+     * @param name    the attribute name.
+     * @param value   the attribute value.
+     */
+    private static void setOneNumberAttribute(OneNumber element, String name, String value) {
+        if ("max".equals(name)) {
+            element.setMax(value);
+        } else if ("min".equals(name)) {
+            element.setMin(value);
+        }
+    }
+
+    /**
+     * set an attribute of a one blob.
+     *
+     * @param element the element.
+     * @param name    the attribute name.
+     * @param value   the attribute value.
+     */
+    private static void setOneBlobAttribute(OneBlob element, String name, String value) {
+        if ("format".equals(name)) {
+            element.setFormat(value);
+        } else if ("size".equals(name)) {
+            element.setSize(value);
+        }
+    }
+
+    /**
+     * set an attribute of a get properties.
+     *
+     * @param element the element.
+     * @param name    the attribute name.
+     * @param value   the attribute value.
+     */
+    private static void setGetPropertiesAttribute(GetProperties element, String name, String value) {
+        if ("property".equals(name)) {
+            element.setProperty(value);
+        } else if ("version".equals(name)) {
+            element.setVersion(value);
+        } else if ("maxRate".equals(name)) {
+            element.setMaxRate(value);
+        }
+    }
+}
@@ -0,0 +1,881 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A minimal streaming xml pull parser for the indi protocol. It only knows the
+ * small subset of xml the indi protocol uses (elements, attributes, text,
+ * character references, comments, cdata and processing instructions) and reads
+ * the stream byte by byte from its own buffer. The parser never reads more
+ * from the underlying stream than is needed to complete the current element,
+ * so a message is available as soon as its last byte has arrived. Element and
+ * attribute names of the indi vocabulary are returned as canonical string
+ * instances, so they can be compared by identity and do not allocate.
+ *
+ * @author agent
+ */
+public final class INDIPullParser {
+
+    /**
+     * event type for a start tag.
+     */
+    public static final int START_TAG = 1;
+
+    /**
+     * event type for an end tag.
+     */
+    public static final int END_TAG = 2;
+
+    /**
+     * event type for the end of the stream.
+     */
+    public static final int END_DOCUMENT = 3;
+
+    /**
+     * the size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * initial size of the scratch buffer for names, values and text.
+     */
+    private static final int SCRATCH_SIZE = 256;
+
+    /**
+     * initial number of attribute slots.
+     */
+    private static final int ATTRIBUTE_SLOTS = 8;
+
+    /**
+     * the size of the vocabulary hash table (power of 2).
+     */
+    private static final int VOCABULARY_SIZE = 128;
+
+    /**
+     * the element and attribute names of the indi protocol.
+     */
+    private static final String[] VOCABULARY = {
+            "defTextVector", "defNumberVector", "defSwitchVector", "defLightVector", "defBLOBVector",
+            "defText", "defNumber", "defSwitch", "defLight", "defBLOB",
+            "setTextVector", "setNumberVector", "setSwitchVector", "setLightVector", "setBLOBVector",
+            "newTextVector", "newNumberVector", "newSwitchVector", "newLightVector", "newBLOBVector",
+            "oneText", "oneNumber", "oneSwitch", "oneLight", "oneBLOB",
+            "getProperties", "enableBLOB", "message", "delProperty",
+            "device", "name", "timestamp", "group", "label", "perm", "state", "timeout", "rule",
+            "format", "min", "max", "step", "size", "property", "version"
+    };
+
+    /**
+     * the vocabulary as bytes, hashed by {@link #hash(byte[], int, int)}.
+     */
+    private static final byte[][] VOCABULARY_BYTES = new byte[VOCABULARY_SIZE][];
+
+    /**
+     * the vocabulary as strings, same index as {@link #VOCABULARY_BYTES}.
+     */
+    private static final String[] VOCABULARY_STRINGS = new String[VOCABULARY_SIZE];
+
+    /**
+     * marker in the base64 table for characters that are ignored.
+     */
+    private static final int BASE64_IGNORE = -1;
+
+    /**
+     * marker in the base64 table for the padding character.
+     */
+    private static final int BASE64_PAD = -2;
+
+    /**
+     * the values of the base64 characters.
+     */
+    private static final int[] BASE64_VALUES = new int[256];
+
+    static {
+        Arrays.fill(BASE64_VALUES, BASE64_IGNORE);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int index = 0; index < alphabet.length(); index++) {
+            BASE64_VALUES[alphabet.charAt(index)] = index;
+        }
+        BASE64_VALUES['='] = BASE64_PAD;
+        for (String word : VOCABULARY) {
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            int index = hash(bytes, 0, bytes.length) & (VOCABULARY_SIZE - 1);
+            while (VOCABULARY_BYTES[index] != null) {
+                index = (index + 1) & (VOCABULARY_SIZE - 1);
+            }
+            VOCABULARY_BYTES[index] = bytes;
+            VOCABULARY_STRINGS[index] = word;
+        }
+    }
+
+    /**
+     * the underlying input stream.
+     */
+    private final InputStream in;
+
+    /**
+     * the read buffer.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * the read position in the buffer.
+     */
+    private int position;
+
+    /**
+     * the number of valid bytes in the buffer.
+     */
+    private int limit;
+
+    /**
+     * scratch buffer where names, values and text are collected.
+     */
+    private byte[] scratch = new byte[SCRATCH_SIZE];
+
+    /**
+     * number of valid bytes in the scratch buffer.
+     */
+    private int scratchLength;
+
+    /**
+     * the name of the current tag.
+     */
+    private String name;
+
+    /**
+     * the attribute names of the current start tag.
+     */
+    private String[] attributeNames = new String[ATTRIBUTE_SLOTS];
+
+    /**
+     * the attribute values of the current start tag.
+     */
+    private String[] attributeValues = new String[ATTRIBUTE_SLOTS];
+
+    /**
+     * cache of the canonical device, property and element names.
+     */
+    private final INDISymbolTable.Cache symbols = new INDISymbolTable.Cache();
+
+    /**
+     * number of attributes of the current start tag.
+     */
+    private int attributeCount;
+
+    /**
+     * the current element depth.
+     */
+    private int depth;
+
+    /**
+     * the current start tag was an empty element tag, the next event will be
+     * its end tag.
+     */
+    private boolean pendingEndTag;
+
+    /**
+     * the base64 text was completely read by the last
+     * {@link #readBase64(byte[], int, int)} call, the next call must report
+     * the end.
+     */
+    private boolean base64Ended;
+
+    /**
+     * decoded base64 bytes that did not fit in the target of the last
+     * {@link #readBase64(byte[], int, int)} call.
+     */
+    private final byte[] base64Pending = new byte[2];
+
+    /**
+     * the start of the pending decoded base64 bytes.
+     */
+    private int base64PendingStart;
+
+    /**
+     * the end of the pending decoded base64 bytes.
+     */
+    private int base64PendingEnd;
+
+    /**
+     * create a pull parser over the input stream.
+     *
+     * @param in the input stream to read the xml from.
+     */
+    public INDIPullParser(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * hash a name for the vocabulary lookup.
+     *
+     * @param bytes  the bytes of the name.
+     * @param offset the start of the name.
+     * @param length the length of the name.
+     * @return the hash.
+     */
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = length;
+        for (int index = offset; index < offset + length; index++) {
+            hash = hash * 31 + bytes[index];
+        }
+        return hash ^ (hash >>> 7);
+    }
+
+    /**
+     * @return the current element depth, 0 between top level elements.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the name of the current start or end tag.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of attributes of the current start tag.
+     */
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    /**
+     * @param index the attribute index.
+     * @return the name of the attribute.
+     */
+    public String getAttributeName(int index) {
+        return attributeNames[index];
+    }
+
+    /**
+     * @param index the attribute index.
+     * @return the value of the attribute.
+     */
+    public String getAttributeValue(int index) {
+        return attributeValues[index];
+    }
+
+    /**
+     * Advance to the next start or end tag. Text, comments and processing
+     * instructions between tags are skipped.
+     *
+     * @return the event type {@link #START_TAG}, {@link #END_TAG} or
+     * {@link #END_DOCUMENT} (only between top level elements).
+     * @throws IOException if the stream could not be read or the stream ended
+     *                     within an element.
+     */
+    public int next() throws IOException {
+        if (pendingEndTag) {
+            pendingEndTag = false;
+            depth--;
+            return END_TAG;
+        }
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                if (depth == 0) {
+                    return END_DOCUMENT;
+                }
+                throw new EOFException("stream ended within an element");
+            }
+            if (c == '<') {
+                c = readRequired();
+                if (c == '/') {
+                    readEndTag();
+                    return END_TAG;
+                } else if (c == '?') {
+                    skipTo('?', '>');
+                } else if (c == '!') {
+                    readMarkup(false);
+                } else {
+                    readStartTag(c);
+                    return START_TAG;
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the text content of the current element (directly after its start
+     * tag) up to and including its end tag. Character references and cdata
+     * sections are resolved, nested elements are not allowed.
+     *
+     * @return the text content, an empty string for empty elements.
+     * @throws IOException if the stream could not be read or is not correct.
+     */
+    public String readText() throws IOException {
+        scratchLength = 0;
+        if (pendingEndTag) {
+            pendingEndTag = false;
+            depth--;
+            return "";
+        }
+        while (true) {
+            int c = readRequired();
+            if (c == '<') {
+                c = readRequired();
+                if (c == '/') {
+                    String text = new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+                    readEndTag();
+                    return text;
+                } else if (c == '?') {
+                    skipTo('?', '>');
+                } else if (c == '!') {
+                    readMarkup(true);
+                } else {
+                    throw new IOException("unexpected element in the text of " + name);
+                }
+            } else if (c == '&') {
+                readReference();
+            } else if (c == '\r') {
+                append('\n');
+                if (peek() == '\n') {
+                    position++;
+                }
+            } else {
+                append(c);
+            }
+        }
+    }
+
+    /**
+     * Read and decode the base64 text content of the current element
+     * (directly after its start tag) in chunks, so the content never has to
+     * be completely in memory. Characters outside the base64 alphabet
+     * (whitespace, line breaks) are ignored, comments and processing
+     * instructions are skipped. After the last chunk the end tag of the
+     * element is consumed.
+     *
+     * @param target the array to decode into.
+     * @param offset the offset in the array.
+     * @param length the maximum number of bytes to decode (at least 1).
+     * @return the number of bytes decoded or -1 if the end tag of the element
+     * was reached.
+     * @throws IOException if the stream could not be read or is not correct.
+     */
+    public int readBase64(byte[] target, int offset, int length) throws IOException {
+        int limit = offset + length;
+        int written = offset;
+        while (written < limit && base64PendingStart < base64PendingEnd) {
+            target[written++] = base64Pending[base64PendingStart++];
+        }
+        if (base64Ended) {
+            if (written > offset || base64PendingStart < base64PendingEnd) {
+                return written - offset;
+            }
+            base64Ended = false;
+            return -1;
+        }
+        if (written == limit) {
+            return length;
+        }
+        if (pendingEndTag) {
+            pendingEndTag = false;
+            depth--;
+            return -1;
+        }
+        int bits = 0;
+        int sextets = 0;
+        while (written < limit) {
+            int c = readRequired();
+            int value = BASE64_VALUES[c];
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                if (++sextets == 4) {
+                    written = emitBase64(target, written, limit, bits, 3);
+                    bits = 0;
+                    sextets = 0;
+                }
+            } else if (value == BASE64_PAD || c == '<') {
+                if (sextets == 2) {
+                    written = emitBase64(target, written, limit, bits >> 4, 1);
+                } else if (sextets == 3) {
+                    written = emitBase64(target, written, limit, bits >> 2, 2);
+                }
+                bits = 0;
+                sextets = 0;
+                if (c == '<' && readBase64Markup()) {
+                    base64Ended = true;
+                    break;
+                }
+            } else if (c == '&') {
+                skipTo(';', ';');
+            }
+        }
+        if (base64Ended && written == offset && base64PendingStart == base64PendingEnd) {
+            base64Ended = false;
+            return -1;
+        }
+        return written - offset;
+    }
+
+    /**
+     * put decoded bytes into the target array, the bytes that do not fit are
+     * kept for the next call.
+     *
+     * @param target  the array to decode into.
+     * @param written the current position in the array.
+     * @param limit   the limit in the array.
+     * @param value   the decoded bytes (big endian).
+     * @param count   the number of decoded bytes in the value.
+     * @return the new position in the array.
+     */
+    private int emitBase64(byte[] target, int written, int limit, int value, int count) {
+        int position = written;
+        for (int shift = (count - 1) * Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            if (position < limit) {
+                target[position++] = (byte) (value >> shift);
+            } else {
+                if (base64PendingStart == base64PendingEnd) {
+                    base64PendingStart = 0;
+                    base64PendingEnd = 0;
+                }
+                base64Pending[base64PendingEnd++] = (byte) (value >> shift);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * read markup within base64 text, the '&lt;' is already consumed.
+     *
+     * @return true if it was the end tag of the element.
+     * @throws IOException if the stream could not be read or is not correct.
+     */
+    private boolean readBase64Markup() throws IOException {
+        int c = readRequired();
+        if (c == '/') {
+            readEndTag();
+            return true;
+        } else if (c == '?') {
+            skipTo('?', '>');
+        } else if (c == '!') {
+            readMarkup(false);
+        } else {
+            throw new IOException("unexpected element in the base64 text of " + name);
+        }
+        return false;
+    }
+
+    /**
+     * Skip the rest of the current element (directly after its start tag) up
+     * to and including its end tag.
+     *
+     * @throws IOException if the stream could not be read or is not correct.
+     */
+    public void skipElement() throws IOException {
+        int targetDepth = depth - 1;
+        while (depth > targetDepth) {
+            next();
+        }
+    }
+
+    /**
+     * read the next byte from the stream.
+     *
+     * @return the next byte or -1 at the end of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    private int read() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * read the next byte from the stream, the stream may not end here.
+     *
+     * @return the next byte.
+     * @throws IOException if the stream could not be read or ended.
+     */
+    private int readRequired() throws IOException {
+        if (position >= limit && !fill()) {
+            throw new EOFException("stream ended within an element");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * look at the next byte without consuming it.
+     *
+     * @return the next byte or -1 at the end of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    private int peek() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    /**
+     * refill the buffer from the stream, blocking till at least one byte is
+     * available.
+     *
+     * @return false at the end of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = in.read(buffer, 0, buffer.length);
+        } while (count == 0);
+        if (count < 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    /**
+     * append a byte to the scratch buffer.
+     *
+     * @param c the byte.
+     */
+    private void append(int c) {
+        if (scratchLength == scratch.length) {
+            byte[] newScratch = new byte[scratch.length * 2];
+            System.arraycopy(scratch, 0, newScratch, 0, scratchLength);
+            scratch = newScratch;
+        }
+        scratch[scratchLength++] = (byte) c;
+    }
+
+    /**
+     * append a unicode code point utf-8 encoded to the scratch buffer.
+     *
+     * @param codePoint the code point.
+     */
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            append(codePoint);
+        } else if (codePoint < 0x800) {
+            append(0xC0 | codePoint >> 6);
+            append(0x80 | codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            append(0xE0 | codePoint >> 12);
+            append(0x80 | codePoint >> 6 & 0x3F);
+            append(0x80 | codePoint & 0x3F);
+        } else {
+            append(0xF0 | codePoint >> 18);
+            append(0x80 | codePoint >> 12 & 0x3F);
+            append(0x80 | codePoint >> 6 & 0x3F);
+            append(0x80 | codePoint & 0x3F);
+        }
+    }
+
+    /**
+     * @param c the byte to test.
+     * @return true if the byte is xml whitespace.
+     */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+
+    /**
+     * read a name into the scratch buffer, starting with the given byte.
+     *
+     * @param first the first byte of the name.
+     * @return the first byte after the name.
+     * @throws IOException if the stream could not be read or ended.
+     */
+    private int readName(int first) throws IOException {
+        scratchLength = 0;
+        int c = first;
+        while (!isWhitespace(c) && c != '>' && c != '/' && c != '=') {
+            append(c);
+            c = readRequired();
+        }
+        if (scratchLength == 0) {
+            throw new IOException("xml name expected");
+        }
+        return c;
+    }
+
+    /**
+     * @return the name in the scratch buffer, canonical if it is part of the
+     * indi vocabulary.
+     */
+    private String scratchName() {
+        int index = hash(scratch, 0, scratchLength) & (VOCABULARY_SIZE - 1);
+        byte[] candidate;
+        while ((candidate = VOCABULARY_BYTES[index]) != null) {
+            if (candidate.length == scratchLength && regionEquals(candidate)) {
+                return VOCABULARY_STRINGS[index];
+            }
+            index = (index + 1) & (VOCABULARY_SIZE - 1);
+        }
+        return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param candidate the bytes to compare.
+     * @return true if the scratch buffer starts with the candidate bytes.
+     */
+    private boolean regionEquals(byte[] candidate) {
+        for (int index = 0; index < candidate.length; index++) {
+            if (candidate[index] != scratch[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * skip whitespace.
+     *
+     * @param first the current byte.
+     * @return the first non whitespace byte.
+     * @throws IOException if the stream could not be read or ended.
+     */
+    private int skipWhitespace(int first) throws IOException {
+        int c = first;
+        while (isWhitespace(c)) {
+            c = readRequired();
+        }
+        return c;
+    }
+
+    /**
+     * read a start tag with its attributes, the '&lt;' is already consumed.
+     *
+     * @param first the first byte of the tag name.
+     * @throws IOException if the stream could not be read or is not correct.
+     */
+    private void readStartTag(int first) throws IOException {
+        int c = readName(first);
+        name = scratchName();
+        attributeCount = 0;
+        depth++;
+        while (true) {
+            c = skipWhitespace(c);
+            if (c == '>') {
+                return;
+            } else if (c == '/') {
+                if (readRequired() != '>') {
+                    throw new IOException("'>' expected after '/' in tag " + name);
+                }
+                pendingEndTag = true;
+                return;
+            }
+            c = skipWhitespace(readName(c));
+            if (c != '=') {
+                throw new IOException("'=' expected after attribute in tag " + name);
+            }
+            String attributeName = scratchName();
+            int quote = skipWhitespace(readRequired());
+            if (quote != '"' && quote != '\'') {
+                throw new IOException("quoted attribute value expected in tag " + name);
+            }
+            scratchLength = 0;
+            while ((c = readRequired()) != quote) {
+                if (c == '&') {
+                    readReference();
+                } else if (c == '<') {
+                    throw new IOException("'<' in attribute value of tag " + name);
+                } else {
+                    append(c);
+                }
+            }
+            if (isSymbolAttribute(attributeName)) {
+                addAttribute(attributeName, symbols.symbol(scratch, 0, scratchLength));
+            } else {
+                addAttribute(attributeName, new String(scratch, 0, scratchLength, StandardCharsets.UTF_8));
+            }
+            c = readRequired();
+        }
+    }
+
+    /**
+     * @param attributeName the canonical attribute name.
+     * @return true if the values of the attribute are names of devices,
+     *         properties or elements.
+     */
+    private static boolean isSymbolAttribute(String attributeName) {
+        return "name".equals(attributeName) || "device".equals(attributeName) || "property".equals(attributeName);
+    }
+
+    /**
+     * add an attribute to the current start tag.
+     *
+     * @param attributeName  the name of the attribute.
+     * @param attributeValue the value of the attribute.
+     */
+    private void addAttribute(String attributeName, String attributeValue) {
+        if (attributeCount == attributeNames.length) {
+            String[] newNames = new String[attributeCount * 2];
+            String[] newValues = new String[attributeCount * 2];
+            System.arraycopy(attributeNames, 0, newNames, 0, attributeCount);
+            System.arraycopy(attributeValues, 0, newValues, 0, attributeCount);
+            attributeNames = newNames;
+            attributeValues = newValues;
+        }
+        attributeNames[attributeCount] = attributeName;
+        attributeValues[attributeCount] = attributeValue;
+        attributeCount++;
+    }
+
+    /**
+     * read an end tag, the '&lt;/' is already consumed.
+     *
+     * @throws IOException if the stream could not be read or is not correct.
+     */
+    private void readEndTag() throws IOException {
+        int c = skipWhitespace(readName(readRequired()));
+        if (c != '>') {
+            throw new IOException("'>' expected in end tag");
+        }
+        name = scratchName();
+        if (depth == 0) {
+            throw new IOException("unexpected end tag " + name);
+        }
+        depth--;
+    }
+
+    /**
+     * read a character or entity reference, the '&amp;' is already consumed,
+     * and append the resolved character to the scratch buffer.
+     *
+     * @throws IOException if the stream could not be read or the reference is
+     *                     not known.
+     */
+    private void readReference() throws IOException {
+        int c = readRequired();
+        if (c == '#') {
+            int radix = 10;
+            c = readRequired();
+            if (c == 'x') {
+                radix = 16;
+                c = readRequired();
+            }
+            int codePoint = 0;
+            while (c != ';') {
+                int digit = Character.digit(c, radix);
+                if (digit < 0) {
+                    throw new IOException("illegal character reference");
+                }
+                codePoint = codePoint * radix + digit;
+                c = readRequired();
+            }
+            appendCodePoint(codePoint);
+            return;
+        }
+        int start = scratchLength;
+        while (c != ';') {
+            append(c);
+            c = readRequired();
+        }
+        String entity = new String(scratch, start, scratchLength - start, StandardCharsets.US_ASCII);
+        scratchLength = start;
+        switch (entity) {
+            case "lt":
+                append('<');
+                break;
+            case "gt":
+                append('>');
+                break;
+            case "amp":
+                append('&');
+                break;
+            case "quot":
+                append('"');
+                break;
+            case "apos":
+                append('\'');
+                break;
+            default:
+                throw new IOException("unknown entity reference &" + entity + ";");
+        }
+    }
+
+    /**
+     * read a comment, cdata section or doctype declaration, the '&lt;!' is
+     * already consumed.
+     *
+     * @param keepCData append the content of a cdata section to the scratch
+     *                  buffer.
+     * @throws IOException if the stream could not be read or ended.
+     */
+    private void readMarkup(boolean keepCData) throws IOException {
+        int c = readRequired();
+        if (c == '-') {
+            readRequired();
+            int dashes = 0;
+            while (true) {
+                c = readRequired();
+                if (c == '>' && dashes >= 2) {
+                    return;
+                }
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+        } else if (c == '[') {
+            for (int index = 0; index < "CDATA[".length(); index++) {
+                readRequired();
+            }
+            int brackets = 0;
+            while (true) {
+                c = readRequired();
+                if (c == '>' && brackets >= 2) {
+                    if (keepCData) {
+                        scratchLength -= 2;
+                    }
+                    return;
+                }
+                brackets = c == ']' ? brackets + 1 : 0;
+                if (keepCData) {
+                    append(c);
+                }
+            }
+        } else {
+            skipTo('>', '>');
+        }
+    }
+
+    /**
+     * skip everything up to and including the two byte sequence.
+     *
+     * @param first  the first byte of the sequence.
+     * @param second the second byte of the sequence.
+     * @throws IOException if the stream could not be read or ended.
+     */
+    private void skipTo(int first, int second) throws IOException {
+        int previous = -1;
+        int c = readRequired();
+        while (!(c == second && (previous == first || first == second))) {
+            previous = c;
+            c = readRequired();
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One complete indi message as the original xml bytes. Only the opening tag
+ * is scanned for the element name and its attributes, the content (like the
+ * base64 content of blobs) is never looked at. So a router can decide where
+ * the message goes and forward the bytes unchanged, the message is only
+ * decoded into a protocol object if someone really needs it.
+ *
+ * @author agent
+ */
+public final class INDIRawFrame {
+
+    /**
+     * the element name of blob set messages.
+     */
+    private static final String SET_BLOB_VECTOR = "setBLOBVector";
+
+    /**
+     * the xml bytes of the message, starting with its opening tag.
+     */
+    private final byte[] bytes;
+
+    /**
+     * the element name of the message.
+     */
+    private final String tagName;
+
+    /**
+     * the attributes of the opening tag.
+     */
+    private final Map<String, String> attributes;
+
+    /**
+     * the trimmed device attribute from the symbol table.
+     */
+    private final String device;
+
+    /**
+     * the trimmed name attribute from the symbol table.
+     */
+    private final String name;
+
+    /**
+     * the names of the child elements, null if not scanned or not scannable.
+     */
+    private List<String> elementNames;
+
+    /**
+     * true after the child elements where scanned.
+     */
+    private boolean elementsScanned;
+
+    /**
+     * constructor.
+     *
+     * @param bytes      the xml bytes of the message.
+     * @param tagName    the element name of the message.
+     * @param attributes the attributes of the opening tag.
+     */
+    private INDIRawFrame(byte[] bytes, String tagName, Map<String, String> attributes) {
+        this.bytes = bytes;
+        this.tagName = tagName;
+        this.attributes = attributes;
+        this.device = key(attributes.get("device"));
+        this.name = key(attributes.get("name"));
+    }
+
+    /**
+     * @param value the attribute value or null.
+     * @return the trimmed value from the symbol table, so it matches the
+     * names in the routing maps.
+     */
+    private static String key(String value) {
+        return value == null ? "" : INDISymbolTable.intern(value.trim());
+    }
+
+    /**
+     * scan the opening tag of a message, the text, comments and processing
+     * instructions before it are dropped.
+     *
+     * @param bytes  the bytes that contain the message.
+     * @param offset the index where the message (or the text before it)
+     *               starts.
+     * @param length the number of bytes up to the end of the message.
+     * @return the frame with a copy of the message bytes or null if there is
+     * no element in the bytes.
+     */
+    public static INDIRawFrame scan(byte[] bytes, int offset, int length) {
+        int limit = offset + length;
+        int start = findStartTag(bytes, offset, limit);
+        if (start < 0) {
+            return null;
+        }
+        int index = start + 1;
+        while (index < limit && !isTagEnd(bytes[index])) {
+            index++;
+        }
+        String tagName = new String(bytes, start + 1, index - start - 1, StandardCharsets.UTF_8);
+        Map<String, String> attributes = new HashMap<>();
+        scanAttributes(bytes, index, limit, attributes);
+        return new INDIRawFrame(Arrays.copyOfRange(bytes, start, limit), tagName, attributes);
+    }
+
+    /**
+     * scan the attributes of a tag.
+     *
+     * @param bytes      the bytes that contain the tag.
+     * @param index      the index after the tag name.
+     * @param limit      the index to stop.
+     * @param attributes the map to put the attributes in.
+     * @return the index of the end of the tag ('&gt;' or '/') or the limit.
+     */
+    private static int scanAttributes(byte[] bytes, int index, int limit, Map<String, String> attributes) {
+        while (index < limit) {
+            while (index < limit && isWhitespace(bytes[index])) {
+                index++;
+            }
+            if (index >= limit || bytes[index] == '>' || bytes[index] == '/') {
+                break;
+            }
+            int nameStart = index;
+            while (index < limit && bytes[index] != '=' && !isTagEnd(bytes[index])) {
+                index++;
+            }
+            String name = new String(bytes, nameStart, index - nameStart, StandardCharsets.UTF_8);
+            while (index < limit && bytes[index] != '\'' && bytes[index] != '"' && bytes[index] != '>') {
+                index++;
+            }
+            if (index >= limit || bytes[index] == '>') {
+                break;
+            }
+            byte quote = bytes[index++];
+            int valueStart = index;
+            while (index < limit && bytes[index] != quote) {
+                index++;
+            }
+            attributes.put(name, unescape(new String(bytes, valueStart, index - valueStart, StandardCharsets.UTF_8)));
+            index++;
+        }
+        return Math.min(index, limit);
+    }
+
+    /**
+     * find the first start tag, skipping comments, processing instructions
+     * and declarations.
+     *
+     * @param bytes  the bytes to search.
+     * @param offset the index to start.
+     * @param limit  the index to stop.
+     * @return the index of the '&lt;' of the start tag or -1 if there is none.
+     */
+    private static int findStartTag(byte[] bytes, int offset, int limit) {
+        int index = offset;
+        while (index < limit - 1) {
+            if (bytes[index] != '<') {
+                index++;
+            } else if (bytes[index + 1] == '?') {
+                index = skipTo(bytes, index + 2, limit, "?>");
+            } else if (bytes[index + 1] == '!' && index + 3 < limit && bytes[index + 2] == '-' && bytes[index + 3] == '-') {
+                index = skipTo(bytes, index + 4, limit, "-->");
+            } else if (bytes[index + 1] == '!' || bytes[index + 1] == '/') {
+                index = skipTo(bytes, index + 2, limit, ">");
+            } else {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * skip the bytes up to and including an end sequence.
+     *
+     * @param bytes the bytes to search.
+     * @param index the index to start.
+     * @param limit the index to stop.
+     * @param end   the (ascii) end sequence.
+     * @return the index after the end sequence or the limit.
+     */
+    private static int skipTo(byte[] bytes, int index, int limit, String end) {
+        for (int current = index; current <= limit - end.length(); current++) {
+            int matched = 0;
+            while (matched < end.length() && bytes[current + matched] == end.charAt(matched)) {
+                matched++;
+            }
+            if (matched == end.length()) {
+                return current + matched;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @param b the byte.
+     * @return true if the byte is xml whitespace.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * @param b the byte.
+     * @return true if the byte ends a tag or attribute name.
+     */
+    private static boolean isTagEnd(byte b) {
+        return isWhitespace(b) || b == '>' || b == '/';
+    }
+
+    /**
+     * replace the entity and character references in an attribute value.
+     *
+     * @param value the raw attribute value.
+     * @return the attribute value.
+     */
+    private static String unescape(String value) {
+        int ampersand = value.indexOf('&');
+        if (ampersand < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        int index = 0;
+        while (ampersand >= 0) {
+            int semicolon = value.indexOf(';', ampersand);
+            if (semicolon < 0) {
+                break;
+            }
+            result.append(value, index, ampersand);
+            String entity = value.substring(ampersand + 1, semicolon);
+            if ("amp".equals(entity)) {
+                result.append('&');
+            } else if ("lt".equals(entity)) {
+                result.append('<');
+            } else if ("gt".equals(entity)) {
+                result.append('>');
+            } else if ("quot".equals(entity)) {
+                result.append('"');
+            } else if ("apos".equals(entity)) {
+                result.append('\'');
+            } else if (entity.startsWith("#")) {
+                appendCharacterReference(result, entity);
+            } else {
+                result.append(value, ampersand, semicolon + 1);
+            }
+            index = semicolon + 1;
+            ampersand = value.indexOf('&', index);
+        }
+        return result.append(value, index, value.length()).toString();
+    }
+
+    /**
+     * append the character of a numeric character reference, an invalid
+     * reference is kept as it is.
+     *
+     * @param result the string to append to.
+     * @param entity the reference without the '&amp;' and ';'.
+     */
+    private static void appendCharacterReference(StringBuilder result, String entity) {
+        try {
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                result.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+            } else {
+                result.appendCodePoint(Integer.parseInt(entity.substring(1)));
+            }
+        } catch (IllegalArgumentException e) {
+            result.append('&').append(entity).append(';');
+        }
+    }
+
+    /**
+     * @return the element name of the message.
+     */
+    public String getTagName() {
+        return tagName;
+    }
+
+    /**
+     * @param name the attribute name.
+     * @return the value of the attribute of the opening tag or null if the
+     * tag has no such attribute.
+     */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * @return the trimmed device attribute or an empty string.
+     */
+    public String getDevice() {
+        return device;
+    }
+
+    /**
+     * @return the trimmed name attribute or an empty string.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * scan the names of the child elements (the elements of a vector), the
+     * content is not decoded.
+     *
+     * @return the names in document order or null if the content could not
+     * be scanned safely (like cdata sections).
+     */
+    public synchronized List<String> getElementNames() {
+        if (!elementsScanned) {
+            elementNames = scanElementNames();
+            elementsScanned = true;
+        }
+        return elementNames;
+    }
+
+    /**
+     * scan the name attributes of the direct children of the message.
+     *
+     * @return the names or null if the content is not plain child elements
+     * and text.
+     */
+    private List<String> scanElementNames() {
+        int index = 1;
+        while (index < bytes.length && !isTagEnd(bytes[index])) {
+            index++;
+        }
+        index = scanAttributes(bytes, index, bytes.length, new HashMap<String, String>());
+        if (index >= bytes.length) {
+            return null;
+        }
+        if (bytes[index] == '/') {
+            // an empty message.
+            return Collections.emptyList();
+        }
+        index++;
+        List<String> names = new ArrayList<>();
+        int depth = 1;
+        while (depth > 0) {
+            while (index < bytes.length && bytes[index] != '<') {
+                index++;
+            }
+            if (index + 1 >= bytes.length) {
+                return null;
+            }
+            byte next = bytes[index + 1];
+            if (next == '/') {
+                depth--;
+                index = skipTo(bytes, index + 2, bytes.length, ">");
+            } else if (next == '!' || next == '?') {
+                // comments, cdata and processing instructions are left to
+                // the decoder.
+                return null;
+            } else {
+                int nameEnd = index + 1;
+                while (nameEnd < bytes.length && !isTagEnd(bytes[nameEnd])) {
+                    nameEnd++;
+                }
+                Map<String, String> childAttributes = new HashMap<>();
+                int tagEnd = scanAttributes(bytes, nameEnd, bytes.length, childAttributes);
+                if (tagEnd >= bytes.length) {
+                    return null;
+                }
+                if (depth == 1) {
+                    names.add(key(childAttributes.get("name")));
+                }
+                if (bytes[tagEnd] != '/') {
+                    depth++;
+                }
+                index = skipTo(bytes, tagEnd, bytes.length, ">");
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return true if the message is a set vector of any type.
+     */
+    public boolean isSetVector() {
+        return tagName.startsWith("set") && tagName.endsWith("Vector");
+    }
+
+    /**
+     * @return true if the message is a blob set vector.
+     */
+    public boolean isBlob() {
+        return SET_BLOB_VECTOR.equals(tagName);
+    }
+
+    /**
+     * @return the number of xml bytes of the message.
+     */
+    public int getLength() {
+        return bytes.length;
+    }
+
+    /**
+     * @return the xml bytes of the message, the array must not be changed.
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * decode the message into a protocol object.
+     *
+     * @return the protocol object or null if the element is no indi message.
+     * @throws IOException if the bytes could not be parsed.
+     */
+    public INDIProtocol<?> decode() throws IOException {
+        INDIInputStream in = INDIProtocolFactory.createINDIInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return tagName + "(" + getDevice() + "." + getName() + ", " + bytes.length + " bytes)";
+    }
+}
@@ -0,0 +1,154 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Indi input stream that cuts the xml stream into the raw frames of the
+ * messages (see {@link INDIRawFrame}), without parsing their content. The
+ * frames can still be decoded one by one, so the stream can also be used as
+ * a normal indi input stream.
+ *
+ * @author agent
+ */
+public class INDIRawFrameInputStream implements INDIInputStream {
+
+    /**
+     * the initial (and normal) size of the byte array.
+     */
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    /**
+     * the stream with the xml bytes.
+     */
+    private final InputStream in;
+
+    /**
+     * the framer that finds the message boundaries.
+     */
+    private final INDIXmlFramer framer = new INDIXmlFramer();
+
+    /**
+     * the read bytes.
+     */
+    private byte[] bytes = new byte[INITIAL_SIZE];
+
+    /**
+     * the index where the next message starts.
+     */
+    private int position;
+
+    /**
+     * the index up to which the bytes are scanned by the framer.
+     */
+    private int scanned;
+
+    /**
+     * the number of read bytes in the array.
+     */
+    private int count;
+
+    /**
+     * constructor.
+     *
+     * @param in the stream with the xml bytes.
+     */
+    public INDIRawFrameInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * read the next message as a raw frame, blocks till the message is
+     * complete.
+     *
+     * @return the frame or null at the end of the stream.
+     * @throws IOException if the stream could not be read.
+     */
+    public INDIRawFrame readFrame() throws IOException {
+        while (true) {
+            int frameEnd = framer.findFrameEnd(bytes, scanned, count);
+            if (frameEnd >= 0) {
+                INDIRawFrame frame = INDIRawFrame.scan(bytes, position, frameEnd - position);
+                position = frameEnd;
+                scanned = frameEnd;
+                if (frame != null) {
+                    return frame;
+                }
+            } else {
+                scanned = count;
+                compact();
+                int read = in.read(bytes, count, bytes.length - count);
+                if (read < 0) {
+                    return null;
+                }
+                count += read;
+            }
+        }
+    }
+
+    /**
+     * drop the bytes of the returned frames and make room to read more, an
+     * array that grew for a big message is given up as soon as it is not
+     * needed anymore.
+     */
+    private void compact() {
+        int remaining = count - position;
+        int size = bytes.length;
+        if (remaining == size) {
+            size *= 2;
+        } else if (size > INITIAL_SIZE && remaining < INITIAL_SIZE / 2) {
+            size = INITIAL_SIZE;
+        }
+        if (size != bytes.length) {
+            byte[] newBytes = new byte[size];
+            System.arraycopy(bytes, position, newBytes, 0, remaining);
+            bytes = newBytes;
+        } else if (position > 0) {
+            System.arraycopy(bytes, position, bytes, 0, remaining);
+        }
+        scanned -= position;
+        count = remaining;
+        position = 0;
+    }
+
+    @Override
+    public INDIProtocol<?> readObject() throws IOException {
+        for (INDIRawFrame frame = readFrame(); frame != null; frame = readFrame()) {
+            INDIProtocol<?> message = frame.decode();
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,358 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single producer single consumer ring buffer (unbounded with the
+ * spill overflow policy). The producer and the
+ * consumer only share the two volatile indexes, so neither side takes a lock
+ * or allocates. Multiple producers are only allowed if they are serialized
+ * by an external lock (the same holds for consumers).
+ *
+ * @param <T> the type of the elements.
+ * @author agent
+ */
+public final class INDIRingBuffer<T> {
+
+    /**
+     * how to wait for an element or for free space.
+     */
+    public enum WaitStrategy {
+        /**
+         * busy spin, lowest latency but burns a cpu while waiting (only
+         * usable if producer and consumer have a core of their own).
+         */
+        SPIN,
+        /**
+         * yield the cpu between the checks.
+         */
+        YIELD,
+        /**
+         * park the thread until the other side signals it.
+         */
+        PARK
+    }
+
+    /**
+     * what to do with a new element when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * block the producer until there is free space.
+         */
+        BLOCK,
+        /**
+         * drop the new element.
+         */
+        DROP,
+        /**
+         * keep the elements that do not fit in an unbounded overflow queue
+         * until the consumer catches up, the producer never waits.
+         */
+        SPILL
+    }
+
+    /**
+     * the maximum time to park, as safety net for a missed signal.
+     */
+    private static final long MAX_PARK_NANOS = 1000000L;
+
+    /**
+     * the elements.
+     */
+    private final Object[] elements;
+
+    /**
+     * the mask to map an index to the elements array.
+     */
+    private final int mask;
+
+    /**
+     * the elements that did not fit, in order after the ones in the ring
+     * (only for {@link OverflowPolicy#SPILL}).
+     */
+    private final Queue<T> spill;
+
+    /**
+     * how to wait.
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * what to do when the buffer is full.
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * the index of the next element to take, written by the consumer.
+     */
+    private volatile long head;
+
+    /**
+     * the index of the next element to put, written by the producer.
+     */
+    private volatile long tail;
+
+    /**
+     * the last head index the producer has seen.
+     */
+    private long producerHead;
+
+    /**
+     * the last tail index the consumer has seen.
+     */
+    private long consumerTail;
+
+    /**
+     * the number of dropped elements, written by the producer.
+     */
+    private volatile long dropped;
+
+    /**
+     * the parked consumer or null.
+     */
+    private volatile Thread waitingConsumer;
+
+    /**
+     * the parked producer or null.
+     */
+    private volatile Thread waitingProducer;
+
+    /**
+     * is the buffer closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * create a ring buffer.
+     *
+     * @param capacity       the minimal capacity, rounded up to a power of 2.
+     * @param waitStrategy   how to wait.
+     * @param overflowPolicy what to do when the buffer is full.
+     */
+    public INDIRingBuffer(int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("illegal capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size = size << 1;
+        }
+        this.elements = new Object[size];
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        this.spill = overflowPolicy == OverflowPolicy.SPILL ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    /**
+     * add an element if there is free space (and nothing was spilled).
+     *
+     * @param element the element to add.
+     * @return true if the element was added.
+     */
+    public boolean offer(T element) {
+        if (spill != null && !spill.isEmpty()) {
+            // keep the order, the spilled elements go first.
+            return false;
+        }
+        long index = tail;
+        if (index - producerHead >= elements.length) {
+            producerHead = head;
+            if (index - producerHead >= elements.length) {
+                return false;
+            }
+        }
+        elements[(int) index & mask] = element;
+        tail = index + 1;
+        Thread waiter = waitingConsumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    /**
+     * add an element, if the buffer is full the overflow policy decides if
+     * the producer waits or the element is dropped.
+     *
+     * @param element the element to add.
+     * @return true if the element was added, false if it was dropped or the
+     * buffer is closed.
+     * @throws InterruptedException if the producer was interrupted while
+     *                              waiting.
+     */
+    public boolean put(T element) throws InterruptedException {
+        while (!closed) {
+            if (offer(element)) {
+                return true;
+            }
+            if (overflowPolicy == OverflowPolicy.DROP) {
+                dropped++;
+                return false;
+            } else if (overflowPolicy == OverflowPolicy.SPILL) {
+                spill.add(element);
+                Thread waiter = waitingConsumer;
+                if (waiter != null) {
+                    LockSupport.unpark(waiter);
+                }
+                return true;
+            }
+            idle(false);
+        }
+        return false;
+    }
+
+    /**
+     * @return the next element or null if the buffer is empty.
+     */
+    public T poll() {
+        long index = head;
+        if (index >= consumerTail) {
+            consumerTail = tail;
+            if (index >= consumerTail) {
+                // the ring is empty, so spilled elements are the oldest.
+                return spill == null ? null : spill.poll();
+            }
+        }
+        int offset = (int) index & mask;
+        @SuppressWarnings("unchecked")
+        T element = (T) elements[offset];
+        elements[offset] = null;
+        head = index + 1;
+        Thread waiter = waitingProducer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return element;
+    }
+
+    /**
+     * take the next element, waiting until one is available.
+     *
+     * @return the next element or null if the buffer was closed and all
+     * elements are taken.
+     * @throws InterruptedException if the consumer was interrupted while
+     *                              waiting.
+     */
+    public T take() throws InterruptedException {
+        T element = poll();
+        while (element == null) {
+            if (closed) {
+                // elements added before the close are still delivered.
+                return poll();
+            }
+            idle(true);
+            element = poll();
+        }
+        return element;
+    }
+
+    /**
+     * wait a short time according to the wait strategy.
+     *
+     * @param consumer true if the consumer waits for an element, false if the
+     *                 producer waits for free space.
+     * @throws InterruptedException if the thread was interrupted.
+     */
+    private void idle(boolean consumer) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (waitStrategy == WaitStrategy.YIELD) {
+            Thread.yield();
+        } else if (waitStrategy == WaitStrategy.PARK) {
+            Thread current = Thread.currentThread();
+            if (consumer) {
+                waitingConsumer = current;
+                if (isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                waitingConsumer = null;
+            } else {
+                waitingProducer = current;
+                if (size() >= elements.length && !closed) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                waitingProducer = null;
+            }
+        }
+    }
+
+    /**
+     * close the buffer, waiting producers and consumers return and the
+     * consumer gets the remaining elements.
+     */
+    public void close() {
+        closed = true;
+        Thread waiter = waitingConsumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        waiter = waitingProducer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * @return true if the buffer was closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return true if the buffer has no elements.
+     */
+    public boolean isEmpty() {
+        return head >= tail && (spill == null || spill.isEmpty());
+    }
+
+    /**
+     * @return the number of elements in the buffer (a snapshot).
+     */
+    public int size() {
+        long currentHead = head;
+        return (int) (tail - currentHead) + (spill == null ? 0 : spill.size());
+    }
+
+    /**
+     * @return the number of elements in the ring, the buffer holds more if
+     * the overflow policy is {@link OverflowPolicy#SPILL}.
+     */
+    public int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * @return the number of elements dropped because the buffer was full.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
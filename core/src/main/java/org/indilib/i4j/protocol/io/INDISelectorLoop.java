@@ -0,0 +1,397 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Event loop that accepts and reads socket channels with a selector, a small
+ * fixed number of io threads serve all connections instead of one reader
+ * thread per connection. The received bytes are framed at the message
+ * boundaries and only complete messages are parsed, so the io threads never
+ * block on a slow peer. The parsed messages are passed to the listener of
+ * the connection on the io thread.
+ *
+ * @author agent
+ */
+public class INDISelectorLoop implements Closeable {
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDISelectorLoop.class);
+
+    /**
+     * the number of io threads (each with its own selector).
+     */
+    private static final int THREADS = Integer.getInteger(INDISelectorLoop.class.getSimpleName() + ".threads", Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    static {
+        INDIURLStreamHandlerFactory.init();
+    }
+
+    /**
+     * callback for the accepted connections of a server channel.
+     */
+    public interface Acceptor {
+
+        /**
+         * a new connection was accepted, called on the io thread.
+         *
+         * @param channel the new (blocking) channel.
+         */
+        void accepted(SocketChannel channel);
+    }
+
+    /**
+     * callback for the messages read from a channel.
+     */
+    public interface Listener {
+
+        /**
+         * a complete message was read, called on the io thread.
+         *
+         * @param message the message.
+         */
+        void received(INDIProtocol<?> message);
+
+        /**
+         * the channel reached its end or could not be read anymore, the
+         * channel is not read anymore.
+         */
+        void finished();
+    }
+
+    /**
+     * the io threads.
+     */
+    private final Worker[] workers;
+
+    /**
+     * the index of the next worker to register a channel with.
+     */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * true as long as the loop was not closed.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * start a selector loop with the configured number of io threads.
+     *
+     * @param name the base name of the io threads.
+     * @throws IOException if the selectors could not be opened.
+     */
+    public INDISelectorLoop(String name) throws IOException {
+        workers = new Worker[Math.max(1, THREADS)];
+        try {
+            for (int index = 0; index < workers.length; index++) {
+                workers[index] = new Worker(name + " " + index);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * accept the connections of a server channel on the first io thread.
+     *
+     * @param server   the bound server channel.
+     * @param acceptor the callback for the accepted connections.
+     * @throws IOException if the channel could not be switched to non
+     *                     blocking mode.
+     */
+    public void accept(ServerSocketChannel server, Acceptor acceptor) throws IOException {
+        server.configureBlocking(false);
+        workers[0].register(server, SelectionKey.OP_ACCEPT, new AcceptHandler(server, acceptor));
+    }
+
+    /**
+     * read a channel on one of the io threads, the channel is switched to non
+     * blocking mode.
+     *
+     * @param channel  the channel to read.
+     * @param frames   the stream the received bytes are appended to.
+     * @param messages the message stream that parses the frames.
+     * @param listener the callback for the parsed messages.
+     * @throws IOException if the channel could not be switched to non
+     *                     blocking mode.
+     */
+    void read(SocketChannel channel, INDIFrameInputStream frames, INDIInputStream messages, Listener listener) throws IOException {
+        channel.configureBlocking(false);
+        Worker worker = workers[Math.abs(next.getAndIncrement() % workers.length)];
+        worker.register(channel, SelectionKey.OP_READ, new ReadHandler(channel, frames, messages, listener));
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (Worker worker : workers) {
+            if (worker != null) {
+                worker.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * the attachment of a selection key that handles the ready operations.
+     */
+    private interface Handler {
+
+        /**
+         * the channel of the key is ready.
+         *
+         * @param key    the selected key.
+         * @param buffer the read buffer of the io thread.
+         */
+        void ready(SelectionKey key, ByteBuffer buffer);
+    }
+
+    /**
+     * handler of a server channel.
+     */
+    private static final class AcceptHandler implements Handler {
+
+        /**
+         * the server channel.
+         */
+        private final ServerSocketChannel server;
+
+        /**
+         * the callback for the accepted connections.
+         */
+        private final Acceptor acceptor;
+
+        /**
+         * constructor.
+         *
+         * @param server   the server channel.
+         * @param acceptor the callback for the accepted connections.
+         */
+        private AcceptHandler(ServerSocketChannel server, Acceptor acceptor) {
+            this.server = server;
+            this.acceptor = acceptor;
+        }
+
+        @Override
+        public void ready(SelectionKey key, ByteBuffer buffer) {
+            try {
+                for (SocketChannel channel = server.accept(); channel != null; channel = server.accept()) {
+                    try {
+                        acceptor.accepted(channel);
+                    } catch (Exception e) {
+                        LOG.error("could not accept connection", e);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("server channel has stopped accepting connections", e);
+                key.cancel();
+            }
+        }
+    }
+
+    /**
+     * handler of a connection channel.
+     */
+    private static final class ReadHandler implements Handler {
+
+        /**
+         * the channel to read.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * the stream the received bytes are appended to.
+         */
+        private final INDIFrameInputStream frames;
+
+        /**
+         * the message stream that parses the frames.
+         */
+        private final INDIInputStream messages;
+
+        /**
+         * the callback for the parsed messages.
+         */
+        private final Listener listener;
+
+        /**
+         * constructor.
+         *
+         * @param channel  the channel to read.
+         * @param frames   the stream the received bytes are appended to.
+         * @param messages the message stream that parses the frames.
+         * @param listener the callback for the parsed messages.
+         */
+        private ReadHandler(SocketChannel channel, INDIFrameInputStream frames, INDIInputStream messages, Listener listener) {
+            this.channel = channel;
+            this.frames = frames;
+            this.messages = messages;
+            this.listener = listener;
+        }
+
+        @Override
+        public void ready(SelectionKey key, ByteBuffer buffer) {
+            try {
+                buffer.clear();
+                if (channel.read(buffer) < 0) {
+                    finish(key);
+                    return;
+                }
+                buffer.flip();
+                if (frames.append(buffer)) {
+                    for (INDIProtocol<?> message = messages.readObject(); message != null; message = messages.readObject()) {
+                        listener.received(message);
+                    }
+                }
+            } catch (Exception e) {
+                if (channel.isOpen()) {
+                    LOG.error("could not parse indi stream", e);
+                }
+                finish(key);
+            }
+        }
+
+        /**
+         * stop reading the channel and inform the listener.
+         *
+         * @param key the key of the channel.
+         */
+        private void finish(SelectionKey key) {
+            key.cancel();
+            try {
+                listener.finished();
+            } catch (Exception e) {
+                LOG.error("could not finish the reader", e);
+            }
+        }
+    }
+
+    /**
+     * an io thread with its own selector.
+     */
+    private final class Worker extends Thread {
+
+        /**
+         * the selector of the thread.
+         */
+        private final Selector selector;
+
+        /**
+         * the registrations to execute on the thread.
+         */
+        private final Queue<Runnable> registrations = new ConcurrentLinkedQueue<>();
+
+        /**
+         * constructor.
+         *
+         * @param name the thread name.
+         * @throws IOException if the selector could not be opened.
+         */
+        private Worker(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        /**
+         * register a channel with the selector of this thread, the
+         * registration is done by the thread itself so it never blocks on a
+         * running select.
+         *
+         * @param channel    the non blocking channel.
+         * @param operations the interest operations.
+         * @param handler    the handler for the ready operations.
+         */
+        private void register(final SelectableChannel channel, final int operations, final Handler handler) {
+            registrations.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        channel.register(selector, operations, handler);
+                    } catch (IOException e) {
+                        LOG.error("could not register channel", e);
+                        if (handler instanceof ReadHandler) {
+                            ((ReadHandler) handler).listener.finished();
+                        }
+                    }
+                }
+            });
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = INDIByteBufferPool.acquire();
+            try {
+                while (running) {
+                    selector.select();
+                    for (Runnable registration = registrations.poll(); registration != null; registration = registrations.poll()) {
+                        registration.run();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid()) {
+                            ((Handler) key.attachment()).ready(key, buffer);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                LOG.error("selector loop stopped", e);
+            } finally {
+                INDIByteBufferPool.release(buffer);
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    LOG.warn("selector close problem", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.api.INDIBLOBSink;
+import org.indilib.i4j.protocol.api.INDIConnection;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the indi traffic of connections into a session log, the input for
+ * load tests and for the {@link INDISessionReplayer}. The recorder can be
+ * attached to any {@link INDIConnection} (socket, zip, websocket, piped, ...),
+ * every object read or written over the attached connection is appended as a
+ * timestamped frame with its plain xml protocol bytes. The log is a directory
+ * of memory mapped segment files of "INDISessionRecorder.segmentSize" bytes
+ * (default 64MB), every segment starts with a header followed by the frames,
+ * a frame length of 0 marks the end of the segment.
+ *
+ * <pre>
+ * segment: int magic, int version, long start time (epoch millis)
+ * frame:   int length, long nanos since start, int connection, byte direction, byte[length] xml
+ * </pre>
+ *
+ * @author agent
+ */
+public class INDISessionRecorder implements Closeable {
+
+    /**
+     * the direction of a recorded frame, seen from the attached connection.
+     */
+    public enum Direction {
+        /**
+         * the object was read from the connection.
+         */
+        IN,
+        /**
+         * the object was written to the connection.
+         */
+        OUT
+    }
+
+    /**
+     * the magic number at the start of every segment ("INSL").
+     */
+    static final int MAGIC = 0x494e534c;
+
+    /**
+     * the version of the segment format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * the number of bytes of the segment header.
+     */
+    static final int SEGMENT_HEADER_SIZE = 16;
+
+    /**
+     * the number of bytes of the frame header.
+     */
+    static final int FRAME_HEADER_SIZE = 17;
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDISessionRecorder.class);
+
+    /**
+     * the default size of a segment file.
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = Integer.getInteger(INDISessionRecorder.class.getSimpleName() + ".segmentSize", 64 * 1024 * 1024);
+
+    static {
+        INDIURLStreamHandlerFactory.init();
+    }
+
+    /**
+     * the directory of the segment files.
+     */
+    private final File directory;
+
+    /**
+     * the size of a segment file.
+     */
+    private final int segmentSize;
+
+    /**
+     * the time the session started in nanos.
+     */
+    private final long startNanos;
+
+    /**
+     * the time the session started in epoch millis.
+     */
+    private final long startMillis;
+
+    /**
+     * the id for the next attached connection.
+     */
+    private final AtomicInteger nextConnection = new AtomicInteger();
+
+    /**
+     * the index of the current segment.
+     */
+    private int segmentIndex = -1;
+
+    /**
+     * the current segment file.
+     */
+    private RandomAccessFile segmentFile;
+
+    /**
+     * the mapping of the current segment.
+     */
+    private MappedByteBuffer segment;
+
+    /**
+     * number of recorded frames.
+     */
+    private long frames;
+
+    /**
+     * the recorder was closed.
+     */
+    private boolean closed;
+
+    /**
+     * create a recorder with the default segment size.
+     *
+     * @param directory the directory for the session log, it must not
+     *                  contain a session log yet.
+     * @throws IOException if the log could not be created.
+     */
+    public INDISessionRecorder(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * create a recorder.
+     *
+     * @param directory   the directory for the session log, it must not
+     *                    contain a session log yet.
+     * @param segmentSize the size of a segment file in bytes.
+     * @throws IOException if the log could not be created.
+     */
+    public INDISessionRecorder(File directory, int segmentSize) throws IOException {
+        if (segmentSize <= SEGMENT_HEADER_SIZE + FRAME_HEADER_SIZE) {
+            throw new IllegalArgumentException("segment size to small " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create session directory " + directory);
+        }
+        if (segmentFile(directory, 0).exists()) {
+            throw new IOException("session log already exists in " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        startNanos = System.nanoTime();
+        startMillis = System.currentTimeMillis();
+        synchronized (this) {
+            nextSegment(0);
+        }
+    }
+
+    /**
+     * @param directory the directory of the session log.
+     * @param index     the index of the segment.
+     * @return the file of the segment.
+     */
+    static File segmentFile(File directory, int index) {
+        return new File(directory, String.format(Locale.US, "segment-%06d.indisession", index));
+    }
+
+    /**
+     * attach the recorder to a connection, all objects read and written over
+     * the returned connection will be recorded. Use the returned connection
+     * instead of the original one.
+     *
+     * @param connection the connection to record.
+     * @return the recording connection.
+     */
+    public INDIConnection attach(INDIConnection connection) {
+        return new RecordingConnection(connection, nextConnection.getAndIncrement());
+    }
+
+    /**
+     * append one frame to the log.
+     *
+     * @param connection the id of the connection.
+     * @param direction  the direction of the frame.
+     * @param bytes      the buffer with the xml of the frame.
+     * @param length     the number of bytes in the buffer.
+     * @throws IOException if the log could not be written.
+     */
+    protected synchronized void append(int connection, Direction direction, byte[] bytes, int length) throws IOException {
+        if (closed) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        if (segment.remaining() < FRAME_HEADER_SIZE + length + Integer.BYTES) {
+            nextSegment(FRAME_HEADER_SIZE + length + Integer.BYTES);
+        }
+        segment.putInt(length);
+        segment.putLong(nanos);
+        segment.putInt(connection);
+        segment.put((byte) direction.ordinal());
+        segment.put(bytes, 0, length);
+        frames++;
+    }
+
+    /**
+     * @return the number of recorded frames.
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * close the current segment and map the next one.
+     *
+     * @param minimumFree the number of bytes the new segment must have free
+     *                    after its header.
+     * @throws IOException if the segment could not be created.
+     */
+    private void nextSegment(int minimumFree) throws IOException {
+        closeSegment();
+        segmentIndex++;
+        File file = segmentFile(directory, segmentIndex);
+        segmentFile = new RandomAccessFile(file, "rw");
+        segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, SEGMENT_HEADER_SIZE + minimumFree));
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putLong(startMillis);
+    }
+
+    /**
+     * force the current segment to disk and cut off its unused end.
+     *
+     * @throws IOException if the segment could not be closed.
+     */
+    private void closeSegment() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        int used = segment.position();
+        if (segment.remaining() >= Integer.BYTES) {
+            segment.putInt(0);
+            used += Integer.BYTES;
+        }
+        segment.force();
+        segment = null;
+        try {
+            segmentFile.setLength(used);
+        } catch (IOException e) {
+            LOG.debug("could not truncate session segment, the end marker is used instead", e);
+        } finally {
+            segmentFile.close();
+            segmentFile = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            closeSegment();
+        }
+    }
+
+    /**
+     * buffer that gives access to its bytes without copying.
+     */
+    private static final class FrameBuffer extends ByteArrayOutputStream {
+
+        /**
+         * the writer that fills the buffer.
+         */
+        private final INDIXmlWriter writer = new INDIXmlWriter(this);
+
+        /**
+         * convert the object to xml into the buffer.
+         *
+         * @param object the object to convert.
+         * @throws IOException if the object could not be converted.
+         */
+        private void write(INDIProtocol<?> object) throws IOException {
+            reset();
+            writer.write(object);
+            writer.flush();
+        }
+
+        /**
+         * copy the xml of a message into the buffer, the bytes of a raw frame
+         * or shared encoding are used as they are.
+         *
+         * @param message the message to copy.
+         * @throws IOException if the message could not be converted.
+         */
+        private void write(INDIEncodedMessage message) throws IOException {
+            reset();
+            message.writeTo(writer);
+            writer.flush();
+        }
+
+        /**
+         * @return the internal buffer, valid up to {@link #size()}.
+         */
+        private byte[] bytes() {
+            return buf;
+        }
+    }
+
+    /**
+     * the connection wrapper that records the objects passing through.
+     */
+    private final class RecordingConnection implements INDIConnection {
+
+        /**
+         * the recorded connection.
+         */
+        private final INDIConnection connection;
+
+        /**
+         * the id of the connection in the log.
+         */
+        private final int id;
+
+        /**
+         * the recording input stream, created when needed.
+         */
+        private INDIInputStream inputStream;
+
+        /**
+         * the recording output stream, created when needed.
+         */
+        private INDIOutputStream outputStream;
+
+        /**
+         * wrap the connection.
+         *
+         * @param connection the connection to record.
+         * @param id         the id of the connection in the log.
+         */
+        private RecordingConnection(INDIConnection connection, int id) {
+            this.connection = connection;
+            this.id = id;
+        }
+
+        @Override
+        public synchronized INDIInputStream getINDIInputStream() throws IOException {
+            if (inputStream == null) {
+                final INDIInputStream recorded = connection.getINDIInputStream();
+                final FrameBuffer buffer = new FrameBuffer();
+                inputStream = new INDIInputStream() {
+
+                    @Override
+                    public INDIProtocol<?> readObject() throws IOException {
+                        INDIProtocol<?> object = recorded.readObject();
+                        if (object != null) {
+                            record(buffer, Direction.IN, object);
+                        }
+                        return object;
+                    }
+
+                    @Override
+                    public boolean setBLOBSink(INDIBLOBSink sink) {
+                        return recorded.setBLOBSink(sink);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        recorded.close();
+                    }
+                };
+            }
+            return inputStream;
+        }
+
+        @Override
+        public synchronized INDIOutputStream getINDIOutputStream() throws IOException {
+            if (outputStream == null) {
+                final INDIOutputStream recorded = connection.getINDIOutputStream();
+                final FrameBuffer buffer = new FrameBuffer();
+                // stay an encoded output stream, so the shared encoding of the
+                // server is used while recording.
+                outputStream = new INDIEncodedOutputStream() {
+
+                    @Override
+                    public void writeObject(INDIProtocol<?> element) throws IOException {
+                        record(buffer, Direction.OUT, element);
+                        recorded.writeObject(element);
+                    }
+
+                    @Override
+                    public void writeEncoded(INDIEncodedMessage message) throws IOException {
+                        record(buffer, Direction.OUT, message);
+                        message.writeTo(recorded);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        recorded.close();
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        /**
+         * record one object, a failing log does not disturb the connection.
+         *
+         * @param buffer    the buffer of the stream.
+         * @param direction the direction of the object.
+         * @param object    the object to record.
+         */
+        private void record(FrameBuffer buffer, Direction direction, INDIProtocol<?> object) {
+            try {
+                synchronized (buffer) {
+                    buffer.write(object);
+                    append(id, direction, buffer.bytes(), buffer.size());
+                }
+            } catch (IOException e) {
+                LOG.error("could not record indi object in session log " + directory, e);
+            }
+        }
+
+        /**
+         * record one message without decoding it, a failing log does not
+         * disturb the connection.
+         *
+         * @param buffer    the buffer of the stream.
+         * @param direction the direction of the message.
+         * @param message   the message to record.
+         */
+        private void record(FrameBuffer buffer, Direction direction, INDIEncodedMessage message) {
+            try {
+                synchronized (buffer) {
+                    buffer.write(message);
+                    append(id, direction, buffer.bytes(), buffer.size());
+                }
+            } catch (IOException e) {
+                LOG.error("could not record indi message in session log " + directory, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            connection.close();
+        }
+
+        @Override
+        public URL getURL() {
+            return connection.getURL();
+        }
+
+        @Override
+        public long getBytesRead() {
+            return connection.getBytesRead();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return connection.getBytesWritten();
+        }
+    }
+}
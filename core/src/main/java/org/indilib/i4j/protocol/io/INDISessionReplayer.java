@@ -0,0 +1,418 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.api.INDIConnection;
+import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.indilib.i4j.protocol.io.INDISessionRecorder.Direction;
+import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a session log of the {@link INDISessionRecorder} into connections,
+ * in real time, a multiple of it or as fast as possible. Only the frames of
+ * one direction are replayed (default {@link Direction#OUT}, what the
+ * recorded side sent), each recorded connection is replayed over its own
+ * target connection. The input of the target connections is consumed and
+ * counted, so the replayed side never blocks on a full connection. To drive
+ * a server use {@code replayer.replay(id -> server.createConnection())}, to
+ * drive a driver connect it to one side of {@link INDIPipedConnections} and
+ * replay into the other side.
+ *
+ * @author agent
+ */
+public class INDISessionReplayer {
+
+    /**
+     * the speed to replay as fast as possible.
+     */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDISessionReplayer.class);
+
+    static {
+        INDIURLStreamHandlerFactory.init();
+    }
+
+    /**
+     * Supplies the connections to replay into.
+     */
+    public interface Target {
+
+        /**
+         * @param connection the id of the recorded connection.
+         * @return the connection to replay the recorded connection into.
+         * @throws IOException if the connection could not be opened.
+         */
+        INDIConnection connect(int connection) throws IOException;
+    }
+
+    /**
+     * the directory of the session log.
+     */
+    private final File directory;
+
+    /**
+     * the replay speed, 1 for real time.
+     */
+    private double speed = 1d;
+
+    /**
+     * the direction of the frames to replay.
+     */
+    private Direction direction = Direction.OUT;
+
+    /**
+     * number of replayed frames.
+     */
+    private long frames;
+
+    /**
+     * number of replayed xml bytes.
+     */
+    private long bytes;
+
+    /**
+     * the duration of the last replay in nanos.
+     */
+    private long elapsedNanos;
+
+    /**
+     * number of objects received over the target connections.
+     */
+    private final AtomicLong objectsReceived = new AtomicLong();
+
+    /**
+     * the target connections whose input is already consumed, over all
+     * replays.
+     */
+    private final Set<INDIConnection> drained = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<INDIConnection, Boolean>()));
+
+    /**
+     * create a replayer for a session log.
+     *
+     * @param directory the directory of the session log.
+     */
+    public INDISessionReplayer(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param newSpeed the replay speed, 1 for real time, N for N times faster
+     *                 and {@link #MAX_SPEED} for as fast as possible.
+     * @return myself
+     */
+    public INDISessionReplayer setSpeed(double newSpeed) {
+        if (!(newSpeed > 0d)) {
+            throw new IllegalArgumentException("replay speed must be positive " + newSpeed);
+        }
+        speed = newSpeed;
+        return this;
+    }
+
+    /**
+     * @param newDirection the direction of the frames to replay.
+     * @return myself
+     */
+    public INDISessionReplayer setDirection(Direction newDirection) {
+        direction = newDirection;
+        return this;
+    }
+
+    /**
+     * @param url the url of a server.
+     * @return a target that opens a new connection to the server for every
+     *         recorded connection.
+     */
+    public static Target toURL(final URL url) {
+        return connection -> (INDIConnection) url.openConnection();
+    }
+
+    /**
+     * replay all recorded connections into one connection, the connection
+     * stays open.
+     *
+     * @param connection the connection to replay into.
+     * @throws IOException if the log could not be read or the connection
+     *                     could not be written.
+     */
+    public void replay(final INDIConnection connection) throws IOException {
+        replay(id -> connection, false);
+    }
+
+    /**
+     * replay every recorded connection into its own target connection, the
+     * target connections are closed at the end of the replay.
+     *
+     * @param target the supplier of the target connections.
+     * @throws IOException if the log could not be read or a connection could
+     *                     not be written.
+     */
+    public void replay(Target target) throws IOException {
+        replay(target, true);
+    }
+
+    /**
+     * replay the frames of the log.
+     *
+     * @param target           the supplier of the target connections.
+     * @param closeConnections close the target connections at the end.
+     * @throws IOException if the log could not be read or a connection could
+     *                     not be written.
+     */
+    private void replay(Target target, boolean closeConnections) throws IOException {
+        Map<Integer, INDIOutputStream> outputs = new HashMap<>();
+        Map<INDIConnection, INDIOutputStream> opened = new IdentityHashMap<>();
+        frames = 0;
+        bytes = 0;
+        long start = System.nanoTime();
+        long firstNanos = -1;
+        // one parser for all frames, the recorder writes one object per
+        // frame and the parser only reads the bytes it needs.
+        FrameInput frameInput = new FrameInput();
+        INDIInputStream parser = INDIProtocolFactory.createINDIInputStream(frameInput);
+        try {
+            for (int index = 0; INDISessionRecorder.segmentFile(directory, index).exists(); index++) {
+                MappedByteBuffer segment = mapSegment(INDISessionRecorder.segmentFile(directory, index));
+                while (segment.remaining() >= INDISessionRecorder.FRAME_HEADER_SIZE) {
+                    int length = segment.getInt();
+                    if (length <= 0) {
+                        break;
+                    }
+                    long nanos = segment.getLong();
+                    int connection = segment.getInt();
+                    int frameDirection = segment.get();
+                    if (frameDirection != direction.ordinal()) {
+                        segment.position(segment.position() + length);
+                        continue;
+                    }
+                    if (firstNanos < 0) {
+                        firstNanos = nanos;
+                    }
+                    waitUntil(start, nanos - firstNanos);
+                    INDIOutputStream out = outputs.get(connection);
+                    if (out == null) {
+                        INDIConnection targetConnection = target.connect(connection);
+                        out = opened.get(targetConnection);
+                        if (out == null) {
+                            out = targetConnection.getINDIOutputStream();
+                            opened.put(targetConnection, out);
+                            if (drained.add(targetConnection)) {
+                                drain(targetConnection, connection);
+                            }
+                        }
+                        outputs.put(connection, out);
+                    }
+                    int end = segment.position() + length;
+                    frameInput.set(segment, end);
+                    INDIProtocol<?> object = parser.readObject();
+                    if (object != null) {
+                        out.writeObject(object);
+                    }
+                    segment.position(end);
+                    frames++;
+                    bytes += length;
+                }
+            }
+        } finally {
+            elapsedNanos = System.nanoTime() - start;
+            for (INDIOutputStream out : opened.values()) {
+                if (out instanceof Flushable) {
+                    try {
+                        ((Flushable) out).flush();
+                    } catch (IOException e) {
+                        LOG.warn("could not flush replay connection", e);
+                    }
+                }
+            }
+            if (closeConnections) {
+                for (INDIConnection connection : opened.keySet()) {
+                    try {
+                        connection.close();
+                    } catch (IOException e) {
+                        LOG.warn("could not close replay connection", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * the input of the parser, the bytes of the current frame in the mapped
+     * segment.
+     */
+    private static final class FrameInput extends InputStream {
+
+        /**
+         * the segment with the frame, null before the first frame.
+         */
+        private ByteBuffer segment;
+
+        /**
+         * the end of the frame in the segment.
+         */
+        private int end;
+
+        /**
+         * set the next frame.
+         *
+         * @param newSegment the segment positioned at the frame.
+         * @param newEnd     the end of the frame in the segment.
+         */
+        private void set(ByteBuffer newSegment, int newEnd) {
+            segment = newSegment;
+            end = newEnd;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (segment == null || segment.position() >= end) {
+                return -1;
+            }
+            return segment.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = segment == null ? 0 : Math.min(len, end - segment.position());
+            if (count <= 0) {
+                return len == 0 ? 0 : -1;
+            }
+            segment.get(b, off, count);
+            return count;
+        }
+    }
+
+    /**
+     * map a segment and check its header.
+     *
+     * @param file the segment file.
+     * @return the mapping positioned at the first frame.
+     * @throws IOException if the segment could not be read or is no session
+     *                     segment.
+     */
+    private static MappedByteBuffer mapSegment(File file) throws IOException {
+        try (RandomAccessFile segmentFile = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, segmentFile.length());
+            if (segment.remaining() < INDISessionRecorder.SEGMENT_HEADER_SIZE || segment.getInt() != INDISessionRecorder.MAGIC) {
+                throw new IOException("not a session log segment " + file);
+            }
+            if (segment.getInt() != INDISessionRecorder.VERSION) {
+                throw new IOException("unsupported session log version in " + file);
+            }
+            segment.getLong();
+            return segment;
+        }
+    }
+
+    /**
+     * wait till the frame is due.
+     *
+     * @param start the start of the replay in nanos.
+     * @param nanos the recorded time of the frame since the first frame.
+     */
+    private void waitUntil(long start, long nanos) {
+        if (speed == MAX_SPEED) {
+            return;
+        }
+        long due = start + (long) (nanos / speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * consume the input of a target connection in a daemon thread.
+     *
+     * @param connection the target connection.
+     * @param id         the id of the recorded connection.
+     * @throws IOException if the input stream could not be opened.
+     */
+    private void drain(INDIConnection connection, int id) throws IOException {
+        final INDIInputStream in = connection.getINDIInputStream();
+        Thread thread = new Thread(() -> {
+            try {
+                while (in.readObject() != null) {
+                    objectsReceived.incrementAndGet();
+                }
+            } catch (IOException e) {
+                LOG.debug("replay connection closed", e);
+            }
+        }, "INDISessionReplayer drain " + id);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the number of frames replayed by the last replay.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the number of xml bytes replayed by the last replay.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the duration of the last replay in nanos.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the number of objects received over the target connections.
+     */
+    public long getObjectsReceived() {
+        return objectsReceived.get();
+    }
+}
@@ -37,6 +37,8 @@ import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Indi protocol connection around a tcp/ip socket.
@@ -54,6 +56,12 @@ public class INDISocketConnection implements INDIConnection {
      */
     private static final int CONNECT_TIMEOUT = 20000;
 
+    /**
+     * should new connections use a socket channel with pooled buffers (the
+     * default) instead of the classic socket streams.
+     */
+    private static final boolean USE_CHANNEL = Boolean.parseBoolean(System.getProperty(INDISocketConnection.class.getSimpleName() + ".channel", "true"));
+
     static {
         INDIURLStreamHandlerFactory.init();
     }
@@ -62,6 +70,10 @@ public class INDISocketConnection implements INDIConnection {
      * the socket over with to communicate.
      */
     private final Socket socket;
+    /**
+     * the channel of the socket, null if the socket has no channel.
+     */
+    private final SocketChannel channel;
     /**
      * the indi protocol input stream.
      */
@@ -70,6 +82,19 @@ public class INDISocketConnection implements INDIConnection {
      * the indi protocol output stream.
      */
     private INDIOutputStream outputStream;
+    /**
+     * the selector loop that may read the channel, null if the connection is
+     * read by a thread.
+     */
+    private INDISelectorLoop selectorLoop;
+    /**
+     * the number of bytes read from the socket.
+     */
+    private final LongAdder bytesRead = new LongAdder();
+    /**
+     * the number of bytes written to the socket.
+     */
+    private final LongAdder bytesWritten = new LongAdder();
 
     /**
      * constructor around an existing socket. this is probalby only usefull in a
@@ -79,6 +104,17 @@ public class INDISocketConnection implements INDIConnection {
      */
     public INDISocketConnection(Socket socket) {
         this.socket = socket;
+        this.channel = socket.getChannel();
+    }
+
+    /**
+     * constructor around an existing connected socket channel, the channel
+     * must be in blocking mode.
+     *
+     * @param channel the channel to connect to
+     */
+    public INDISocketConnection(SocketChannel channel) {
+        this(channel.socket());
     }
 
     /**
@@ -89,18 +125,90 @@ public class INDISocketConnection implements INDIConnection {
      * @throws IOException if the connection fails.
      */
     public INDISocketConnection(String host, int port) throws IOException {
-        this(new Socket());
+        this(USE_CHANNEL ? SocketChannel.open().socket() : new Socket());
         socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
     }
 
     @Override
-    public INDIInputStream getINDIInputStream() throws IOException {
+    public synchronized INDIInputStream getINDIInputStream() throws IOException {
         if (inputStream == null) {
-            inputStream = INDIProtocolFactory.createINDIInputStream(wrap(socket.getInputStream()));
+            inputStream = createINDIInputStream(wrap(new INDICountingInputStream(channel != null ? new INDIChannelInputStream(channel, isPlainXml()) : socket.getInputStream(), bytesRead)));
         }
         return inputStream;
     }
 
+    /**
+     * get the input stream of the connection as raw message frames, so the
+     * messages can be forwarded without decoding them.
+     *
+     * @return the raw frame input stream or null if the connection does not
+     * carry xml or its input stream was already used otherwise.
+     * @throws IOException if the stream could not be created.
+     */
+    public synchronized INDIRawFrameInputStream getINDIRawFrameInputStream() throws IOException {
+        if (inputStream == null) {
+            // the raw frame stream finds the message ends itself.
+            inputStream = new INDIRawFrameInputStream(wrap(new INDICountingInputStream(channel != null ? new INDIChannelInputStream(channel, false) : socket.getInputStream(), bytesRead)));
+        }
+        return inputStream instanceof INDIRawFrameInputStream ? (INDIRawFrameInputStream) inputStream : null;
+    }
+
+    /**
+     * set the selector loop that may read this connection instead of a reader
+     * thread, it must be set before the input stream is used.
+     *
+     * @param selectorLoop the selector loop or null to read with a thread.
+     * @return myself
+     */
+    public INDISocketConnection setSelectorLoop(INDISelectorLoop selectorLoop) {
+        this.selectorLoop = selectorLoop;
+        return this;
+    }
+
+    /**
+     * let the selector loop read this connection and pass the messages to the
+     * listener. Only connections with a channel that carry plain xml and
+     * where the input stream was not used before can be read by the selector
+     * loop.
+     *
+     * @param listener the callback for the read messages.
+     * @return false if the connection must be read by a thread.
+     * @throws IOException if the channel could not be registered.
+     */
+    public synchronized boolean readBySelector(INDISelectorLoop.Listener listener) throws IOException {
+        if (selectorLoop == null || channel == null || !isPlainXml() || inputStream != null) {
+            return false;
+        }
+        INDIFrameInputStream frames = new INDIFrameInputStream(bytesRead);
+        inputStream = new INDIPullInputStreamImpl(frames);
+        selectorLoop.read(channel, frames, inputStream, listener);
+        return true;
+    }
+
+    /**
+     * create the indi protocol input stream, subclasses can use an other
+     * encoding than xml.
+     *
+     * @param in the (wrapped) input stream of the socket.
+     * @return the indi protocol input stream.
+     * @throws IOException if the stream could not be created.
+     */
+    protected INDIInputStream createINDIInputStream(InputStream in) throws IOException {
+        return INDIProtocolFactory.createINDIInputStream(in);
+    }
+
+    /**
+     * create the indi protocol output stream, subclasses can use an other
+     * encoding than xml.
+     *
+     * @param out the (wrapped) output stream of the socket.
+     * @return the indi protocol output stream.
+     * @throws IOException if the stream could not be created.
+     */
+    protected INDIOutputStream createINDIOutputStream(OutputStream out) throws IOException {
+        return INDIProtocolFactory.createINDIOutputStream(out);
+    }
+
     /**
      * possibility for subclasses to wrap the input stream.
      *
@@ -111,6 +219,14 @@ public class INDISocketConnection implements INDIConnection {
         return coreInputStream;
     }
 
+    /**
+     * @return true if the socket carries plain xml, so the channel input
+     * stream can be framed at the message boundaries.
+     */
+    protected boolean isPlainXml() {
+        return true;
+    }
+
     /**
      * possibility for subclasses to wrap the output stream.
      *
@@ -124,7 +240,7 @@ public class INDISocketConnection implements INDIConnection {
     @Override
     public INDIOutputStream getINDIOutputStream() throws IOException {
         if (outputStream == null) {
-            outputStream = INDIProtocolFactory.createINDIOutputStream(wrap(socket.getOutputStream()));
+            outputStream = createINDIOutputStream(wrap(new INDICountingOutputStream(channel != null ? new INDIChannelOutputStream(channel) : socket.getOutputStream(), bytesWritten)));
         }
         return outputStream;
     }
@@ -155,6 +271,16 @@ public class INDISocketConnection implements INDIConnection {
         }
     }
 
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
     @Override
     public String toString() {
         return getClass().getName() + "(" + getURL().toString() + ")";
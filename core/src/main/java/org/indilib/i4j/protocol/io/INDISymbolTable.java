@@ -0,0 +1,155 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Symbol table for the names of the indi protocol (devices, properties and
+ * elements). A running server or client sees the same few names millions of
+ * times, the table returns one canonical instance for all of them so the
+ * parsed objects do not retain duplicate strings and comparisons of names
+ * mostly end at the identity check of {@link String#equals(Object)}. The table
+ * is bounded, when it is full or the name is too long the value is returned
+ * as it is, so a misbehaving peer can not fill the memory with names.
+ *
+ * @author agent
+ */
+public final class INDISymbolTable {
+
+    /**
+     * maximum number of symbols in the table.
+     */
+    private static final int MAX_SYMBOLS = Integer.getInteger(INDISymbolTable.class.getSimpleName() + ".max", 65536);
+
+    /**
+     * longer values are no names and are never interned.
+     */
+    private static final int MAX_SYMBOL_LENGTH = 256;
+
+    /**
+     * the canonical instances of the symbols.
+     */
+    private static final ConcurrentMap<String, String> SYMBOLS = new ConcurrentHashMap<String, String>();
+
+    /**
+     * untility class never instanciated.
+     */
+    private INDISymbolTable() {
+    }
+
+    /**
+     * @param value the name to intern (may be null).
+     * @return the canonical instance of the name, or the value itself when it
+     *         can not be interned.
+     */
+    public static String intern(String value) {
+        if (value == null || value.length() > MAX_SYMBOL_LENGTH) {
+            return value;
+        }
+        String symbol = SYMBOLS.get(value);
+        if (symbol != null) {
+            return symbol;
+        }
+        if (SYMBOLS.size() >= MAX_SYMBOLS) {
+            return value;
+        }
+        symbol = SYMBOLS.putIfAbsent(value, value);
+        return symbol != null ? symbol : value;
+    }
+
+    /**
+     * @return the number of symbols in the table.
+     */
+    public static int size() {
+        return SYMBOLS.size();
+    }
+
+    /**
+     * A small direct mapped cache from utf-8 bytes to the canonical symbols,
+     * one per decoder and therefore not thread safe. A hit resolves a name
+     * without decoding or allocating anything.
+     */
+    public static final class Cache {
+
+        /**
+         * number of slots in the cache, a power of 2.
+         */
+        private static final int SLOTS = 256;
+
+        /**
+         * the utf-8 bytes of the cached symbols.
+         */
+        private final byte[][] keys = new byte[SLOTS][];
+
+        /**
+         * the cached symbols.
+         */
+        private final String[] symbols = new String[SLOTS];
+
+        /**
+         * get the canonical symbol for the utf-8 bytes.
+         *
+         * @param bytes  the buffer with the bytes.
+         * @param offset the offset of the name in the buffer.
+         * @param length the number of bytes of the name.
+         * @return the canonical symbol.
+         */
+        public String symbol(byte[] bytes, int offset, int length) {
+            int hash = length;
+            for (int index = offset; index < offset + length; index++) {
+                hash = hash * 31 + bytes[index];
+            }
+            int slot = (hash ^ (hash >>> 8)) & (SLOTS - 1);
+            byte[] key = keys[slot];
+            if (key != null && key.length == length && regionEquals(key, bytes, offset)) {
+                return symbols[slot];
+            }
+            String symbol = intern(new String(bytes, offset, length, StandardCharsets.UTF_8));
+            if (length <= MAX_SYMBOL_LENGTH) {
+                byte[] newKey = new byte[length];
+                System.arraycopy(bytes, offset, newKey, 0, length);
+                keys[slot] = newKey;
+                symbols[slot] = symbol;
+            }
+            return symbol;
+        }
+
+        /**
+         * @param key    the cached bytes.
+         * @param bytes  the buffer to compare with.
+         * @param offset the offset in the buffer.
+         * @return true if the buffer contains the key at the offset.
+         */
+        private static boolean regionEquals(byte[] key, byte[] bytes, int offset) {
+            for (int index = 0; index < key.length; index++) {
+                if (key[index] != bytes[offset + index]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental scanner that finds the boundaries of the top level elements
+ * (the indi messages) in a stream of xml bytes, without parsing them. The
+ * bytes can be offered in arbitrary chunks, the scanner keeps its state
+ * between the calls. Text, comments and processing instructions between the
+ * top level elements are skipped.
+ *
+ * @author agent
+ */
+public final class INDIXmlFramer {
+
+    /**
+     * state: in text content or between elements.
+     */
+    private static final int TEXT = 0;
+
+    /**
+     * state: after a '&lt;'.
+     */
+    private static final int TAG_OPEN = 1;
+
+    /**
+     * state: in a start tag.
+     */
+    private static final int START_TAG = 2;
+
+    /**
+     * state: in an end tag.
+     */
+    private static final int END_TAG = 3;
+
+    /**
+     * state: after '&lt;!'.
+     */
+    private static final int MARKUP_OPEN = 4;
+
+    /**
+     * state: in a comment.
+     */
+    private static final int COMMENT = 5;
+
+    /**
+     * state: in a cdata section.
+     */
+    private static final int CDATA = 6;
+
+    /**
+     * state: in a declaration.
+     */
+    private static final int DECLARATION = 7;
+
+    /**
+     * state: in a processing instruction.
+     */
+    private static final int PROCESSING_INSTRUCTION = 8;
+
+    /**
+     * the current state.
+     */
+    private int state = TEXT;
+
+    /**
+     * the current element depth.
+     */
+    private int depth;
+
+    /**
+     * the quote character of the current attribute value or 0.
+     */
+    private int quote;
+
+    /**
+     * the previous character in the current markup.
+     */
+    private int previous;
+
+    /**
+     * the number of repeated characters of the end sequence of comments and
+     * cdata sections.
+     */
+    private int repeated;
+
+    /**
+     * start the scanning again from the beginning of a stream.
+     */
+    public void reset() {
+        state = TEXT;
+        depth = 0;
+        quote = 0;
+        previous = 0;
+        repeated = 0;
+    }
+
+    /**
+     * @return true if the scanner is between two top level elements.
+     */
+    public boolean isBetweenFrames() {
+        return state == TEXT && depth == 0;
+    }
+
+    /**
+     * scan the bytes for the end of a top level element.
+     *
+     * @param bytes  the bytes to scan (absolute indexes are used, the buffer
+     *               is not changed).
+     * @param offset the index to start scanning.
+     * @param limit  the index to stop scanning.
+     * @return the index after the end of the first top level element that
+     * ends in the region, or -1 if no top level element ends in the region
+     * (then all bytes are scanned).
+     */
+    public int findFrameEnd(ByteBuffer bytes, int offset, int limit) {
+        int index = offset;
+        while (index < limit) {
+            if (state == TEXT) {
+                while (index < limit && bytes.get(index) != '<') {
+                    index++;
+                }
+                if (index >= limit) {
+                    return -1;
+                }
+            }
+            if (scan(bytes.get(index++) & 0xFF)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * scan the bytes for the end of a top level element.
+     *
+     * @param bytes  the bytes to scan.
+     * @param offset the index to start scanning.
+     * @param limit  the index to stop scanning.
+     * @return the index after the end of the first top level element that
+     * ends in the region, or -1 if no top level element ends in the region
+     * (then all bytes are scanned).
+     */
+    public int findFrameEnd(byte[] bytes, int offset, int limit) {
+        int index = offset;
+        while (index < limit) {
+            if (state == TEXT) {
+                // text content (like base64 blobs) is the bulk of the bytes.
+                while (index < limit && bytes[index] != '<') {
+                    index++;
+                }
+                if (index >= limit) {
+                    return -1;
+                }
+            }
+            if (scan(bytes[index++] & 0xFF)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * scan one byte.
+     *
+     * @param c the byte.
+     * @return true if the byte ended a top level element.
+     */
+    private boolean scan(int c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    state = TAG_OPEN;
+                }
+                return false;
+            case TAG_OPEN:
+                if (c == '/') {
+                    state = END_TAG;
+                } else if (c == '!') {
+                    state = MARKUP_OPEN;
+                } else if (c == '?') {
+                    state = PROCESSING_INSTRUCTION;
+                    previous = 0;
+                } else {
+                    state = START_TAG;
+                    quote = 0;
+                    previous = c;
+                }
+                return false;
+            case START_TAG:
+                return scanStartTag(c);
+            case END_TAG:
+                if (c == '>') {
+                    state = TEXT;
+                    // a stray end tag ends a frame of its own, so the
+                    // boundaries of the following messages stay intact.
+                    if (depth > 0) {
+                        depth--;
+                    }
+                    return depth == 0;
+                }
+                return false;
+            case MARKUP_OPEN:
+                repeated = 0;
+                if (c == '-') {
+                    state = COMMENT;
+                } else if (c == '[') {
+                    state = CDATA;
+                } else {
+                    state = DECLARATION;
+                }
+                return false;
+            case COMMENT:
+                return scanSequenceEnd(c, '-');
+            case CDATA:
+                return scanSequenceEnd(c, ']');
+            case DECLARATION:
+                if (c == '>') {
+                    state = TEXT;
+                }
+                return false;
+            default:
+                if (c == '>' && previous == '?') {
+                    state = TEXT;
+                }
+                previous = c;
+                return false;
+        }
+    }
+
+    /**
+     * scan one byte of a start tag.
+     *
+     * @param c the byte.
+     * @return true if the byte ended a top level empty element.
+     */
+    private boolean scanStartTag(int c) {
+        if (quote != 0) {
+            if (c == quote) {
+                quote = 0;
+            }
+        } else if (c == '"' || c == '\'') {
+            quote = c;
+        } else if (c == '>') {
+            state = TEXT;
+            if (previous == '/') {
+                return depth == 0;
+            }
+            depth++;
+            return false;
+        }
+        previous = c;
+        return false;
+    }
+
+    /**
+     * scan one byte of a comment or cdata section, they end with two of the
+     * same character and a '&gt;'.
+     *
+     * @param c           the byte.
+     * @param endSequence the repeated character of the end sequence.
+     * @return always false, the end of a comment never ends an element.
+     */
+    private boolean scanSequenceEnd(int c, int endSequence) {
+        if (c == '>' && repeated >= 2) {
+            state = TEXT;
+        } else if (c == endSequence) {
+            repeated++;
+        } else {
+            repeated = 0;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,141 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutPut stream of INDIProtocol objects. Serialized to a xml stream with the
+ * direct {@link INDIXmlWriter}, without the reflection of xstream. The xml is
+ * the same as the xstream based {@link INDIOutputStreamImpl} writes.
+ *
+ * @author agent
+ */
+public class INDIXmlOutputStreamImpl extends OutputStream implements INDIEncodedOutputStream {
+
+    /**
+     * logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIXmlOutputStreamImpl.class);
+
+    static {
+        INDIURLStreamHandlerFactory.init();
+    }
+
+    /**
+     * The direct xml writer.
+     */
+    private final INDIXmlWriter out;
+
+    /**
+     * applies the flush policy.
+     */
+    private final INDIOutputFlusher flusher;
+
+    /**
+     * the number of bytes written at the last flush.
+     */
+    private long flushedBytes;
+
+    /**
+     * Constructor of the indi output stream.
+     *
+     * @param out the underlaying stream
+     */
+    protected INDIXmlOutputStreamImpl(OutputStream out) {
+        this(out, INDIFlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Constructor of the indi output stream.
+     *
+     * @param out         the underlaying stream
+     * @param flushPolicy when to flush the written messages.
+     */
+    protected INDIXmlOutputStreamImpl(OutputStream out, INDIFlushPolicy flushPolicy) {
+        this.out = new INDIXmlWriter(out);
+        this.flusher = new INDIOutputFlusher(flushPolicy, () -> {
+            this.out.flush();
+            flushedBytes = this.out.getBytesWritten();
+        }, this);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        flusher.flushNow();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flusher.flushNow();
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        throw new IOException("not supported method");
+    }
+
+    @Override
+    public void writeObject(INDIProtocol<?> element) throws IOException {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("sending indi object " + element);
+        }
+        flusher.beforeWrite();
+        synchronized (this) {
+            try {
+                out.write(element);
+            } catch (IOException | RuntimeException e) {
+                flusher.writeFailed();
+                throw e;
+            }
+            flusher.afterWrite(out.getBytesWritten() - flushedBytes);
+        }
+    }
+
+    @Override
+    public void writeEncoded(INDIEncodedMessage message) throws IOException {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("sending indi object " + message);
+        }
+        flusher.beforeWrite();
+        synchronized (this) {
+            try {
+                message.writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                flusher.writeFailed();
+                throw e;
+            }
+            flusher.afterWrite(out.getBytesWritten() - flushedBytes);
+        }
+    }
+}
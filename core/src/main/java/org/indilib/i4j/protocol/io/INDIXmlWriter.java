@@ -0,0 +1,608 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.*;
+import org.indilib.i4j.protocol.api.INDIBLOBSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Direct xml writer for the indi protocol objects. The xml is written without
+ * reflection into a reusable byte buffer (utf-8 encoded) that is passed to the
+ * underlying output stream whenever it is full or when the writer is flushed.
+ * The output is the same as the xstream serialization of the objects: all
+ * attributes in the order of the class hierarchy, null values are skipped,
+ * every element gets an end tag and there are no line breaks.
+ *
+ * @author agent
+ */
+public final class INDIXmlWriter {
+
+    /**
+     * the attribute that marks a one blob element with raw content, the
+     * content is not in the xml but transferred separately.
+     */
+    public static final String RAW_BLOB_ATTRIBUTE = "transfer";
+
+    /**
+     * the value of the raw blob attribute.
+     */
+    public static final String RAW_BLOB_VALUE = "raw";
+
+    /**
+     * the size of the write buffer.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * the number of bytes that must be free in the buffer for one character.
+     */
+    private static final int MAX_CHAR_BYTES = 8;
+
+    /**
+     * the size of the chunks blob sources are read in (a multiple of 3).
+     */
+    private static final int SOURCE_CHUNK_SIZE = 3 * 4 * 1024;
+
+    /**
+     * the base64 alphabet.
+     */
+    private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+
+    /**
+     * hex digits for character references.
+     */
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    /**
+     * the xml element names of the protocol classes.
+     */
+    private static final Map<Class<?>, String> ELEMENT_NAMES = new HashMap<>();
+
+    static {
+        ELEMENT_NAMES.put(DefBlob.class, "defBLOB");
+        ELEMENT_NAMES.put(DefBlobVector.class, "defBLOBVector");
+        ELEMENT_NAMES.put(DefLight.class, "defLight");
+        ELEMENT_NAMES.put(DefLightVector.class, "defLightVector");
+        ELEMENT_NAMES.put(DefNumber.class, "defNumber");
+        ELEMENT_NAMES.put(DefNumberVector.class, "defNumberVector");
+        ELEMENT_NAMES.put(DefSwitch.class, "defSwitch");
+        ELEMENT_NAMES.put(DefSwitchVector.class, "defSwitchVector");
+        ELEMENT_NAMES.put(DefText.class, "defText");
+        ELEMENT_NAMES.put(DefTextVector.class, "defTextVector");
+        ELEMENT_NAMES.put(DelProperty.class, "delProperty");
+        ELEMENT_NAMES.put(EnableBLOB.class, "enableBLOB");
+        ELEMENT_NAMES.put(GetProperties.class, "getProperties");
+        ELEMENT_NAMES.put(Message.class, "message");
+        ELEMENT_NAMES.put(NewBlobVector.class, "newBLOBVector");
+        ELEMENT_NAMES.put(NewLightVector.class, "newLightVector");
+        ELEMENT_NAMES.put(NewNumberVector.class, "newNumberVector");
+        ELEMENT_NAMES.put(NewSwitchVector.class, "newSwitchVector");
+        ELEMENT_NAMES.put(NewTextVector.class, "newTextVector");
+        ELEMENT_NAMES.put(OneBlob.class, "oneBLOB");
+        ELEMENT_NAMES.put(OneLight.class, "oneLight");
+        ELEMENT_NAMES.put(OneNumber.class, "oneNumber");
+        ELEMENT_NAMES.put(OneSwitch.class, "oneSwitch");
+        ELEMENT_NAMES.put(OneText.class, "oneText");
+        ELEMENT_NAMES.put(SetBlobVector.class, "setBLOBVector");
+        ELEMENT_NAMES.put(SetLightVector.class, "setLightVector");
+        ELEMENT_NAMES.put(SetNumberVector.class, "setNumberVector");
+        ELEMENT_NAMES.put(SetSwitchVector.class, "setSwitchVector");
+        ELEMENT_NAMES.put(SetTextVector.class, "setTextVector");
+    }
+
+    /**
+     * the underlying output stream.
+     */
+    private final OutputStream out;
+
+    /**
+     * the reusable write buffer.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * number of bytes in the buffer.
+     */
+    private int count;
+
+    /**
+     * number of bytes written from the buffer to the underlying stream.
+     */
+    private long bufferedOut;
+
+    /**
+     * the blobs written with raw content, null if blobs are written base64
+     * encoded.
+     */
+    private List<OneBlob> rawBlobs;
+
+    /**
+     * the reusable chunk for reading blob sources, created when needed.
+     */
+    private ByteBuffer sourceChunk;
+
+    /**
+     * create a writer on the output stream.
+     *
+     * @param out the output stream to write the xml to.
+     */
+    public INDIXmlWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * write the blobs without content and marked as raw, the blobs are added
+     * to the list so the caller can transfer the content separately.
+     *
+     * @param newRawBlobs the list to add the raw blobs to or null to write
+     *                    the blob content base64 encoded.
+     */
+    public void setRawBlobs(List<OneBlob> newRawBlobs) {
+        rawBlobs = newRawBlobs;
+    }
+
+    /**
+     * write the xml of one protocol object (not yet flushed).
+     *
+     * @param element the protocol object to write.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    public void write(INDIProtocol<?> element) throws IOException {
+        String elementName = ELEMENT_NAMES.get(element.getClass());
+        if (elementName == null) {
+            throw new IOException("unsupported indi protocol class " + element.getClass().getName());
+        }
+        writeAscii('<');
+        writeAscii(elementName);
+        writeAttributes(element);
+        writeAscii('>');
+        if (element instanceof DefVector<?>) {
+            writeChildren(((DefVector<?>) element).getElements());
+        } else if (element instanceof SetVector<?>) {
+            writeChildren(((SetVector<?>) element).getElements());
+        } else if (element instanceof NewVector<?>) {
+            writeChildren(((NewVector<?>) element).getElements());
+        } else if (element instanceof OneBlob) {
+            OneBlob blob = (OneBlob) element;
+            if (rawBlobs != null) {
+                rawBlobs.add(blob);
+            } else if (blob.getBlobSource() != null) {
+                writeBase64(blob.getBlobSource());
+            } else {
+                writeBase64(blob.getByteBuffer());
+            }
+        } else if (element instanceof OneElement<?>) {
+            writeText(((OneElement<?>) element).getTextContent(), false);
+        } else if (element instanceof DefElement<?>) {
+            writeText(((DefElement<?>) element).getTextContent(), false);
+        } else if (element instanceof EnableBLOB) {
+            writeText(((EnableBLOB) element).getTextContent(), false);
+        }
+        writeAscii('<');
+        writeAscii('/');
+        writeAscii(elementName);
+        writeAscii('>');
+    }
+
+    /**
+     * write already encoded xml of protocol objects (not yet flushed).
+     *
+     * @param xml    the encoded xml.
+     * @param offset the offset of the xml in the array.
+     * @param length the number of bytes to write.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    public void writeEncoded(byte[] xml, int offset, int length) throws IOException {
+        if (length <= buffer.length - count) {
+            System.arraycopy(xml, offset, buffer, count, length);
+            count += length;
+        } else {
+            flushBuffer();
+            out.write(xml, offset, length);
+            bufferedOut += length;
+        }
+    }
+
+    /**
+     * pass the buffered bytes to the underlying stream and flush it.
+     *
+     * @throws IOException if the underlying stream could not be written.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * @return the total number of bytes written by this writer (including
+     * the bytes still in the buffer).
+     */
+    public long getBytesWritten() {
+        return bufferedOut + count;
+    }
+
+    /**
+     * close the underlying stream.
+     *
+     * @throws IOException if the underlying stream could not be closed.
+     */
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * write the child elements of a vector.
+     *
+     * @param children the children to write.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeChildren(List<? extends INDIProtocol<?>> children) throws IOException {
+        for (INDIProtocol<?> child : children) {
+            write(child);
+        }
+    }
+
+    /**
+     * write all attributes of the element in the order of the class
+     * hierarchy.
+     *
+     * @param element the protocol object.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeAttributes(INDIProtocol<?> element) throws IOException {
+        writeAttribute("device", element.getDevice());
+        writeAttribute("name", element.getName());
+        writeAttribute("message", element.getMessage());
+        writeAttribute("timestamp", element.getTimestamp());
+        if (element instanceof DefVector<?>) {
+            DefVector<?> vector = (DefVector<?>) element;
+            writeAttribute("group", vector.getGroup());
+            writeAttribute("label", vector.getLabel());
+            writeAttribute("perm", vector.getPerm());
+            writeAttribute("state", vector.getState());
+            writeAttribute("timeout", vector.getTimeout());
+            if (vector instanceof DefSwitchVector) {
+                writeAttribute("rule", ((DefSwitchVector) vector).getRule());
+            }
+        } else if (element instanceof SetVector<?>) {
+            SetVector<?> vector = (SetVector<?>) element;
+            writeAttribute("state", vector.getState());
+            writeAttribute("timeout", vector.getTimeout());
+            if (vector instanceof SetSwitchVector) {
+                writeAttribute("rule", ((SetSwitchVector) vector).getRule());
+            }
+        } else if (element instanceof NewVector<?>) {
+            NewVector<?> vector = (NewVector<?>) element;
+            writeAttribute("state", vector.getState());
+            writeAttribute("timeout", vector.getTimeout());
+            if (vector instanceof NewSwitchVector) {
+                writeAttribute("rule", ((NewSwitchVector) vector).getRule());
+            }
+        } else if (element instanceof DefElement<?>) {
+            writeAttribute("label", ((DefElement<?>) element).getLabel());
+            if (element instanceof DefNumber) {
+                DefNumber number = (DefNumber) element;
+                writeAttribute("format", number.getFormat());
+                writeAttribute("max", number.getMax());
+                writeAttribute("min", number.getMin());
+                writeAttribute("step", number.getStep());
+            }
+        } else if (element instanceof OneNumber) {
+            writeAttribute("max", ((OneNumber) element).getMax());
+            writeAttribute("min", ((OneNumber) element).getMin());
+        } else if (element instanceof OneBlob) {
+            writeAttribute("format", ((OneBlob) element).getFormat());
+            writeAttribute("size", ((OneBlob) element).getSize());
+            if (rawBlobs != null) {
+                writeAttribute(RAW_BLOB_ATTRIBUTE, RAW_BLOB_VALUE);
+            }
+        } else if (element instanceof GetProperties) {
+            GetProperties getProperties = (GetProperties) element;
+            writeAttribute("property", emptyToNull(getProperties.getProperty()));
+            writeAttribute("version", emptyToNull(getProperties.getVersion()));
+            writeAttribute("maxRate", emptyToNull(getProperties.getMaxRate()));
+        } else if (element instanceof DelProperty) {
+            writeAttribute("version", ((DelProperty) element).getVersion());
+        }
+    }
+
+    /**
+     * @param value the value.
+     * @return null if the value is empty.
+     */
+    private static String emptyToNull(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * write one attribute if the value is not null.
+     *
+     * @param attributeName the name of the attribute.
+     * @param value         the value of the attribute.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeAttribute(String attributeName, String value) throws IOException {
+        if (value != null) {
+            writeAscii(' ');
+            writeAscii(attributeName);
+            writeAscii('=');
+            writeAscii('"');
+            writeText(value, true);
+            writeAscii('"');
+        }
+    }
+
+    /**
+     * write escaped text, the same way the xstream pretty print writer does in
+     * xml quirks mode.
+     *
+     * @param text      the text to write (may be null).
+     * @param attribute true if the text is an attribute value.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeText(String text, boolean attribute) throws IOException {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        for (int index = 0; index < length; index++) {
+            if (count > buffer.length - MAX_CHAR_BYTES) {
+                flushBuffer();
+            }
+            char c = text.charAt(index);
+            switch (c) {
+                case '&':
+                    writeAscii("&amp;");
+                    break;
+                case '<':
+                    writeAscii("&lt;");
+                    break;
+                case '>':
+                    writeAscii("&gt;");
+                    break;
+                case '"':
+                    writeAscii("&quot;");
+                    break;
+                case '\'':
+                    writeAscii("&apos;");
+                    break;
+                case '\r':
+                    writeAscii("&#xd;");
+                    break;
+                case '\t':
+                case '\n':
+                    if (attribute) {
+                        writeCharacterReference(c);
+                    } else {
+                        buffer[count++] = (byte) c;
+                    }
+                    break;
+                default:
+                    if (c < 0x80 && c >= 0x20 && c != 0x7F) {
+                        buffer[count++] = (byte) c;
+                    } else if (Character.isDefined(c) && !Character.isISOControl(c)) {
+                        index = writeUtf8(text, index, c);
+                    } else {
+                        writeCharacterReference(c);
+                    }
+            }
+        }
+    }
+
+    /**
+     * write a character reference.
+     *
+     * @param c the character.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeCharacterReference(char c) throws IOException {
+        writeAscii("&#x");
+        boolean leading = true;
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            int digit = c >> shift & 0xF;
+            if (digit != 0 || !leading || shift == 0) {
+                leading = false;
+                buffer[count++] = HEX[digit];
+            }
+        }
+        buffer[count++] = ';';
+    }
+
+    /**
+     * write a non ascii character utf-8 encoded, surrogate pairs are combined.
+     *
+     * @param text  the text the character is from.
+     * @param index the index of the character.
+     * @param c     the character.
+     * @return the index of the last character consumed.
+     */
+    private int writeUtf8(String text, int index, char c) {
+        if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | c >> 6);
+            buffer[count++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c) && index + 1 < text.length() && Character.isLowSurrogate(text.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+            buffer[count++] = (byte) (0xF0 | codePoint >> 18);
+            buffer[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            buffer[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[count++] = (byte) (0x80 | codePoint & 0x3F);
+            return index + 1;
+        } else if (Character.isSurrogate(c)) {
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte) (0xE0 | c >> 12);
+            buffer[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buffer[count++] = (byte) (0x80 | c & 0x3F);
+        }
+        return index;
+    }
+
+    /**
+     * write the bytes base64 encoded without line breaks.
+     *
+     * @param bytes the bytes to encode from the position to the limit (may be
+     *              null), the buffer itself is not changed.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeBase64(ByteBuffer bytes) throws IOException {
+        if (bytes == null) {
+            return;
+        }
+        int end = writeBase64Groups(bytes, bytes.position(), bytes.limit());
+        writeBase64Tail(bytes, end, bytes.limit());
+    }
+
+    /**
+     * write the content of the blob source base64 encoded without line
+     * breaks, the source is read and encoded in chunks.
+     *
+     * @param source the source of the content.
+     * @throws IOException if the source could not be read or the underlying
+     *                     stream could not be written.
+     */
+    private void writeBase64(INDIBLOBSource source) throws IOException {
+        if (sourceChunk == null) {
+            sourceChunk = ByteBuffer.allocate(SOURCE_CHUNK_SIZE);
+        }
+        ByteBuffer chunk = sourceChunk;
+        chunk.clear();
+        try (ReadableByteChannel channel = source.open()) {
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                chunk.position(writeBase64Groups(chunk, 0, chunk.limit()));
+                chunk.compact();
+            }
+        } finally {
+            chunk.flip();
+        }
+        writeBase64Tail(chunk, 0, chunk.limit());
+    }
+
+    /**
+     * write the complete groups of 3 bytes base64 encoded.
+     *
+     * @param bytes the bytes to encode.
+     * @param start the index to start.
+     * @param limit the index to stop.
+     * @return the index after the last encoded group.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private int writeBase64Groups(ByteBuffer bytes, int start, int limit) throws IOException {
+        int index = start;
+        int full = limit - (limit - index) % 3;
+        while (index < full) {
+            if (count > buffer.length - 4) {
+                flushBuffer();
+            }
+            int bits = (bytes.get(index++) & 0xFF) << 16 | (bytes.get(index++) & 0xFF) << 8 | bytes.get(index++) & 0xFF;
+            buffer[count++] = BASE64[bits >>> 18 & 0x3F];
+            buffer[count++] = BASE64[bits >>> 12 & 0x3F];
+            buffer[count++] = BASE64[bits >>> 6 & 0x3F];
+            buffer[count++] = BASE64[bits & 0x3F];
+        }
+        return index;
+    }
+
+    /**
+     * write the last 1 or 2 bytes base64 encoded with padding.
+     *
+     * @param bytes the bytes to encode.
+     * @param start the index to start.
+     * @param limit the index to stop.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeBase64Tail(ByteBuffer bytes, int start, int limit) throws IOException {
+        int index = start;
+        if (index < limit) {
+            if (count > buffer.length - 4) {
+                flushBuffer();
+            }
+            int bits = (bytes.get(index++) & 0xFF) << 16;
+            boolean two = index < limit;
+            if (two) {
+                bits |= (bytes.get(index) & 0xFF) << 8;
+            }
+            buffer[count++] = BASE64[bits >>> 18 & 0x3F];
+            buffer[count++] = BASE64[bits >>> 12 & 0x3F];
+            buffer[count++] = two ? BASE64[bits >>> 6 & 0x3F] : (byte) '=';
+            buffer[count++] = '=';
+        }
+    }
+
+    /**
+     * write an ascii string without escaping.
+     *
+     * @param text the ascii text.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeAscii(String text) throws IOException {
+        int length = text.length();
+        if (count > buffer.length - length) {
+            flushBuffer();
+        }
+        for (int index = 0; index < length; index++) {
+            buffer[count++] = (byte) text.charAt(index);
+        }
+    }
+
+    /**
+     * write one ascii character without escaping.
+     *
+     * @param c the ascii character.
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void writeAscii(char c) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) c;
+    }
+
+    /**
+     * pass the buffered bytes to the underlying stream.
+     *
+     * @throws IOException if the underlying stream could not be written.
+     */
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            bufferedOut += count;
+            count = 0;
+        }
+    }
+}
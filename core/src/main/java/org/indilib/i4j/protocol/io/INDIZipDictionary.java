@@ -0,0 +1,222 @@
+package org.indilib.i4j.protocol.io;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.Adler32;
+
+/**
+ * Preset dictionary for the deflate compression of an indi xml stream. The
+ * dictionary consists of the indi protocol vocabulary and the device and
+ * property names seen so far in the stream. The names are collected from the
+ * uncompressed bytes with a streaming scanner, so the sender (that scans what
+ * it compresses) and the receiver (that scans what it decompresses) build
+ * exactly the same dictionary at the same position in the stream.
+ *
+ * @author agent
+ */
+public final class INDIZipDictionary {
+
+    /**
+     * the maximum size of a deflate dictionary (the window size).
+     */
+    private static final int MAX_SIZE = 32 * 1024;
+
+    /**
+     * the maximum length of a collected attribute value.
+     */
+    private static final int MAX_VALUE_LENGTH = 128;
+
+    /**
+     * the indi protocol vocabulary, the most frequent strings are at the end
+     * because deflate encodes near matches cheaper.
+     */
+    private static final byte[] VOCABULARY = ("<getProperties version=\"1.7\"/><enableBLOB>Never</enableBLOB><enableBLOB>Also</enableBLOB>"
+            + "<delProperty device=\"<message device=\"<defBLOBVector<defBLOB name=\"</defBLOB></defBLOBVector>"
+            + "<defLightVector<defLight name=\"</defLight></defLightVector><setLightVector<oneLight name=\"</oneLight></setLightVector>"
+            + "<defTextVector<defText name=\"</defText></defTextVector><setTextVector<oneText name=\"</oneText></setTextVector>"
+            + "<newTextVector</newTextVector><newNumberVector</newNumberVector><newSwitchVector</newSwitchVector><newBLOBVector"
+            + "<setBLOBVector<oneBLOB name=\"\" size=\"\" format=\".fits\" format=\".fits.z\"</oneBLOB></setBLOBVector>"
+            + "<defSwitchVector rule=\"OneOfMany\" rule=\"AtMostOne\" rule=\"AnyOfMany\"<defSwitch name=\"</defSwitch></defSwitchVector>"
+            + "<defNumberVector<defNumber name=\"\" format=\"%g\" min=\"\" max=\"\" step=\"</defNumber></defNumberVector>"
+            + "\" label=\"\" group=\"Main Control\" perm=\"ro\" perm=\"wo\" perm=\"rw\" state=\"Idle\" state=\"Alert\" state=\"Busy\""
+            + "<setSwitchVector<oneSwitch name=\"\">Off</oneSwitch>On</oneSwitch></setSwitchVector>"
+            + "<setNumberVector device=\"\" name=\"\" state=\"Ok\" timeout=\"0\" timestamp=\"20<oneNumber name=\"\"></oneNumber></setNumberVector>")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * the attributes that are collected.
+     */
+    private static final byte[][] ATTRIBUTES = {
+            " device=".getBytes(StandardCharsets.US_ASCII),
+            " name=".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    /**
+     * the collected attributes in the order they where seen.
+     */
+    private final Set<String> names = new LinkedHashSet<>();
+
+    /**
+     * the number of matched bytes per attribute.
+     */
+    private final int[] matched = new int[ATTRIBUTES.length];
+
+    /**
+     * true if an attribute matched and its value is expected next.
+     */
+    private boolean valueExpected;
+
+    /**
+     * the quote of the value being collected or 0.
+     */
+    private int quote;
+
+    /**
+     * the attribute text being collected.
+     */
+    private final byte[] value = new byte[MAX_VALUE_LENGTH];
+
+    /**
+     * the number of bytes in the value.
+     */
+    private int valueLength;
+
+    /**
+     * the number of names collected since the last build.
+     */
+    private int newNames;
+
+    /**
+     * scan uncompressed bytes of the stream for names.
+     *
+     * @param bytes  the bytes.
+     * @param offset the offset of the first byte.
+     * @param length the number of bytes.
+     */
+    public void update(byte[] bytes, int offset, int length) {
+        for (int index = offset; index < offset + length; index++) {
+            update(bytes[index]);
+        }
+    }
+
+    /**
+     * scan one uncompressed byte of the stream for names.
+     *
+     * @param b the byte.
+     */
+    private void update(byte b) {
+        if (quote != 0) {
+            if (valueLength == value.length) {
+                quote = 0;
+            } else {
+                value[valueLength++] = b;
+                if (b == quote) {
+                    quote = 0;
+                    addName();
+                }
+            }
+            return;
+        }
+        if (valueExpected) {
+            valueExpected = false;
+            if (b == '"' || b == '\'') {
+                quote = b;
+                value[valueLength++] = b;
+                return;
+            }
+        }
+        for (int index = 0; index < ATTRIBUTES.length; index++) {
+            byte[] attributeBytes = ATTRIBUTES[index];
+            if (attributeBytes[matched[index]] == b) {
+                matched[index]++;
+                if (matched[index] == attributeBytes.length) {
+                    System.arraycopy(attributeBytes, 0, value, 0, attributeBytes.length);
+                    valueLength = attributeBytes.length;
+                    valueExpected = true;
+                    Arrays.fill(matched, 0);
+                    return;
+                }
+            } else {
+                matched[index] = attributeBytes[0] == b ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * add the collected attribute as name.
+     */
+    private void addName() {
+        if (names.add(new String(value, 0, valueLength, StandardCharsets.ISO_8859_1))) {
+            newNames++;
+        }
+    }
+
+    /**
+     * @return the number of names collected since the last build.
+     */
+    public int getNewNames() {
+        return newNames;
+    }
+
+    /**
+     * build the dictionary from the vocabulary and the names seen so far.
+     *
+     * @return the dictionary.
+     */
+    public byte[] build() {
+        newNames = 0;
+        int size = VOCABULARY.length;
+        for (String name : names) {
+            size += name.length();
+        }
+        Iterator<String> skipped = names.iterator();
+        while (size > MAX_SIZE) {
+            size -= skipped.next().length();
+            skipped.remove();
+        }
+        byte[] dictionary = new byte[size];
+        int offset = 0;
+        for (String name : names) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.ISO_8859_1);
+            System.arraycopy(nameBytes, 0, dictionary, offset, nameBytes.length);
+            offset += nameBytes.length;
+        }
+        System.arraycopy(VOCABULARY, 0, dictionary, offset, VOCABULARY.length);
+        return dictionary;
+    }
+
+    /**
+     * @param dictionary the dictionary.
+     * @return the id of the dictionary as used in the zlib header.
+     */
+    public static int id(byte[] dictionary) {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary, 0, dictionary.length);
+        return (int) adler.getValue();
+    }
+}
@@ -23,22 +23,99 @@ package org.indilib.i4j.protocol.io;
  */
 
 import org.indilib.i4j.protocol.url.INDIURLZipStreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.zip.Deflater;
 
 /**
  * Create a socket connection that communicates with a zipped data streams. And
- * by that vastly reducing the xml overhead.
+ * by that vastly reducing the xml overhead. The compression level and
+ * strategy can be selected, and the streams can be primed with a preset
+ * dictionary of the indi vocabulary and the names seen so far (see
+ * {@link INDIZipDictionary}). The receiving side always accepts a
+ * dictionary, the sending side only uses it if the other side can handle
+ * it. So by default the connecting client offers the dictionary and the
+ * accepting server mirrors it. The defaults are read from the system
+ * properties "INDIZipSocketConnection.level",
+ * "INDIZipSocketConnection.strategy", "INDIZipSocketConnection.dictionary"
+ * (server side) and "INDIZipSocketConnection.clientDictionary".
  *
  * @author Richard van Nieuwenhoven
  */
 public class INDIZipSocketConnection extends INDISocketConnection {
 
+    /**
+     * when to prime the sent stream with the dictionary.
+     */
+    public enum DictionaryMode {
+        /**
+         * never, for receivers that do not support dictionaries.
+         */
+        NEVER,
+        /**
+         * as soon as the other side used a dictionary.
+         */
+        MIRROR,
+        /**
+         * always, the other side must support dictionaries.
+         */
+        ALWAYS
+    }
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIZipSocketConnection.class);
+
+    /**
+     * the default compression level.
+     */
+    private static final int DEFAULT_LEVEL = defaultSetting("level", INDIZipSocketConnection::parseLevel, Deflater.DEFAULT_COMPRESSION);
+
+    /**
+     * the default compression strategy.
+     */
+    private static final int DEFAULT_STRATEGY = defaultSetting("strategy", INDIZipSocketConnection::parseStrategy, Deflater.DEFAULT_STRATEGY);
+
+    /**
+     * the default dictionary mode of the accepted connections.
+     */
+    private static final DictionaryMode DEFAULT_DICTIONARY = defaultSetting("dictionary", INDIZipSocketConnection::parseDictionaryMode, DictionaryMode.MIRROR);
+
+    /**
+     * the default dictionary mode of the connecting side, one side must start
+     * to use the dictionary or mirroring sides never would.
+     */
+    public static final DictionaryMode DEFAULT_CLIENT_DICTIONARY = defaultSetting("clientDictionary", INDIZipSocketConnection::parseDictionaryMode, DictionaryMode.ALWAYS);
+
+    /**
+     * the compression level.
+     */
+    private int level = DEFAULT_LEVEL;
+
+    /**
+     * the compression strategy.
+     */
+    private int strategy = DEFAULT_STRATEGY;
+
+    /**
+     * when to use the dictionary for the sent stream.
+     */
+    private DictionaryMode dictionaryMode = DEFAULT_DICTIONARY;
+
+    /**
+     * the inflating input stream, null as long as it is not created.
+     */
+    private volatile INDIInflaterInputStream inflaterInputStream;
+
     /**
      * constructor for the zip compressed socket stream.
      *
@@ -48,6 +125,16 @@ public class INDIZipSocketConnection extends INDISocketConnection {
         super(socket);
     }
 
+    /**
+     * constructor for the zip compressed socket stream.
+     *
+     * @param channel the blocking socket channel to connect the in and output
+     *                streams.
+     */
+    public INDIZipSocketConnection(SocketChannel channel) {
+        super(channel);
+    }
+
     /**
      * constructor for the zip compressed socket stream.
      *
@@ -57,34 +144,132 @@ public class INDIZipSocketConnection extends INDISocketConnection {
      */
     public INDIZipSocketConnection(String host, int port) throws IOException {
         super(host, port);
+        this.dictionaryMode = DEFAULT_CLIENT_DICTIONARY;
+    }
+
+    /**
+     * constructor for the zip compressed socket stream.
+     *
+     * @param host           the host name to connect to.
+     * @param port           the port to connect to.
+     * @param level          the compression level (see {@link Deflater}).
+     * @param strategy       the compression strategy (see {@link Deflater}).
+     * @param dictionaryMode when to use the dictionary for the sent stream.
+     * @throws IOException if the connection fails.
+     */
+    public INDIZipSocketConnection(String host, int port, int level, int strategy, DictionaryMode dictionaryMode) throws IOException {
+        super(host, port);
+        this.level = level;
+        this.strategy = strategy;
+        this.dictionaryMode = dictionaryMode;
+    }
+
+    /**
+     * read a default setting from its system property, an illegal value is
+     * logged and the fallback is used, so it can not break the class
+     * initialization.
+     *
+     * @param key      the key of the setting after the class name.
+     * @param parser   the parser of the value.
+     * @param fallback the value to use if the property is missing or illegal.
+     * @param <T>      the type of the setting.
+     * @return the default setting.
+     */
+    private static <T> T defaultSetting(String key, Function<String, T> parser, T fallback) {
+        String property = INDIZipSocketConnection.class.getSimpleName() + "." + key;
+        String value = System.getProperty(property);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return parser.apply(value.trim());
+        } catch (IllegalArgumentException e) {
+            LOG.warn("illegal value \"" + value + "\" of " + property + " (" + e.getMessage() + "), using the default");
+            return fallback;
+        }
+    }
+
+    /**
+     * parse a compression level, -1 (default) or 0 to 9.
+     *
+     * @param level the level as text (null for the default).
+     * @return the deflater level.
+     * @throws IllegalArgumentException if the level is not a number in the
+     *                                  legal range.
+     */
+    public static int parseLevel(String level) {
+        if (level == null || level.isEmpty()) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        int result = Integer.parseInt(level.trim());
+        if (result < Deflater.DEFAULT_COMPRESSION || result > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("compression level " + result + " is not between -1 and 9");
+        }
+        return result;
+    }
+
+    /**
+     * parse a compression strategy name: "default", "filtered" or "huffman".
+     *
+     * @param name the name of the strategy (null for the default).
+     * @return the deflater strategy.
+     * @throws IllegalArgumentException if the name is no strategy.
+     */
+    public static int parseStrategy(String name) {
+        if (name == null || name.isEmpty() || "default".equalsIgnoreCase(name.trim())) {
+            return Deflater.DEFAULT_STRATEGY;
+        } else if ("filtered".equalsIgnoreCase(name.trim())) {
+            return Deflater.FILTERED;
+        } else if ("huffman".equalsIgnoreCase(name.trim())) {
+            return Deflater.HUFFMAN_ONLY;
+        }
+        throw new IllegalArgumentException("unknown compression strategy " + name);
+    }
+
+    /**
+     * parse a dictionary mode: "never", "mirror" or "always" (true and false
+     * are accepted as always and never).
+     *
+     * @param name the name of the mode (null for mirror).
+     * @return the dictionary mode.
+     * @throws IllegalArgumentException if the name is no dictionary mode.
+     */
+    public static DictionaryMode parseDictionaryMode(String name) {
+        if (name == null || name.isEmpty()) {
+            return DictionaryMode.MIRROR;
+        } else if ("true".equalsIgnoreCase(name)) {
+            return DictionaryMode.ALWAYS;
+        } else if ("false".equalsIgnoreCase(name)) {
+            return DictionaryMode.NEVER;
+        }
+        return DictionaryMode.valueOf(name.toUpperCase(Locale.US));
     }
 
     @Override
     protected InputStream wrap(InputStream coreInputStream) {
-        return new InflaterInputStream(new MinimalBlockinInputStream(coreInputStream)) {
-
-            /**
-             * available() should return the number of bytes that can be read
-             * without running into blocking wait. Accomplishing this feast
-             * would eventually require to pre-inflate a huge chunk of data, so
-             * we rather opt for a more relaxed contract
-             * (java.util.zip.InflaterInputStream does not fit the bill). This
-             * code has been tested to work with BufferedReader.readLine();
-             */
-            @Override
-            public int available() throws IOException {
-                if (!inf.finished() && !inf.needsInput()) {
-                    return 1;
-                } else {
-                    return in.available();
-                }
-            }
-        };
+        inflaterInputStream = new INDIInflaterInputStream(coreInputStream);
+        return inflaterInputStream;
+    }
+
+    @Override
+    protected boolean isPlainXml() {
+        return false;
     }
 
     @Override
     protected OutputStream wrap(OutputStream coreOutputStream) {
-        return new DeflaterOutputStream(coreOutputStream, true);
+        return new INDIDeflaterOutputStream(coreOutputStream, level, strategy, this::useDictionary);
+    }
+
+    /**
+     * @return should the sent stream use the dictionary now.
+     */
+    private boolean useDictionary() {
+        if (dictionaryMode == DictionaryMode.MIRROR) {
+            INDIInflaterInputStream input = inflaterInputStream;
+            return input != null && input.isDictionaryUsed();
+        }
+        return dictionaryMode == DictionaryMode.ALWAYS;
     }
 
     @Override
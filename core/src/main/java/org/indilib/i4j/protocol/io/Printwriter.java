@@ -27,9 +27,6 @@ import com.thoughtworks.xstream.io.xml.XmlFriendlyNameCoder;
 import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
 
 import java.io.Writer;
-import java.lang.reflect.Field;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 
 /**
  * Print writer for xml output where all elements get an end tag. even if the
@@ -43,11 +40,6 @@ final class Printwriter extends PrettyPrintWriter {
         INDIURLStreamHandlerFactory.init();
     }
 
-    /**
-     * tagIsEmpty field of the superclass.
-     */
-    private final Field tagIsEmpty;
-
     /**
      * instanciate the writer.
      *
@@ -55,25 +47,14 @@ final class Printwriter extends PrettyPrintWriter {
      */
     protected Printwriter(Writer writer) {
         super(writer, XML_QUIRKS, new char[0], new XmlFriendlyNameCoder());
-        try {
-            tagIsEmpty = PrettyPrintWriter.class.getDeclaredField("tagIsEmpty");
-            AccessController.doPrivileged((PrivilegedAction<Object>) () -> {
-                tagIsEmpty.setAccessible(true);
-                return null;
-            });
-        } catch (Exception e) {
-            throw new IllegalStateException("this should not happen, did the super class change?", e);
-        }
     }
 
     @Override
     public void endNode() {
-        try {
-            tagIsEmpty.set(this, false);
-            super.endNode();
-        } catch (Exception e) {
-            throw new RuntimeException("?", e);
-        }
+        // an empty value finishes the open tag and marks it as not empty, so
+        // the element gets an end tag instead of "/>".
+        super.setValue("");
+        super.endNode();
     }
 
     @Override
@@ -1,5 +1,6 @@
 /**
- * This package provides the indi xml protokol io funktions for xstream.
+ * This package provides the indi xml protokol io funktions, with a direct
+ * pull parser and xml writer and the xstream based alternatives.
  *
  * @author Richard van Nieuwenhoven
  */
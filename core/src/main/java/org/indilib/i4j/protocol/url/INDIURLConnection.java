@@ -25,6 +25,7 @@ package org.indilib.i4j.protocol.url;
 import org.indilib.i4j.protocol.api.INDIConnection;
 import org.indilib.i4j.protocol.api.INDIInputStream;
 import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.indilib.i4j.protocol.io.INDIBinarySocketConnection;
 import org.indilib.i4j.protocol.io.INDISocketConnection;
 import org.indilib.i4j.protocol.io.INDIZipSocketConnection;
 
@@ -109,7 +110,9 @@ public class INDIURLConnection extends URLConnection implements INDIConnection {
             }
             try {
                 if (INDIURLZipStreamHandler.PROTOCOL.equals(getURL().getProtocol())) {
-                    socketConnection = new INDIZipSocketConnection(host, port);
+                    socketConnection = createZipConnection(host, port);
+                } else if (INDIURLBinaryStreamHandler.PROTOCOL.equals(getURL().getProtocol())) {
+                    socketConnection = new INDIBinarySocketConnection(host, port);
                 } else {
                     socketConnection = new INDISocketConnection(host, port);
                 }
@@ -120,6 +123,47 @@ public class INDIURLConnection extends URLConnection implements INDIConnection {
         }
     }
 
+    /**
+     * create the zip connection with the compression settings of the url
+     * query: level (0-9), strategy (default, filtered or huffman) and
+     * dictionary (never, mirror or always).
+     *
+     * @param host the host name to connect to.
+     * @param port the port to connect to.
+     * @return the zip connection.
+     * @throws IOException if the connection fails or the settings are
+     *                     illegal.
+     */
+    private INDIZipSocketConnection createZipConnection(String host, int port) throws IOException {
+        Map<String, List<String>> query = splitQuery(getURL());
+        String level = firstValue(query, "level");
+        String dictionary = firstValue(query, "dictionary");
+        if (level == null && firstValue(query, "strategy") == null && dictionary == null) {
+            return new INDIZipSocketConnection(host, port);
+        }
+        try {
+            return new INDIZipSocketConnection(host, port, //
+                    INDIZipSocketConnection.parseLevel(level), //
+                    INDIZipSocketConnection.parseStrategy(firstValue(query, "strategy")), //
+                    dictionary == null ? INDIZipSocketConnection.DEFAULT_CLIENT_DICTIONARY : INDIZipSocketConnection.parseDictionaryMode(dictionary));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("illegal compression settings in " + getURL(), e);
+        }
+    }
+
+    /**
+     * @param query the query parameters.
+     * @param key   the key of the parameter.
+     * @return the first value of the parameter or null.
+     */
+    private static String firstValue(Map<String, List<String>> query, String key) {
+        List<String> values = query.get(key);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.get(0);
+    }
+
     @Override
     public INDIInputStream getINDIInputStream() throws IOException {
         return getSocketConnection().getINDIInputStream();
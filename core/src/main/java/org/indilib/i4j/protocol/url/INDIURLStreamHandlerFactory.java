@@ -58,6 +58,8 @@ public class INDIURLStreamHandlerFactory implements URLStreamHandlerFactory {
             return new INDIURLStreamHandler();
         } else if (INDIURLZipStreamHandler.PROTOCOL.equals(protocol)) {
             return new INDIURLZipStreamHandler();
+        } else if (INDIURLBinaryStreamHandler.PROTOCOL.equals(protocol)) {
+            return new INDIURLBinaryStreamHandler();
         } else if (INDIWebSocketStreamHandler.PROTOCOL.equals(protocol)) {
             return new INDIWebSocketStreamHandler();
         }
@@ -27,21 +27,24 @@ import jakarta.websocket.Session;
 import org.indilib.i4j.protocol.api.INDIConnection;
 import org.indilib.i4j.protocol.api.INDIInputStream;
 import org.indilib.i4j.protocol.api.INDIOutputStream;
-import org.indilib.i4j.protocol.io.INDIProtocolFactory;
+import org.indilib.i4j.protocol.io.INDIXmlWriter;
 import org.indilib.i4j.protocol.url.INDIURLStreamHandlerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Indi protocol connection around a websocket entpoint on a websocket server.
+ * The received messages are parsed directly, without a piped stream between
+ * the websocket and the parser, and the sent xml is collected in websocket
+ * messages. If the request uri has the query parameter "blobs=raw" the blob
+ * content is sent as raw binary messages instead of base64 in the xml.
  *
  * @author Ricard van Nieuwenhoven
  */
@@ -56,10 +59,15 @@ public class INDIWebSocketConnection implements INDIConnection {
         INDIURLStreamHandlerFactory.init();
     }
 
+    /**
+     * the query parameter to select the blob transfer.
+     */
+    public static final String BLOBS_PARAMETER = "blobs";
+
     /**
      * the indi protocol input stream.
      */
-    private INDIInputStream inputStream;
+    private INDIWebSocketInputStream inputStream;
 
     /**
      * the indi protocol output stream.
@@ -103,14 +111,10 @@ public class INDIWebSocketConnection implements INDIConnection {
      * @throws IOException if some streams where instable.
      */
     protected void createINDIInputStream() throws IOException {
-        PipedInputStream bytesIn = new PipedInputStream();
-        final PipedOutputStream bytesOut = new PipedOutputStream(bytesIn);
-
-        inputStream = INDIProtocolFactory.createINDIInputStream(bytesIn);
-        session.addMessageHandler((MessageHandler.Partial<byte[]>) (message, last) -> {
+        inputStream = new INDIWebSocketInputStream();
+        session.addMessageHandler((MessageHandler.Partial<ByteBuffer>) (message, last) -> {
             try {
-                bytesOut.write(message);
-                bytesOut.flush();
+                inputStream.received(message, last);
             } catch (IOException e) {
                 LOG.error("cound not create INDI input stream on websocket endpoint", e);
                 try {
@@ -133,31 +137,26 @@ public class INDIWebSocketConnection implements INDIConnection {
      * @throws IOException if some streams where instable.
      */
     protected void createINDIOutPutStream() throws IOException {
-        ouputStream = INDIProtocolFactory.createINDIOutputStream(new OutputStream() {
-
-            @Override
-            public void write(int b) throws IOException {
-                byte[] bytes = new byte[1];
-                bytes[0] = (byte) b;
-                session.getBasicRemote().sendBinary(ByteBuffer.wrap(bytes));
-            }
-
-            @Override
-            public void write(byte[] bytes) throws IOException {
-                session.getBasicRemote().sendBinary(ByteBuffer.wrap(bytes));
-            }
-
-            @Override
-            public void write(byte[] bytes, int off, int len) throws IOException {
-                session.getBasicRemote().sendBinary(ByteBuffer.wrap(bytes, off, len));
-            }
+        ouputStream = new INDIWebSocketOutputStream(session.getBasicRemote(), isRawBlobsRequested());
+    }
 
-            @Override
-            public void flush() throws IOException {
-                session.getBasicRemote().sendBinary(ByteBuffer.wrap(new byte[0]), true);
+    /**
+     * @return true if the request uri asked for raw blob content.
+     */
+    private boolean isRawBlobsRequested() {
+        Map<String, List<String>> parameters = session.getRequestParameterMap();
+        if (parameters != null && parameters.get(BLOBS_PARAMETER) != null) {
+            return parameters.get(BLOBS_PARAMETER).contains(INDIXmlWriter.RAW_BLOB_VALUE);
+        }
+        String query = session.getRequestURI() == null ? null : session.getRequestURI().getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                if (pair.equals(BLOBS_PARAMETER + "=" + INDIXmlWriter.RAW_BLOB_VALUE)) {
+                    return true;
+                }
             }
-        });
-
+        }
+        return false;
     }
 
     @Override
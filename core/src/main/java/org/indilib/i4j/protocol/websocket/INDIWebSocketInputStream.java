@@ -0,0 +1,310 @@
+package org.indilib.i4j.protocol.websocket;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.io.INDIPullInputStreamImpl;
+import org.indilib.i4j.protocol.io.INDIRingBuffer;
+import org.indilib.i4j.protocol.io.INDIXmlFramer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indi input stream that is fed with the received websocket messages. The
+ * messages are framed at the indi message boundaries and parsed on the
+ * receiving thread, the parsed protocol objects are queued for the reader.
+ * One blob elements marked as raw get their content from the binary
+ * websocket messages that follow the xml message.
+ *
+ * @author agent
+ */
+class INDIWebSocketInputStream extends INDIPullInputStreamImpl {
+
+    /**
+     * the maximum number of parsed objects waiting for the reader.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * the initial size of the receive buffer.
+     */
+    private static final int INITIAL_SIZE = 16 * 1024;
+
+    /**
+     * the received bytes and the framing.
+     */
+    private final FrameInput frames;
+
+    /**
+     * the parsed objects waiting for the reader.
+     */
+    private final INDIRingBuffer<INDIProtocol<?>> queue = new INDIRingBuffer<>(QUEUE_CAPACITY, INDIRingBuffer.WaitStrategy.PARK, INDIRingBuffer.OverflowPolicy.BLOCK);
+
+    /**
+     * the raw blobs of the last parsed object.
+     */
+    private final List<OneBlob> rawBlobs = new ArrayList<>();
+
+    /**
+     * the object that waits for the content of its raw blobs.
+     */
+    private INDIProtocol<?> pendingObject;
+
+    /**
+     * the raw blobs of the pending object that are still without content.
+     */
+    private final List<OneBlob> pendingBlobs = new ArrayList<>();
+
+    /**
+     * true if the current websocket message is the content of a raw blob.
+     */
+    private boolean rawMessage;
+
+    /**
+     * the content of the current raw blob.
+     */
+    private byte[] rawContent = new byte[0];
+
+    /**
+     * the number of bytes in the raw content.
+     */
+    private int rawLength;
+
+    /**
+     * create the stream.
+     */
+    INDIWebSocketInputStream() {
+        this(new FrameInput());
+    }
+
+    /**
+     * create the stream around the frame input.
+     *
+     * @param frames the frame input.
+     */
+    private INDIWebSocketInputStream(FrameInput frames) {
+        super(frames);
+        this.frames = frames;
+        setRawBlobs(rawBlobs);
+    }
+
+    /**
+     * a part of a websocket message was received.
+     *
+     * @param bytes the bytes of the part.
+     * @param last  true if this is the last part of the message.
+     * @throws IOException if the xml could not be parsed.
+     */
+    synchronized void received(ByteBuffer bytes, boolean last) throws IOException {
+        if (rawMessage) {
+            receivedRaw(bytes, last);
+            return;
+        }
+        if (frames.append(bytes)) {
+            INDIProtocol<?> object = super.readObject();
+            while (object != null) {
+                if (rawBlobs.isEmpty()) {
+                    queue(object);
+                } else {
+                    pendingObject = object;
+                    pendingBlobs.addAll(rawBlobs);
+                    rawBlobs.clear();
+                }
+                object = super.readObject();
+            }
+        }
+        if (last && pendingObject != null) {
+            rawMessage = true;
+        }
+    }
+
+    /**
+     * a part of a raw blob message was received.
+     *
+     * @param bytes the bytes of the part.
+     * @param last  true if this is the last part of the blob.
+     * @throws IOException if the reader is gone.
+     */
+    private void receivedRaw(ByteBuffer bytes, boolean last) throws IOException {
+        OneBlob blob = pendingBlobs.get(0);
+        if (rawLength == 0 && last) {
+            // the usual case, the blob came as one message.
+            setContent(blob, ByteBuffer.allocate(bytes.remaining()).put(bytes));
+        } else {
+            if (rawLength + bytes.remaining() > rawContent.length) {
+                rawContent = Arrays.copyOf(rawContent, Math.max(rawContent.length * 2, rawLength + bytes.remaining()));
+            }
+            int count = bytes.remaining();
+            bytes.get(rawContent, rawLength, count);
+            rawLength += count;
+            if (!last) {
+                return;
+            }
+            setContent(blob, ByteBuffer.allocate(rawLength).put(rawContent, 0, rawLength));
+            rawLength = 0;
+        }
+        pendingBlobs.remove(0);
+        if (pendingBlobs.isEmpty()) {
+            rawMessage = false;
+            INDIProtocol<?> object = pendingObject;
+            pendingObject = null;
+            queue(object);
+        }
+    }
+
+    /**
+     * set the raw content of a blob, the size attribute stays as received.
+     *
+     * @param blob    the blob.
+     * @param content the content in write mode.
+     */
+    private static void setContent(OneBlob blob, ByteBuffer content) {
+        String size = blob.getSize();
+        content.flip();
+        blob.setByteBuffer(content);
+        blob.setSize(size);
+    }
+
+    /**
+     * queue a parsed object for the reader.
+     *
+     * @param object the object.
+     * @throws IOException if the reader is gone or the thread was
+     *                     interrupted.
+     */
+    private void queue(INDIProtocol<?> object) throws IOException {
+        try {
+            if (!queue.put(object)) {
+                throw new IOException("stream closed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while queuing", e);
+        }
+    }
+
+    /**
+     * @return the next received protocol object, null when the connection
+     * was closed.
+     * @throws IOException never, the parse errors are reported to the
+     *                     receiving thread.
+     */
+    @Override
+    public INDIProtocol<?> readObject() throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        queue.close();
+    }
+
+    /**
+     * The received bytes, only the bytes of complete indi messages are handed
+     * out to the parser, at the end of them the stream ends temporarily.
+     */
+    private static final class FrameInput extends InputStream {
+
+        /**
+         * the framer that finds the message boundaries.
+         */
+        private final INDIXmlFramer framer = new INDIXmlFramer();
+
+        /**
+         * the received bytes.
+         */
+        private byte[] bytes = new byte[INITIAL_SIZE];
+
+        /**
+         * the index of the next byte to hand out.
+         */
+        private int start;
+
+        /**
+         * the end of the complete messages.
+         */
+        private int frameLimit;
+
+        /**
+         * the end of the received bytes.
+         */
+        private int end;
+
+        /**
+         * append received bytes.
+         *
+         * @param received the received bytes.
+         * @return true if there are complete messages now.
+         */
+        boolean append(ByteBuffer received) {
+            int count = received.remaining();
+            if (end + count > bytes.length) {
+                System.arraycopy(bytes, start, bytes, 0, end - start);
+                frameLimit -= start;
+                end -= start;
+                start = 0;
+                if (end + count > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, end + count));
+                }
+            }
+            received.get(bytes, end, count);
+            int frameEnd = framer.findFrameEnd(bytes, end, end + count);
+            end += count;
+            while (frameEnd >= 0) {
+                frameLimit = frameEnd;
+                frameEnd = framer.findFrameEnd(bytes, frameEnd, end);
+            }
+            return frameLimit > start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (start >= frameLimit) {
+                return -1;
+            }
+            return bytes[start++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = Math.min(len, frameLimit - start);
+            if (count <= 0) {
+                return -1;
+            }
+            System.arraycopy(bytes, start, b, off, count);
+            start += count;
+            return count;
+        }
+    }
+}
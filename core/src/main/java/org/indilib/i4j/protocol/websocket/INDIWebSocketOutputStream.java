@@ -0,0 +1,264 @@
+package org.indilib.i4j.protocol.websocket;
+
+/*
+ * #%L
+ * INDI Protocol implementation
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import jakarta.websocket.RemoteEndpoint;
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.api.INDIBLOBSource;
+import org.indilib.i4j.protocol.io.INDIEncodedMessage;
+import org.indilib.i4j.protocol.io.INDIEncodedOutputStream;
+import org.indilib.i4j.protocol.io.INDIFlushPolicy;
+import org.indilib.i4j.protocol.io.INDIOutputFlusher;
+import org.indilib.i4j.protocol.io.INDIXmlWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Indi output stream that writes the xml in websocket messages. The bytes are
+ * collected in frames of a sensible size and a flush ends the message, so a
+ * burst of protocol objects (see {@link INDIFlushPolicy}) leaves as one
+ * websocket message. Optionally the blob content is sent raw, as binary
+ * messages directly after the xml message.
+ *
+ * @author agent
+ */
+class INDIWebSocketOutputStream extends OutputStream implements INDIEncodedOutputStream {
+
+    /**
+     * logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIWebSocketOutputStream.class);
+
+    /**
+     * the size of the frames.
+     */
+    private static final int FRAME_SIZE = 64 * 1024;
+
+    /**
+     * the remote endpoint to send to.
+     */
+    private final RemoteEndpoint.Basic remote;
+
+    /**
+     * the xml writer.
+     */
+    private final INDIXmlWriter writer;
+
+    /**
+     * applies the flush policy.
+     */
+    private final INDIOutputFlusher flusher;
+
+    /**
+     * the blobs to send raw after the current xml message, null if the blobs
+     * are sent base64 encoded.
+     */
+    private final List<OneBlob> rawBlobs;
+
+    /**
+     * the frame being collected.
+     */
+    private final ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+
+    /**
+     * true if a message was started and not yet ended.
+     */
+    private boolean messageStarted;
+
+    /**
+     * create the stream.
+     *
+     * @param remote   the remote endpoint to send to.
+     * @param rawBlobs true if the blob content should be sent raw.
+     */
+    INDIWebSocketOutputStream(RemoteEndpoint.Basic remote, boolean rawBlobs) {
+        this.remote = remote;
+        this.writer = new INDIXmlWriter(new FrameOutput());
+        this.flusher = new INDIOutputFlusher(INDIFlushPolicy.DEFAULT, this::endMessage, this);
+        this.rawBlobs = rawBlobs ? new ArrayList<>() : null;
+        writer.setRawBlobs(this.rawBlobs);
+    }
+
+    @Override
+    public void writeObject(INDIProtocol<?> element) throws IOException {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("sending indi object " + element);
+        }
+        flusher.beforeWrite();
+        synchronized (this) {
+            try {
+                writer.write(element);
+                if (rawBlobs != null && !rawBlobs.isEmpty()) {
+                    // the raw content must follow the message with the xml.
+                    endMessage();
+                    sendRawBlobs();
+                }
+            } catch (IOException | RuntimeException e) {
+                flusher.writeFailed();
+                throw e;
+            }
+            flusher.afterWrite(0L);
+        }
+    }
+
+    @Override
+    public void writeEncoded(INDIEncodedMessage message) throws IOException {
+        if (rawBlobs != null && message.isBlob()) {
+            // the raw blob xml differs from the shared encoding.
+            writeObject(message.getElement());
+            return;
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("sending indi object " + message);
+        }
+        flusher.beforeWrite();
+        synchronized (this) {
+            try {
+                message.writeTo(writer);
+            } catch (IOException | RuntimeException e) {
+                flusher.writeFailed();
+                throw e;
+            }
+            flusher.afterWrite(0L);
+        }
+    }
+
+    /**
+     * send the content of the raw blobs, each as one binary message.
+     *
+     * @throws IOException if the content could not be sent.
+     */
+    private void sendRawBlobs() throws IOException {
+        try {
+            for (OneBlob blob : rawBlobs) {
+                INDIBLOBSource source = blob.getBlobSource();
+                if (source == null) {
+                    ByteBuffer content = blob.getByteBuffer();
+                    remote.sendBinary(content == null ? ByteBuffer.allocate(0) : content.duplicate(), true);
+                } else {
+                    sendRawSource(source);
+                }
+            }
+        } finally {
+            rawBlobs.clear();
+        }
+    }
+
+    /**
+     * send the content of a blob source as one binary message in frames.
+     *
+     * @param source the blob source.
+     * @throws IOException if the content could not be read or sent.
+     */
+    private void sendRawSource(INDIBLOBSource source) throws IOException {
+        try (ReadableByteChannel channel = source.open()) {
+            frame.clear();
+            while (channel.read(frame) >= 0) {
+                if (!frame.hasRemaining()) {
+                    frame.flip();
+                    remote.sendBinary(frame, false);
+                    frame.clear();
+                }
+            }
+            frame.flip();
+            remote.sendBinary(frame, true);
+        } finally {
+            frame.clear();
+        }
+    }
+
+    /**
+     * send the collected xml as the end of the current message.
+     *
+     * @throws IOException if the message could not be sent.
+     */
+    private void endMessage() throws IOException {
+        writer.flush();
+        if (messageStarted || frame.position() > 0) {
+            frame.flip();
+            remote.sendBinary(frame, true);
+            frame.clear();
+            messageStarted = false;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        flusher.flushNow();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        throw new IOException("not supported method");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flusher.flushNow();
+    }
+
+    /**
+     * Collects the xml bytes of the writer in the frame, full frames are sent
+     * as parts of the current message.
+     */
+    private final class FrameOutput extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{
+                    (byte) b
+            }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (!frame.hasRemaining()) {
+                    frame.flip();
+                    remote.sendBinary(frame, false);
+                    frame.clear();
+                    messageStarted = true;
+                }
+                int count = Math.min(remaining, frame.remaining());
+                frame.put(b, offset, count);
+                offset += count;
+                remaining -= count;
+            }
+        }
+
+        @Override
+        public void flush() {
+            // the message is ended by the output stream.
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.indilib.i4j;
+
+/*
+ * #%L
+ * INDI for Java Base Library
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import junit.framework.TestCase;
+
+import java.util.Locale;
+
+/**
+ * The compiled number formats must produce the same text as
+ * {@link String#format(Locale, String, Object...)}.
+ *
+ * @author agent
+ */
+public class INDINumberFormatTest extends TestCase {
+
+    /**
+     * numbers that exercise the rounding and the switch to the formatter.
+     */
+    private static final double[] NUMBERS = {
+        0d,
+        -0d,
+        1d,
+        -1d,
+        0.5,
+        0.125,
+        1.0 / 3.0,
+        2.0 / 3.0,
+        123456.789,
+        -98765.4321,
+        1e-7,
+        1e15,
+        1e300,
+        Double.MIN_VALUE,
+        Math.PI,
+        -Math.E
+    };
+
+    /**
+     * %f with precisions up to and beyond the ones that fit in a long.
+     */
+    public void testFixedPrecisions() {
+        for (int precision = 0; precision <= 25; precision++) {
+            assertSameAsFormatter("%." + precision + "f");
+        }
+    }
+
+    /**
+     * %e and %g with precisions beyond the supported significant digits.
+     */
+    public void testSignificantPrecisions() {
+        for (int precision = 0; precision <= 25; precision++) {
+            assertSameAsFormatter("%." + precision + "e");
+            assertSameAsFormatter("%." + precision + "g");
+        }
+    }
+
+    /**
+     * width and flags with the large precisions.
+     */
+    public void testWidthAndFlags() {
+        assertSameAsFormatter("%30.19f");
+        assertSameAsFormatter("%-30.20f");
+        assertSameAsFormatter("%+030.22f");
+    }
+
+    /**
+     * @param format the format to compare for all numbers.
+     */
+    private static void assertSameAsFormatter(String format) {
+        INDINumberFormat compiled = INDINumberFormat.compile(format);
+        for (double number : NUMBERS) {
+            assertEquals(format + " of " + number, String.format(Locale.US, format, number), compiled.format(number));
+        }
+    }
+}
@@ -35,6 +35,8 @@ import org.indilib.i4j.driver.annotation.InjectElement;
 import org.indilib.i4j.driver.annotation.InjectProperty;
 import org.indilib.i4j.driver.event.NumberEvent;
 import org.indilib.i4j.driver.event.SwitchEvent;
+import org.indilib.i4j.protocol.api.INDIBLOBSource;
+import org.indilib.i4j.protocol.io.INDIBLOBSources;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +45,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 import static nom.tam.fits.header.ObservationDurationDescription.EXPOSURE;
@@ -284,6 +287,12 @@ public class INDICCDDriverExtension extends INDIDriverExtension<INDICCDDriver> {
      */
     private INDICCDDriverInterface driverInterface;
 
+    /**
+     * the blob source of the last image upload, the reference of the driver
+     * is given back with the next upload.
+     */
+    private INDIBLOBSource uploadSource;
+
     /**
      * True if frame is compressed, false otherwise.
      */
@@ -790,6 +799,8 @@ public class INDICCDDriverExtension extends INDIDriverExtension<INDICCDDriver> {
         removeProperty(fits);
         removeProperty(frameType);
         removeProperty(autoLoopProp);
+        // the temporary file of the last upload is not needed anymore.
+        replaceUploadSource(null);
     }
 
     /**
@@ -929,32 +940,99 @@ public class INDICCDDriverExtension extends INDIDriverExtension<INDICCDDriver> {
      *                   of the file.
      */
     public void uploadFile(boolean sendImage, boolean saveImage) throws Exception {
-
+        File imageFile = null;
         if (saveImage) {
-            File fp = driver.getFileWithIndex(getImageExtension());
-            try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fp)))) {
+            imageFile = driver.getFileWithIndex(getImageExtension());
+            try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(imageFile)))) {
                 ccdImage.write(os, subframeX, subframeY, subframeWidth, subframeHeight, getImageExtension());
             }
         }
         if (sendImage) {
+            // the image is written to a file and streamed from there to the
+            // clients, so the memory use does not depend on the image size.
             if (sendCompressed) {
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new BufferedOutputStream(out))))) {
-                    ccdImage.write(os, subframeX, subframeY, subframeWidth, subframeHeight, getImageExtension());
+                File compressedFile = createUploadFile("." + getImageExtension() + ".z");
+                Deflater deflater = new Deflater();
+                long imageSize;
+                boolean written = false;
+                try {
+                    try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(compressedFile)), deflater)))) {
+                        ccdImage.write(os, subframeX, subframeY, subframeWidth, subframeHeight, getImageExtension());
+                    }
+                    imageSize = deflater.getBytesRead();
+                    written = true;
+                } finally {
+                    deflater.end();
+                    if (!written) {
+                        deleteUploadFile(compressedFile);
+                    }
                 }
-                fitsImage.setValue(new INDIBLOBValue(out.toByteArray(), "." + getImageExtension() + ".z"));
+                INDIBLOBSource source = INDIBLOBSources.withSize(INDIBLOBSources.ofTemporaryFile(compressedFile), imageSize);
+                fitsImage.setValue(new INDIBLOBValue(replaceUploadSource(source), "." + getImageExtension() + ".z"));
             } else {
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(out))) {
-                    ccdImage.write(os, subframeX, subframeY, subframeWidth, subframeHeight, getImageExtension());
+                INDIBLOBSource source;
+                if (imageFile == null) {
+                    File uploadFile = createUploadFile("." + getImageExtension());
+                    boolean written = false;
+                    try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(uploadFile)))) {
+                        ccdImage.write(os, subframeX, subframeY, subframeWidth, subframeHeight, getImageExtension());
+                        written = true;
+                    } finally {
+                        if (!written) {
+                            deleteUploadFile(uploadFile);
+                        }
+                    }
+                    source = INDIBLOBSources.ofTemporaryFile(uploadFile);
+                } else {
+                    source = INDIBLOBSources.of(imageFile);
                 }
-                fitsImage.setValue(new INDIBLOBValue(out.toByteArray(), "." + getImageExtension()));
+                fitsImage.setValue(new INDIBLOBValue(replaceUploadSource(source), "." + getImageExtension()));
             }
             fits.setState(PropertyStates.OK);
             updateProperty(fits);
         }
     }
 
+    /**
+     * create a new temporary file for an image upload. It is deleted when the
+     * blob source of the upload is released by the driver and all clients
+     * that still have to send it.
+     *
+     * @param suffix the suffix of the file.
+     * @return the new temporary file.
+     * @throws IOException if the file could not be created.
+     */
+    private File createUploadFile(String suffix) throws IOException {
+        return File.createTempFile("indi-ccd-", suffix);
+    }
+
+    /**
+     * delete the temporary file of an upload that failed before its blob
+     * source took it over.
+     *
+     * @param uploadFile the temporary file.
+     */
+    private static void deleteUploadFile(File uploadFile) {
+        if (!uploadFile.delete()) {
+            LOG.warn("could not delete the temporary upload file " + uploadFile);
+        }
+    }
+
+    /**
+     * replace the blob source of the last upload, the reference of the driver
+     * to the previous source is given back.
+     *
+     * @param source the blob source of the new upload.
+     * @return the new source.
+     */
+    private INDIBLOBSource replaceUploadSource(INDIBLOBSource source) {
+        if (uploadSource != null) {
+            uploadSource.release();
+        }
+        uploadSource = source;
+        return source;
+    }
+
     /**
      * @return desired frame type for next exposure.
      */
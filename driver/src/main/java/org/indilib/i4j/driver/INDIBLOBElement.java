@@ -81,7 +81,11 @@ public class INDIBLOBElement extends INDIElement<INDIBLOBElement> {
 
     @Override
     public OneElement<?> getXMLOneElement(boolean includeMinMaxStep) {
-        return new OneBlob().setName(getName()).setByteContent(value.getBlobData()).setFormat(value.getFormat());
+        OneBlob blob = new OneBlob().setName(getName()).setFormat(value.getFormat());
+        if (value.getBlobSource() != null) {
+            return blob.setBlobSource(value.getBlobSource());
+        }
+        return blob.setByteBuffer(value.getBlobBuffer());
     }
 
     @Override
@@ -22,16 +22,13 @@ package org.indilib.i4j.driver;
  * #L%
  */
 
-import org.indilib.i4j.INDISexagesimalFormatter;
+import org.indilib.i4j.INDINumberFormat;
 import org.indilib.i4j.driver.util.INDIElementBuilder;
 import org.indilib.i4j.protocol.DefElement;
 import org.indilib.i4j.protocol.DefNumber;
 import org.indilib.i4j.protocol.OneElement;
 import org.indilib.i4j.protocol.OneNumber;
 
-import java.util.Formatter;
-import java.util.Locale;
-
 /**
  * A class representing a INDI Number Element.
  *
@@ -70,9 +67,9 @@ public class INDINumberElement extends INDIElement<INDINumberElement> {
     private double step;
 
     /**
-     * A formatter used to parse and format the values.
+     * The compiled number format used to parse and format the values.
      */
-    private INDISexagesimalFormatter sFormatter;
+    private INDINumberFormat compiledFormat;
 
     /**
      * Constructs an instance of a <code>INDINumberElement</code>. Using the
@@ -176,10 +173,7 @@ public class INDINumberElement extends INDIElement<INDINumberElement> {
             throw new IllegalArgumentException("Number format not recognized%\n");
         }
 
-        if (newNumberFormat.endsWith("m")) {
-            sFormatter = new INDISexagesimalFormatter(newNumberFormat);
-        }
-
+        compiledFormat = INDINumberFormat.compile(newNumberFormat);
         numberFormat = newNumberFormat;
     }
 
@@ -242,17 +236,7 @@ public class INDINumberElement extends INDIElement<INDINumberElement> {
      * Number Element.
      */
     private String getNumberAsString(double number) {
-        String aux;
-
-        if (numberFormat.endsWith("m")) {
-            aux = sFormatter.format(number);
-        } else {
-            Formatter formatter = new Formatter(Locale.US);
-            aux = formatter.format(getNumberFormat(), number).toString();
-            formatter.close();
-        }
-
-        return aux;
+        return compiledFormat.format(number);
     }
 
     @Override
@@ -303,17 +287,7 @@ public class INDINumberElement extends INDIElement<INDINumberElement> {
      *                                  correctly formatted.
      */
     private double parseNumber(String number) {
-        double res;
-        if (numberFormat.endsWith("m")) {
-            res = sFormatter.parseSexagesimal(number);
-        } else {
-            try {
-                res = Double.parseDouble(number);
-            } catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Number value not correct");
-            }
-        }
-        return res;
+        return compiledFormat.parse(number);
     }
 
     @Override
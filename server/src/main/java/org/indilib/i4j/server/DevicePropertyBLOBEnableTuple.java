@@ -23,6 +23,7 @@ package org.indilib.i4j.server;
  */
 
 import org.indilib.i4j.Constants.BLOBEnables;
+import org.indilib.i4j.protocol.io.INDISymbolTable;
 
 /**
  * A class that represents a tuple of Device and Property names and a
@@ -54,7 +55,7 @@ public class DevicePropertyBLOBEnableTuple {
      * @param device The Device name.
      */
     protected DevicePropertyBLOBEnableTuple(String device) {
-        this.device = device;
+        this.device = INDISymbolTable.intern(device);
         property = null;
         enable = null;
     }
@@ -66,7 +67,7 @@ public class DevicePropertyBLOBEnableTuple {
      * @param enable The BLOB Enable.
      */
     protected DevicePropertyBLOBEnableTuple(String device, BLOBEnables enable) {
-        this.device = device;
+        this.device = INDISymbolTable.intern(device);
         property = null;
         this.enable = enable;
     }
@@ -79,8 +80,8 @@ public class DevicePropertyBLOBEnableTuple {
      * @param property The Property name.
      */
     protected DevicePropertyBLOBEnableTuple(String device, String property) {
-        this.device = device;
-        this.property = property;
+        this.device = INDISymbolTable.intern(device);
+        this.property = INDISymbolTable.intern(property);
         enable = null;
     }
 
@@ -92,8 +93,8 @@ public class DevicePropertyBLOBEnableTuple {
      * @param enable   The BLOB Enable.
      */
     protected DevicePropertyBLOBEnableTuple(String device, String property, BLOBEnables enable) {
-        this.device = device;
-        this.property = property;
+        this.device = INDISymbolTable.intern(device);
+        this.property = INDISymbolTable.intern(property);
         this.enable = enable;
     }
 
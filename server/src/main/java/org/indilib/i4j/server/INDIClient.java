@@ -31,6 +31,7 @@ import org.indilib.i4j.protocol.INDIProtocol;
 import org.indilib.i4j.protocol.NewVector;
 import org.indilib.i4j.protocol.api.INDIConnection;
 import org.indilib.i4j.protocol.api.INDIInputStream;
+import org.indilib.i4j.protocol.io.INDIEncodedMessage;
 import org.indilib.i4j.server.api.INDIClientInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,7 +49,7 @@ public class INDIClient extends INDIDeviceListener implements INDIClientInterfac
     private static final Logger LOG = LoggerFactory.getLogger(INDIClient.class);
 
     /**
-     * The reader.
+     * The reader, null if the selector loop reads the connection.
      */
     private INDIProtocolReader reader;
 
@@ -60,7 +61,12 @@ public class INDIClient extends INDIDeviceListener implements INDIClientInterfac
     /**
      * The socket to communicate with the Client.
      */
-    private INDIConnection connection;
+    private volatile INDIConnection connection;
+
+    /**
+     * the queue of the messages to send to the client.
+     */
+    private final INDIClientOutboundQueue outbound;
 
     /**
      * Constructs a new INDIClient that connects to the server and starts
@@ -72,9 +78,15 @@ public class INDIClient extends INDIDeviceListener implements INDIClientInterfac
     public INDIClient(INDIConnection connection, INDIServer server) {
         this.connection = connection;
         this.server = server;
+        outbound = new INDIClientOutboundQueue(INDIClientOutboundQueue.DEFAULT_CAPACITY, INDIClientOutboundQueue.DEFAULT_OVERFLOW, new INDIClientOutboundQueue.Writer() {
 
-        reader = new INDIProtocolReader(this, "client reader " + connection.getURL());
-        reader.start();
+            @Override
+            public boolean write(INDIEncodedMessage message) {
+                return writeXMLMessage(message);
+            }
+        });
+
+        reader = INDIProtocolReader.start(this, connection, "client reader " + connection.getURL());
     }
 
     @Override
@@ -89,8 +101,9 @@ public class INDIClient extends INDIDeviceListener implements INDIClientInterfac
      */
     @Override
     public String getInetAddress() {
-        if (connection != null) {
-            return connection.toString();
+        INDIConnection current = connection;
+        if (current != null) {
+            return current.toString();
         } else {
             return "closed";
         }
@@ -110,19 +123,32 @@ public class INDIClient extends INDIDeviceListener implements INDIClientInterfac
      * Explicitly disconnects the Client.
      */
     protected void disconnect() {
-        if (connection != null) {
+        outbound.close();
+        INDIConnection closing;
+        synchronized (this) {
+            closing = connection;
+            connection = null;
+        }
+        if (closing != null) {
             try {
-                reader.setStop(true);
-                connection.close();
-                connection = null;
+                if (reader != null) {
+                    reader.setStop(true);
+                }
+                closing.close();
             } catch (Exception e) {
                 LOG.error("disconnect exception", e);
             }
+            if (reader == null) {
+                // the selector loop does not report connections closed
+                // from this side.
+                server.removeClient(this);
+            }
         }
     }
 
     @Override
     public void processProtocolMessage(INDIProtocol<?> message) {
+        connectionMetrics().received();
         if (message instanceof GetProperties) {
             processGetProperties((GetProperties) message);
         } else if (message instanceof NewVector) {
@@ -133,7 +159,8 @@ public class INDIClient extends INDIDeviceListener implements INDIClientInterfac
     }
 
     /**
-     * notify server of get properties if they are listening.
+     * notify server of get properties if they are listening, a maxRate
+     * attribute limits the rate of the property updates for this client.
      *
      * @param xml the xml message
      */
@@ -143,20 +170,90 @@ public class INDIClient extends INDIDeviceListener implements INDIClientInterfac
         if (version.isEmpty()) { // Some conditions to ignore the messages
             return;
         }
+        String maxRate = xml.getMaxRate().trim();
+        if (!maxRate.isEmpty()) {
+            try {
+                outbound.setMaxRate(xml.hasDevice() ? xml.getDevice() : "", xml.getProperty(), Double.parseDouble(maxRate));
+            } catch (NumberFormatException e) {
+                LOG.warn("ignoring illegal maxRate " + maxRate + " of client " + getInetAddress());
+            }
+        }
         super.processGetProperties(xml);
         server.notifyClientListenersGetProperties(this, xml);
     }
 
     @Override
     protected void sendXMLMessage(INDIProtocol<?> message) {
+        queueXMLMessage(new INDIEncodedMessage(message));
+    }
+
+    @Override
+    protected void sendXMLMessage(INDIEncodedMessage message) {
+        queueXMLMessage(message.retain());
+    }
+
+    /**
+     * queue a message for the writer task, disconnect the client if the queue
+     * overflows.
+     *
+     * @param message the message, the queue takes over its reference.
+     */
+    private void queueXMLMessage(INDIEncodedMessage message) {
+        if (!outbound.offer(message)) {
+            LOG.warn("outbound queue of client " + getInetAddress() + " overflowed or failed, disconnecting client");
+            disconnect();
+        }
+    }
+
+    /**
+     * write a message to the client connection, called by the writer task of
+     * the outbound queue.
+     *
+     * @param message the message to write.
+     * @return false if the client was disconnected.
+     */
+    private boolean writeXMLMessage(INDIEncodedMessage message) {
+        INDIConnection current = connection;
+        if (current == null) {
+            return false;
+        }
         try {
-            connection.getINDIOutputStream().writeObject(message);
+            message.writeTo(current.getINDIOutputStream());
+            connectionMetrics().sent();
+            connectionMetrics().latency(System.nanoTime() - message.getCreationTime());
+            return true;
         } catch (Exception e) {
             LOG.warn("could not send xml message to client, disconnecting client", e);
             disconnect();
+            return false;
         }
     }
 
+    @Override
+    protected INDIConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public int getOutboundQueueDepth() {
+        return outbound.size();
+    }
+
+    @Override
+    public int getOutboundQueuePeak() {
+        return outbound.getPeak();
+    }
+
+    @Override
+    public long getOutboundDropped() {
+        return outbound.getDropped();
+    }
+
+    @Override
+    public long getOutboundWritten() {
+        return outbound.getWritten();
+    }
+
     /**
      * Adds the appropriate BLOB Enable rules.
      *
@@ -0,0 +1,846 @@
+package org.indilib.i4j.server;
+
+/*
+ * #%L
+ * INDI for Java Server Library
+ * %%
+ * Copyright (C) 2013 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.OneBlob;
+import org.indilib.i4j.protocol.OneElement;
+import org.indilib.i4j.protocol.SetBlobVector;
+import org.indilib.i4j.protocol.SetVector;
+import org.indilib.i4j.protocol.io.INDIEncodedMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of the messages to send to one client. The device threads
+ * only add the messages to the queue, a writer task drains it to the client
+ * connection. So a slow client does not stall the devices and the other
+ * clients. The writer task only runs while there are messages, the tasks of
+ * all clients share one thread pool. Devices use the same queue for the
+ * messages of the clients, so a driver that does not read does not stall the
+ * client readers.
+ * <p>
+ * Blobs are queued in a slot per device property, a new blob for a property
+ * with a blob that was not yet delivered replaces the stale one. So a slow
+ * client only gets the newest images instead of building up a backlog. All
+ * queued blobs together must fit into a memory budget, blobs that do not fit
+ * are dropped for the client.
+ * <p>
+ * The client can limit the rate of the property updates (per device,
+ * property or for all of them). The set vectors of a rate limited property
+ * are conflated in a slot per property: while a slot waits to be written new
+ * values are merged into it, and a slot is not written before the interval
+ * of its property after the last write passed.
+ * <p>
+ * The queue holds a reference of every queued {@link INDIEncodedMessage}, so
+ * a message sent to many clients is encoded once and shared by all queues.
+ *
+ * @author agent
+ */
+final class INDIClientOutboundQueue implements Runnable {
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIClientOutboundQueue.class);
+
+    /**
+     * what to do with a new message when the queue is full.
+     */
+    enum Overflow {
+        /**
+         * block the sending device till the client took a message.
+         */
+        BLOCK,
+        /**
+         * drop the oldest queued message.
+         */
+        DROP_OLDEST,
+        /**
+         * disconnect the client (as the c indiserver does with clients that
+         * exceed the maximum queue size).
+         */
+        DISCONNECT
+    }
+
+    /**
+     * the default capacity of the queues, in messages.
+     */
+    static final int DEFAULT_CAPACITY = Integer.getInteger(INDIClientOutboundQueue.class.getSimpleName() + ".capacity", 8192);
+
+    /**
+     * the default overflow behavior of the queues.
+     */
+    static final Overflow DEFAULT_OVERFLOW = Overflow.valueOf(System.getProperty(INDIClientOutboundQueue.class.getSimpleName() + ".overflow", Overflow.DISCONNECT.name())
+            .trim().toUpperCase());
+
+    /**
+     * should a new blob replace the undelivered blob of the same property.
+     */
+    static final boolean LATEST_BLOBS = Boolean.parseBoolean(System.getProperty(INDIClientOutboundQueue.class.getSimpleName() + ".latestBlobs", "true"));
+
+    /**
+     * the maximum number of blob content bytes queued for all clients.
+     */
+    static final long BLOB_BUDGET = Long.getLong(INDIClientOutboundQueue.class.getSimpleName() + ".blobBudget", 512L * 1024L * 1024L);
+
+    /**
+     * the default maximum number of updates per second of every property, 0
+     * for no limit.
+     */
+    static final double DEFAULT_MAX_RATE = Double.parseDouble(System.getProperty(INDIClientOutboundQueue.class.getSimpleName() + ".maxRate", "0"));
+
+    /**
+     * the number of blob content bytes queued for all clients.
+     */
+    private static final AtomicLong BLOB_BYTES = new AtomicLong();
+
+    /**
+     * nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1000000000d;
+
+    /**
+     * the longest interval between two updates (one day), so tiny rates can
+     * not overflow the write times.
+     */
+    private static final long MAX_INTERVAL = TimeUnit.DAYS.toNanos(1);
+
+    /**
+     * the timer for the rate limited updates, shared by all clients.
+     */
+    private static ScheduledExecutorService timer;
+
+    /**
+     * the pool of the writer tasks, shared by all clients.
+     */
+    private static ExecutorService writers;
+
+    /**
+     * the destination of the messages.
+     */
+    interface Writer {
+
+        /**
+         * write a message to the client.
+         *
+         * @param message the message.
+         * @return false if the client could not be written anymore.
+         */
+        boolean write(INDIEncodedMessage message);
+    }
+
+    /**
+     * a queued blob, the message can be replaced till it is taken.
+     */
+    private static final class BlobSlot {
+
+        /**
+         * the device and property of the blob.
+         */
+        private final String key;
+
+        /**
+         * the newest blob message of the property.
+         */
+        private INDIEncodedMessage message;
+
+        /**
+         * the content bytes of the message, as counted in the budget.
+         */
+        private long size;
+
+        /**
+         * constructor.
+         *
+         * @param key     the device and property of the blob.
+         * @param message the blob message.
+         * @param size    the content bytes of the message.
+         */
+        private BlobSlot(String key, INDIEncodedMessage message, long size) {
+            this.key = key;
+            this.message = message;
+            this.size = size;
+        }
+    }
+
+    /**
+     * the pending update of a rate limited property, new values are merged
+     * into the message till it is taken.
+     */
+    private static final class UpdateSlot {
+
+        /**
+         * the pending (merged) update or null if there is none.
+         */
+        private INDIEncodedMessage message;
+
+        /**
+         * the time (in nanoseconds) before which the property must not be
+         * written again.
+         */
+        private long nextWrite;
+
+        /**
+         * the minimal nanoseconds between two writes of the property.
+         */
+        private long interval;
+    }
+
+    /**
+     * the queued messages, blob slots and update slots.
+     */
+    private final ArrayDeque<Object> messages = new ArrayDeque<>();
+
+    /**
+     * the queued blob slots by device and property.
+     */
+    private final Map<String, BlobSlot> blobSlots = new HashMap<>();
+
+    /**
+     * the update slots of the rate limited properties by device and
+     * property.
+     */
+    private final Map<String, UpdateSlot> updateSlots = new HashMap<>();
+
+    /**
+     * the minimal nanoseconds between two updates, by device and property (an
+     * empty property for the whole device, an empty device for all devices).
+     */
+    private final Map<String, Long> intervals = new HashMap<>();
+
+    /**
+     * the maximum number of queued messages.
+     */
+    private final int capacity;
+
+    /**
+     * what to do with a new message when the queue is full.
+     */
+    private final Overflow overflow;
+
+    /**
+     * the destination of the messages.
+     */
+    private final Writer writer;
+
+    /**
+     * true while a writer task is scheduled or running.
+     */
+    private boolean draining;
+
+    /**
+     * true after the queue was closed.
+     */
+    private boolean closed;
+
+    /**
+     * true after the writer failed with an unexpected exception, the owner of
+     * the queue must then be disconnected.
+     */
+    private boolean failed;
+
+    /**
+     * the highest number of queued messages.
+     */
+    private int peak;
+
+    /**
+     * the number of dropped messages.
+     */
+    private long dropped;
+
+    /**
+     * the number of written messages.
+     */
+    private long written;
+
+    /**
+     * should blobs go through the blob slots and the blob budget, false if
+     * every blob must be delivered.
+     */
+    private final boolean blobSlotsEnabled;
+
+    /**
+     * constructor.
+     *
+     * @param capacity the maximum number of queued messages.
+     * @param overflow what to do with a new message when the queue is full.
+     * @param writer   the destination of the messages.
+     */
+    INDIClientOutboundQueue(int capacity, Overflow overflow, Writer writer) {
+        this(capacity, overflow, true, writer);
+    }
+
+    /**
+     * constructor.
+     *
+     * @param capacity         the maximum number of queued messages.
+     * @param overflow         what to do with a new message when the queue
+     *                         is full.
+     * @param blobSlotsEnabled should stale blobs be replaced and the blobs
+     *                         count against the blob budget.
+     * @param writer           the destination of the messages.
+     */
+    INDIClientOutboundQueue(int capacity, Overflow overflow, boolean blobSlotsEnabled, Writer writer) {
+        this.capacity = Math.max(1, capacity);
+        this.overflow = overflow;
+        this.blobSlotsEnabled = blobSlotsEnabled;
+        this.writer = writer;
+    }
+
+    /**
+     * queue a message for the client, the queue takes over one reference of
+     * the message.
+     *
+     * @param message the message.
+     * @return false if the queue overflowed or the writer failed and the
+     * client must be disconnected.
+     */
+    synchronized boolean offer(INDIEncodedMessage message) {
+        if (closed) {
+            message.release();
+            return !failed;
+        }
+        if (message.isBlob() && blobSlotsEnabled) {
+            return offerBlob(message);
+        }
+        if (message.isSetVector()) {
+            long interval = interval(message.getDevice(), message.getName().trim());
+            if (interval > 0 || isDraining(message)) {
+                return offerUpdate(message, interval);
+            }
+        }
+        return enqueue(message);
+    }
+
+    /**
+     * limit the rate of the property updates for the client.
+     *
+     * @param device   the device or an empty string for all devices.
+     * @param property the property or an empty string for all properties of
+     *                 the device.
+     * @param maxRate  the maximum number of updates per second, 0 for no
+     *                 limit.
+     */
+    synchronized void setMaxRate(String device, String property, double maxRate) {
+        intervals.put(device + '\u0000' + property, toInterval(maxRate));
+    }
+
+    /**
+     * @param maxRate the maximum number of updates per second, 0 for no
+     *                limit.
+     * @return the minimal nanoseconds between two updates, at most one day.
+     */
+    private static long toInterval(double maxRate) {
+        if (!(maxRate > 0)) {
+            return 0L;
+        }
+        return (long) Math.min(NANOS_PER_SECOND / maxRate, MAX_INTERVAL);
+    }
+
+    /**
+     * @param device   the device.
+     * @param property the property.
+     * @return the minimal nanoseconds between two updates of the property, 0
+     * if the rate is not limited.
+     */
+    private long interval(String device, String property) {
+        if (!intervals.isEmpty()) {
+            Long interval = intervals.get(device + '\u0000' + property);
+            if (interval == null) {
+                interval = intervals.get(device + '\u0000');
+            }
+            if (interval == null) {
+                interval = intervals.get("\u0000");
+            }
+            if (interval != null) {
+                return interval;
+            }
+        }
+        return toInterval(DEFAULT_MAX_RATE);
+    }
+
+    /**
+     * check if a property whose rate is no longer limited still has an
+     * update waiting in its slot, then the new updates must go through the
+     * slot too or they would overtake the waiting one. Slots without a
+     * waiting update are removed.
+     *
+     * @param message the set message.
+     * @return true if the update must go through the slot.
+     */
+    private boolean isDraining(INDIEncodedMessage message) {
+        if (updateSlots.isEmpty()) {
+            return false;
+        }
+        String key = message.getDevice() + '\u0000' + message.getName().trim();
+        UpdateSlot slot = updateSlots.get(key);
+        if (slot != null && slot.message == null) {
+            updateSlots.remove(key);
+            return false;
+        }
+        return slot != null;
+    }
+
+    /**
+     * queue the update of a rate limited property, it is merged into the
+     * pending update of the property if there is one or else written as soon
+     * as the interval since the last write passed.
+     *
+     * @param message  the set message.
+     * @param interval the minimal nanoseconds between two writes.
+     * @return false if the queue overflowed and the client must be
+     * disconnected.
+     */
+    private boolean offerUpdate(INDIEncodedMessage message, long interval) {
+        String key = message.getDevice() + '\u0000' + message.getName().trim();
+        UpdateSlot slot = updateSlots.get(key);
+        if (slot == null) {
+            slot = new UpdateSlot();
+            updateSlots.put(key, slot);
+        }
+        slot.interval = interval;
+        if (slot.message != null) {
+            INDIEncodedMessage stale = slot.message;
+            slot.message = conflate(stale, message);
+            stale.release();
+            dropped++;
+            return true;
+        }
+        slot.message = message;
+        long delay = slot.nextWrite - System.nanoTime();
+        if (delay <= 0) {
+            return enqueue(slot);
+        }
+        final UpdateSlot due = slot;
+        timer().schedule(() -> updateDue(due), delay, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    /**
+     * merge a new update into the pending one, the attributes of the new
+     * update win and the elements of both are kept.
+     *
+     * @param pending the pending update.
+     * @param update  the new update, the caller's reference is taken over.
+     * @return the merged update with one reference.
+     */
+    private static INDIEncodedMessage conflate(INDIEncodedMessage pending, INDIEncodedMessage update) {
+        List<String> pendingNames = elementNames(pending);
+        List<String> updateNames = elementNames(update);
+        if (pendingNames != null && updateNames != null && updateNames.containsAll(pendingNames)) {
+            // the new update has all the elements, a raw frame is forwarded
+            // without decoding it.
+            return update;
+        }
+        INDIProtocol<?> older = pending.getElement();
+        INDIProtocol<?> newer = update.getElement();
+        if (!(older instanceof SetVector<?>) || !(newer instanceof SetVector<?>) || older.getClass() != newer.getClass()) {
+            return update;
+        }
+        Map<String, OneElement<?>> elements = new LinkedHashMap<>();
+        for (OneElement<?> element : ((SetVector<?>) older).getElements()) {
+            elements.put(element.getName(), element);
+        }
+        for (OneElement<?> element : ((SetVector<?>) newer).getElements()) {
+            elements.put(element.getName(), element);
+        }
+        if (elements.size() == ((SetVector<?>) newer).getElements().size()) {
+            // the new update has all the elements, nothing to merge.
+            return update;
+        }
+        SetVector<?> merged = INDIPropertyCache.merge((SetVector<?>) newer, elements.values());
+        if (merged == null) {
+            return update;
+        }
+        merged.setMessage(newer.getMessage());
+        update.release();
+        return new INDIEncodedMessage(merged);
+    }
+
+    /**
+     * the names of the elements of a set message, scanned from the bytes of
+     * a raw frame.
+     *
+     * @param message the set message.
+     * @return the element names or null if they are not known.
+     */
+    private static List<String> elementNames(INDIEncodedMessage message) {
+        if (message.getFrame() != null) {
+            return message.getFrame().getElementNames();
+        }
+        INDIProtocol<?> element = message.getElement();
+        if (!(element instanceof SetVector<?>)) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        for (OneElement<?> one : ((SetVector<?>) element).getElements()) {
+            names.add(one.getName());
+        }
+        return names;
+    }
+
+    /**
+     * the interval of a scheduled update slot passed, queue it. The slot is
+     * queued even if the queue is full, there is at most one slot per
+     * property and the timer must never block.
+     *
+     * @param slot the update slot.
+     */
+    private synchronized void updateDue(UpdateSlot slot) {
+        if (!closed && slot.message != null) {
+            add(slot);
+        }
+    }
+
+    /**
+     * queue a blob message, in the slot of its property if there is one.
+     *
+     * @param message the blob message.
+     * @return false if the queue overflowed and the client must be
+     * disconnected.
+     */
+    private boolean offerBlob(INDIEncodedMessage message) {
+        long size = contentSize(message);
+        String key = message.getDevice() + '\u0000' + message.getName();
+        BlobSlot slot = LATEST_BLOBS ? blobSlots.get(key) : null;
+        if (slot != null) {
+            if (reserve(size - slot.size)) {
+                INDIEncodedMessage stale = slot.message;
+                slot.message = message;
+                slot.size = size;
+                stale.release();
+            } else {
+                message.release();
+            }
+            dropped++;
+            return true;
+        }
+        if (!reserve(size)) {
+            message.release();
+            dropped++;
+            return true;
+        }
+        slot = new BlobSlot(key, message, size);
+        if (LATEST_BLOBS) {
+            blobSlots.put(key, slot);
+        }
+        return enqueue(slot);
+    }
+
+    /**
+     * add an entry to the queue and start the writer task if needed.
+     *
+     * @param entry the message, blob slot or update slot.
+     * @return false if the queue overflowed and the client must be
+     * disconnected.
+     */
+    private boolean enqueue(Object entry) {
+        while (!closed && messages.size() >= capacity) {
+            if (overflow == Overflow.DROP_OLDEST) {
+                discard(messages.poll());
+                dropped++;
+            } else if (overflow == Overflow.BLOCK) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    discard(entry);
+                    dropped++;
+                    return true;
+                }
+            } else {
+                discard(entry);
+                return false;
+            }
+        }
+        if (closed) {
+            discard(entry);
+            return true;
+        }
+        add(entry);
+        return true;
+    }
+
+    /**
+     * add an entry to the queue and start the writer task if needed.
+     *
+     * @param entry the message, blob slot or update slot.
+     */
+    private void add(Object entry) {
+        messages.add(entry);
+        peak = Math.max(peak, messages.size());
+        if (!draining) {
+            draining = true;
+            writers().execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean drained = false;
+        try {
+            for (INDIEncodedMessage message = next(); message != null; message = next()) {
+                boolean written;
+                try {
+                    written = writer.write(message);
+                } finally {
+                    message.release();
+                }
+                if (!written) {
+                    close();
+                    return;
+                }
+            }
+            drained = true;
+        } catch (RuntimeException e) {
+            LOG.error("writer failed, closing the outbound queue", e);
+            synchronized (this) {
+                failed = true;
+            }
+            close();
+        } finally {
+            if (!drained) {
+                // next() only resets the flag when the queue ran empty.
+                synchronized (this) {
+                    draining = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the next message to write or null if the queue is empty, then
+     * the writer task ends.
+     */
+    private synchronized INDIEncodedMessage next() {
+        Object entry = closed ? null : messages.poll();
+        if (entry == null) {
+            draining = false;
+            return null;
+        }
+        written++;
+        notifyAll();
+        if (entry instanceof BlobSlot) {
+            return releaseSlot((BlobSlot) entry);
+        }
+        if (entry instanceof UpdateSlot) {
+            return takeUpdate((UpdateSlot) entry);
+        }
+        return (INDIEncodedMessage) entry;
+    }
+
+    /**
+     * take the pending update out of a slot that leaves the queue, the next
+     * update of the property waits for the interval.
+     *
+     * @param slot the update slot that leaves the queue.
+     * @return the pending update.
+     */
+    private static INDIEncodedMessage takeUpdate(UpdateSlot slot) {
+        INDIEncodedMessage message = slot.message;
+        slot.message = null;
+        slot.nextWrite = System.nanoTime() + slot.interval;
+        return message;
+    }
+
+    /**
+     * give the budget of a blob slot that leaves the queue back.
+     *
+     * @param slot the blob slot that leaves the queue.
+     * @return the message of the slot.
+     */
+    private INDIEncodedMessage releaseSlot(BlobSlot slot) {
+        if (blobSlots.get(slot.key) == slot) {
+            blobSlots.remove(slot.key);
+        }
+        BLOB_BYTES.addAndGet(-slot.size);
+        slot.size = 0;
+        return slot.message;
+    }
+
+    /**
+     * drop an entry that leaves the queue without being written.
+     *
+     * @param entry the message, blob slot or update slot.
+     */
+    private void discard(Object entry) {
+        if (entry instanceof BlobSlot) {
+            releaseSlot((BlobSlot) entry).release();
+        } else if (entry instanceof UpdateSlot) {
+            INDIEncodedMessage message = ((UpdateSlot) entry).message;
+            ((UpdateSlot) entry).message = null;
+            if (message != null) {
+                message.release();
+            }
+        } else if (entry != null) {
+            ((INDIEncodedMessage) entry).release();
+        }
+    }
+
+    /**
+     * take (or give back) blob content bytes from the budget, the first blob
+     * is always accepted so blobs bigger than the budget are still delivered.
+     *
+     * @param bytes the number of bytes, negative to give them back.
+     * @return true if the bytes fit into the budget.
+     */
+    private static boolean reserve(long bytes) {
+        while (true) {
+            long current = BLOB_BYTES.get();
+            if (bytes > 0 && current > 0 && current + bytes > BLOB_BUDGET) {
+                return false;
+            }
+            if (BLOB_BYTES.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param message the blob message.
+     * @return the number of content bytes the message holds (without reading
+     * blob sources or decoding raw frames, for them the size of the raw bytes
+     * counts).
+     */
+    private static long contentSize(INDIEncodedMessage message) {
+        if (message.getFrame() != null) {
+            return message.getFrame().getLength();
+        }
+        long size = 0;
+        for (OneElement<?> element : ((SetBlobVector) message.getElement()).getElements()) {
+            if (element instanceof OneBlob) {
+                OneBlob blob = (OneBlob) element;
+                if (blob.getBlobSource() != null) {
+                    size += blob.getBlobSource().getSize();
+                } else {
+                    ByteBuffer content = blob.getByteBuffer();
+                    size += content == null ? 0 : content.remaining();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * close the queue, the queued messages are dropped and blocked senders
+     * are released.
+     */
+    synchronized void close() {
+        if (!closed) {
+            closed = true;
+            dropped += messages.size();
+            for (Object entry : messages) {
+                discard(entry);
+            }
+            messages.clear();
+            for (UpdateSlot slot : updateSlots.values()) {
+                // the slots still waiting for the timer.
+                discard(slot);
+            }
+            updateSlots.clear();
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of queued messages.
+     */
+    synchronized int size() {
+        return messages.size();
+    }
+
+    /**
+     * @return the highest number of queued messages.
+     */
+    synchronized int getPeak() {
+        return peak;
+    }
+
+    /**
+     * @return the number of dropped messages.
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of written messages.
+     */
+    synchronized long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return the number of blob content bytes queued for all clients.
+     */
+    static long getQueuedBlobBytes() {
+        return BLOB_BYTES.get();
+    }
+
+    /**
+     * @return the timer for the rate limited updates, created when needed.
+     */
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "client update timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            timer = executor;
+        }
+        return timer;
+    }
+
+    /**
+     * @return the pool of the writer tasks, created when needed.
+     */
+    private static synchronized ExecutorService writers() {
+        if (writers == null) {
+            writers = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "outbound writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            LOG.debug("outbound writer pool started");
+        }
+        return writers;
+    }
+}
@@ -0,0 +1,268 @@
+package org.indilib.i4j.server;
+
+/*
+ * #%L
+ * INDI for Java Server Library
+ * %%
+ * Copyright (C) 2013 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.api.INDIConnection;
+import org.indilib.i4j.server.api.INDIClientInterface;
+import org.indilib.i4j.server.api.INDIConnectionMetricsMXBean;
+import org.indilib.i4j.server.api.INDIDeviceInterface;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The traffic metrics of one client or device of the server. The counters
+ * are updated by the reader and writer threads without locks, the rates are
+ * only computed when they are read.
+ *
+ * @author agent
+ */
+final class INDIConnectionMetrics implements INDIConnectionMetricsMXBean {
+
+    /**
+     * the minimal time between two samples of a rate.
+     */
+    private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1000000000d;
+
+    /**
+     * nanoseconds per microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1000d;
+
+    /**
+     * the client or device.
+     */
+    private final INDIDeviceListener owner;
+
+    /**
+     * the number of received messages.
+     */
+    private final LongAdder messagesReceived = new LongAdder();
+
+    /**
+     * the number of sent messages.
+     */
+    private final LongAdder messagesSent = new LongAdder();
+
+    /**
+     * the delivery latencies of a client or the routing times of a device.
+     */
+    private final INDILatencyHistogram latencies = new INDILatencyHistogram();
+
+    /**
+     * the rate of the received messages.
+     */
+    private final Rate messagesReceivedRate = new Rate();
+
+    /**
+     * the rate of the sent messages.
+     */
+    private final Rate messagesSentRate = new Rate();
+
+    /**
+     * the rate of the received bytes.
+     */
+    private final Rate bytesReceivedRate = new Rate();
+
+    /**
+     * the rate of the sent bytes.
+     */
+    private final Rate bytesSentRate = new Rate();
+
+    /**
+     * a counter sampled to compute its rate per second.
+     */
+    private static final class Rate {
+
+        /**
+         * the time of the last sample.
+         */
+        private long sampleTime = System.nanoTime();
+
+        /**
+         * the counter value of the last sample.
+         */
+        private long sampleValue;
+
+        /**
+         * the rate computed with the last sample.
+         */
+        private double rate;
+
+        /**
+         * @param value the current counter value.
+         * @return the rate per second since the previous sample.
+         */
+        private synchronized double update(long value) {
+            long now = System.nanoTime();
+            long elapsed = now - sampleTime;
+            if (elapsed >= SAMPLE_INTERVAL) {
+                rate = Math.max(0L, value - sampleValue) * NANOS_PER_SECOND / elapsed;
+                sampleTime = now;
+                sampleValue = value;
+            }
+            return rate;
+        }
+    }
+
+    /**
+     * constructor.
+     *
+     * @param owner the client or device.
+     */
+    INDIConnectionMetrics(INDIDeviceListener owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * count a received message.
+     */
+    void received() {
+        messagesReceived.increment();
+    }
+
+    /**
+     * count a sent message.
+     */
+    void sent() {
+        messagesSent.increment();
+    }
+
+    /**
+     * record a latency.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    void latency(long nanos) {
+        latencies.record(nanos);
+    }
+
+    /**
+     * @return true if the owner is a client.
+     */
+    boolean isClient() {
+        return owner instanceof INDIClientInterface;
+    }
+
+    @Override
+    public String getName() {
+        if (owner instanceof INDIClientInterface) {
+            return ((INDIClientInterface) owner).getInetAddress();
+        } else if (owner instanceof INDIDeviceInterface) {
+            return ((INDIDeviceInterface) owner).getDeviceIdentifier();
+        }
+        return String.valueOf(owner);
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        INDIConnection connection = owner.getConnection();
+        return connection == null ? -1L : connection.getBytesRead();
+    }
+
+    @Override
+    public long getBytesSent() {
+        INDIConnection connection = owner.getConnection();
+        return connection == null ? -1L : connection.getBytesWritten();
+    }
+
+    @Override
+    public double getMessagesReceivedPerSecond() {
+        return messagesReceivedRate.update(getMessagesReceived());
+    }
+
+    @Override
+    public double getMessagesSentPerSecond() {
+        return messagesSentRate.update(getMessagesSent());
+    }
+
+    @Override
+    public double getBytesReceivedPerSecond() {
+        return bytesReceivedRate.update(Math.max(0L, getBytesReceived()));
+    }
+
+    @Override
+    public double getBytesSentPerSecond() {
+        return bytesSentRate.update(Math.max(0L, getBytesSent()));
+    }
+
+    @Override
+    public int getBacklog() {
+        if (owner instanceof INDIClientInterface) {
+            return ((INDIClientInterface) owner).getOutboundQueueDepth();
+        } else if (owner instanceof INDIDevice) {
+            return ((INDIDevice) owner).getOutboundQueueDepth();
+        }
+        return 0;
+    }
+
+    @Override
+    public long getLatencyCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public double getLatencyMeanMicros() {
+        return latencies.getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        return latencies.getPercentile(50d) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getLatencyP90Micros() {
+        return latencies.getPercentile(90d) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return latencies.getPercentile(99d) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getLatencyMaxMicros() {
+        return latencies.getMax() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public void resetLatencies() {
+        latencies.reset();
+    }
+}
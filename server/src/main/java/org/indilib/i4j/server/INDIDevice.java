@@ -27,6 +27,9 @@ import org.indilib.i4j.INDIProtocolReader;
 import org.indilib.i4j.protocol.*;
 import org.indilib.i4j.protocol.api.INDIInputStream;
 import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.indilib.i4j.protocol.io.INDIEncodedMessage;
+import org.indilib.i4j.protocol.io.INDIRawFrame;
+import org.indilib.i4j.protocol.io.INDIRawFrameInputStream;
 import org.indilib.i4j.server.api.INDIDeviceInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +49,13 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
      * The logger to log to.
      */
     private static final Logger LOG = LoggerFactory.getLogger(INDIDevice.class);
+
+    /**
+     * should the set vectors of devices that send xml be routed as raw frames
+     * (only the opening tag is scanned and the bytes are forwarded
+     * unchanged) instead of decoding them into protocol objects.
+     */
+    private static final boolean PASSTHROUGH = Boolean.parseBoolean(System.getProperty(INDIDevice.class.getSimpleName() + ".passthrough", "false"));
     /**
      * The Server that listens to this Device.
      */
@@ -55,6 +65,19 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
      */
     private INDIProtocolReader reader;
 
+    /**
+     * The passthrough reader that reads raw frames from the Device, null if
+     * the Device is read by the protocol reader.
+     */
+    private PassthroughReader passthroughReader;
+
+    /**
+     * the queue of the messages to send to the Device, so the client and
+     * device readers only block on a Device that does not read when the
+     * queue is full. Client traffic must never destroy the Device.
+     */
+    private final INDIClientOutboundQueue outbound;
+
     /**
      * Constructs a new <code>INDIDevice</code>.
      *
@@ -62,6 +85,10 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
      */
     protected INDIDevice(INDIServer server) {
         this.server = server;
+        // the device must get every message (also the snooped blobs), the
+        // rate limits and blob budget of the clients do not apply.
+        outbound = new INDIClientOutboundQueue(INDIClientOutboundQueue.DEFAULT_CAPACITY, INDIClientOutboundQueue.Overflow.BLOCK, false, this::writeXMLMessage);
+        outbound.setMaxRate("", "", 0);
     }
 
     /**
@@ -75,7 +102,13 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
     public void destroy() {
         isBeingDestroyed();
 
-        reader.setStop(true);
+        if (reader != null) {
+            reader.setStop(true);
+        }
+        if (passthroughReader != null) {
+            passthroughReader.stop = true;
+        }
+        outbound.close();
 
         closeConnections();
     }
@@ -89,6 +122,17 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
     @Override
     public abstract INDIInputStream getInputStream();
 
+    /**
+     * Gets the input stream of the Device as raw frames, for the passthrough
+     * routing.
+     *
+     * @return the raw frame input stream or null if the Device can not be read
+     * as raw frames.
+     */
+    protected INDIRawFrameInputStream getRawFrameInputStream() {
+        return null;
+    }
+
     /**
      * Gets the <code>INDIOutputStream</code> of the Device.
      *
@@ -131,6 +175,8 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
 
     @Override
     public void processProtocolMessage(INDIProtocol<?> child) {
+        long start = System.nanoTime();
+        connectionMetrics().received();
 
         if (child instanceof GetProperties) {
             processGetProperties((GetProperties) child);
@@ -144,6 +190,7 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
         } else if (child instanceof DelProperty) {
             processDelProperty((DelProperty) child);
         }
+        connectionMetrics().latency(System.nanoTime() - start);
     }
 
     @Override
@@ -154,33 +201,105 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
 
     @Override
     protected final void sendXMLMessage(INDIProtocol<?> message) {
+        queueXMLMessage(new INDIEncodedMessage(message));
+    }
+
+    @Override
+    protected void sendXMLMessage(INDIEncodedMessage message) {
+        queueXMLMessage(message.retain());
+    }
+
+    /**
+     * queue a message for the writer task, blocks while the queue is full.
+     * Destroy the Device if its writer failed.
+     *
+     * @param message the message, the queue takes over its reference.
+     */
+    private void queueXMLMessage(INDIEncodedMessage message) {
+        if (!outbound.offer(message)) {
+            LOG.warn("outbound queue of driver " + getDeviceIdentifier() + " failed, destroying the device");
+            destroy();
+        }
+    }
+
+    /**
+     * write a message to the Device, called by the writer task of the
+     * outbound queue.
+     *
+     * @param message the message to write.
+     * @return false if the Device could not be written anymore.
+     */
+    private boolean writeXMLMessage(INDIEncodedMessage message) {
         try {
-            getOutputStream().writeObject(message);
-        } catch (IOException e) {
+            message.writeTo(getOutputStream());
+            connectionMetrics().sent();
+            return true;
+        } catch (Exception e) {
+            LOG.warn("could not send xml message to driver " + getDeviceIdentifier() + ", destroying the device", e);
             destroy();
+            return false;
         }
     }
 
+    /**
+     * @return the number of messages waiting to be sent to the Device.
+     */
+    int getOutboundQueueDepth() {
+        return outbound.size();
+    }
+
     /**
      * Starts the reader. Usually not directly called by Server particular
      * implementations.
      */
     protected void startReading() {
-        reader = new INDIProtocolReader(this, "device reader");
-        reader.start();
+        INDIRawFrameInputStream frames = PASSTHROUGH ? getRawFrameInputStream() : null;
+        if (frames != null) {
+            passthroughReader = new PassthroughReader(frames);
+            passthroughReader.start();
+        } else {
+            reader = new INDIProtocolReader(this, "device reader");
+            reader.start();
+        }
+    }
+
+    /**
+     * Processes a raw frame, set vectors are routed without decoding them all
+     * other messages are decoded and processed normally.
+     *
+     * @param frame the raw frame.
+     * @throws IOException if the frame could not be decoded.
+     */
+    private void processFrame(INDIRawFrame frame) throws IOException {
+        if (frame.isSetVector()) {
+            long start = System.nanoTime();
+            connectionMetrics().received();
+            processSetXXXVector(frame);
+            connectionMetrics().latency(System.nanoTime() - start);
+        } else {
+            INDIProtocol<?> message = frame.decode();
+            if (message != null) {
+                processProtocolMessage(message);
+            }
+        }
     }
 
     /**
      * Checks the name in a XML element to detect possible new names in the
      * Driver (specially for multiple possible devices, like the Network one).
+     * Accepted names are added to the name index of the server, names already
+     * indexed for this Device are not checked again.
      *
      * @param elem The XML element from which to extract the name of the Device.
      */
     private void checkName(INDIProtocol<?> elem) {
         String newName = elem.getDevice();
 
-        if (!newName.isEmpty()) {
+        if (!newName.isEmpty() && server.getDevice(newName) != this) {
             dealWithPossibleNewDeviceName(newName);
+            if (hasName(newName)) {
+                server.deviceNameAdded(this, newName);
+            }
         }
     }
 
@@ -255,4 +374,66 @@ public abstract class INDIDevice extends INDIDeviceListener implements INDIDevic
 
         server.notifyDeviceListenersSetXXXVector(this, xml);
     }
+
+    /**
+     * Processes the <code>setXXXVector</code> message as a raw frame.
+     *
+     * @param frame The <code>setXXXVector</code> raw frame
+     */
+    private void processSetXXXVector(INDIRawFrame frame) {
+        if (!hasName(frame.getDevice())) { // Some conditions to ignore the messages
+            return;
+        }
+
+        if (frame.getName().trim().isEmpty()) {
+            return;
+        }
+
+        server.notifyDeviceListenersSetXXXVector(this, frame);
+    }
+
+    /**
+     * Reader thread that reads the Device as raw frames.
+     */
+    private final class PassthroughReader extends Thread {
+
+        /**
+         * the raw frames from the Device.
+         */
+        private final INDIRawFrameInputStream frames;
+
+        /**
+         * Used to friendly stop the reader.
+         */
+        private volatile boolean stop;
+
+        /**
+         * constructor.
+         *
+         * @param frames the raw frames from the Device.
+         */
+        private PassthroughReader(INDIRawFrameInputStream frames) {
+            super("device passthrough reader");
+            this.frames = frames;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (INDIRawFrame frame = frames.readFrame(); !stop && frame != null; frame = frames.readFrame()) {
+                    processFrame(frame);
+                }
+            } catch (Exception e) {
+                LOG.error("could not read indi stream", e);
+                try {
+                    frames.close();
+                } catch (Exception ex) {
+                    LOG.error("Could not close inputStream", ex);
+                }
+            }
+            if (!stop) {
+                finishReader();
+            }
+        }
+    }
 }
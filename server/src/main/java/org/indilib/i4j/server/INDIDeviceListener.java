@@ -26,6 +26,9 @@ import org.indilib.i4j.Constants.BLOBEnables;
 import org.indilib.i4j.INDIProtocolParser;
 import org.indilib.i4j.protocol.GetProperties;
 import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.api.INDIConnection;
+import org.indilib.i4j.protocol.io.INDIEncodedMessage;
+import org.indilib.i4j.server.api.INDIConnectionMetricsMXBean;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -60,6 +63,17 @@ public abstract class INDIDeviceListener implements INDIProtocolParser {
      */
     private List<DevicePropertyBLOBEnableTuple> propertiesToListen;
 
+    /**
+     * the routing index to invalidate when the subscriptions change, null if
+     * the listener is not registered with a server.
+     */
+    private volatile INDIRoutingIndex routingIndex;
+
+    /**
+     * the traffic metrics of the listener.
+     */
+    private final INDIConnectionMetrics metrics = new INDIConnectionMetrics(this);
+
     /**
      * Constructs a new <code>INDIDeviceListener</code>.
      */
@@ -93,6 +107,7 @@ public abstract class INDIDeviceListener implements INDIProtocolParser {
         }
 
         bLOBEnableRules.add(new DevicePropertyBLOBEnableTuple(deviceName, enable));
+        subscriptionsChanged();
     }
 
     /**
@@ -110,6 +125,7 @@ public abstract class INDIDeviceListener implements INDIProtocolParser {
         }
 
         bLOBEnableRules.add(new DevicePropertyBLOBEnableTuple(deviceName, propertyName, enable));
+        subscriptionsChanged();
     }
 
     /**
@@ -119,6 +135,7 @@ public abstract class INDIDeviceListener implements INDIProtocolParser {
      */
     protected void addDeviceToListen(String deviceName) {
         devicesToListen.add(new DevicePropertyBLOBEnableTuple(deviceName));
+        subscriptionsChanged();
     }
 
     /**
@@ -129,6 +146,7 @@ public abstract class INDIDeviceListener implements INDIProtocolParser {
      */
     protected void addPropertyToListen(String deviceName, String propertyName) {
         propertiesToListen.add(new DevicePropertyBLOBEnableTuple(deviceName, propertyName));
+        subscriptionsChanged();
     }
 
     /**
@@ -262,6 +280,41 @@ public abstract class INDIDeviceListener implements INDIProtocolParser {
      */
     protected abstract void sendXMLMessage(INDIProtocol<?> message);
 
+    /**
+     * @return the traffic metrics of the listener.
+     */
+    public INDIConnectionMetricsMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the traffic metrics of the listener, for the server to update.
+     */
+    INDIConnectionMetrics connectionMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the connection of the listener (for the byte counts) or null if
+     * it has none.
+     */
+    protected INDIConnection getConnection() {
+        return null;
+    }
+
+    /**
+     * Sends a message that is shared with other listeners, listeners that
+     * queue the message must take their own reference.
+     *
+     * @param message The message to be sent.
+     */
+    protected void sendXMLMessage(INDIEncodedMessage message) {
+        INDIProtocol<?> element = message.getElement();
+        if (element != null) {
+            sendXMLMessage(element);
+        }
+    }
+
     /**
      * Sets the listenToAllDevices flag.
      *
@@ -269,6 +322,27 @@ public abstract class INDIDeviceListener implements INDIProtocolParser {
      */
     protected void setListenToAllDevices(boolean listenToAllDevices) {
         this.listenToAllDevices = listenToAllDevices;
+        subscriptionsChanged();
+    }
+
+    /**
+     * set the routing index of the server the listener is registered with.
+     *
+     * @param newRoutingIndex the routing index or null.
+     */
+    void setRoutingIndex(INDIRoutingIndex newRoutingIndex) {
+        routingIndex = newRoutingIndex;
+    }
+
+    /**
+     * the subscriptions of the listener changed, so the routes must be
+     * resolved again.
+     */
+    private void subscriptionsChanged() {
+        INDIRoutingIndex index = routingIndex;
+        if (index != null) {
+            index.invalidate();
+        }
     }
 
     /**
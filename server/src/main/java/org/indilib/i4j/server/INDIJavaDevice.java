@@ -34,8 +34,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A class that represent a Java Device (created with the INDI Driver library).
@@ -88,7 +88,7 @@ public class INDIJavaDevice extends INDIDevice {
         super(server);
 
         // name = null;
-        names = new ArrayList<>();
+        names = new CopyOnWriteArrayList<>();
         this.identifier = identifier;
         this.driverClass = driverClass;
 
@@ -133,6 +133,11 @@ public class INDIJavaDevice extends INDIDevice {
         return names.toArray(new String[0]);
     }
 
+    @Override
+    protected INDIConnection getConnection() {
+        return driverConnection;
+    }
+
     @Override
     public INDIOutputStream getOutputStream() {
         try {
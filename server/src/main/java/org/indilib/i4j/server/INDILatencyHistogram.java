@@ -0,0 +1,184 @@
+package org.indilib.i4j.server;
+
+/*
+ * #%L
+ * INDI for Java Server Library
+ * %%
+ * Copyright (C) 2013 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies in nanoseconds. The buckets are log
+ * linear: every power of two is split into 16 sub buckets, so the values are
+ * recorded with a precision of about 6% over the whole range of a long and
+ * recording a value is one atomic increment.
+ *
+ * @author agent
+ */
+final class INDILatencyHistogram {
+
+    /**
+     * the number of bits for the sub buckets of a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * the number of sub buckets of a power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * the number of buckets, enough for all positive longs.
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * the counts per bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * the number of recorded values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * the sum of the recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * the highest recorded value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record a value.
+     *
+     * @param nanos the latency in nanoseconds, negative values count as 0.
+     */
+    void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * @param value the value.
+     * @return the index of the bucket of the value.
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @param bucket the index of a bucket.
+     * @return the lowest value of the bucket.
+     */
+    private static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+    }
+
+    /**
+     * @param bucket the index of a bucket.
+     * @return the middle value of the bucket.
+     */
+    private static long middleValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        return lowestValue(bucket) + ((1L << shift) >> 1);
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean of the recorded values, 0 if there are none.
+     */
+    double getMean() {
+        long values = count.sum();
+        return values == 0 ? 0d : sum.sum() / (double) values;
+    }
+
+    /**
+     * @return the highest recorded value.
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile the percentile (between 0 and 100).
+     * @return the value below which the percentile of the recorded values are
+     * (within the precision of the buckets), 0 if there are none.
+     */
+    long getPercentile(double percentile) {
+        long total = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            total += counts.get(index);
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100d));
+        long seen = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            seen += counts.get(index);
+            if (seen >= rank) {
+                return Math.min(middleValue(index), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * forget all recorded values, values recorded at the same time may be
+     * partly lost.
+     */
+    void reset() {
+        for (int index = 0; index < BUCKETS; index++) {
+            counts.set(index, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+}
@@ -27,6 +27,7 @@ import org.indilib.i4j.protocol.api.INDIConnection;
 import org.indilib.i4j.protocol.api.INDIInputStream;
 import org.indilib.i4j.protocol.api.INDIOutputStream;
 import org.indilib.i4j.protocol.io.INDIProcessConnection;
+import org.indilib.i4j.protocol.io.INDIRawFrameInputStream;
 
 import java.io.IOException;
 
@@ -110,6 +111,14 @@ public class INDINativeDevice extends INDIDevice {
         }
     }
 
+    @Override
+    protected INDIRawFrameInputStream getRawFrameInputStream() {
+        if (processConnection instanceof INDIProcessConnection) {
+            return ((INDIProcessConnection) processConnection).getINDIRawFrameInputStream();
+        }
+        return null;
+    }
+
     @Override
     public String[] getNames() {
         return new String[]{
@@ -117,6 +126,11 @@ public class INDINativeDevice extends INDIDevice {
         };
     }
 
+    @Override
+    protected INDIConnection getConnection() {
+        return processConnection;
+    }
+
     @Override
     public INDIOutputStream getOutputStream() {
         try {
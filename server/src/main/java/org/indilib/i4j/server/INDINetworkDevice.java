@@ -26,14 +26,15 @@ import org.indilib.i4j.INDIException;
 import org.indilib.i4j.protocol.api.INDIConnection;
 import org.indilib.i4j.protocol.api.INDIInputStream;
 import org.indilib.i4j.protocol.api.INDIOutputStream;
+import org.indilib.i4j.protocol.io.INDIRawFrameInputStream;
 import org.indilib.i4j.protocol.io.INDISocketConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A class that represent a Network Device (another INDI server).
@@ -79,7 +80,7 @@ public class INDINetworkDevice extends INDIDevice {
     protected INDINetworkDevice(INDIServer server, String host, int port) throws INDIException {
         super(server);
 
-        names = new ArrayList<>();
+        names = new CopyOnWriteArrayList<>();
 
         this.host = host;
         this.port = port;
@@ -116,11 +117,28 @@ public class INDINetworkDevice extends INDIDevice {
         return null;
     }
 
+    @Override
+    protected INDIRawFrameInputStream getRawFrameInputStream() {
+        try {
+            if (socketConnection instanceof INDISocketConnection) {
+                return ((INDISocketConnection) socketConnection).getINDIRawFrameInputStream();
+            }
+        } catch (Exception e) {
+            LOG.warn("could not open raw input stream", e);
+        }
+        return null;
+    }
+
     @Override
     public String[] getNames() {
         return names.toArray(new String[0]);
     }
 
+    @Override
+    protected INDIConnection getConnection() {
+        return socketConnection;
+    }
+
     @Override
     public INDIOutputStream getOutputStream() {
         try {
@@ -0,0 +1,381 @@
+package org.indilib.i4j.server;
+
+/*
+ * #%L
+ * INDI for Java Server Library
+ * %%
+ * Copyright (C) 2013 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.protocol.DefVector;
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.OneElement;
+import org.indilib.i4j.protocol.SetLightVector;
+import org.indilib.i4j.protocol.SetNumberVector;
+import org.indilib.i4j.protocol.SetSwitchVector;
+import org.indilib.i4j.protocol.SetTextVector;
+import org.indilib.i4j.protocol.SetVector;
+import org.indilib.i4j.protocol.io.INDIRawFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the current property state of the devices in the server: the
+ * definition of every property and its latest values (the set messages are
+ * merged per element). A getProperties of a client is answered from the
+ * cache, so reconnecting clients do not make the drivers send all their
+ * definitions again (to all clients). Blob values are not cached, a client
+ * gets the blob definition and the next blob. Set messages that are received
+ * as raw frames are kept undecoded till the cache is read, a frame whose
+ * elements are all set again by a newer one is dropped without decoding it.
+ *
+ * @author agent
+ */
+final class INDIPropertyCache {
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIPropertyCache.class);
+
+    /**
+     * the maximum number of undecoded frames per property, the oldest ones
+     * are decoded into the state when there are more.
+     */
+    private static final int MAX_PENDING = 16;
+
+    /**
+     * should getProperties be answered from the cache, if not the cache does
+     * not keep anything.
+     */
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(INDIPropertyCache.class.getSimpleName() + ".enabled", "true"));
+
+    /**
+     * the cached state of one property.
+     */
+    private static final class PropertyState {
+
+        /**
+         * the definition of the property.
+         */
+        private final DefVector<?> definition;
+
+        /**
+         * the latest set message of the property, null if there was none
+         * since the definition.
+         */
+        private SetVector<?> latest;
+
+        /**
+         * the latest value of the elements that where set since the
+         * definition.
+         */
+        private final Map<String, OneElement<?>> elements = new LinkedHashMap<>();
+
+        /**
+         * the raw set messages that are not yet decoded into the state, in
+         * the order they where received.
+         */
+        private final List<INDIRawFrame> pending = new ArrayList<>();
+
+        /**
+         * constructor.
+         *
+         * @param definition the definition of the property.
+         */
+        private PropertyState(DefVector<?> definition) {
+            this.definition = definition;
+        }
+    }
+
+    /**
+     * the cached properties by device name and property name, the properties
+     * of a device are kept in the order they where defined.
+     */
+    private final ConcurrentMap<String, Map<String, PropertyState>> devices = new ConcurrentHashMap<>();
+
+    /**
+     * the locks of the devices by device name.
+     */
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * the lock of a device, it must be held while the cache is updated and
+     * the message is routed to the listeners and while a snapshot is taken
+     * and sent to a client. So a client never gets the snapshot and the live
+     * messages of the device out of order.
+     *
+     * @param deviceName the device name.
+     * @return the lock of the device.
+     */
+    Object lock(String deviceName) {
+        Object lock = locks.get(deviceName);
+        if (lock == null) {
+            lock = new Object();
+            Object existing = locks.putIfAbsent(deviceName, lock);
+            if (existing != null) {
+                lock = existing;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * a device defined a property.
+     *
+     * @param definition the definition.
+     */
+    void define(DefVector<?> definition) {
+        if (!ENABLED) {
+            return;
+        }
+        Map<String, PropertyState> properties = devices.get(definition.getDevice());
+        if (properties == null) {
+            properties = new LinkedHashMap<>();
+            Map<String, PropertyState> existing = devices.putIfAbsent(definition.getDevice(), properties);
+            if (existing != null) {
+                properties = existing;
+            }
+        }
+        synchronized (properties) {
+            properties.put(definition.getName().trim(), new PropertyState(definition));
+        }
+    }
+
+    /**
+     * a device set new values of a property, blobs are ignored.
+     *
+     * @param values the set message.
+     */
+    void set(SetVector<?> values) {
+        if (!ENABLED || values.isBlob()) {
+            return;
+        }
+        Map<String, PropertyState> properties = devices.get(values.getDevice());
+        if (properties == null) {
+            return;
+        }
+        synchronized (properties) {
+            PropertyState state = properties.get(values.getName().trim());
+            if (state != null) {
+                decodePending(state, 0);
+                apply(state, values);
+            }
+        }
+    }
+
+    /**
+     * a device set new values of a property as a raw frame, blobs are
+     * ignored. The frame is only decoded when the cache is read.
+     *
+     * @param frame the raw set message.
+     */
+    void set(INDIRawFrame frame) {
+        if (!ENABLED || frame.isBlob()) {
+            return;
+        }
+        Map<String, PropertyState> properties = devices.get(frame.getDevice());
+        if (properties == null) {
+            return;
+        }
+        synchronized (properties) {
+            PropertyState state = properties.get(frame.getName());
+            if (state != null) {
+                List<String> names = frame.getElementNames();
+                if (names != null) {
+                    Iterator<INDIRawFrame> older = state.pending.iterator();
+                    while (older.hasNext()) {
+                        List<String> olderNames = older.next().getElementNames();
+                        if (olderNames != null && names.containsAll(olderNames)) {
+                            older.remove();
+                        }
+                    }
+                }
+                state.pending.add(frame);
+                decodePending(state, MAX_PENDING);
+            }
+        }
+    }
+
+    /**
+     * decode the oldest pending frames into the state.
+     *
+     * @param state the state of the property.
+     * @param keep  the number of pending frames to keep undecoded.
+     */
+    private static void decodePending(PropertyState state, int keep) {
+        while (state.pending.size() > keep) {
+            INDIRawFrame frame = state.pending.remove(0);
+            try {
+                INDIProtocol<?> values = frame.decode();
+                if (values instanceof SetVector<?>) {
+                    apply(state, (SetVector<?>) values);
+                }
+            } catch (IOException e) {
+                LOG.warn("could not decode " + frame, e);
+            }
+        }
+    }
+
+    /**
+     * merge a set message into the state.
+     *
+     * @param state  the state of the property.
+     * @param values the set message.
+     */
+    private static void apply(PropertyState state, SetVector<?> values) {
+        state.latest = values;
+        for (OneElement<?> element : values.getElements()) {
+            state.elements.put(element.getName(), element);
+        }
+    }
+
+    /**
+     * a device deleted a property or itself.
+     *
+     * @param deviceName   the device name.
+     * @param propertyName the property name or null for the whole device.
+     */
+    void delete(String deviceName, String propertyName) {
+        if (propertyName == null || propertyName.trim().isEmpty()) {
+            devices.remove(deviceName);
+            return;
+        }
+        Map<String, PropertyState> properties = devices.get(deviceName);
+        if (properties != null) {
+            synchronized (properties) {
+                properties.remove(propertyName.trim());
+            }
+        }
+    }
+
+    /**
+     * @param deviceName   the device name.
+     * @param propertyName the property name or null for all properties.
+     * @return true if the device (and the property) is cached.
+     */
+    boolean contains(String deviceName, String propertyName) {
+        Map<String, PropertyState> properties = devices.get(deviceName);
+        if (properties == null) {
+            return false;
+        }
+        if (propertyName == null || propertyName.isEmpty()) {
+            return true;
+        }
+        synchronized (properties) {
+            return properties.containsKey(propertyName);
+        }
+    }
+
+    /**
+     * the messages that describe the current state of the properties of a
+     * device: per property its definition and the merged latest values.
+     *
+     * @param deviceName   the device name.
+     * @param propertyName the property name or null for all properties.
+     * @return the messages or null if the device (or property) is not
+     * cached.
+     */
+    List<INDIProtocol<?>> snapshot(String deviceName, String propertyName) {
+        Map<String, PropertyState> properties = devices.get(deviceName);
+        if (properties == null) {
+            return null;
+        }
+        List<INDIProtocol<?>> messages = new ArrayList<>();
+        synchronized (properties) {
+            if (propertyName == null || propertyName.isEmpty()) {
+                for (PropertyState state : properties.values()) {
+                    addState(messages, state);
+                }
+            } else {
+                PropertyState state = properties.get(propertyName);
+                if (state == null) {
+                    return null;
+                }
+                addState(messages, state);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * add the messages of one property.
+     *
+     * @param messages the list to add to.
+     * @param state    the state of the property.
+     */
+    private static void addState(List<INDIProtocol<?>> messages, PropertyState state) {
+        decodePending(state, 0);
+        messages.add(state.definition);
+        if (state.latest != null) {
+            SetVector<?> merged = merge(state.latest, state.elements.values());
+            if (merged != null) {
+                messages.add(merged);
+            }
+        }
+    }
+
+    /**
+     * create a set message with the attributes of the latest set message and
+     * the merged elements of all earlier ones.
+     *
+     * @param latest   the latest set message.
+     * @param elements the merged elements.
+     * @return the merged set message, null for unknown types.
+     */
+    static SetVector<?> merge(SetVector<?> latest, Collection<OneElement<?>> elements) {
+        SetVector<?> merged = newSetVector(latest);
+        if (merged != null) {
+            merged.setDevice(latest.getDevice());
+            merged.setName(latest.getName());
+            merged.setTimestamp(latest.getTimestamp());
+            merged.setState(latest.getState());
+            merged.setTimeout(latest.getTimeout());
+            merged.getElements().addAll(elements);
+        }
+        return merged;
+    }
+
+    /**
+     * @param template the set message to create an empty copy of.
+     * @return a new empty set message of the same type, null for unknown
+     * types.
+     */
+    private static SetVector<?> newSetVector(SetVector<?> template) {
+        if (template instanceof SetNumberVector) {
+            return new SetNumberVector();
+        } else if (template instanceof SetSwitchVector) {
+            return new SetSwitchVector().setRule(((SetSwitchVector) template).getRule());
+        } else if (template instanceof SetTextVector) {
+            return new SetTextVector();
+        } else if (template instanceof SetLightVector) {
+            return new SetLightVector();
+        }
+        return null;
+    }
+}
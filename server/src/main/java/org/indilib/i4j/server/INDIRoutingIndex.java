@@ -0,0 +1,244 @@
+package org.indilib.i4j.server;
+
+/*
+ * #%L
+ * INDI for Java Server Library
+ * %%
+ * Copyright (C) 2013 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Routing index of the server: device, property to the listeners of the
+ * property and their blob mode. The recipients of a device or property are
+ * resolved once with the rules of the listeners and cached, so routing a
+ * message only costs the number of its recipients instead of listeners times
+ * rules. Any change of the listeners or their subscriptions (getProperties,
+ * enableBLOB, connect or disconnect) invalidates the whole index, these are
+ * rare compared to the property updates.
+ *
+ * @author agent
+ */
+final class INDIRoutingIndex {
+
+    /**
+     * no listeners.
+     */
+    private static final INDIDeviceListener[] NONE = new INDIDeviceListener[0];
+
+    /**
+     * the routes of a device.
+     */
+    private static final class DeviceRoutes {
+
+        /**
+         * the listeners of the complete device.
+         */
+        private final INDIDeviceListener[] device;
+
+        /**
+         * the listeners of single properties of the device.
+         */
+        private final INDIDeviceListener[] singleProperties;
+
+        /**
+         * the routes of the properties of the device, resolved when needed.
+         */
+        private final ConcurrentMap<String, PropertyRoutes> properties = new ConcurrentHashMap<>();
+
+        /**
+         * constructor.
+         *
+         * @param device           the listeners of the complete device.
+         * @param singleProperties the listeners of single properties of the
+         *                         device.
+         */
+        private DeviceRoutes(INDIDeviceListener[] device, INDIDeviceListener[] singleProperties) {
+            this.device = device;
+            this.singleProperties = singleProperties;
+        }
+    }
+
+    /**
+     * the routes of a property.
+     */
+    private static final class PropertyRoutes {
+
+        /**
+         * the listeners of the property.
+         */
+        private final INDIDeviceListener[] listeners;
+
+        /**
+         * the listeners that accept non blob updates of the property.
+         */
+        private final INDIDeviceListener[] updates;
+
+        /**
+         * the listeners that accept blob updates of the property.
+         */
+        private final INDIDeviceListener[] blobs;
+
+        /**
+         * constructor.
+         *
+         * @param listeners the listeners of the property.
+         * @param updates   the listeners that accept non blob updates.
+         * @param blobs     the listeners that accept blob updates.
+         */
+        private PropertyRoutes(INDIDeviceListener[] listeners, INDIDeviceListener[] updates, INDIDeviceListener[] blobs) {
+            this.listeners = listeners;
+            this.updates = updates;
+            this.blobs = blobs;
+        }
+    }
+
+    /**
+     * all listeners of the server.
+     */
+    private final INDIServerRegistry<INDIDeviceListener> listeners;
+
+    /**
+     * the routes by device name, replaced as a whole when the index is
+     * invalidated.
+     */
+    private volatile ConcurrentMap<String, DeviceRoutes> devices = new ConcurrentHashMap<>();
+
+    /**
+     * constructor.
+     *
+     * @param listeners all listeners of the server.
+     */
+    INDIRoutingIndex(INDIServerRegistry<INDIDeviceListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * forget all resolved routes, call this after the listeners or their
+     * subscriptions changed.
+     */
+    void invalidate() {
+        devices = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param deviceName the device name.
+     * @return the listeners of the complete device.
+     */
+    INDIDeviceListener[] deviceListeners(String deviceName) {
+        return device(deviceName).device;
+    }
+
+    /**
+     * @param deviceName the device name.
+     * @return the listeners of single properties of the device.
+     */
+    INDIDeviceListener[] singlePropertyListeners(String deviceName) {
+        return device(deviceName).singleProperties;
+    }
+
+    /**
+     * @param deviceName   the device name.
+     * @param propertyName the property name.
+     * @return the listeners of the property.
+     */
+    INDIDeviceListener[] propertyListeners(String deviceName, String propertyName) {
+        return property(deviceName, propertyName).listeners;
+    }
+
+    /**
+     * @param deviceName   the device name.
+     * @param propertyName the property name.
+     * @param isBLOB       true for blob updates.
+     * @return the listeners that accept the updates of the property.
+     */
+    INDIDeviceListener[] propertyUpdateListeners(String deviceName, String propertyName, boolean isBLOB) {
+        PropertyRoutes routes = property(deviceName, propertyName);
+        return isBLOB ? routes.blobs : routes.updates;
+    }
+
+    /**
+     * @param deviceName the device name.
+     * @return the (resolved) routes of the device.
+     */
+    private DeviceRoutes device(String deviceName) {
+        ConcurrentMap<String, DeviceRoutes> current = devices;
+        DeviceRoutes routes = current.get(deviceName);
+        if (routes == null) {
+            List<INDIDeviceListener> device = new ArrayList<>();
+            List<INDIDeviceListener> singleProperties = new ArrayList<>();
+            for (INDIDeviceListener listener : snapshot()) {
+                if (listener.listensToDevice(deviceName)) {
+                    device.add(listener);
+                }
+                if (listener.listensToSingleProperty(deviceName)) {
+                    singleProperties.add(listener);
+                }
+            }
+            routes = new DeviceRoutes(device.toArray(NONE), singleProperties.toArray(NONE));
+            DeviceRoutes existing = current.putIfAbsent(deviceName, routes);
+            if (existing != null) {
+                routes = existing;
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * @param deviceName   the device name.
+     * @param propertyName the property name.
+     * @return the (resolved) routes of the property.
+     */
+    private PropertyRoutes property(String deviceName, String propertyName) {
+        DeviceRoutes device = device(deviceName);
+        PropertyRoutes routes = device.properties.get(propertyName);
+        if (routes == null) {
+            List<INDIDeviceListener> property = new ArrayList<>();
+            List<INDIDeviceListener> updates = new ArrayList<>();
+            List<INDIDeviceListener> blobs = new ArrayList<>();
+            for (INDIDeviceListener listener : snapshot()) {
+                if (listener.listensToProperty(deviceName, propertyName)) {
+                    property.add(listener);
+                    if (listener.areNonBLOBsAccepted(deviceName)) {
+                        updates.add(listener);
+                    }
+                    if (listener.isBLOBAccepted(deviceName, propertyName)) {
+                        blobs.add(listener);
+                    }
+                }
+            }
+            routes = new PropertyRoutes(property.toArray(NONE), updates.toArray(NONE), blobs.toArray(NONE));
+            PropertyRoutes existing = device.properties.putIfAbsent(propertyName, routes);
+            if (existing != null) {
+                routes = existing;
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * @return the current listeners, shared and not to be modified.
+     */
+    private INDIDeviceListener[] snapshot() {
+        return listeners.snapshot();
+    }
+}
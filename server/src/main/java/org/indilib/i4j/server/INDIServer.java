@@ -25,12 +25,16 @@ package org.indilib.i4j.server;
 import org.indilib.i4j.Constants;
 import org.indilib.i4j.INDIException;
 import org.indilib.i4j.driver.INDIDriver;
+import org.indilib.i4j.protocol.DefVector;
 import org.indilib.i4j.protocol.DelProperty;
 import org.indilib.i4j.protocol.GetProperties;
 import org.indilib.i4j.protocol.INDIProtocol;
 import org.indilib.i4j.protocol.SetBlobVector;
+import org.indilib.i4j.protocol.SetVector;
 import org.indilib.i4j.protocol.api.INDIConnection;
+import org.indilib.i4j.protocol.io.INDIEncodedMessage;
 import org.indilib.i4j.protocol.io.INDIPipedConnections;
+import org.indilib.i4j.protocol.io.INDIRawFrame;
 import org.indilib.i4j.server.api.INDIDeviceInterface;
 import org.indilib.i4j.server.api.INDIServerEventHandler;
 import org.indilib.i4j.server.api.INDIServerInterface;
@@ -44,9 +48,12 @@ import java.io.File;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A class representing a INDI Server. It is in charge of dealing with several
@@ -87,11 +94,27 @@ public final class INDIServer implements INDIServerInterface {
      * A list of clients (and devices if they are snooping) connected to the
      * server.
      */
-    private List<INDIDeviceListener> clients;
+    private INDIServerRegistry<INDIDeviceListener> clients;
+    /**
+     * the routing index over the clients.
+     */
+    private INDIRoutingIndex routingIndex;
+    /**
+     * the cached property state of the devices.
+     */
+    private final INDIPropertyCache propertyCache = new INDIPropertyCache();
+    /**
+     * the metrics of the clients and devices.
+     */
+    private final INDIServerMetrics metrics = new INDIServerMetrics(this);
     /**
      * A list of Devices loaded by the server.
      */
-    private List<INDIDevice> devices;
+    private INDIServerRegistry<INDIDevice> devices;
+    /**
+     * the devices by their names, the first loaded device of a name wins.
+     */
+    private final ConcurrentMap<String, INDIDevice> devicesByName = new ConcurrentHashMap<>();
 
     /**
      * Constructs a new Server. The Server begins to listen to the default port.
@@ -152,7 +175,7 @@ public final class INDIServer implements INDIServerInterface {
 
     @Override
     public List<INDIDeviceInterface> getDevices() {
-        return new ArrayList<>(devices);
+        return new ArrayList<>(Arrays.asList(staticCopyOfDevices()));
     }
 
     @Override
@@ -235,22 +258,23 @@ public final class INDIServer implements INDIServerInterface {
                 }
             }
         }
+        metrics.close();
     }
 
     /**
      * @return a static list to iterate without the problem of concurrent
-     * modifications.
+     * modifications, shared and not to be modified.
      */
     private INDIDeviceListener[] staticCopyOfClients() {
-        return clients.toArray(new INDIDeviceListener[0]);
+        return clients.snapshot();
     }
 
     /**
      * @return a static list to iterate without the problem of concurrent
-     * modifications.
+     * modifications, shared and not to be modified.
      */
     private INDIDevice[] staticCopyOfDevices() {
-        return devices.toArray(new INDIDevice[0]);
+        return devices.snapshot();
     }
 
     /**
@@ -304,13 +328,7 @@ public final class INDIServer implements INDIServerInterface {
      * @return A list of Clients that specifically listen to a Device.
      */
     protected List<INDIDeviceListener> getClientsListeningToDevice(String deviceName) {
-        List<INDIDeviceListener> list = new ArrayList<>();
-        for (INDIDeviceListener c : staticCopyOfClients()) {
-            if (c.listensToDevice(deviceName)) {
-                list.add(c);
-            }
-        }
-        return list;
+        return new ArrayList<>(Arrays.asList(routingIndex.deviceListeners(deviceName)));
     }
 
     /**
@@ -321,13 +339,7 @@ public final class INDIServer implements INDIServerInterface {
      * @return A list of Clients that listen to a Property.
      */
     protected List<INDIDeviceListener> getClientsListeningToProperty(String deviceName, String propertyName) {
-        List<INDIDeviceListener> list = new ArrayList<>();
-        for (INDIDeviceListener c : staticCopyOfClients()) {
-            if (c.listensToProperty(deviceName, propertyName)) {
-                list.add(c);
-            }
-        }
-        return list;
+        return new ArrayList<>(Arrays.asList(routingIndex.propertyListeners(deviceName, propertyName)));
     }
 
     /**
@@ -339,21 +351,7 @@ public final class INDIServer implements INDIServerInterface {
      * @return A list of Clients that listen to a Property.
      */
     protected List<INDIDeviceListener> getClientsListeningToPropertyUpdates(String deviceName, String propertyName, boolean isBLOB) {
-        List<INDIDeviceListener> list = new ArrayList<>();
-        for (INDIDeviceListener c : staticCopyOfClients()) {
-            if (c.listensToProperty(deviceName, propertyName)) {
-                if (isBLOB) {
-                    if (c.isBLOBAccepted(deviceName, propertyName)) {
-                        list.add(c);
-                    }
-                } else {
-                    if (c.areNonBLOBsAccepted(deviceName)) {
-                        list.add(c);
-                    }
-                }
-            }
-        }
-        return list;
+        return new ArrayList<>(Arrays.asList(routingIndex.propertyUpdateListeners(deviceName, propertyName, isBLOB)));
     }
 
     /**
@@ -365,13 +363,7 @@ public final class INDIServer implements INDIServerInterface {
      * Device.
      */
     protected List<INDIDeviceListener> getClientsListeningToSingleProperties(String deviceName) {
-        List<INDIDeviceListener> list = new ArrayList<>();
-        for (INDIDeviceListener c : staticCopyOfClients()) {
-            if (c.listensToSingleProperty(deviceName)) {
-                list.add(c);
-            }
-        }
-        return list;
+        return new ArrayList<>(Arrays.asList(routingIndex.singlePropertyListeners(deviceName)));
     }
 
     /**
@@ -381,12 +373,38 @@ public final class INDIServer implements INDIServerInterface {
      * @return The Device with name <code>deviceName</code>.
      */
     protected INDIDevice getDevice(String deviceName) {
-        for (INDIDevice device : staticCopyOfDevices()) {
-            if (device.hasName(deviceName)) {
-                return device;
+        return deviceName == null ? null : devicesByName.get(deviceName);
+    }
+
+    /**
+     * Adds a name of a Device to the name index, called by the Device after it
+     * accepted a new name.
+     *
+     * @param device     The Device.
+     * @param deviceName The new name of the Device.
+     */
+    protected void deviceNameAdded(INDIDevice device, String deviceName) {
+        devicesByName.putIfAbsent(deviceName, device);
+    }
+
+    /**
+     * Removes the names of a Device from the name index, a name that is also
+     * used by another loaded Device passes to that one.
+     *
+     * @param device The Device.
+     * @param names  The names of the Device.
+     */
+    private void deviceNamesRemoved(INDIDevice device, String[] names) {
+        for (String name : names) {
+            if (devicesByName.remove(name, device)) {
+                for (INDIDevice other : staticCopyOfDevices()) {
+                    if (other.hasName(name)) {
+                        devicesByName.putIfAbsent(name, other);
+                        break;
+                    }
+                }
             }
         }
-        return null;
     }
 
     /**
@@ -412,16 +430,75 @@ public final class INDIServer implements INDIServerInterface {
      */
     protected void notifyClientListenersGetProperties(INDIDeviceListener client, INDIProtocol<?> xml) {
         String device = xml.getDevice();
+        if (INDIServerMetrics.isPseudoDevice(device) || !INDIServerMetrics.DEVICE.isEmpty() && !xml.hasDevice()) {
+            if (client instanceof INDIClient) {
+                String property = xml instanceof GetProperties ? ((GetProperties) xml).getProperty() : null;
+                metrics.sendDefinitions(client, property == null ? "" : property);
+            }
+            if (xml.hasDevice()) {
+                return;
+            }
+        }
 
         INDIDevice d = this.getDevice(device);
 
         if (d == null) {
-            sendXMLMessageToAllDevices(xml);
+            if (INDIPropertyCache.ENABLED && !xml.hasDevice()) {
+                for (INDIDevice each : staticCopyOfDevices()) {
+                    if (!sendCachedProperties(client, each.getNames(), null)) {
+                        each.sendXMLMessage(xml);
+                    }
+                }
+            } else {
+                sendXMLMessageToAllDevices(xml);
+            }
         } else {
-            d.sendXMLMessage(xml);
+            String property = xml instanceof GetProperties ? ((GetProperties) xml).getProperty() : null;
+            if (!INDIPropertyCache.ENABLED || !sendCachedProperties(client, new String[]{
+                device
+            }, property)) {
+                d.sendXMLMessage(xml);
+            }
         }
     }
 
+    /**
+     * answer a getProperties from the property cache, only if all requested
+     * devices are cached.
+     *
+     * @param client      the listener that asked for the properties.
+     * @param deviceNames the names of the devices.
+     * @param property    the requested property or null for all.
+     * @return false if the the request must be passed to the device.
+     */
+    private boolean sendCachedProperties(INDIDeviceListener client, String[] deviceNames, String property) {
+        if (deviceNames.length == 0) {
+            return false;
+        }
+        for (String deviceName : deviceNames) {
+            if (!propertyCache.contains(deviceName, property)) {
+                return false;
+            }
+        }
+        for (String deviceName : deviceNames) {
+            // the device can not route a message between the snapshot and
+            // the queueing of it.
+            synchronized (propertyCache.lock(deviceName)) {
+                List<INDIProtocol<?>> answer = propertyCache.snapshot(deviceName, property);
+                if (answer == null) {
+                    continue;
+                }
+                boolean nonBLOBsAccepted = client.areNonBLOBsAccepted(deviceName);
+                for (INDIProtocol<?> message : answer) {
+                    if (message.isDef() || nonBLOBsAccepted) {
+                        client.sendXMLMessage(message);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Sends the <code>newXXXVector</code> message to the appropriate Devices.
      *
@@ -446,8 +523,11 @@ public final class INDIServer implements INDIServerInterface {
     protected void notifyDeviceListenersDefXXXVector(INDIDevice device, INDIProtocol<?> xml) {
         String deviceName = xml.getDevice();
         String propertyName = xml.getName().trim();
-        for (INDIDeviceListener c : getClientsListeningToProperty(deviceName, propertyName)) {
-            c.sendXMLMessage(xml);
+        synchronized (propertyCache.lock(deviceName)) {
+            if (xml instanceof DefVector) {
+                propertyCache.define((DefVector<?>) xml);
+            }
+            sendXMLMessage(routingIndex.propertyListeners(deviceName, propertyName), xml);
         }
     }
 
@@ -459,8 +539,9 @@ public final class INDIServer implements INDIServerInterface {
      */
     protected void notifyDeviceListenersDelProperty(INDIDevice device, INDIProtocol<?> xml) {
         String deviceName = xml.getDevice();
-        for (INDIDeviceListener c : getClientsListeningToDevice(deviceName)) {
-            c.sendXMLMessage(xml);
+        synchronized (propertyCache.lock(deviceName)) {
+            propertyCache.delete(deviceName, xml.getName());
+            sendXMLMessage(routingIndex.deviceListeners(deviceName), xml);
         }
     }
 
@@ -476,9 +557,7 @@ public final class INDIServer implements INDIServerInterface {
         if (deviceName.isEmpty()) {
             sendXMLMessageToAllClients(xml);
         } else {
-            for (INDIDeviceListener c : getClientsListeningToDevice(deviceName)) {
-                c.sendXMLMessage(xml);
-            }
+            sendXMLMessage(routingIndex.deviceListeners(deviceName), xml);
         }
     }
 
@@ -492,13 +571,60 @@ public final class INDIServer implements INDIServerInterface {
         String deviceName = xml.getDevice();
         String propertyName = xml.getName().trim();
 
-        boolean isBLOB = false;
+        boolean isBLOB = xml instanceof SetBlobVector;
+
+        synchronized (propertyCache.lock(deviceName)) {
+            if (!isBLOB && xml instanceof SetVector) {
+                propertyCache.set((SetVector<?>) xml);
+            }
+            sendXMLMessage(routingIndex.propertyUpdateListeners(deviceName, propertyName, isBLOB), xml);
+        }
+    }
+
+    /**
+     * Sends the <code>setXXXVector</code> raw frame to the appropriate
+     * Clients, the bytes are forwarded unchanged. Only non blob values are
+     * decoded, for the property cache.
+     *
+     * @param device The Device sending the message.
+     * @param frame  The raw frame of the message
+     */
+    protected void notifyDeviceListenersSetXXXVector(INDIDevice device, INDIRawFrame frame) {
+        String deviceName = frame.getDevice();
+        String propertyName = frame.getName();
 
-        if (xml instanceof SetBlobVector) {
-            isBLOB = true;
+        INDIEncodedMessage message = new INDIEncodedMessage(frame);
+        try {
+            synchronized (propertyCache.lock(deviceName)) {
+                propertyCache.set(frame);
+                for (INDIDeviceListener c : routingIndex.propertyUpdateListeners(deviceName, propertyName, frame.isBlob())) {
+                    c.sendXMLMessage(message);
+                }
+            }
+        } finally {
+            message.release();
         }
-        for (INDIDeviceListener c : getClientsListeningToPropertyUpdates(deviceName, propertyName, isBLOB)) {
-            c.sendXMLMessage(xml);
+    }
+
+    /**
+     * send a message to the listeners, if there are more than one the message
+     * is encoded only once for all of them.
+     *
+     * @param listeners the listeners to send to.
+     * @param xml       the message.
+     */
+    private static void sendXMLMessage(INDIDeviceListener[] listeners, INDIProtocol<?> xml) {
+        if (listeners.length == 1) {
+            listeners[0].sendXMLMessage(xml);
+        } else if (listeners.length > 1) {
+            INDIEncodedMessage message = new INDIEncodedMessage(xml);
+            try {
+                for (INDIDeviceListener c : listeners) {
+                    c.sendXMLMessage(message);
+                }
+            } finally {
+                message.release();
+            }
         }
     }
 
@@ -509,11 +635,35 @@ public final class INDIServer implements INDIServerInterface {
      * @param client The Client to remove.
      */
     protected void removeClient(INDIClient client) {
-        clients.remove(client);
+        unregisterListener(client);
 
         connectionWithClientBroken(client);
     }
 
+    /**
+     * add a listener to the clients and the routing index.
+     *
+     * @param listener the client or snooping device.
+     */
+    private void registerListener(INDIDeviceListener listener) {
+        clients.add(listener);
+        listener.setRoutingIndex(routingIndex);
+        routingIndex.invalidate();
+        metrics.register(listener);
+    }
+
+    /**
+     * remove a listener from the clients and the routing index.
+     *
+     * @param listener the client or snooping device.
+     */
+    private void unregisterListener(INDIDeviceListener listener) {
+        listener.setRoutingIndex(null);
+        clients.remove(listener);
+        routingIndex.invalidate();
+        metrics.unregister(listener);
+    }
+
     /**
      * Removes a Device from the list of devices. Called by the Devices to be
      * removed when connection breaks
@@ -524,7 +674,11 @@ public final class INDIServer implements INDIServerInterface {
         String[] names = device.getNames();
 
         devices.remove(device);
-        clients.remove(device);
+        deviceNamesRemoved(device, names);
+        unregisterListener(device);
+        for (String name : names) {
+            propertyCache.delete(name, null);
+        }
 
         notifyClientsDeviceRemoved(names);
 
@@ -581,7 +735,7 @@ public final class INDIServer implements INDIServerInterface {
      */
     private void addDevice(INDIDevice device) {
         devices.add(device);
-        clients.add(device);
+        registerListener(device);
 
         device.startReading();
         // Force the device to send its properties for already connected clients
@@ -655,8 +809,9 @@ public final class INDIServer implements INDIServerInterface {
      * Initializes the Server and launches the listening thread.
      */
     private void initServer() {
-        devices = Collections.synchronizedList(new ArrayList<>());
-        clients = Collections.synchronizedList(new ArrayList<>());
+        devices = new INDIServerRegistry<>(new INDIDevice[0]);
+        clients = new INDIServerRegistry<>(new INDIDeviceListener[0]);
+        routingIndex = new INDIRoutingIndex(clients);
 
         startListeningToClients();
     }
@@ -714,12 +869,8 @@ public final class INDIServer implements INDIServerInterface {
     private void notifyClientsDeviceRemoved(String[] deviceNames) {
         for (String deviceName : deviceNames) {
             DelProperty message = new DelProperty().setDevice(deviceName);
-            for (INDIDeviceListener c : this.getClientsListeningToDevice(deviceName)) {
-                c.sendXMLMessage(message);
-            }
-            for (INDIDeviceListener c : this.getClientsListeningToSingleProperties(deviceName)) {
-                c.sendXMLMessage(message);
-            }
+            sendXMLMessage(routingIndex.deviceListeners(deviceName), message);
+            sendXMLMessage(routingIndex.singlePropertyListeners(deviceName), message);
         }
     }
 
@@ -775,7 +926,7 @@ public final class INDIServer implements INDIServerInterface {
         if (INDIServer.this.acceptClient(clientConnection)) {
             INDIClient client = new INDIClient(clientConnection, INDIServer.this);
 
-            clients.add(client);
+            registerListener(client);
 
             connectionWithClientEstablished(client);
             return true;
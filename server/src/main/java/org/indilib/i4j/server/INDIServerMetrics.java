@@ -0,0 +1,465 @@
+package org.indilib.i4j.server;
+
+/*
+ * #%L
+ * INDI for Java Server Library
+ * %%
+ * Copyright (C) 2013 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.indilib.i4j.INDIDateFormat;
+import org.indilib.i4j.protocol.DefNumber;
+import org.indilib.i4j.protocol.DefNumberVector;
+import org.indilib.i4j.protocol.DelProperty;
+import org.indilib.i4j.protocol.INDIProtocol;
+import org.indilib.i4j.protocol.OneNumber;
+import org.indilib.i4j.protocol.SetNumberVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of all clients and devices of a server. The metrics of every
+ * connection are registered as management bean (see
+ * {@link org.indilib.i4j.server.api.INDIConnectionMetricsMXBean}) and can
+ * optionally be published by a read only pseudo device, with a property for
+ * the server totals and one per connection that are updated every second.
+ *
+ * @author agent
+ */
+final class INDIServerMetrics {
+
+    /**
+     * the logger to log to.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(INDIServerMetrics.class);
+
+    /**
+     * should the metrics of the connections be registered as management
+     * beans.
+     */
+    static final boolean JMX = Boolean.parseBoolean(System.getProperty(INDIServerMetrics.class.getSimpleName() + ".jmx", "true"));
+
+    /**
+     * the name of the pseudo device that publishes the metrics, empty if
+     * there is none.
+     */
+    static final String DEVICE = System.getProperty(INDIServerMetrics.class.getSimpleName() + ".device", "").trim();
+
+    /**
+     * the domain of the management beans.
+     */
+    private static final String DOMAIN = "org.indilib.i4j";
+
+    /**
+     * the seconds between two updates of the pseudo device.
+     */
+    private static final long UPDATE_SECONDS = 1L;
+
+    /**
+     * the name of the property with the server totals.
+     */
+    private static final String SERVER_PROPERTY = "SERVER";
+
+    /**
+     * the timer of the pseudo device updates, shared by all servers.
+     */
+    private static ScheduledExecutorService timer;
+
+    /**
+     * a registered client or device.
+     */
+    private static final class Entry {
+
+        /**
+         * the metrics of the connection.
+         */
+        private final INDIConnectionMetrics metrics;
+
+        /**
+         * the name of the management bean, null if it is not registered.
+         */
+        private ObjectName objectName;
+
+        /**
+         * the property of the connection in the pseudo device.
+         */
+        private final String property;
+
+        /**
+         * is the property defined for the listening clients.
+         */
+        private boolean defined;
+
+        /**
+         * constructor.
+         *
+         * @param metrics  the metrics of the connection.
+         * @param property the property of the connection in the pseudo
+         *                 device.
+         */
+        private Entry(INDIConnectionMetrics metrics, String property) {
+            this.metrics = metrics;
+            this.property = property;
+        }
+    }
+
+    /**
+     * the server.
+     */
+    private final INDIServer server;
+
+    /**
+     * the registered connections, in the order of registration.
+     */
+    private final Map<INDIDeviceListener, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * the properties of removed connections that must still be deleted in
+     * the pseudo device.
+     */
+    private final List<String> removed = new ArrayList<>();
+
+    /**
+     * the sequence number of the connection properties.
+     */
+    private int sequence;
+
+    /**
+     * the scheduled updates of the pseudo device, null if not started.
+     */
+    private ScheduledFuture<?> updates;
+
+    /**
+     * constructor.
+     *
+     * @param server the server.
+     */
+    INDIServerMetrics(INDIServer server) {
+        this.server = server;
+    }
+
+    /**
+     * @param deviceName the device name.
+     * @return true if the name is the one of the pseudo device.
+     */
+    static boolean isPseudoDevice(String deviceName) {
+        return !DEVICE.isEmpty() && DEVICE.equals(deviceName);
+    }
+
+    /**
+     * register a new client or device.
+     *
+     * @param listener the client or device.
+     */
+    synchronized void register(INDIDeviceListener listener) {
+        INDIConnectionMetrics metrics = listener.connectionMetrics();
+        Entry entry = new Entry(metrics, (metrics.isClient() ? "CLIENT_" : "DEVICE_") + ++sequence);
+        entries.put(listener, entry);
+        if (JMX) {
+            try {
+                ObjectName objectName = new ObjectName(DOMAIN + ":type=" + (metrics.isClient() ? "Client" : "Device") + ",server=" + server.getPort() + ",name="
+                        + ObjectName.quote(metrics.getName()));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+                entry.objectName = objectName;
+            } catch (Exception e) {
+                LOG.debug("could not register the metrics of " + metrics.getName(), e);
+            }
+        }
+        if (!DEVICE.isEmpty() && updates == null) {
+            updates = timer().scheduleWithFixedDelay(this::update, UPDATE_SECONDS, UPDATE_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * unregister a client or device that left the server.
+     *
+     * @param listener the client or device.
+     */
+    synchronized void unregister(INDIDeviceListener listener) {
+        Entry entry = entries.remove(listener);
+        if (entry != null) {
+            unregisterBean(entry);
+            if (entry.defined) {
+                removed.add(entry.property);
+            }
+        }
+    }
+
+    /**
+     * unregister all management beans and stop the updates of the pseudo
+     * device.
+     */
+    synchronized void close() {
+        for (Entry entry : entries.values()) {
+            unregisterBean(entry);
+        }
+        if (updates != null) {
+            updates.cancel(false);
+            updates = null;
+        }
+    }
+
+    /**
+     * @param entry the connection to unregister the management bean of.
+     */
+    private static void unregisterBean(Entry entry) {
+        if (entry.objectName != null) {
+            try {
+                MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+                if (beanServer.isRegistered(entry.objectName)) {
+                    beanServer.unregisterMBean(entry.objectName);
+                }
+            } catch (Exception e) {
+                LOG.debug("could not unregister " + entry.objectName, e);
+            }
+            entry.objectName = null;
+        }
+    }
+
+    /**
+     * answer a getProperties for the pseudo device.
+     *
+     * @param client   the client that asked.
+     * @param property the requested property or an empty string for all.
+     */
+    synchronized void sendDefinitions(INDIDeviceListener client, String property) {
+        if (property.isEmpty() || SERVER_PROPERTY.equals(property)) {
+            client.sendXMLMessage(defineServer());
+        }
+        for (Entry entry : entries.values()) {
+            if (property.isEmpty() || entry.property.equals(property)) {
+                client.sendXMLMessage(defineConnection(entry));
+            }
+        }
+    }
+
+    /**
+     * send the current values of the pseudo device to the listening clients,
+     * the properties of new connections are defined and the ones of removed
+     * connections deleted.
+     */
+    private void update() {
+        try {
+            List<INDIProtocol<?>> messages = new ArrayList<>();
+            synchronized (this) {
+                for (String property : removed) {
+                    messages.add(new DelProperty().setDevice(DEVICE).setName(property).setTimestamp(timestamp()));
+                }
+                removed.clear();
+                messages.add(serverValues());
+                for (Entry entry : entries.values()) {
+                    messages.add(entry.defined ? connectionValues(entry) : defineConnection(entry));
+                    entry.defined = true;
+                }
+            }
+            for (INDIProtocol<?> message : messages) {
+                // definitions and deletions go to all listeners of the
+                // property, like notifyDeviceListenersDefXXXVector does.
+                List<INDIDeviceListener> clients = message.isSet() ? server.getClientsListeningToPropertyUpdates(DEVICE, message.getName(), false)
+                        : server.getClientsListeningToProperty(DEVICE, message.getName());
+                for (INDIDeviceListener client : clients) {
+                    client.sendXMLMessage(message);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("could not update the metrics device", e);
+        }
+    }
+
+    /**
+     * @return the definition of the server totals property.
+     */
+    private DefNumberVector defineServer() {
+        DefNumberVector vector = defineVector(SERVER_PROPERTY, "Server", "Main");
+        addNumber(vector, "CLIENTS", "Clients", "%.0f");
+        addNumber(vector, "DEVICES", "Devices", "%.0f");
+        addNumber(vector, "MSGS_IN", "Messages in (/s)", "%.1f");
+        addNumber(vector, "MSGS_OUT", "Messages out (/s)", "%.1f");
+        addNumber(vector, "BYTES_IN", "Bytes in (/s)", "%.0f");
+        addNumber(vector, "BYTES_OUT", "Bytes out (/s)", "%.0f");
+        addNumber(vector, "BACKLOG", "Backlog (messages)", "%.0f");
+        addNumber(vector, "BLOB_BYTES", "Queued blob bytes", "%.0f");
+        return setValues(vector, totals());
+    }
+
+    /**
+     * @param entry the connection.
+     * @return the definition of the property of a connection.
+     */
+    private DefNumberVector defineConnection(Entry entry) {
+        INDIConnectionMetrics metrics = entry.metrics;
+        DefNumberVector vector = defineVector(entry.property, metrics.getName(), metrics.isClient() ? "Clients" : "Devices");
+        addNumber(vector, "MSGS_IN", "Messages in (/s)", "%.1f");
+        addNumber(vector, "MSGS_OUT", "Messages out (/s)", "%.1f");
+        addNumber(vector, "BYTES_IN", "Bytes in (/s)", "%.0f");
+        addNumber(vector, "BYTES_OUT", "Bytes out (/s)", "%.0f");
+        addNumber(vector, "BACKLOG", "Backlog (messages)", "%.0f");
+        addNumber(vector, "LATENCY_P50", metrics.isClient() ? "Delivery p50 (us)" : "Routing p50 (us)", "%.1f");
+        addNumber(vector, "LATENCY_P99", metrics.isClient() ? "Delivery p99 (us)" : "Routing p99 (us)", "%.1f");
+        return setValues(vector, values(metrics));
+    }
+
+    /**
+     * @return the current values of the server totals property.
+     */
+    private SetNumberVector serverValues() {
+        return setValues(SERVER_PROPERTY, totals());
+    }
+
+    /**
+     * @param entry the connection.
+     * @return the current values of the property of a connection.
+     */
+    private SetNumberVector connectionValues(Entry entry) {
+        return setValues(entry.property, values(entry.metrics));
+    }
+
+    /**
+     * @return the server totals, in the order of the elements.
+     */
+    private double[] totals() {
+        double[] totals = new double[8];
+        for (Entry entry : entries.values()) {
+            INDIConnectionMetrics metrics = entry.metrics;
+            totals[metrics.isClient() ? 0 : 1]++;
+            if (metrics.isClient()) {
+                // every message passes a device and a client, count it once.
+                totals[2] += metrics.getMessagesReceivedPerSecond();
+                totals[3] += metrics.getMessagesSentPerSecond();
+                totals[4] += metrics.getBytesReceivedPerSecond();
+                totals[5] += metrics.getBytesSentPerSecond();
+            }
+            totals[6] += metrics.getBacklog();
+        }
+        totals[7] = INDIClientOutboundQueue.getQueuedBlobBytes();
+        return totals;
+    }
+
+    /**
+     * @param metrics the metrics of a connection.
+     * @return the values of the connection, in the order of the elements.
+     */
+    private static double[] values(INDIConnectionMetrics metrics) {
+        return new double[]{
+                metrics.getMessagesReceivedPerSecond(),
+                metrics.getMessagesSentPerSecond(),
+                metrics.getBytesReceivedPerSecond(),
+                metrics.getBytesSentPerSecond(),
+                metrics.getBacklog(),
+                metrics.getLatencyP50Micros(),
+                metrics.getLatencyP99Micros()
+        };
+    }
+
+    /**
+     * @param name  the property name.
+     * @param label the property label.
+     * @param group the property group.
+     * @return a new read only number vector definition of the pseudo device.
+     */
+    private static DefNumberVector defineVector(String name, String label, String group) {
+        return new DefNumberVector().setDevice(DEVICE).setName(name).setLabel(label).setGroup(group).setPerm("ro").setState("Ok").setTimeout("0")
+                .setTimestamp(timestamp());
+    }
+
+    /**
+     * add a number element to a definition.
+     *
+     * @param vector the definition.
+     * @param name   the element name.
+     * @param label  the element label.
+     * @param format the number format.
+     */
+    private static void addNumber(DefNumberVector vector, String name, String label, String format) {
+        vector.getElements().add(new DefNumber().setFormat(format).setMin("0").setMax("0").setStep("0").setName(name).setLabel(label));
+    }
+
+    /**
+     * @param vector the definition.
+     * @param values the values of the elements.
+     * @return the definition with the values.
+     */
+    private static DefNumberVector setValues(DefNumberVector vector, double[] values) {
+        for (int index = 0; index < values.length; index++) {
+            vector.getElements().get(index).setTextContent(format(values[index]));
+        }
+        return vector;
+    }
+
+    /**
+     * @param name   the property name.
+     * @param values the values of the elements.
+     * @return the set message with the current values of a property.
+     */
+    private static SetNumberVector setValues(String name, double[] values) {
+        SetNumberVector vector = new SetNumberVector().setDevice(DEVICE).setName(name).setState("Ok").setTimestamp(timestamp());
+        String[] elements = SERVER_PROPERTY.equals(name) ? new String[]{
+                "CLIENTS", "DEVICES", "MSGS_IN", "MSGS_OUT", "BYTES_IN", "BYTES_OUT", "BACKLOG", "BLOB_BYTES"
+        } : new String[]{
+                "MSGS_IN", "MSGS_OUT", "BYTES_IN", "BYTES_OUT", "BACKLOG", "LATENCY_P50", "LATENCY_P99"
+        };
+        for (int index = 0; index < values.length; index++) {
+            vector.addElement(new OneNumber().setName(elements[index]).setTextContent(format(values[index])));
+        }
+        return vector;
+    }
+
+    /**
+     * @param value the value.
+     * @return the value as number text.
+     */
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    /**
+     * @return the current timestamp.
+     */
+    private static String timestamp() {
+        return INDIDateFormat.dateFormat().getCurrentTimestamp();
+    }
+
+    /**
+     * @return the timer of the pseudo device updates, created when needed.
+     */
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "server metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            timer = executor;
+        }
+        return timer;
+    }
+}
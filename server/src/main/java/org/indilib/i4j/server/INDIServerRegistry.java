@@ -0,0 +1,90 @@
+package org.indilib.i4j.server;
+
+/*
+ * #%L
+ * INDI for Java Server Library
+ * %%
+ * Copyright (C) 2013 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * Copy on write registry of the clients or devices of the server. The
+ * members are rarely added or removed but read for every routed message, so
+ * every change publishes a new immutable array and reading it takes no lock
+ * and allocates nothing.
+ *
+ * @param <T> the type of the members.
+ * @author agent
+ */
+final class INDIServerRegistry<T> {
+
+    /**
+     * the current members, never modified after publication.
+     */
+    private volatile T[] snapshot;
+
+    /**
+     * constructor.
+     *
+     * @param empty an empty array of the member type.
+     */
+    INDIServerRegistry(T[] empty) {
+        snapshot = empty;
+    }
+
+    /**
+     * add a member.
+     *
+     * @param member the new member.
+     */
+    synchronized void add(T member) {
+        T[] current = snapshot;
+        T[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = member;
+        snapshot = next;
+    }
+
+    /**
+     * remove a member.
+     *
+     * @param member the member to remove.
+     * @return true if it was a member.
+     */
+    synchronized boolean remove(T member) {
+        T[] current = snapshot;
+        for (int index = 0; index < current.length; index++) {
+            if (current[index] == member) {
+                T[] next = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                snapshot = next;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the current members, the array is shared and must not be
+     * modified.
+     */
+    T[] snapshot() {
+        return snapshot;
+    }
+}
@@ -24,16 +24,22 @@ package org.indilib.i4j.server;
 
 import org.indilib.i4j.Constants;
 import org.indilib.i4j.protocol.api.INDIConnection;
+import org.indilib.i4j.protocol.io.INDISelectorLoop;
 import org.indilib.i4j.protocol.io.INDISocketConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 /**
  * A basic indi protocol connection acceptor. it wil accept standard indi
- * clients connection to the server socket.
+ * clients connection to the server socket. With the system property
+ * <code>INDIServerSocketAcceptor.selector=true</code> the connections are
+ * accepted and read by a {@link INDISelectorLoop} with a few io threads
+ * instead of a thread per client.
  *
  * @author Richard van Nieuwenhoven
  */
@@ -44,6 +50,11 @@ public abstract class INDIServerSocketAcceptor implements INDIServerAcceptor {
      */
     private static final Logger LOG = LoggerFactory.getLogger(INDIServerSocketAcceptor.class);
 
+    /**
+     * should the acceptor use a selector loop instead of a thread per client.
+     */
+    private static final boolean USE_SELECTOR = Boolean.getBoolean(INDIServerSocketAcceptor.class.getSimpleName() + ".selector");
+
     /**
      * The port to which the Server listens.
      */
@@ -59,6 +70,12 @@ public abstract class INDIServerSocketAcceptor implements INDIServerAcceptor {
      */
     private ServerSocket socket;
 
+    /**
+     * the selector loop that accepts and reads the clients, null if the
+     * acceptor uses threads.
+     */
+    private INDISelectorLoop selectorLoop;
+
     /**
      * constructor for the basic server socket acceptor.
      */
@@ -97,6 +114,10 @@ public abstract class INDIServerSocketAcceptor implements INDIServerAcceptor {
             loggerClass = loggerClass.getSuperclass();
         }
         final Logger acceptorLog = LoggerFactory.getLogger(loggerClass);
+        if (USE_SELECTOR) {
+            runSelector(acceptorLog);
+            return;
+        }
         try {
             socket = new ServerSocket(getListeningPort());
         } catch (IOException e) {
@@ -122,16 +143,67 @@ public abstract class INDIServerSocketAcceptor implements INDIServerAcceptor {
             }
 
             if (clientSocket != null) {
-                INDIConnection clientConnection = createINDIConnection(clientSocket);
-                if (!acceptClient(clientConnection)) {
-                    try {
-                        clientConnection.close();
-                    } catch (IOException e) {
-                        acceptorLog.warn("client close exception", e);
-                    }
-                    acceptorLog.info("Client " + clientSocket.getInetAddress() + " rejected");
+                accepted(clientSocket, acceptorLog);
+            }
+        }
+    }
+
+    /**
+     * listen to the server socket with a selector loop, the accepted clients
+     * are read by the same loop.
+     *
+     * @param acceptorLog the logger to log to.
+     */
+    private void runSelector(final Logger acceptorLog) {
+        ServerSocketChannel serverChannel = null;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().bind(new InetSocketAddress(getListeningPort()));
+            socket = serverChannel.socket();
+            selectorLoop = new INDISelectorLoop("client io " + listeningPort);
+            selectorLoop.accept(serverChannel, new INDISelectorLoop.Acceptor() {
+
+                @Override
+                public void accepted(SocketChannel channel) {
+                    INDIServerSocketAcceptor.this.accepted(channel.socket(), acceptorLog);
                 }
+            });
+        } catch (IOException e) {
+            acceptorLog.error("Could not listen on port: " + listeningPort + " (maybe busy)");
+            if (serverChannel != null) {
+                try {
+                    serverChannel.close();
+                } catch (IOException ex) {
+                    acceptorLog.warn("server channel close exception", ex);
+                }
+            }
+            if (selectorLoop != null) {
+                selectorLoop.close();
+            }
+            return;
+        }
+        acceptorLog.info("Listening to port " + listeningPort + " with a selector loop");
+        mainThreadRunning = true;
+    }
+
+    /**
+     * a client connected, create the connection and pass it to the server.
+     *
+     * @param clientSocket the socket of the client.
+     * @param acceptorLog  the logger to log to.
+     */
+    private void accepted(Socket clientSocket, Logger acceptorLog) {
+        INDIConnection clientConnection = createINDIConnection(clientSocket);
+        if (selectorLoop != null && clientConnection instanceof INDISocketConnection) {
+            ((INDISocketConnection) clientConnection).setSelectorLoop(selectorLoop);
+        }
+        if (!acceptClient(clientConnection)) {
+            try {
+                clientConnection.close();
+            } catch (IOException e) {
+                acceptorLog.warn("client close exception", e);
             }
+            acceptorLog.info("Client " + clientSocket.getInetAddress() + " rejected");
         }
     }
 
@@ -166,6 +238,10 @@ public abstract class INDIServerSocketAcceptor implements INDIServerAcceptor {
         } catch (IOException e) {
             LOG.warn("server port close exception", e);
         }
+        if (selectorLoop != null) {
+            selectorLoop.close();
+            mainThreadRunning = false;
+        }
     }
 
     @Override
@@ -34,4 +34,31 @@ public interface INDIClientInterface {
      */
     String getInetAddress();
 
+    /**
+     * @return the number of messages queued for the client.
+     */
+    int getOutboundQueueDepth();
+
+    /**
+     * @return the highest number of messages that where queued for the
+     * client.
+     */
+    int getOutboundQueuePeak();
+
+    /**
+     * @return the number of messages for the client that where dropped
+     * because its queue overflowed or it was disconnected.
+     */
+    long getOutboundDropped();
+
+    /**
+     * @return the number of messages taken from the queue to write to the
+     * client.
+     */
+    long getOutboundWritten();
+
+    /**
+     * @return the traffic metrics of the client.
+     */
+    INDIConnectionMetricsMXBean getMetrics();
 }
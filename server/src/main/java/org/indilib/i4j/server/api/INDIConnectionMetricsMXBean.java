@@ -0,0 +1,124 @@
+package org.indilib.i4j.server.api;
+
+/*
+ * #%L
+ * INDI for Java Server Library
+ * %%
+ * Copyright (C) 2012 - 2014 indiforjava
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * The traffic metrics of one connection of the indiserver (a client or a
+ * device), also registered as management bean. The rates are averaged over
+ * the time since the previous sample, a sample is taken when a rate is
+ * read at least a second after the previous one. The latencies of a client
+ * are the delivery latencies (from the moment a message entered the routing
+ * of the server till it was written to the client), the latencies of a device
+ * are the routing times of its messages.
+ *
+ * @author agent
+ */
+public interface INDIConnectionMetricsMXBean {
+
+    /**
+     * @return the name of the connection.
+     */
+    String getName();
+
+    /**
+     * @return the number of messages received from the connection.
+     */
+    long getMessagesReceived();
+
+    /**
+     * @return the number of messages sent to the connection.
+     */
+    long getMessagesSent();
+
+    /**
+     * @return the number of bytes received from the connection, -1 if the
+     * connection does not count them.
+     */
+    long getBytesReceived();
+
+    /**
+     * @return the number of bytes sent to the connection, -1 if the
+     * connection does not count them.
+     */
+    long getBytesSent();
+
+    /**
+     * @return the messages received per second.
+     */
+    double getMessagesReceivedPerSecond();
+
+    /**
+     * @return the messages sent per second.
+     */
+    double getMessagesSentPerSecond();
+
+    /**
+     * @return the bytes received per second.
+     */
+    double getBytesReceivedPerSecond();
+
+    /**
+     * @return the bytes sent per second.
+     */
+    double getBytesSentPerSecond();
+
+    /**
+     * @return the number of messages waiting to be sent to the connection.
+     */
+    int getBacklog();
+
+    /**
+     * @return the number of recorded latencies.
+     */
+    long getLatencyCount();
+
+    /**
+     * @return the mean latency in microseconds.
+     */
+    double getLatencyMeanMicros();
+
+    /**
+     * @return the median latency in microseconds.
+     */
+    double getLatencyP50Micros();
+
+    /**
+     * @return the 90th percentile of the latencies in microseconds.
+     */
+    double getLatencyP90Micros();
+
+    /**
+     * @return the 99th percentile of the latencies in microseconds.
+     */
+    double getLatencyP99Micros();
+
+    /**
+     * @return the highest latency in microseconds.
+     */
+    double getLatencyMaxMicros();
+
+    /**
+     * forget the recorded latencies.
+     */
+    void resetLatencies();
+}
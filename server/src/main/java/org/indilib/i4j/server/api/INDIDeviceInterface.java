@@ -44,4 +44,8 @@ public interface INDIDeviceInterface {
      */
     String[] getNames();
 
+    /**
+     * @return the traffic metrics of the device.
+     */
+    INDIConnectionMetricsMXBean getMetrics();
 }